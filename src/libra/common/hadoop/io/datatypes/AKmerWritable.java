@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.datatypes;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import libra.common.helpers.SequenceHelper;
+import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.WritableComparable;
+
+/**
+ * Base of k-mer key writables. Subclasses order k-mers lexicographically
+ * (A < C < G < T) so indexes built with any key type merge the same way.
+ *
+ * @author iychoi
+ */
+public abstract class AKmerWritable extends BinaryComparable implements WritableComparable<BinaryComparable> {
+    
+    /**
+     * Set the value from a k-mer packed as right-aligned 2-bit words.
+     * high is used only when kmerSize is larger than 32.
+     */
+    public abstract void set(long high, long low, int kmerSize);
+    
+    public abstract void set(AKmerWritable that) throws IOException;
+    
+    public abstract void setEmpty();
+    
+    public abstract boolean isEmpty();
+    
+    public abstract String getSequence();
+    
+    public abstract int getSequenceLength();
+    
+    protected static int compareUnsigned(long a, long b) {
+        if(a == b) {
+            return 0;
+        }
+        return ((a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE)) ? -1 : 1;
+    }
+    
+    protected static int mix(long h) {
+        // murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    /**
+     * Return the k-mer as an integer (A=0, C=1, G=2, T=3, first base most significant).
+     */
+    public BigInteger toBigInteger() {
+        return SequenceHelper.convertToBigInteger(getSequence());
+    }
+}
@@ -18,23 +18,23 @@ package libra.common.hadoop.io.datatypes;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.math.BigInteger;
 import libra.common.helpers.SequenceHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.hadoop.io.BinaryComparable;
-import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
 
 /**
  *
  * @author iychoi
  */
-public class CompressedSequenceWritable extends BinaryComparable implements WritableComparable<BinaryComparable> {
+public class CompressedSequenceWritable extends AKmerWritable {
 
     private static final Log LOG = LogFactory.getLog(CompressedSequenceWritable.class);
     
     private byte[] compressedSequence;
     private int seqLength;
+    private byte[] packBuffer;
     
     private static final int LENGTH_BYTES = 1;
     
@@ -62,11 +62,35 @@ public class CompressedSequenceWritable extends BinaryComparable implements Writ
         this.seqLength = that.seqLength;
     }
     
+    @Override
+    public void set(AKmerWritable that) throws IOException {
+        if(that instanceof CompressedSequenceWritable) {
+            set((CompressedSequenceWritable) that);
+        } else {
+            this.compressedSequence = SequenceHelper.compress(that.getSequence());
+            this.seqLength = that.getSequenceLength();
+        }
+    }
+    
+    @Override
+    public void set(long high, long low, int kmerSize) {
+        int byteLen = SequenceHelper.getCompressedSize(kmerSize);
+        // packBuffer is owned by this object and only handed out by getBytes()
+        if(this.packBuffer == null || this.packBuffer.length != byteLen) {
+            this.packBuffer = new byte[byteLen];
+        }
+        SequenceHelper.compress(high, low, kmerSize, this.packBuffer);
+        this.compressedSequence = this.packBuffer;
+        this.seqLength = kmerSize;
+    }
+    
+    @Override
     public void setEmpty() {
         this.compressedSequence = null;
         this.seqLength = 0;
     }
 
+    @Override
     public boolean isEmpty() {
         if(this.compressedSequence == null || this.seqLength == 0) {
             return true;
@@ -81,13 +105,21 @@ public class CompressedSequenceWritable extends BinaryComparable implements Writ
         return this.compressedSequence;
     }
     
+    @Override
     public String getSequence() {
         return SequenceHelper.decompress(this.compressedSequence, this.seqLength);
     }
     
+    @Override
     public int getSequenceLength() {
         return this.seqLength;
     }
+    
+    @Override
+    public BigInteger toBigInteger() {
+        int padBits = (this.compressedSequence.length * 8) - (this.seqLength * 2);
+        return new BigInteger(1, this.compressedSequence).shiftRight(padBits);
+    }
 
     @Override
     public void readFields(DataInput in) throws IOException {
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.datatypes;
+
+/**
+ *
+ * @author iychoi
+ */
+public enum KmerKeyType {
+    SEQUENCE,
+    LONG,
+    LONG_PAIR;
+    
+    public static KmerKeyType fromString(String type) {
+        try {
+            KmerKeyType kt = KmerKeyType.valueOf(type.trim().toUpperCase());
+            return kt;
+        } catch (Exception ex) {
+            // fall
+        }
+        
+        if("compressed".equalsIgnoreCase(type.trim())) {
+            return SEQUENCE;
+        } else if("long2".equalsIgnoreCase(type.trim())) {
+            return LONG_PAIR;
+        } else if("longpair".equalsIgnoreCase(type.trim())) {
+            return LONG_PAIR;
+        }
+        
+        return SEQUENCE;
+    }
+    
+    public static KmerKeyType fromKeyClass(Class<?> keyClass) {
+        if(keyClass == KmerLongWritable.class) {
+            return LONG;
+        } else if(keyClass == KmerLongPairWritable.class) {
+            return LONG_PAIR;
+        }
+        return SEQUENCE;
+    }
+    
+    public Class<? extends AKmerWritable> getKeyClass() {
+        switch(this) {
+            case LONG:
+                return KmerLongWritable.class;
+            case LONG_PAIR:
+                return KmerLongPairWritable.class;
+            default:
+                return CompressedSequenceWritable.class;
+        }
+    }
+    
+    public int getMaxKmerSize() {
+        switch(this) {
+            case LONG:
+                return KmerLongWritable.MAX_KMER_SIZE;
+            case LONG_PAIR:
+                return KmerLongPairWritable.MAX_KMER_SIZE;
+            default:
+                // sequence length is serialized in a byte
+                return Byte.MAX_VALUE;
+        }
+    }
+    
+    public AKmerWritable newKey(int kmerSize) {
+        switch(this) {
+            case LONG:
+                return new KmerLongWritable(kmerSize);
+            case LONG_PAIR:
+                return new KmerLongPairWritable(kmerSize);
+            default:
+                return new CompressedSequenceWritable();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.datatypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import libra.common.helpers.SequenceHelper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Fixed-width k-mer key for k <= 64. The k-mer is stored as right-aligned
+ * 2-bit words (high, low) and serialized as the k-mer size in a byte
+ * followed by two big-endian longs. The size is not compared.
+ *
+ * @author iychoi
+ */
+public class KmerLongPairWritable extends AKmerWritable {
+
+    private static final Log LOG = LogFactory.getLog(KmerLongPairWritable.class);
+    
+    public static final int MAX_KMER_SIZE = 64;
+    
+    // the k-mer size is serialized in a byte before the k-mer
+    private static final int LENGTH_BYTES = 1;
+    private static final int KMER_BYTES = 16;
+    
+    private long high;
+    private long low;
+    private int kmerSize = MAX_KMER_SIZE;
+    private boolean empty = true;
+    private byte[] bytes;
+    
+    public KmerLongPairWritable() {}
+    
+    public KmerLongPairWritable(int kmerSize) { this.kmerSize = kmerSize; }
+    
+    public KmerLongPairWritable(long high, long low, int kmerSize) { set(high, low, kmerSize); }
+    
+    /**
+     * Set the value.
+     */
+    @Override
+    public void set(long high, long low, int kmerSize) {
+        if(kmerSize > MAX_KMER_SIZE) {
+            throw new IllegalArgumentException("kmer size must be less than or equal to " + MAX_KMER_SIZE + " : " + kmerSize);
+        }
+        this.high = high;
+        this.low = low;
+        this.kmerSize = kmerSize;
+        this.empty = false;
+        this.bytes = null;
+    }
+    
+    @Override
+    public void set(AKmerWritable that) throws IOException {
+        if(that instanceof KmerLongPairWritable) {
+            KmerLongPairWritable other = (KmerLongPairWritable) that;
+            this.high = other.high;
+            this.low = other.low;
+            this.kmerSize = other.kmerSize;
+            this.empty = other.empty;
+            this.bytes = null;
+        } else {
+            int len = that.getSequenceLength();
+            if(len > MAX_KMER_SIZE) {
+                throw new IOException("kmer size must be less than or equal to " + MAX_KMER_SIZE + " : " + len);
+            }
+            String sequence = that.getSequence();
+            if(len > 32) {
+                set(SequenceHelper.convertToLong(sequence.substring(0, len - 32)), SequenceHelper.convertToLong(sequence.substring(len - 32)), len);
+            } else {
+                set(0, SequenceHelper.convertToLong(sequence), len);
+            }
+        }
+    }
+    
+    public void setKmerSize(int kmerSize) {
+        this.kmerSize = kmerSize;
+    }
+    
+    @Override
+    public void setEmpty() {
+        this.high = 0;
+        this.low = 0;
+        this.empty = true;
+        this.bytes = null;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return this.empty;
+    }
+    
+    /**
+     * Return the value.
+     */
+    public long getHigh() {
+        return this.high;
+    }
+    
+    public long getLow() {
+        return this.low;
+    }
+    
+    @Override
+    public String getSequence() {
+        return SequenceHelper.convertToString(this.high, this.low, this.kmerSize);
+    }
+    
+    @Override
+    public int getSequenceLength() {
+        return this.kmerSize;
+    }
+    
+    @Override
+    public BigInteger toBigInteger() {
+        BigInteger bi = BigInteger.valueOf(this.high & Long.MAX_VALUE);
+        if(this.high < 0) {
+            bi = bi.setBit(63);
+        }
+        bi = bi.shiftLeft(64).or(BigInteger.valueOf(this.low & Long.MAX_VALUE));
+        if(this.low < 0) {
+            bi = bi.setBit(63);
+        }
+        return bi;
+    }
+    
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.kmerSize = in.readByte();
+        this.high = in.readLong();
+        this.low = in.readLong();
+        this.empty = false;
+        this.bytes = null;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(this.kmerSize);
+        out.writeLong(this.high);
+        out.writeLong(this.low);
+    }
+    
+    private static int compare(long high1, long low1, long high2, long low2) {
+        if(high1 != high2) {
+            return compareUnsigned(high1, high2);
+        }
+        return compareUnsigned(low1, low2);
+    }
+    
+    @Override
+    public int compareTo(BinaryComparable other) {
+        if(other instanceof KmerLongPairWritable) {
+            KmerLongPairWritable that = (KmerLongPairWritable) other;
+            return compare(this.high, this.low, that.high, that.low);
+        }
+        return super.compareTo(other);
+    }
+    
+    /**
+     * Returns true iff
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof KmerLongPairWritable) {
+            KmerLongPairWritable that = (KmerLongPairWritable) o;
+            return this.high == that.high && this.low == that.low;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return mix(this.low ^ (this.high * 0x9e3779b97f4a7c15L));
+    }
+
+    @Override
+    public String toString() {
+        return getSequence();
+    }
+
+    @Override
+    public int getLength() {
+        return KMER_BYTES;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        if(this.bytes == null) {
+            byte[] arr = new byte[KMER_BYTES];
+            for(int i=0;i<8;i++) {
+                arr[i] = (byte) (this.high >>> (56 - (i * 8)));
+                arr[i + 8] = (byte) (this.low >>> (56 - (i * 8)));
+            }
+            this.bytes = arr;
+        }
+        return this.bytes;
+    }
+    
+    /** A Comparator optimized for KmerLongPairWritable. */ 
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(KmerLongPairWritable.class);
+        }
+
+        /**
+         * Compare the buffers in serialized form.
+         */
+        @Override
+        public int compare(byte[] b1, int s1, int l1,
+                byte[] b2, int s2, int l2) {
+            return KmerLongPairWritable.compare(readLong(b1, s1 + LENGTH_BYTES), readLong(b1, s1 + LENGTH_BYTES + 8), readLong(b2, s2 + LENGTH_BYTES), readLong(b2, s2 + LENGTH_BYTES + 8));
+        }
+        
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            KmerLongPairWritable ka = (KmerLongPairWritable) a;
+            KmerLongPairWritable kb = (KmerLongPairWritable) b;
+            return KmerLongPairWritable.compare(ka.high, ka.low, kb.high, kb.low);
+        }
+    }
+
+    static {
+        // register this comparator
+        WritableComparator.define(KmerLongPairWritable.class, new Comparator());
+    }
+}
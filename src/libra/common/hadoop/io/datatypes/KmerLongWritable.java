@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.datatypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import libra.common.helpers.SequenceHelper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Fixed-width k-mer key for k <= 32. The k-mer is stored as a right-aligned
+ * 2-bit word and serialized as the k-mer size in a byte followed by one
+ * big-endian long. The size is not compared.
+ *
+ * @author iychoi
+ */
+public class KmerLongWritable extends AKmerWritable {
+
+    private static final Log LOG = LogFactory.getLog(KmerLongWritable.class);
+    
+    public static final int MAX_KMER_SIZE = 32;
+    
+    // the k-mer size is serialized in a byte before the k-mer
+    private static final int LENGTH_BYTES = 1;
+    private static final int KMER_BYTES = 8;
+    
+    private long value;
+    private int kmerSize = MAX_KMER_SIZE;
+    private boolean empty = true;
+    private byte[] bytes;
+    
+    public KmerLongWritable() {}
+    
+    public KmerLongWritable(int kmerSize) { this.kmerSize = kmerSize; }
+    
+    public KmerLongWritable(long value, int kmerSize) { set(value, kmerSize); }
+    
+    /**
+     * Set the value.
+     */
+    public void set(long value, int kmerSize) {
+        this.value = value;
+        this.kmerSize = kmerSize;
+        this.empty = false;
+        this.bytes = null;
+    }
+    
+    @Override
+    public void set(long high, long low, int kmerSize) {
+        if(kmerSize > MAX_KMER_SIZE) {
+            throw new IllegalArgumentException("kmer size must be less than or equal to " + MAX_KMER_SIZE + " : " + kmerSize);
+        }
+        set(low, kmerSize);
+    }
+    
+    @Override
+    public void set(AKmerWritable that) throws IOException {
+        if(that instanceof KmerLongWritable) {
+            KmerLongWritable other = (KmerLongWritable) that;
+            this.value = other.value;
+            this.kmerSize = other.kmerSize;
+            this.empty = other.empty;
+            this.bytes = null;
+        } else {
+            if(that.getSequenceLength() > MAX_KMER_SIZE) {
+                throw new IOException("kmer size must be less than or equal to " + MAX_KMER_SIZE + " : " + that.getSequenceLength());
+            }
+            set(SequenceHelper.convertToLong(that.getSequence()), that.getSequenceLength());
+        }
+    }
+    
+    public void setKmerSize(int kmerSize) {
+        this.kmerSize = kmerSize;
+    }
+    
+    @Override
+    public void setEmpty() {
+        this.value = 0;
+        this.empty = true;
+        this.bytes = null;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return this.empty;
+    }
+    
+    /**
+     * Return the value.
+     */
+    public long get() {
+        return this.value;
+    }
+    
+    @Override
+    public String getSequence() {
+        return SequenceHelper.convertToString(0, this.value, this.kmerSize);
+    }
+    
+    @Override
+    public int getSequenceLength() {
+        return this.kmerSize;
+    }
+    
+    @Override
+    public BigInteger toBigInteger() {
+        BigInteger bi = BigInteger.valueOf(this.value & Long.MAX_VALUE);
+        if(this.value < 0) {
+            bi = bi.setBit(63);
+        }
+        return bi;
+    }
+    
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.kmerSize = in.readByte();
+        this.value = in.readLong();
+        this.empty = false;
+        this.bytes = null;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(this.kmerSize);
+        out.writeLong(this.value);
+    }
+    
+    @Override
+    public int compareTo(BinaryComparable other) {
+        if(other instanceof KmerLongWritable) {
+            return compareUnsigned(this.value, ((KmerLongWritable) other).value);
+        }
+        return super.compareTo(other);
+    }
+    
+    /**
+     * Returns true iff
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof KmerLongWritable) {
+            return this.value == ((KmerLongWritable) o).value;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return mix(this.value);
+    }
+
+    @Override
+    public String toString() {
+        return getSequence();
+    }
+
+    @Override
+    public int getLength() {
+        return KMER_BYTES;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        if(this.bytes == null) {
+            byte[] arr = new byte[KMER_BYTES];
+            for(int i=0;i<KMER_BYTES;i++) {
+                arr[i] = (byte) (this.value >>> (56 - (i * 8)));
+            }
+            this.bytes = arr;
+        }
+        return this.bytes;
+    }
+    
+    /** A Comparator optimized for KmerLongWritable. */ 
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(KmerLongWritable.class);
+        }
+
+        /**
+         * Compare the buffers in serialized form.
+         */
+        @Override
+        public int compare(byte[] b1, int s1, int l1,
+                byte[] b2, int s2, int l2) {
+            return compareUnsigned(readLong(b1, s1 + LENGTH_BYTES), readLong(b2, s2 + LENGTH_BYTES));
+        }
+        
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            return compareUnsigned(((KmerLongWritable) a).value, ((KmerLongWritable) b).value);
+        }
+    }
+
+    static {
+        // register this comparator
+        WritableComparator.define(KmerLongWritable.class, new Comparator());
+    }
+}
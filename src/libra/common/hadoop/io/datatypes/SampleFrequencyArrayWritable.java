@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.datatypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * An IntArrayWritable holding [sampleID, frequency, sampleID, frequency, ...]
+ * pairs with a compact serialized form. Sample IDs are written as varint
+ * deltas from the previous sample ID and frequencies as varints, so a k-mer
+ * found in a few samples takes a few bytes instead of 4 bytes per value.
+ * Unsorted sample IDs still round-trip (as negative deltas).
+ * 
+ * @author iychoi
+ */
+public class SampleFrequencyArrayWritable extends IntArrayWritable {
+
+    private static final Log LOG = LogFactory.getLog(SampleFrequencyArrayWritable.class);
+    
+    // array decoded by the last readFields(), reused when the next value has the same length
+    private int[] decoded;
+    
+    public SampleFrequencyArrayWritable() {}
+    
+    public SampleFrequencyArrayWritable(IntArrayWritable writable) { super(writable); }
+    
+    public SampleFrequencyArrayWritable(int[] intArray) { super(intArray); }
+    
+    public SampleFrequencyArrayWritable(List<Integer> intArray) { super(intArray); }
+    
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int count = WritableUtils.readVInt(in);
+        if(count < 0) {
+            throw new IOException("Invalid array length : " + count);
+        }
+        
+        int[] arr;
+        if(this.decoded != null && this.decoded.length == count && this.decoded == get()) {
+            arr = this.decoded;
+        } else {
+            arr = new int[count];
+        }
+        
+        int prevID = 0;
+        int pairs = count / 2;
+        for(int i=0;i<pairs;i++) {
+            prevID += WritableUtils.readVInt(in);
+            arr[i*2] = prevID;
+            arr[i*2 + 1] = WritableUtils.readVInt(in);
+        }
+        
+        if(count % 2 != 0) {
+            arr[count - 1] = WritableUtils.readVInt(in);
+        }
+        
+        set(arr);
+        this.decoded = arr;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        int[] arr = get();
+        int count = arr.length;
+        WritableUtils.writeVInt(out, count);
+        
+        int prevID = 0;
+        int pairs = count / 2;
+        for(int i=0;i<pairs;i++) {
+            WritableUtils.writeVInt(out, arr[i*2] - prevID);
+            WritableUtils.writeVInt(out, arr[i*2 + 1]);
+            prevID = arr[i*2];
+        }
+        
+        if(count % 2 != 0) {
+            WritableUtils.writeVInt(out, arr[count - 1]);
+        }
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof SampleFrequencyArrayWritable) {
+            return super.equals(o);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
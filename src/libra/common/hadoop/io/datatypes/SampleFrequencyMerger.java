@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.datatypes;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sums (sampleID, frequency) pairs of a k-mer without a table indexed by
+ * sample ID. Pairs are packed into longs, sorted when they are not already
+ * in sample order and summed per sample, so the cost per k-mer depends on
+ * the number of pairs, not on the number of samples. Buffers are reused
+ * across k-mers.
+ * 
+ * @author iychoi
+ */
+public class SampleFrequencyMerger {
+    
+    private static final int MAX_CACHED_ARRAY_LENGTH = 64;
+    
+    private long[] entries = new long[64];
+    private int entryCount;
+    private boolean sorted;
+    
+    private int[] sampleIDs = new int[64];
+    private int[] frequencies = new int[64];
+    private int size;
+    
+    private int[][] cachedArrays = new int[MAX_CACHED_ARRAY_LENGTH + 1][];
+    
+    public SampleFrequencyMerger() {
+        clear();
+    }
+    
+    public void clear() {
+        this.entryCount = 0;
+        this.sorted = true;
+        this.size = 0;
+    }
+    
+    public void add(int sampleID, int frequency) {
+        if(this.entryCount == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, this.entries.length * 2);
+        }
+        
+        // sample IDs are not negative, so packed entries order by sample ID
+        long entry = ((long) sampleID << 32) | (frequency & 0xFFFFFFFFL);
+        if(this.entryCount > 0 && (this.entries[this.entryCount - 1] >>> 32) > sampleID) {
+            this.sorted = false;
+        }
+        this.entries[this.entryCount++] = entry;
+    }
+    
+    /**
+     * Add [sampleID, frequency, sampleID, frequency, ...] pairs.
+     */
+    public void add(int[] v_arr) throws IOException {
+        if(v_arr.length % 2 != 0) {
+            throw new IOException("Input record is not valid");
+        }
+        
+        for(int j=0;j<v_arr.length/2;j++) {
+            add(v_arr[j*2], v_arr[j*2 + 1]);
+        }
+    }
+    
+    /**
+     * Sum the added pairs per sample and return the number of samples.
+     * Samples are then visited in ascending order by index.
+     */
+    public int merge() {
+        if(!this.sorted) {
+            Arrays.sort(this.entries, 0, this.entryCount);
+            this.sorted = true;
+        }
+        
+        if(this.sampleIDs.length < this.entryCount) {
+            this.sampleIDs = new int[this.entries.length];
+            this.frequencies = new int[this.entries.length];
+        }
+        
+        int n = 0;
+        for(int i=0;i<this.entryCount;i++) {
+            int sampleID = (int) (this.entries[i] >>> 32);
+            int frequency = (int) this.entries[i];
+            if(n > 0 && this.sampleIDs[n - 1] == sampleID) {
+                this.frequencies[n - 1] += frequency;
+            } else {
+                this.sampleIDs[n] = sampleID;
+                this.frequencies[n] = frequency;
+                n++;
+            }
+        }
+        
+        this.size = n;
+        return n;
+    }
+    
+    public int size() {
+        return this.size;
+    }
+    
+    public int getSampleID(int idx) {
+        return this.sampleIDs[idx];
+    }
+    
+    public int getFrequency(int idx) {
+        return this.frequencies[idx];
+    }
+    
+    /**
+     * Return merged samples with frequency above 0 as [sampleID, frequency]
+     * pairs. Short arrays are reused, so the result must be consumed (e.g.
+     * serialized) before the next call.
+     */
+    public int[] toPairs() {
+        int nonZero = 0;
+        for(int i=0;i<this.size;i++) {
+            if(this.frequencies[i] > 0) {
+                nonZero++;
+            }
+        }
+        
+        int[] arr = newArray(nonZero * 2);
+        int idx = 0;
+        for(int i=0;i<this.size;i++) {
+            if(this.frequencies[i] > 0) {
+                arr[idx] = this.sampleIDs[i]; // fid
+                arr[idx+1] = this.frequencies[i]; // freq
+                idx += 2;
+            }
+        }
+        return arr;
+    }
+    
+    /**
+     * Return an array of the given length, reused for short lengths.
+     */
+    public int[] newArray(int length) {
+        if(length > MAX_CACHED_ARRAY_LENGTH) {
+            return new int[length];
+        }
+        
+        int[] arr = this.cachedArrays[length];
+        if(arr == null) {
+            arr = new int[length];
+            this.cachedArrays[length] = arr;
+        }
+        return arr;
+    }
+}
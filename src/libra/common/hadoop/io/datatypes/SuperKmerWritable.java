@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.datatypes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import libra.common.sequence.RollingKmerEncoder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A run of bases (A/C/G/T only) from one sample, 2-bit packed with four bases
+ * per byte and the first base in the most significant bits.
+ *
+ * @author iychoi
+ */
+public class SuperKmerWritable implements Writable {
+
+    private static final Log LOG = LogFactory.getLog(SuperKmerWritable.class);
+
+    private int sampleID;
+    private int length;
+    private byte[] packed = new byte[32];
+
+    public SuperKmerWritable() {}
+
+    /**
+     * Set the value from sequence[start, end). All bases must be valid.
+     */
+    public void set(int sampleID, byte[] sequence, int start, int end) throws IOException {
+        this.sampleID = sampleID;
+        this.length = end - start;
+
+        int bytes = getPackedSize(this.length);
+        ensureCapacity(bytes);
+
+        for(int i=0;i<bytes;i++) {
+            this.packed[i] = 0;
+        }
+
+        for(int i=0;i<this.length;i++) {
+            int code = RollingKmerEncoder.getBaseCode(sequence[start + i]);
+            if(code < 0) {
+                throw new IOException("Invalid base in super-k-mer : " + (char) sequence[start + i]);
+            }
+            this.packed[i >> 2] |= (byte) (code << (6 - ((i & 3) << 1)));
+        }
+    }
+
+    private static int getPackedSize(int length) {
+        return (length + 3) >> 2;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if(this.packed.length < bytes) {
+            this.packed = new byte[Math.max(bytes, this.packed.length * 2)];
+        }
+    }
+
+    public int getSampleID() {
+        return this.sampleID;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Return the 2-bit code (A=0, C=1, G=2, T=3) of the base at idx.
+     */
+    public int getBaseCode(int idx) {
+        return (this.packed[idx >> 2] >>> (6 - ((idx & 3) << 1))) & 3;
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.sampleID = WritableUtils.readVInt(in);
+        this.length = WritableUtils.readVInt(in);
+
+        int bytes = getPackedSize(this.length);
+        ensureCapacity(bytes);
+        in.readFully(this.packed, 0, bytes);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, this.sampleID);
+        WritableUtils.writeVInt(out, this.length);
+        out.write(this.packed, 0, getPackedSize(this.length));
+    }
+
+    @Override
+    public String toString() {
+        char[] bases = new char[this.length];
+        for(int i=0;i<this.length;i++) {
+            bases[i] = "ACGT".charAt(getBaseCode(i));
+        }
+        return this.sampleID + ":" + new String(bases);
+    }
+}
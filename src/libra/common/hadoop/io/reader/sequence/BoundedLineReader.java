@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.reader.sequence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Line reader that returns a line in pieces of bounded length, so a long
+ * unwrapped sequence line is never held in memory at once. Lines end at
+ * LF, CR or CR-LF as with Hadoop's LineReader.
+ *
+ * @author iychoi
+ */
+public class BoundedLineReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private InputStream in;
+    private byte[] buffer;
+    private int bufferLength = 0;
+    private int bufferPosn = 0;
+    private boolean lineComplete = true;
+
+    public BoundedLineReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public BoundedLineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public BoundedLineReader(InputStream in, Configuration conf) {
+        this(in, conf.getInt("io.file.buffer.size", DEFAULT_BUFFER_SIZE));
+    }
+
+    private boolean fillBuffer() throws IOException {
+        this.bufferPosn = 0;
+        this.bufferLength = this.in.read(this.buffer);
+        if(this.bufferLength <= 0) {
+            this.bufferLength = 0;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read at most maxLength bytes of the current line into str. Returns
+     * bytes consumed including the line terminator, 0 at EOF. The rest of a
+     * longer line is returned by following calls, see isLineComplete().
+     */
+    public int readLine(Text str, int maxLength) throws IOException {
+        str.clear();
+
+        int bytesConsumed = 0;
+        while(true) {
+            if(this.bufferPosn >= this.bufferLength && !fillBuffer()) {
+                // EOF ends the line
+                this.lineComplete = true;
+                return bytesConsumed;
+            }
+
+            int room = maxLength - str.getLength();
+            int end = (room < this.bufferLength - this.bufferPosn) ? this.bufferPosn + room : this.bufferLength;
+            int posn = this.bufferPosn;
+            while(posn < end && this.buffer[posn] != LF && this.buffer[posn] != CR) {
+                posn++;
+            }
+
+            str.append(this.buffer, this.bufferPosn, posn - this.bufferPosn);
+            bytesConsumed += posn - this.bufferPosn;
+            this.bufferPosn = posn;
+
+            if(posn >= this.bufferLength) {
+                // need more data to find the end of the line
+                continue;
+            }
+
+            byte b = this.buffer[posn];
+            if(b != LF && b != CR) {
+                // maxLength reached in the middle of the line
+                this.lineComplete = false;
+                return bytesConsumed;
+            }
+
+            this.bufferPosn++;
+            bytesConsumed++;
+            if(b == CR) {
+                if(this.bufferPosn < this.bufferLength || fillBuffer()) {
+                    if(this.buffer[this.bufferPosn] == LF) {
+                        this.bufferPosn++;
+                        bytesConsumed++;
+                    }
+                }
+            }
+
+            this.lineComplete = true;
+            return bytesConsumed;
+        }
+    }
+
+    /**
+     * Returns false if the last readLine() stopped before the end of a line.
+     */
+    public boolean isLineComplete() {
+        return this.lineComplete;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
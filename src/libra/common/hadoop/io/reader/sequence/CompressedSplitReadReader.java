@@ -16,7 +16,6 @@
 package libra.common.hadoop.io.reader.sequence;
 
 import java.io.IOException;
-import libra.common.sequence.Read;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -41,10 +40,17 @@ public class CompressedSplitReadReader extends SplitReadReader {
     }
     
     @Override
-    public long readRead(Read read) throws IOException {
+    protected long readLines() throws IOException {
         long bytesConsumed = 0;
         long readSize = 0;
-        read.clear();
+        clearLines();
+        
+        if(isPartialRecord()) {
+            // the rest of a record started in this split
+            readSize = super.readLines();
+            bytesConsumed += readSize;
+            return bytesConsumed;
+        }
         
         if(!this.finished) {
             if(this.scin.getPos() > this.scin.getAdjustedEnd()) {
@@ -59,7 +65,7 @@ public class CompressedSplitReadReader extends SplitReadReader {
                 return bytesConsumed;
             }
 
-            readSize = super.readRead(read);
+            readSize = super.readLines();
             if(readSize <= 0) {
                 //EOF
                 this.finished = true;
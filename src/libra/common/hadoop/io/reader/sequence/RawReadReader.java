@@ -21,11 +21,11 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import libra.common.sequence.Read;
+import libra.common.sequence.ReadInfo;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.util.LineReader;
 
 /**
  *
@@ -38,15 +38,29 @@ public class RawReadReader implements Closeable {
     private static final int LINE_BUFFERS = 4;
     
     private SampleFormat format;
-    private LineReader in;
+    private BoundedLineReader in;
     private Text[] buffers = new Text[LINE_BUFFERS];
     private int[] bufferConsumed = new int[LINE_BUFFERS];
     private boolean eof = false;
     private boolean finished = false;
+    // lines of the current read, swapped out of the line buffers without copying
+    private Text[] lines = new Text[LINE_BUFFERS];
+    private int lineCount = 0;
+    private ReadSampler sampler;
+    // streaming of long FASTA records in overlapping chunks
+    private int maxChunkLength = 0;
+    private int chunkOverlap = 0;
+    private boolean partialRecord = false;
+    private boolean partialRecordAccepted = false;
+    private boolean linesContinueRecord = false;
+    private Text chunkHeader = new Text();
+    private Text linePiece = new Text();
+    private byte[] chunkCarry = new byte[0];
+    private int chunkCarryLength = 0;
 
     public RawReadReader(SampleFormat format, InputStream in) {
         this.format = format;
-        this.in = new LineReader(in);
+        this.in = new BoundedLineReader(in);
         for(int i=0;i<LINE_BUFFERS;i++) {
             this.buffers[i] = new Text();
             this.bufferConsumed[i] = 0;
@@ -57,7 +71,7 @@ public class RawReadReader implements Closeable {
     
     public RawReadReader(SampleFormat format, InputStream in, int bufferSize) {
         this.format = format;
-        this.in = new LineReader(in, bufferSize);
+        this.in = new BoundedLineReader(in, bufferSize);
         for(int i=0;i<LINE_BUFFERS;i++) {
             this.buffers[i] = new Text();
             this.bufferConsumed[i] = 0;
@@ -68,7 +82,7 @@ public class RawReadReader implements Closeable {
     
     public RawReadReader(SampleFormat format, InputStream in, Configuration conf) throws IOException {
         this.format = format;
-        this.in = new LineReader(in, conf);
+        this.in = new BoundedLineReader(in, conf);
         for(int i=0;i<LINE_BUFFERS;i++) {
             this.buffers[i] = new Text();
             this.bufferConsumed[i] = 0;
@@ -142,7 +156,7 @@ public class RawReadReader implements Closeable {
             int filled = 0;
             for(int i=0;i<emptyBuffers;i++) {
                 int idx = LINE_BUFFERS-emptyBuffers+i;
-                this.bufferConsumed[idx] = this.in.readLine(this.buffers[idx], Integer.MAX_VALUE, Integer.MAX_VALUE);
+                this.bufferConsumed[idx] = _readLine(this.buffers[idx]);
                 if(this.bufferConsumed[idx] <= 0) {
                     this.buffers[idx].clear();
                     this.bufferConsumed[idx] = 0;
@@ -163,6 +177,28 @@ public class RawReadReader implements Closeable {
         }
     }
     
+    /**
+     * Read the next line into the buffer. When chunking, FASTA sequence
+     * lines are returned in pieces of at most maxChunkLength bases, so an
+     * unwrapped record is split inside its single line.
+     */
+    private int _readLine(Text line) throws IOException {
+        if(this.format != SampleFormat.FASTA || this.maxChunkLength <= 0) {
+            return this.in.readLine(line, Integer.MAX_VALUE);
+        }
+        
+        boolean lineStart = this.in.isLineComplete();
+        int bytesConsumed = this.in.readLine(line, this.maxChunkLength);
+        if(lineStart && line.getLength() > 0 && line.charAt(0) == Read.FASTA_READ_DESCRIPTION_IDENTIFIER) {
+            // keep descriptions whole
+            while(!this.in.isLineComplete()) {
+                bytesConsumed += this.in.readLine(this.linePiece, Integer.MAX_VALUE);
+                line.append(this.linePiece.getBytes(), 0, this.linePiece.getLength());
+            }
+        }
+        return bytesConsumed;
+    }
+    
     private long _skipIncompleteFASTARead() throws IOException {
         if(this.finished) {
             return 0;
@@ -251,11 +287,15 @@ public class RawReadReader implements Closeable {
         }
     }
     
-    private long _readFASTARead(Read read) throws IOException {
-        read.clear();
+    private long _readFASTALines() throws IOException {
+        
+        boolean continuing = this.partialRecord;
+        this.partialRecord = false;
         
         long bytesConsumed = 0;
-        bytesConsumed += skipIncompleteRead();
+        if(!continuing) {
+            bytesConsumed += skipIncompleteRead();
+        }
         
         if(this.finished) {
             return bytesConsumed;
@@ -269,29 +309,33 @@ public class RawReadReader implements Closeable {
             return bytesConsumed;
         }
         
-        if(this.buffers[0].getLength() > 0 && this.buffers[0].charAt(0) == Read.FASTA_READ_DESCRIPTION_IDENTIFIER) {
+        if(continuing || (this.buffers[0].getLength() > 0 && this.buffers[0].charAt(0) == Read.FASTA_READ_DESCRIPTION_IDENTIFIER)) {
             // GO!
-            // add header
-            List<String> lines = new ArrayList<String>();
-        
-            String lineStr = this.buffers[0].toString();
-            if(lineStr.trim().length() > 0) {
-                lines.add(lineStr);
+            if(!continuing) {
+                // add header
+                if(!_isBlank(this.buffers[0])) {
+                    _addLine();
+                }
+
+                bytesConsumed += this.bufferConsumed[0];
+                _shiftBuffer(1);
+                hasBufferData = _fillBuffer();
             }
             
-            bytesConsumed += this.bufferConsumed[0];
-            _shiftBuffer(1);
-            hasBufferData = _fillBuffer();
-            
+            long chunkBases = 0;
             boolean nextHeaderFound = false;
             while(hasBufferData) {
                 if(this.buffers[0].getLength() > 0 && this.buffers[0].charAt(0) == Read.FASTA_READ_DESCRIPTION_IDENTIFIER) {
                     nextHeaderFound = true;
                     break;
+                } else if(this.maxChunkLength > 0 && chunkBases >= this.maxChunkLength) {
+                    // rest of the record is returned by following calls
+                    this.partialRecord = true;
+                    break;
                 } else {
-                    lineStr = this.buffers[0].toString();
-                    if(lineStr.trim().length() > 0) {
-                        lines.add(lineStr);
+                    if(!_isBlank(this.buffers[0])) {
+                        chunkBases += this.buffers[0].getLength();
+                        _addLine();
                     }
 
                     bytesConsumed += this.bufferConsumed[0];
@@ -301,12 +345,10 @@ public class RawReadReader implements Closeable {
                 }
             }
             
-            if(!nextHeaderFound) {
+            if(!nextHeaderFound && !this.partialRecord) {
                 //EOF
                 this.finished = true;
             }
-            
-            read.parse(lines);
         } else {
             throw new IOException(String.format("Unknown data for FASTA read - %s", this.buffers[0].toString()));
         }
@@ -314,8 +356,7 @@ public class RawReadReader implements Closeable {
         return bytesConsumed;
     }
     
-    private long _readFASTQRead(Read read) throws IOException {
-        read.clear();
+    private long _readFASTQLines() throws IOException {
         
         long bytesConsumed = 0;
         bytesConsumed += skipIncompleteRead();
@@ -338,11 +379,8 @@ public class RawReadReader implements Closeable {
                 emptyBufferCount == 0) {
             // GO!
             // add header
-            List<String> lines = new ArrayList<String>();
-        
-            String lineStr = this.buffers[0].toString();
-            if(lineStr.trim().length() > 0) {
-                lines.add(lineStr);
+            if(!_isBlank(this.buffers[0])) {
+                _addLine();
             }
             
             bytesConsumed += this.bufferConsumed[0];
@@ -360,9 +398,8 @@ public class RawReadReader implements Closeable {
                     nextHeaderFound = true;
                     break;
                 } else {
-                    lineStr = this.buffers[0].toString();
-                    if(lineStr.trim().length() > 0) {
-                        lines.add(lineStr);
+                    if(!_isBlank(this.buffers[0])) {
+                        _addLine();
                     }
 
                     bytesConsumed += this.bufferConsumed[0];
@@ -376,8 +413,6 @@ public class RawReadReader implements Closeable {
                 //EOF
                 this.finished = true;
             }
-            
-            read.parse(lines);
         } else {
             throw new IOException(String.format("Unknown data for FASTQ read - %s", this.buffers[0].toString()));
         }
@@ -385,14 +420,220 @@ public class RawReadReader implements Closeable {
         return bytesConsumed;
     }
     
-    public long readRead(Read read) throws IOException {
+    private boolean _isBlank(Text line) {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        for(int i=0;i<length;i++) {
+            if((bytes[i] & 0xff) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void _addLine() {
+        if(this.lineCount == this.lines.length) {
+            Text[] newLines = new Text[this.lines.length * 2];
+            System.arraycopy(this.lines, 0, newLines, 0, this.lineCount);
+            this.lines = newLines;
+        }
+        
+        if(this.lines[this.lineCount] == null) {
+            this.lines[this.lineCount] = new Text();
+        }
+        
+        // swap, the line buffer is cleared when shifted out
+        Text temp = this.lines[this.lineCount];
+        this.lines[this.lineCount] = this.buffers[0];
+        this.buffers[0] = temp;
+        this.lineCount++;
+    }
+    
+    /**
+     * Skip reads rejected by the sampler before they are parsed.
+     */
+    public void setReadSampler(ReadSampler sampler) {
+        this.sampler = sampler;
+    }
+    
+    /**
+     * Stream FASTA records longer than maxChunkLength bases as several reads
+     * sharing the record's description. Consecutive chunks overlap by
+     * overlap bases (k - 1 for the largest k-mer size) and each chunk records
+     * its overlap in ReadInfo.getSequenceOverlap() so smaller k-mer sizes can
+     * skip the k-mers already counted in the previous chunk. Unwrapped
+     * records are split inside their sequence line. Only applies to
+     * readRead(ReadInfo).
+     */
+    public void setChunking(int maxChunkLength, int overlap) {
+        if(maxChunkLength > 0 && overlap >= maxChunkLength) {
+            throw new IllegalArgumentException("chunk overlap must be smaller than chunk length");
+        }
+        
+        this.maxChunkLength = maxChunkLength;
+        this.chunkOverlap = overlap;
+    }
+    
+    /**
+     * Returns true while the rest of a record is to be returned as chunks.
+     */
+    protected boolean isPartialRecord() {
+        return this.partialRecord;
+    }
+    
+    /**
+     * Returns true if the last read continues the record of the read before
+     * it, as a following chunk of a long FASTA record.
+     */
+    public boolean isRecordContinued() {
+        return this.linesContinueRecord;
+    }
+    
+    private long _readSampledLines() throws IOException {
+        long bytesConsumed = 0;
+        while(true) {
+            boolean continuation = this.partialRecord;
+            bytesConsumed += readLines();
+            this.linesContinueRecord = continuation;
+            
+            if(this.lineCount == 0) {
+                if(continuation) {
+                    // the record ended with blank lines
+                    continue;
+                }
+                return bytesConsumed;
+            }
+            
+            boolean accepted;
+            if(continuation) {
+                accepted = this.partialRecordAccepted;
+            } else {
+                accepted = this.sampler == null || this.sampler.accept(this.lines[0].getBytes(), this.lines[0].getLength());
+                if(this.partialRecord) {
+                    this.partialRecordAccepted = accepted;
+                }
+            }
+            
+            if(accepted) {
+                return bytesConsumed;
+            }
+        }
+    }
+    
+    protected void clearLines() {
+        this.lineCount = 0;
+    }
+    
+    /**
+     * Read lines of the next read. Returns bytes consumed.
+     */
+    protected long readLines() throws IOException {
+        clearLines();
+        
         switch(this.format) {
             case FASTA:
-                return _readFASTARead(read);
+                return _readFASTALines();
             case FASTQ:
-                return _readFASTQRead(read);
+                return _readFASTQLines();
             default:
                 throw new IOException("Unknown format");
         }
     }
+    
+    public long readRead(Read read) throws IOException {
+        read.clear();
+        
+        long bytesConsumed = _readSampledLines();
+        if(this.lineCount > 0) {
+            List<String> lineStrs = new ArrayList<String>();
+            for(int i=0;i<this.lineCount;i++) {
+                lineStrs.add(this.lines[i].toString());
+            }
+            read.parse(lineStrs);
+        }
+        return bytesConsumed;
+    }
+    
+    /**
+     * Read the next read into the reusable byte buffers of ReadInfo without
+     * decoding it into Strings.
+     */
+    public long readRead(ReadInfo read) throws IOException {
+        read.clear();
+        
+        long bytesConsumed = _readSampledLines();
+        if(this.lineCount > 0) {
+            Text first = this.lines[0];
+            if(this.linesContinueRecord) {
+                _parseFASTAChunk(read);
+            } else if(first.getBytes()[0] == Read.FASTQ_READ_DESCRIPTION_IDENTIFIER) {
+                _parseFASTQLines(read);
+            } else if(first.getBytes()[0] == Read.FASTA_READ_DESCRIPTION_IDENTIFIER) {
+                _parseFASTALines(read);
+            } else {
+                throw new IOException("invalid read format");
+            }
+        }
+        return bytesConsumed;
+    }
+    
+    private void _parseFASTALines(ReadInfo read) throws IOException {
+        if(this.lineCount < 2) {
+            throw new IOException("invalid fasta read format");
+        }
+        
+        Text header = this.lines[0];
+        read.setDescription(header.getBytes(), 0, header.getLength());
+        
+        for(int i=1;i<this.lineCount;i++) {
+            Text line = this.lines[i];
+            if(line.getBytes()[0] == Read.FASTA_READ_DESCRIPTION_IDENTIFIER) {
+                throw new IOException("invalid fasta read sequence format - " + line.toString());
+            }
+            read.appendSequence(line.getBytes(), 0, line.getLength());
+        }
+        
+        if(this.partialRecord) {
+            this.chunkHeader.set(header);
+            _saveChunkCarry(read);
+        }
+    }
+    
+    private void _parseFASTAChunk(ReadInfo read) throws IOException {
+        read.setDescription(this.chunkHeader.getBytes(), 0, this.chunkHeader.getLength());
+        read.appendSequence(this.chunkCarry, 0, this.chunkCarryLength);
+        read.setSequenceOverlap(this.chunkCarryLength);
+        
+        for(int i=0;i<this.lineCount;i++) {
+            Text line = this.lines[i];
+            read.appendSequence(line.getBytes(), 0, line.getLength());
+        }
+        
+        if(this.partialRecord) {
+            _saveChunkCarry(read);
+        }
+    }
+    
+    private void _saveChunkCarry(ReadInfo read) {
+        int carry = Math.min(this.chunkOverlap, read.getSequenceLength());
+        if(this.chunkCarry.length < carry) {
+            this.chunkCarry = new byte[carry];
+        }
+        System.arraycopy(read.getSequenceBytes(), read.getSequenceLength() - carry, this.chunkCarry, 0, carry);
+        this.chunkCarryLength = carry;
+    }
+    
+    private void _parseFASTQLines(ReadInfo read) throws IOException {
+        if(this.lineCount != 4) {
+            throw new IOException(String.format("invalid fastq read format - a read (%s) has %d lines", this.lines[0].toString(), this.lineCount));
+        }
+        
+        if(this.lines[2].getBytes()[0] != Read.FASTQ_READ_DESCRIPTION2_IDENTIFIER) {
+            throw new IOException("invalid fastq read description2 format - " + this.lines[2].toString());
+        }
+        
+        read.setDescription(this.lines[0].getBytes(), 0, this.lines[0].getLength());
+        read.appendSequence(this.lines[1].getBytes(), 0, this.lines[1].getLength());
+        read.setQuality(this.lines[3].getBytes(), 0, this.lines[3].getLength());
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.reader.sequence;
+
+import java.io.IOException;
+import libra.common.sequence.ReadBatch;
+import libra.common.sequence.ReadInfo;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Packs consecutive reads of a split into a ReadBatch. The key is the
+ * position of the first read in the batch.
+ *
+ * @author iychoi
+ */
+public class ReadBatchRecordReader extends RecordReader<LongWritable, ReadBatch> {
+
+    private static final Log LOG = LogFactory.getLog(ReadBatchRecordReader.class);
+    
+    private ReadRecordReader reader;
+    private LongWritable key;
+    private ReadBatch value;
+    // a read that did not fit in the previous batch
+    private boolean pending;
+    
+    public ReadBatchRecordReader() {
+    }
+    
+    @Override
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException, InterruptedException {
+        this.reader = new ReadRecordReader();
+        this.reader.initialize(genericSplit, context);
+        this.key = new LongWritable();
+        this.value = new ReadBatch();
+        this.pending = false;
+    }
+    
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+        this.value.clear();
+        
+        if(this.pending) {
+            this.key.set(this.reader.getCurrentKey().get());
+            this.value.add(this.reader.getCurrentValue());
+            this.pending = false;
+        }
+        
+        while(this.reader.nextKeyValue()) {
+            ReadInfo read = this.reader.getCurrentValue();
+            if(this.value.isEmpty()) {
+                this.key.set(this.reader.getCurrentKey().get());
+            } else if(!this.value.hasRoom(read)) {
+                this.pending = true;
+                break;
+            }
+            
+            this.value.add(read);
+        }
+        
+        return !this.value.isEmpty();
+    }
+
+    @Override
+    public LongWritable getCurrentKey() throws IOException, InterruptedException {
+        return this.key;
+    }
+
+    @Override
+    public ReadBatch getCurrentValue() throws IOException, InterruptedException {
+        return this.value;
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+        return this.reader.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(this.reader != null) {
+            this.reader.close();
+        }
+    }
+}
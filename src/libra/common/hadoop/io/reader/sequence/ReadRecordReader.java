@@ -16,7 +16,6 @@
 package libra.common.hadoop.io.reader.sequence;
 
 import java.io.IOException;
-import libra.common.sequence.Read;
 import libra.common.sequence.ReadInfo;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -44,6 +43,9 @@ import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 public class ReadRecordReader extends RecordReader<LongWritable, ReadInfo> {
 
     private static final Log LOG = LogFactory.getLog(ReadRecordReader.class);
+    
+    private static final String HADOOP_CONFIG_KEY_CHUNK_LENGTH = "libra.common.hadoop.io.reader.sequence.readrecordreader.chunk_length";
+    private static final String HADOOP_CONFIG_KEY_CHUNK_OVERLAP = "libra.common.hadoop.io.reader.sequence.readrecordreader.chunk_overlap";
 
     private long start;
     private long pos;
@@ -53,7 +55,6 @@ public class ReadRecordReader extends RecordReader<LongWritable, ReadInfo> {
     private Seekable filePosition;
     private LongWritable key;
     private ReadInfo value;
-    private Read rawValue;
     private boolean isCompressedInput;
     private Decompressor decompressor;
     private SampleFormat format;
@@ -61,6 +62,15 @@ public class ReadRecordReader extends RecordReader<LongWritable, ReadInfo> {
     
     public ReadRecordReader() {
     }
+    
+    /**
+     * Return FASTA records longer than maxChunkLength bases as overlapping
+     * chunks (0 to disable).
+     */
+    public static void setChunking(Configuration conf, int maxChunkLength, int overlap) {
+        conf.setInt(HADOOP_CONFIG_KEY_CHUNK_LENGTH, maxChunkLength);
+        conf.setInt(HADOOP_CONFIG_KEY_CHUNK_OVERLAP, overlap);
+    }
 
     @Override
     public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
@@ -99,6 +109,14 @@ public class ReadRecordReader extends RecordReader<LongWritable, ReadInfo> {
             this.filePosition = this.fileIn;
         }
         
+        this.in.setChunking(conf.getInt(HADOOP_CONFIG_KEY_CHUNK_LENGTH, 0), conf.getInt(HADOOP_CONFIG_KEY_CHUNK_OVERLAP, 0));
+        
+        double fraction = ReadSampler.getFraction(conf, this.filename);
+        if(fraction < 1) {
+            LOG.info(String.format("Subsampling %s - fraction %f", this.filename, fraction));
+            this.in.setReadSampler(new ReadSampler(fraction, ReadSampler.getSeed(conf)));
+        }
+        
         this.pos = this.start;
     }
     
@@ -122,23 +140,17 @@ public class ReadRecordReader extends RecordReader<LongWritable, ReadInfo> {
         if (this.value == null) {
             this.value = new ReadInfo(this.filename);
         }
-        if (this.rawValue == null) {
-            this.rawValue = new Read();
-        }
         
         long newSize = 0;
         
-        newSize = this.in.readRead(this.rawValue);
+        newSize = this.in.readRead(this.value);
         this.pos += newSize;
         
-        if(this.rawValue.isEmpty()) {
+        if(this.value.isEmpty()) {
             this.key = null;
-            this.rawValue = null;
             this.value = null;
             return false;
         } else {
-            this.value.setDescription(this.rawValue.getDescription());
-            this.value.setSequence(this.rawValue.getFullSequence());
             return true;
         }
     }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.reader.sequence;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Deterministic read subsampling. A read is kept when the hash of its name
+ * falls below the fraction, so the same reads are kept regardless of how the
+ * input is split, and mates (/1, /2) are kept or dropped together.
+ * 
+ * @author iychoi
+ */
+public class ReadSampler {
+    
+    private static final String HADOOP_CONFIG_KEY_FRACTION = "libra.common.hadoop.io.reader.sequence.readsampler.fraction.";
+    private static final String HADOOP_CONFIG_KEY_SEED = "libra.common.hadoop.io.reader.sequence.readsampler.seed";
+    
+    public static final double DEFAULT_FRACTION = 1.0;
+    
+    private final double fraction;
+    private final long seed;
+    
+    /**
+     * Set the fraction of reads to keep from files with the given name.
+     */
+    public static void setFraction(Configuration conf, String fileName, double fraction) {
+        conf.set(HADOOP_CONFIG_KEY_FRACTION + fileName, Double.toString(fraction));
+    }
+    
+    public static double getFraction(Configuration conf, String fileName) {
+        String fraction = conf.get(HADOOP_CONFIG_KEY_FRACTION + fileName);
+        if(fraction == null) {
+            return DEFAULT_FRACTION;
+        }
+        return Double.parseDouble(fraction);
+    }
+    
+    public static void setSeed(Configuration conf, long seed) {
+        conf.setLong(HADOOP_CONFIG_KEY_SEED, seed);
+    }
+    
+    public static long getSeed(Configuration conf) {
+        return conf.getLong(HADOOP_CONFIG_KEY_SEED, 0);
+    }
+    
+    public ReadSampler(double fraction, long seed) {
+        if(fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("sampling fraction must be between 0 and 1 : " + fraction);
+        }
+        
+        this.fraction = fraction;
+        this.seed = seed;
+    }
+    
+    public double getFraction() {
+        return this.fraction;
+    }
+    
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    /**
+     * Decide from the header line of a read (including '>' or '@') whether
+     * the read is kept. Only the read name is hashed - the text up to the
+     * first whitespace without a trailing mate suffix.
+     */
+    public boolean accept(byte[] header, int length) {
+        if(this.fraction >= 1) {
+            return true;
+        }
+        
+        int start = 0;
+        while(start < length && ((header[start] & 0xff) <= ' ' || header[start] == '>' || header[start] == '@')) {
+            start++;
+        }
+        
+        int end = start;
+        while(end < length && (header[end] & 0xff) > ' ') {
+            end++;
+        }
+        
+        if(end - start > 2 && header[end - 2] == '/' && (header[end - 1] == '1' || header[end - 1] == '2')) {
+            end -= 2;
+        }
+        
+        // FNV-1a, then mixed with the seed
+        long h = 0xcbf29ce484222325L;
+        for(int i=start;i<end;i++) {
+            h ^= header[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h = mix(h ^ mix(this.seed));
+        
+        double value = (h >>> 11) * 0x1.0p-53;
+        return value < this.fraction;
+    }
+}
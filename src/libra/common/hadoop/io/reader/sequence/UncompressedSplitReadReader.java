@@ -17,7 +17,6 @@ package libra.common.hadoop.io.reader.sequence;
 
 import java.io.IOException;
 import java.io.InputStream;
-import libra.common.sequence.Read;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -43,10 +42,18 @@ public class UncompressedSplitReadReader extends SplitReadReader {
     }
     
     @Override
-    public long readRead(Read read) throws IOException {
+    protected long readLines() throws IOException {
         long bytesConsumed = 0;
         long readSize = 0;
-        read.clear();
+        clearLines();
+        
+        if(isPartialRecord()) {
+            // the rest of a record started in this split
+            readSize = super.readLines();
+            bytesConsumed += readSize;
+            this.totalBytesRead += readSize;
+            return bytesConsumed;
+        }
         
         if(!this.finished) {
             readSize = super.skipIncompleteRead();
@@ -59,7 +66,7 @@ public class UncompressedSplitReadReader extends SplitReadReader {
                 return bytesConsumed;
             }
 
-            readSize = super.readRead(read);
+            readSize = super.readLines();
             if(readSize <= 0) {
                 //EOF
                 this.finished = true;
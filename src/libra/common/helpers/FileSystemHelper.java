@@ -26,6 +26,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 
 /**
  *
@@ -125,8 +126,11 @@ public class FileSystemHelper {
     }
     
     public static Path[] getAllSamplePaths(Configuration conf, Path[] inputPaths) throws IOException {
+        return FileSystemHelper.getAllSamplePaths(conf, inputPaths, new SamplePathFilter());
+    }
+    
+    public static Path[] getAllSamplePaths(Configuration conf, Path[] inputPaths, PathFilter filter) throws IOException {
         List<Path> inputFiles = new ArrayList<Path>();
-        SamplePathFilter filter = new SamplePathFilter();
         
         for(Path path : inputPaths) {
             FileSystem fs = path.getFileSystem(conf);
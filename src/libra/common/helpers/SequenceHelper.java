@@ -130,6 +130,58 @@ public class SequenceHelper {
         return compressedArr;
     }
     
+    /**
+     * Write a sequence given as right-aligned 2-bit words (sequenceLen <= 64)
+     * into the left-aligned layout produced by compress(String).
+     */
+    public static void compress(long high, long low, int sequenceLen, byte[] compressed) {
+        int bytes = getCompressedSize(sequenceLen);
+        if(sequenceLen > 32) {
+            int highBits = (sequenceLen - 32) * 2;
+            long first;
+            if(highBits == 64) {
+                first = high;
+            } else {
+                first = (high << (64 - highBits)) | (low >>> highBits);
+            }
+            long second = low << (64 - highBits);
+            for(int i=0;i<8;i++) {
+                compressed[i] = (byte) (first >>> (56 - (i * 8)));
+            }
+            for(int i=8;i<bytes;i++) {
+                compressed[i] = (byte) (second >>> (56 - ((i - 8) * 8)));
+            }
+        } else {
+            long word = low << (64 - (sequenceLen * 2));
+            for(int i=0;i<bytes;i++) {
+                compressed[i] = (byte) (word >>> (56 - (i * 8)));
+            }
+        }
+    }
+
+    public static long convertToLong(String sequence) {
+        long lSequence = 0;
+        for(int i=0;i<sequence.length();i++) {
+            lSequence = (lSequence << 2) | convCharToBit(sequence.charAt(i));
+        }
+        return lSequence;
+    }
+    
+    public static String convertToString(long high, long low, int sequenceLen) {
+        char[] chars = new char[sequenceLen];
+        for(int i=0;i<sequenceLen;i++) {
+            int shift = (sequenceLen - i - 1) * 2;
+            int bits;
+            if(shift >= 64) {
+                bits = (int) ((high >>> (shift - 64)) & 0x3);
+            } else {
+                bits = (int) ((low >>> shift) & 0x3);
+            }
+            chars[i] = convBitToChar((byte) bits);
+        }
+        return new String(chars);
+    }
+    
     public static String decompress(byte[] compressed, int sequenceLen) {
         byte[] byteArr = new byte[sequenceLen];
         
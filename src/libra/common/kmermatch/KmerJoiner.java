@@ -19,12 +19,14 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
 import libra.common.helpers.SequenceHelper;
+import libra.preprocess.common.helpers.KmerIndexHelper;
 import libra.preprocess.common.kmerindex.AKmerIndexReader;
-import libra.preprocess.common.kmerindex.KmerIndexReader;
+import libra.preprocess.common.kmerindex.KmerIndexReadAheadReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -42,58 +44,122 @@ public class KmerJoiner {
     
     private int kmerSize;
     private Path[] kmerIndexTableFilePaths;
-    private int partitionNo;
+    private int[] partitionNos;
     private Configuration conf;
     
     private AKmerIndexReader[] readers;
-    private CompressedSequenceWritable progressKey;
+    private AKmerWritable progressKey;
     private boolean eof;
     private BigInteger beginKey;
     private BigInteger endKey;
     
-    private CompressedSequenceWritable[] stepKeys;
+    private AKmerWritable[] stepKeys;
     private IntArrayWritable[] stepVals;
+    private AKmerWritable[] readerKeys;
+    private IntArrayWritable[] readerVals;
     private List<Integer> stepMinKeys;
     private boolean stepStarted;
     
     public KmerJoiner(int kmerSize, Path[] kmerIndexTableFilePaths, int partitionNo, TaskAttemptContext context) throws IOException {
-        initialize(kmerSize, kmerIndexTableFilePaths, partitionNo, context.getConfiguration());
+        initialize(kmerSize, kmerIndexTableFilePaths, makePartitionNos(kmerIndexTableFilePaths.length, partitionNo), null, null, context.getConfiguration());
     }
     
     public KmerJoiner(int kmerSize, Path[] kmerIndexTableFilePaths, int partitionNo, Configuration conf) throws IOException {
-        initialize(kmerSize, kmerIndexTableFilePaths, partitionNo, conf);
+        initialize(kmerSize, kmerIndexTableFilePaths, makePartitionNos(kmerIndexTableFilePaths.length, partitionNo), null, null, conf);
     }
     
-    private void initialize(int kmerSize, Path[] kmerIndexTableFilePaths, int partitionNo, Configuration conf) throws IOException {
+    /**
+     * Join k-mers in [rangeBegin, rangeEnd) of the given partition of each
+     * index table file. Null means unbounded. Progress is estimated within
+     * the range.
+     */
+    public KmerJoiner(int kmerSize, Path[] kmerIndexTableFilePaths, int[] partitionNos, String rangeBegin, String rangeEnd, Configuration conf) throws IOException {
+        initialize(kmerSize, kmerIndexTableFilePaths, partitionNos, rangeBegin, rangeEnd, conf);
+    }
+    
+    /**
+     * Join k-mers of the given readers of a partition, e.g. sorted count
+     * runs. Readers are closed by close().
+     */
+    public KmerJoiner(int kmerSize, AKmerIndexReader[] readers, int partitionNo, Configuration conf) throws IOException {
+        Path[] paths = new Path[readers.length];
+        for(int i=0;i<readers.length;i++) {
+            paths[i] = readers[i].getKmerIndexTablePath();
+        }
+        
+        this.kmerSize = kmerSize;
+        this.kmerIndexTableFilePaths = paths;
+        this.partitionNos = makePartitionNos(readers.length, partitionNo);
+        this.conf = conf;
+        this.readers = readers;
+        
+        initializeStep(null, null);
+    }
+    
+    private static int[] makePartitionNos(int len, int partitionNo) {
+        int[] partitionNos = new int[len];
+        for(int i=0;i<len;i++) {
+            partitionNos[i] = partitionNo;
+        }
+        return partitionNos;
+    }
+    
+    private void initialize(int kmerSize, Path[] kmerIndexTableFilePaths, int[] partitionNos, String rangeBegin, String rangeEnd, Configuration conf) throws IOException {
         this.kmerSize = kmerSize;
         this.kmerIndexTableFilePaths = kmerIndexTableFilePaths;
-        this.partitionNo = partitionNo;
+        this.partitionNos = partitionNos;
         this.conf = conf;
         
         this.readers = new AKmerIndexReader[this.kmerIndexTableFilePaths.length];
         for(int i=0;i<this.readers.length;i++) {
             FileSystem fs = this.kmerIndexTableFilePaths[i].getFileSystem(this.conf);
-            this.readers[i] = new KmerIndexReader(fs, this.kmerSize, this.kmerIndexTableFilePaths[i], this.partitionNo, this.conf);
+            this.readers[i] = KmerIndexHelper.createKmerIndexReader(fs, this.kmerSize, this.kmerIndexTableFilePaths[i], this.partitionNos[i], rangeBegin, rangeEnd, this.conf);
         }
+        KmerIndexReadAheadReader.wrap(this.readers, this.kmerSize, this.conf);
         
+        initializeStep(rangeBegin, rangeEnd);
+    }
+    
+    private void initializeStep(String rangeBegin, String rangeEnd) {
         this.progressKey = null;
         this.eof = false;
         
-        this.beginKey = SequenceHelper.getFirstSequenceBigInteger(this.kmerSize);
-        this.endKey = SequenceHelper.getLastSequenceBigInteger(this.kmerSize);
+        if(rangeBegin != null) {
+            this.beginKey = SequenceHelper.convertToBigInteger(rangeBegin);
+        } else {
+            this.beginKey = SequenceHelper.getFirstSequenceBigInteger(this.kmerSize);
+        }
         
-        this.stepKeys = new CompressedSequenceWritable[this.readers.length];
+        if(rangeEnd != null) {
+            this.endKey = SequenceHelper.convertToBigInteger(rangeEnd);
+        } else {
+            this.endKey = SequenceHelper.getLastSequenceBigInteger(this.kmerSize);
+        }
+        
+        this.stepKeys = new AKmerWritable[this.readers.length];
         this.stepVals = new IntArrayWritable[this.readers.length];
         this.stepStarted = false;
         
+        // one key and value per reader, reused on every step
+        this.readerKeys = new AKmerWritable[this.readers.length];
+        this.readerVals = new IntArrayWritable[this.readers.length];
+        for(int i=0;i<this.readers.length;i++) {
+            this.readerKeys[i] = this.readers[i].getKeyType().newKey(this.kmerSize);
+            this.readerVals[i] = new IntArrayWritable();
+        }
+        
         LOG.info("Matcher is initialized");
-        LOG.info("Processing partition " + this.partitionNo);
+        LOG.info("Processing partitions " + Arrays.toString(this.partitionNos));
     }
     
+    /**
+     * Return the next matched k-mer. Keys and values of the result are
+     * reused, so the result is valid until the following call.
+     */
     public KmerMatchResult stepNext() throws IOException {
         List<Integer> minKeyIndexes = getNextMinKeys();
         if(minKeyIndexes.size() > 0) {
-            CompressedSequenceWritable minKey = this.stepKeys[minKeyIndexes.get(0)];
+            AKmerWritable minKey = this.stepKeys[minKeyIndexes.get(0)];
             this.progressKey = minKey;
             
             // check matching
@@ -117,7 +183,7 @@ public class KmerJoiner {
     }
     
     private List<Integer> findMinKeys() throws IOException {
-        CompressedSequenceWritable minKey = null;
+        AKmerWritable minKey = null;
         List<Integer> minKeyIndice = new ArrayList<Integer>();
         for(int i=0;i<this.readers.length;i++) {
             if(this.stepKeys[i] != null) {
@@ -147,8 +213,8 @@ public class KmerJoiner {
         if(!this.stepStarted) {
             for(int i=0;i<this.readers.length;i++) {
                 // fill first
-                CompressedSequenceWritable key = new CompressedSequenceWritable();
-                IntArrayWritable val = new IntArrayWritable();
+                AKmerWritable key = this.readerKeys[i];
+                IntArrayWritable val = this.readerVals[i];
                 if(this.readers[i].next(key, val)) {
                     this.stepKeys[i] = key;
                     this.stepVals[i] = val;
@@ -170,8 +236,8 @@ public class KmerJoiner {
             
             // move min pointers
             for (int idx : this.stepMinKeys) {
-                CompressedSequenceWritable key = new CompressedSequenceWritable();
-                IntArrayWritable val = new IntArrayWritable();
+                AKmerWritable key = this.readerKeys[idx];
+                IntArrayWritable val = this.readerVals[idx];
                 if(this.readers[idx].next(key, val)) {
                     this.stepKeys[idx] = key;
                     this.stepVals[idx] = val;
@@ -194,15 +260,15 @@ public class KmerJoiner {
                 return 0.0f;
             }
         } else {
-            BigInteger progress = SequenceHelper.convertToBigInteger(this.progressKey.getSequence());
+            BigInteger progress = this.progressKey.toBigInteger();
             
             
             int comp = this.endKey.compareTo(progress);
             if (comp <= 0) {
                 return 1.0f;
             } else {
-                BigDecimal progressDecimal = new BigDecimal(progress);
-                BigDecimal endDecimal = new BigDecimal(this.endKey);
+                BigDecimal progressDecimal = new BigDecimal(progress.subtract(this.beginKey).max(BigInteger.ZERO));
+                BigDecimal endDecimal = new BigDecimal(this.endKey.subtract(this.beginKey));
                 
                 BigDecimal rate = progressDecimal.divide(endDecimal, 3, BigDecimal.ROUND_HALF_UP);
                 
@@ -16,13 +16,18 @@
 package libra.common.kmermatch;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import java.util.TreeSet;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.helpers.SequenceHelper;
 import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.KmerIndexHelper;
 import libra.preprocess.common.kmerindex.KmerIndexTable;
 import libra.preprocess.common.kmerindex.KmerIndexTablePathFilter;
+import libra.preprocess.common.kmerindex.KmerIndexTableRecord;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -41,14 +46,14 @@ import org.apache.hadoop.mapreduce.security.TokenCache;
  *
  * @author iychoi
  */
-public class KmerMatchInputFormat extends SequenceFileInputFormat<CompressedSequenceWritable, KmerMatchResult> {
+public class KmerMatchInputFormat extends SequenceFileInputFormat<AKmerWritable, KmerMatchResult> {
 
     private static final Log LOG = LogFactory.getLog(KmerMatchInputFormat.class);
 
     private final static String NUM_INPUT_FILES = "mapreduce.input.num.files";
     
     @Override
-    public RecordReader<CompressedSequenceWritable, KmerMatchResult> createRecordReader(InputSplit split, TaskAttemptContext context) throws IOException {
+    public RecordReader<AKmerWritable, KmerMatchResult> createRecordReader(InputSplit split, TaskAttemptContext context) throws IOException {
         return new KmerMatchRecordReader();
     }
     
@@ -74,25 +79,92 @@ public class KmerMatchInputFormat extends SequenceFileInputFormat<CompressedSequ
             LOG.info("> " + kmerIndexTableFiles.get(i).toString());
         }
         
-        int partitions = 0;
+        KmerKeyType keyType = null;
+        int minimizerSize = 0;
+        KmerIndexTable firstIndexTable = null;
+        List<KmerIndexTable> indexTables = new ArrayList<KmerIndexTable>();
         for(Path kmerIndexTableFile : kmerIndexTableFiles) {
             FileSystem fs = kmerIndexTableFile.getFileSystem(conf);
             KmerIndexTable indexTable = KmerIndexTable.createInstance(fs, kmerIndexTableFile);
-            if(partitions == 0) {
-                partitions = indexTable.getSize();
+            if(indexTable.getSize() == 0) {
+                throw new IOException("There is no partition in " + kmerIndexTableFile.toString());
+            }
+            
+            if(firstIndexTable == null) {
+                keyType = indexTable.getKeyType();
+                minimizerSize = indexTable.getMinimizerSize();
+                firstIndexTable = indexTable;
             } else {
-                if(partitions != indexTable.getSize()) {
-                    throw new IOException(String.format("# of partitions are different between input files - %d expected, but %d got", partitions, indexTable.getSize()));
+                if(keyType != indexTable.getKeyType()) {
+                    throw new IOException(String.format("key types are different between input files - %s expected, but %s got", keyType.name(), indexTable.getKeyType().name()));
+                }
+                
+                if(minimizerSize != indexTable.getMinimizerSize()) {
+                    throw new IOException(String.format("partitioning schemes are different between input files - minimizer size %d expected, but %d got", minimizerSize, indexTable.getMinimizerSize()));
+                }
+                
+                if(firstIndexTable.getVirtualBuckets() != indexTable.getVirtualBuckets()) {
+                    throw new IOException(String.format("partitioning schemes are different between input files - %d virtual buckets expected, but %d got", firstIndexTable.getVirtualBuckets(), indexTable.getVirtualBuckets()));
+                }
+                
+                if(firstIndexTable.getVirtualBuckets() == 0 && firstIndexTable.getSize() != indexTable.getSize()) {
+                    throw new IOException(String.format("# of partitions are different between input files - %d expected, but %d got", firstIndexTable.getSize(), indexTable.getSize()));
                 }
+                
+                checkSameRanges(firstIndexTable, indexTable);
             }
+            indexTables.add(indexTable);
         }
         
-        if(partitions == 0) {
+        if(firstIndexTable == null) {
             throw new IOException("There is no partition");
         }
         
-        for(int i=0;i<partitions;i++) {
-            splits.add(new KmerMatchInputSplit(inputFormatConfig.getKmerSize(), kmerIndexTableFiles.toArray(new Path[0]), i));
+        Path[] kmerIndexTableFileArr = kmerIndexTableFiles.toArray(new Path[0]);
+        if(firstIndexTable.getVirtualBuckets() > 0) {
+            // groups may be built with different # of reducers, so a split
+            // covers a bucket range and reads every partition in it
+            List<Integer> bucketBoundaries = getCommonBucketBoundaries(indexTables, firstIndexTable.getVirtualBuckets());
+            for(int i=0;i<bucketBoundaries.size()-1;i++) {
+                int bucketBegin = bucketBoundaries.get(i);
+                int bucketEnd = bucketBoundaries.get(i+1);
+                
+                List<Path> splitPaths = new ArrayList<Path>();
+                List<Integer> splitPartitions = new ArrayList<Integer>();
+                for(int j=0;j<indexTables.size();j++) {
+                    for(KmerIndexTableRecord record : indexTables.get(j).getRecord()) {
+                        if(record.getBucketBegin() >= bucketBegin && record.getBucketBegin() < bucketEnd) {
+                            splitPaths.add(kmerIndexTableFileArr[j]);
+                            splitPartitions.add(record.getPartitionID());
+                        }
+                    }
+                }
+                
+                int[] splitPartitionArr = new int[splitPartitions.size()];
+                for(int j=0;j<splitPartitionArr.length;j++) {
+                    splitPartitionArr[j] = splitPartitions.get(j);
+                }
+                
+                splits.add(new KmerMatchInputSplit(inputFormatConfig.getKmerSize(), splitPaths.toArray(new Path[0]), splitPartitionArr, i));
+            }
+            
+            LOG.info(String.format("Joining %d virtual buckets in %d bucket ranges", firstIndexTable.getVirtualBuckets(), bucketBoundaries.size() - 1));
+        } else {
+            for(int i=0;i<firstIndexTable.getSize();i++) {
+                if(firstIndexTable.isTotalOrder()) {
+                    // partitions hold contiguous ranges, so they can be split further by range
+                    KmerIndexTableRecord record = firstIndexTable.getRecord(i);
+                    List<String> subBoundaries = splitRange(record.getRangeBegin(), record.getRangeEnd(), inputFormatConfig.getKmerSize(), inputFormatConfig.getSplitsPerPartition());
+                    String begin = record.getRangeBegin();
+                    for(String subBoundary : subBoundaries) {
+                        splits.add(new KmerMatchInputSplit(inputFormatConfig.getKmerSize(), kmerIndexTableFileArr, i, begin, subBoundary));
+                        begin = subBoundary;
+                    }
+                    splits.add(new KmerMatchInputSplit(inputFormatConfig.getKmerSize(), kmerIndexTableFileArr, i, begin, record.getRangeEnd()));
+                } else {
+                    splits.add(new KmerMatchInputSplit(inputFormatConfig.getKmerSize(), kmerIndexTableFileArr, i));
+                }
+            }
         }
         
         // Save the number of input files in the job-conf
@@ -102,6 +174,91 @@ public class KmerMatchInputFormat extends SequenceFileInputFormat<CompressedSequ
         return splits;
     }
     
+    private void checkSameRanges(KmerIndexTable expected, KmerIndexTable indexTable) throws IOException {
+        if(expected.isTotalOrder() != indexTable.isTotalOrder()) {
+            throw new IOException("partitioning schemes are different between input files - hash and total order");
+        }
+        
+        if(!expected.isTotalOrder()) {
+            return;
+        }
+        
+        for(KmerIndexTableRecord record : expected.getRecord()) {
+            KmerIndexTableRecord other = indexTable.getRecord(record.getPartitionID());
+            if(other == null || 
+                    !isSameBoundary(record.getRangeBegin(), other.getRangeBegin()) ||
+                    !isSameBoundary(record.getRangeEnd(), other.getRangeEnd())) {
+                throw new IOException(String.format("partition ranges are different between input files - partition %d", record.getPartitionID()));
+            }
+        }
+    }
+    
+    /**
+     * Return sorted bucket boundaries, from 0 to virtualBuckets, where every
+     * input file has a partition starting. Each bucket range between two
+     * boundaries is covered by whole partitions of every input file.
+     */
+    private static List<Integer> getCommonBucketBoundaries(List<KmerIndexTable> indexTables, int virtualBuckets) throws IOException {
+        TreeSet<Integer> common = null;
+        for(KmerIndexTable indexTable : indexTables) {
+            TreeSet<Integer> begins = new TreeSet<Integer>();
+            for(KmerIndexTableRecord record : indexTable.getRecord()) {
+                if(record.getBucketBegin() < 0 || record.getBucketBegin() > record.getBucketEnd() || record.getBucketEnd() > virtualBuckets) {
+                    throw new IOException(String.format("invalid bucket range of partition %d - [%d, %d)", record.getPartitionID(), record.getBucketBegin(), record.getBucketEnd()));
+                }
+                begins.add(record.getBucketBegin());
+            }
+            
+            if(common == null) {
+                common = begins;
+            } else {
+                common.retainAll(begins);
+            }
+        }
+        
+        List<Integer> boundaries = new ArrayList<Integer>();
+        if(common != null) {
+            boundaries.addAll(common);
+        }
+        if(boundaries.isEmpty() || boundaries.get(0) != 0) {
+            boundaries.add(0, 0);
+        }
+        boundaries.add(virtualBuckets);
+        return boundaries;
+    }
+    
+    private boolean isSameBoundary(String a, String b) {
+        if(a == null) {
+            return b == null;
+        }
+        return a.equals(b);
+    }
+    
+    /**
+     * Return splits - 1 boundaries dividing [begin, end) into equal intervals
+     * of the k-mer space.
+     */
+    private List<String> splitRange(String begin, String end, int kmerSize, int splits) {
+        List<String> boundaries = new ArrayList<String>();
+        if(splits <= 1) {
+            return boundaries;
+        }
+        
+        BigInteger beginKey = begin == null ? SequenceHelper.getFirstSequenceBigInteger(kmerSize) : SequenceHelper.convertToBigInteger(begin);
+        BigInteger endKey = end == null ? SequenceHelper.getLastSequenceBigInteger(kmerSize).add(BigInteger.ONE) : SequenceHelper.convertToBigInteger(end);
+        BigInteger width = endKey.subtract(beginKey);
+        
+        BigInteger prev = beginKey;
+        for(int i=1;i<splits;i++) {
+            BigInteger boundary = beginKey.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(splits)));
+            if(boundary.compareTo(prev) > 0) {
+                boundaries.add(SequenceHelper.convertToString(boundary, kmerSize));
+                prev = boundary;
+            }
+        }
+        return boundaries;
+    }
+    
     @Override
     protected List<FileStatus> listStatus(JobContext job) throws IOException {
         Configuration conf = job.getConfiguration();
@@ -36,9 +36,12 @@ public class KmerMatchInputFormatConfig {
     
     private static final String HADOOP_CONFIG_KEY = "libra.common.kmermatch.kmermatchinputformatconfig";
     
+    public static final int DEFAULT_SPLITS_PER_PARTITION = 1;
+    
     private int kmerSize;
     private String fileTablePath;
     private String kmerIndexPath;
+    private int splitsPerPartition = DEFAULT_SPLITS_PER_PARTITION;
     
     public static KmerMatchInputFormatConfig createInstance(File file) throws IOException {
         JsonSerializer serializer = new JsonSerializer();
@@ -93,6 +96,19 @@ public class KmerMatchInputFormatConfig {
         this.kmerIndexPath = kmerIndexPath;
     }
     
+    /**
+     * Number of splits to make from each partition of total-ordered indices
+     */
+    @JsonProperty("splits_per_partition")
+    public int getSplitsPerPartition() {
+        return this.splitsPerPartition;
+    }
+    
+    @JsonProperty("splits_per_partition")
+    public void setSplitsPerPartition(int splitsPerPartition) {
+        this.splitsPerPartition = splitsPerPartition;
+    }
+    
     @JsonIgnore
     public void saveTo(Configuration conf) throws IOException {
         JsonSerializer serializer = new JsonSerializer();
@@ -32,6 +32,10 @@ public class KmerMatchInputSplit extends InputSplit implements Writable {
     private int kmerSize;
     private Path[] kmerIndexTableFilePaths;
     private int partitionNo;
+    // partition of each index table file to read
+    private int[] partitionNos;
+    private String rangeBegin;
+    private String rangeEnd;
 
     public KmerMatchInputSplit() {    
     }
@@ -40,6 +44,32 @@ public class KmerMatchInputSplit extends InputSplit implements Writable {
         this.kmerSize = kmerSize;
         this.kmerIndexTableFilePaths = kmerIndexTableFilePaths;
         this.partitionNo = partitionNo;
+        this.partitionNos = makePartitionNos(kmerIndexTableFilePaths.length, partitionNo);
+    }
+    
+    /**
+     * A split reading a different partition of each index table file. An
+     * index table file may be given several times to read several of its
+     * partitions.
+     */
+    public KmerMatchInputSplit(int kmerSize, Path[] kmerIndexTableFilePaths, int[] partitionNos, int splitNo) {
+        this.kmerSize = kmerSize;
+        this.kmerIndexTableFilePaths = kmerIndexTableFilePaths;
+        this.partitionNo = splitNo;
+        this.partitionNos = partitionNos;
+    }
+    
+    /**
+     * A split of k-mers in [rangeBegin, rangeEnd) of a partition of
+     * total-ordered indices. Null means unbounded.
+     */
+    public KmerMatchInputSplit(int kmerSize, Path[] kmerIndexTableFilePaths, int partitionNo, String rangeBegin, String rangeEnd) {
+        this.kmerSize = kmerSize;
+        this.kmerIndexTableFilePaths = kmerIndexTableFilePaths;
+        this.partitionNo = partitionNo;
+        this.partitionNos = makePartitionNos(kmerIndexTableFilePaths.length, partitionNo);
+        this.rangeBegin = rangeBegin;
+        this.rangeEnd = rangeEnd;
     }
     
     public int getKmerSize() {
@@ -54,6 +84,26 @@ public class KmerMatchInputSplit extends InputSplit implements Writable {
         return this.partitionNo;
     }
     
+    public int[] getPartitionNos() {
+        return this.partitionNos;
+    }
+    
+    private static int[] makePartitionNos(int len, int partitionNo) {
+        int[] partitionNos = new int[len];
+        for(int i=0;i<len;i++) {
+            partitionNos[i] = partitionNo;
+        }
+        return partitionNos;
+    }
+    
+    public String getRangeBegin() {
+        return this.rangeBegin;
+    }
+    
+    public String getRangeEnd() {
+        return this.rangeEnd;
+    }
+    
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -63,7 +113,11 @@ public class KmerMatchInputSplit extends InputSplit implements Writable {
             }
             sb.append(path.toString());
         }
-        return this.partitionNo + "\n" + sb.toString();
+        String range = "";
+        if(this.rangeBegin != null || this.rangeEnd != null) {
+            range = " [" + (this.rangeBegin == null ? "" : this.rangeBegin) + ", " + (this.rangeEnd == null ? "" : this.rangeEnd) + ")";
+        }
+        return this.partitionNo + range + "\n" + sb.toString();
     }
 
     @Override
@@ -76,9 +130,12 @@ public class KmerMatchInputSplit extends InputSplit implements Writable {
         out.writeInt(this.kmerSize);
         out.writeInt(this.partitionNo);
         out.writeInt(this.kmerIndexTableFilePaths.length);
-        for (Path indexPath : this.kmerIndexTableFilePaths) {
-            Text.writeString(out, indexPath.toString());
+        for (int i=0;i<this.kmerIndexTableFilePaths.length;i++) {
+            Text.writeString(out, this.kmerIndexTableFilePaths[i].toString());
+            out.writeInt(this.partitionNos[i]);
         }
+        writeNullableString(out, this.rangeBegin);
+        writeNullableString(out, this.rangeEnd);
     }
 
     @Override
@@ -86,9 +143,27 @@ public class KmerMatchInputSplit extends InputSplit implements Writable {
         this.kmerSize = in.readInt();
         this.partitionNo = in.readInt();
         this.kmerIndexTableFilePaths = new Path[in.readInt()];
+        this.partitionNos = new int[this.kmerIndexTableFilePaths.length];
         for(int i=0;i<this.kmerIndexTableFilePaths.length;i++) {
             this.kmerIndexTableFilePaths[i] = new Path(Text.readString(in));
+            this.partitionNos[i] = in.readInt();
+        }
+        this.rangeBegin = readNullableString(in);
+        this.rangeEnd = readNullableString(in);
+    }
+    
+    private static void writeNullableString(DataOutput out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if(str != null) {
+            Text.writeString(out, str);
+        }
+    }
+    
+    private static String readNullableString(DataInput in) throws IOException {
+        if(in.readBoolean()) {
+            return Text.readString(in);
         }
+        return null;
     }
 
     @Override
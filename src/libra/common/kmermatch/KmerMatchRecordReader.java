@@ -16,7 +16,7 @@
 package libra.common.kmermatch;
 
 import java.io.IOException;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -29,7 +29,7 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
  *
  * @author iychoi
  */
-public class KmerMatchRecordReader extends RecordReader<CompressedSequenceWritable, KmerMatchResult> {
+public class KmerMatchRecordReader extends RecordReader<AKmerWritable, KmerMatchResult> {
     
     private static final Log LOG = LogFactory.getLog(KmerMatchRecordReader.class);
     
@@ -52,7 +52,7 @@ public class KmerMatchRecordReader extends RecordReader<CompressedSequenceWritab
         this.indexTableFilePaths = kmerIndexSplit.getIndexTableFilePaths();
         this.partitionNo = kmerIndexSplit.getPartitionNo();
         
-        this.joiner = new KmerJoiner(this.kmerSize, this.indexTableFilePaths, this.partitionNo, context);
+        this.joiner = new KmerJoiner(this.kmerSize, this.indexTableFilePaths, kmerIndexSplit.getPartitionNos(), kmerIndexSplit.getRangeBegin(), kmerIndexSplit.getRangeEnd(), context.getConfiguration());
     }
 
     @Override
@@ -65,7 +65,7 @@ public class KmerMatchRecordReader extends RecordReader<CompressedSequenceWritab
     }
 
     @Override
-    public CompressedSequenceWritable getCurrentKey() {
+    public AKmerWritable getCurrentKey() {
         if(this.curResult != null) {
             return this.curResult.getKey();
         }
@@ -17,8 +17,8 @@ package libra.common.kmermatch;
 
 import java.io.File;
 import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
 import libra.common.json.JsonSerializer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,7 +38,7 @@ public class KmerMatchResult {
     
     private static final String HADOOP_CONFIG_KEY = "libra.common.kmermatch.kmermatchresult";
     
-    private CompressedSequenceWritable key;
+    private AKmerWritable key;
     private IntArrayWritable[] vals;
     private Path[] kmerIndexTablePaths;
     
@@ -66,7 +66,7 @@ public class KmerMatchResult {
         
     }
     
-    public KmerMatchResult(CompressedSequenceWritable key, IntArrayWritable[] vals, Path[] kmerIndexTablePaths) {
+    public KmerMatchResult(AKmerWritable key, IntArrayWritable[] vals, Path[] kmerIndexTablePaths) {
         this.key = key;
         this.vals = vals;
         this.kmerIndexTablePaths = kmerIndexTablePaths;
@@ -78,7 +78,7 @@ public class KmerMatchResult {
     }
     
     @JsonIgnore
-    public CompressedSequenceWritable getKey() {
+    public AKmerWritable getKey() {
         return this.key;
     }
     
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.sequence;
+
+/**
+ * Applies FASTQ base qualities to a read sequence before k-mer extraction.
+ * Trailing bases below the trim threshold are cut off and remaining bases
+ * below the mask threshold are replaced with 'N', so no k-mer spans them.
+ * Reads without quality (FASTA) are left unchanged.
+ *
+ * @author iychoi
+ */
+public class QualityMasker {
+    
+    public static final int DEFAULT_QUALITY_OFFSET = 33; // Phred+33 (Sanger, Illumina 1.8+)
+    
+    private static final byte MASK_BASE = 'N';
+    
+    private final int maskQuality;
+    private final int trimQuality;
+    private final int qualityOffset;
+    
+    public QualityMasker(int maskQuality, int trimQuality) {
+        this(maskQuality, trimQuality, DEFAULT_QUALITY_OFFSET);
+    }
+    
+    public QualityMasker(int maskQuality, int trimQuality, int qualityOffset) {
+        this.maskQuality = maskQuality;
+        this.trimQuality = trimQuality;
+        this.qualityOffset = qualityOffset;
+    }
+    
+    public boolean isEnabled() {
+        return this.maskQuality > 0 || this.trimQuality > 0;
+    }
+    
+    /**
+     * Trim and mask the sequence bytes of the read in place.
+     */
+    public void apply(ReadInfo read) {
+        if(!isEnabled() || !read.hasQuality()) {
+            return;
+        }
+        
+        int length = apply(read.getSequenceBytes(), 0, read.getSequenceLength(), read.getQualityBytes(), 0, read.getQualityLength());
+        if(length < read.getSequenceLength()) {
+            read.setSequenceLength(length);
+        }
+    }
+    
+    /**
+     * Mask the idx-th read of the batch in place and return its length
+     * after trimming.
+     */
+    public int apply(ReadBatch batch, int idx) {
+        if(!isEnabled() || !batch.hasQuality(idx)) {
+            return batch.getSequenceLength(idx);
+        }
+        
+        return apply(batch.getSequenceBytes(), batch.getSequenceStart(idx), batch.getSequenceLength(idx), batch.getQualityBytes(), batch.getQualityStart(idx), batch.getQualityLength(idx));
+    }
+    
+    private int apply(byte[] sequence, int sequenceOffset, int length, byte[] quality, int qualityOffset, int qualityLength) {
+        if(qualityLength != length) {
+            return length;
+        }
+        
+        int end = length;
+        if(this.trimQuality > 0) {
+            while(end > 0 && quality[qualityOffset + end - 1] - this.qualityOffset < this.trimQuality) {
+                end--;
+            }
+        }
+        
+        if(this.maskQuality > 0) {
+            for(int i=0;i<end;i++) {
+                if(quality[qualityOffset + i] - this.qualityOffset < this.maskQuality) {
+                    sequence[sequenceOffset + i] = MASK_BASE;
+                }
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.sequence;
+
+/**
+ * A block of reads packed into shared byte buffers. Sequences (and qualities,
+ * for FASTQ) are stored back to back and addressed by read index.
+ * 
+ * @author iychoi
+ */
+public class ReadBatch {
+    
+    public static final int DEFAULT_DATA_CAPACITY = 1024 * 1024;
+    public static final int DEFAULT_MAX_READS = 4096;
+    
+    private byte[] sequences;
+    private int[] sequenceEnds;
+    private byte[] qualities;
+    private int[] qualityEnds;
+    private boolean[] hasQuality;
+    private int[] overlaps;
+    private int size;
+    
+    public ReadBatch() {
+        this(DEFAULT_DATA_CAPACITY, DEFAULT_MAX_READS);
+    }
+    
+    public ReadBatch(int dataCapacity, int maxReads) {
+        this.sequences = new byte[dataCapacity];
+        this.sequenceEnds = new int[maxReads];
+        this.qualities = new byte[dataCapacity];
+        this.qualityEnds = new int[maxReads];
+        this.hasQuality = new boolean[maxReads];
+        this.overlaps = new int[maxReads];
+        this.size = 0;
+    }
+    
+    public void clear() {
+        this.size = 0;
+    }
+    
+    public int size() {
+        return this.size;
+    }
+    
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+    
+    private int getSequenceDataLength() {
+        return this.size == 0 ? 0 : this.sequenceEnds[this.size - 1];
+    }
+    
+    private int getQualityDataLength() {
+        return this.size == 0 ? 0 : this.qualityEnds[this.size - 1];
+    }
+    
+    /**
+     * Check if a read of the given length fits without growing the buffers.
+     */
+    public boolean hasRoom(int sequenceLength, int qualityLength) {
+        return this.size < this.sequenceEnds.length && 
+                getSequenceDataLength() + sequenceLength <= this.sequences.length &&
+                getQualityDataLength() + qualityLength <= this.qualities.length;
+    }
+    
+    public boolean hasRoom(ReadInfo read) {
+        return hasRoom(read.getSequenceLength(), read.getQualityLength());
+    }
+    
+    private static byte[] ensureCapacity(byte[] buffer, int capacity, int keep) {
+        if(buffer.length >= capacity) {
+            return buffer;
+        }
+        
+        byte[] newBuffer = new byte[Math.max(capacity, buffer.length * 2)];
+        System.arraycopy(buffer, 0, newBuffer, 0, keep);
+        return newBuffer;
+    }
+    
+    private void ensureReadCapacity() {
+        if(this.size < this.sequenceEnds.length) {
+            return;
+        }
+        
+        int capacity = this.sequenceEnds.length * 2;
+        int[] newSequenceEnds = new int[capacity];
+        int[] newQualityEnds = new int[capacity];
+        boolean[] newHasQuality = new boolean[capacity];
+        int[] newOverlaps = new int[capacity];
+        System.arraycopy(this.sequenceEnds, 0, newSequenceEnds, 0, this.size);
+        System.arraycopy(this.qualityEnds, 0, newQualityEnds, 0, this.size);
+        System.arraycopy(this.hasQuality, 0, newHasQuality, 0, this.size);
+        System.arraycopy(this.overlaps, 0, newOverlaps, 0, this.size);
+        this.sequenceEnds = newSequenceEnds;
+        this.qualityEnds = newQualityEnds;
+        this.hasQuality = newHasQuality;
+        this.overlaps = newOverlaps;
+    }
+    
+    /**
+     * Copy a sequence without quality into the batch. Buffers grow if needed.
+     */
+    public void add(byte[] sequence, int offset, int length) {
+        add(sequence, offset, length, 0);
+    }
+    
+    /**
+     * Copy a chunk whose first overlap bases are shared with the previous
+     * chunk of the same record.
+     */
+    public void add(byte[] sequence, int offset, int length, int overlap) {
+        add(sequence, offset, length, null, 0, 0, overlap);
+    }
+    
+    /**
+     * Copy the sequence and quality of the read into the batch.
+     */
+    public void add(ReadInfo read) {
+        if(read.hasQuality()) {
+            add(read.getSequenceBytes(), 0, read.getSequenceLength(), read.getQualityBytes(), 0, read.getQualityLength(), read.getSequenceOverlap());
+        } else {
+            add(read.getSequenceBytes(), 0, read.getSequenceLength(), null, 0, 0, read.getSequenceOverlap());
+        }
+    }
+    
+    private void add(byte[] sequence, int sequenceOffset, int sequenceLength, byte[] quality, int qualityOffset, int qualityLength, int overlap) {
+        ensureReadCapacity();
+        
+        int sequenceStart = getSequenceDataLength();
+        this.sequences = ensureCapacity(this.sequences, sequenceStart + sequenceLength, sequenceStart);
+        System.arraycopy(sequence, sequenceOffset, this.sequences, sequenceStart, sequenceLength);
+        
+        int qualityStart = getQualityDataLength();
+        if(quality != null) {
+            this.qualities = ensureCapacity(this.qualities, qualityStart + qualityLength, qualityStart);
+            System.arraycopy(quality, qualityOffset, this.qualities, qualityStart, qualityLength);
+        } else {
+            qualityLength = 0;
+        }
+        
+        this.sequenceEnds[this.size] = sequenceStart + sequenceLength;
+        this.qualityEnds[this.size] = qualityStart + qualityLength;
+        this.hasQuality[this.size] = quality != null;
+        this.overlaps[this.size] = overlap;
+        this.size++;
+    }
+    
+    /**
+     * Returns the buffer holding all sequences of the batch.
+     */
+    public byte[] getSequenceBytes() {
+        return this.sequences;
+    }
+    
+    public int getSequenceStart(int idx) {
+        return idx == 0 ? 0 : this.sequenceEnds[idx - 1];
+    }
+    
+    public int getSequenceLength(int idx) {
+        return this.sequenceEnds[idx] - getSequenceStart(idx);
+    }
+    
+    /**
+     * Returns the number of leading bases the idx-th read shares with the
+     * previous chunk of the same record.
+     */
+    public int getSequenceOverlap(int idx) {
+        return this.overlaps[idx];
+    }
+    
+    /**
+     * Returns the number of leading bases of the idx-th read to skip when
+     * counting k-mers of the given size. K-mers lying entirely within the
+     * overlap were already counted in the previous chunk.
+     */
+    public int getKmerSkip(int idx, int kmerSize) {
+        return Math.max(0, this.overlaps[idx] - kmerSize + 1);
+    }
+    
+    /**
+     * Returns the buffer holding all qualities of the batch.
+     */
+    public byte[] getQualityBytes() {
+        return this.qualities;
+    }
+    
+    public boolean hasQuality(int idx) {
+        return this.hasQuality[idx];
+    }
+    
+    public int getQualityStart(int idx) {
+        return idx == 0 ? 0 : this.qualityEnds[idx - 1];
+    }
+    
+    public int getQualityLength(int idx) {
+        return this.qualityEnds[idx] - getQualityStart(idx);
+    }
+}
@@ -15,14 +15,27 @@
  */
 package libra.common.sequence;
 
+import java.nio.charset.Charset;
+
 /**
- *
+ * A read backed by reusable byte buffers. The reader fills the buffers in
+ * place so mappers can scan bases without decoding the read into Strings.
+ * 
  * @author iychoi
  */
 public class ReadInfo {
+    
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final int DEFAULT_BUFFER_SIZE = 256;
+    
     private String filename;
-    private String description;
-    private String sequence;
+    private byte[] description = new byte[DEFAULT_BUFFER_SIZE];
+    private int descriptionLength = -1;
+    private byte[] sequence = new byte[DEFAULT_BUFFER_SIZE];
+    private int sequenceLength = 0;
+    private byte[] quality = new byte[DEFAULT_BUFFER_SIZE];
+    private int qualityLength = -1;
+    private int sequenceOverlap = 0;
     
     public ReadInfo(String filename) {
         this.filename = filename;
@@ -30,27 +43,185 @@ public class ReadInfo {
     
     public ReadInfo(String filename, Read read) {
         this.filename = filename;
-        this.description = read.getDescription();
-        this.sequence = read.getFullSequence();
+        setDescription(read.getDescription());
+        setSequence(read.getFullSequence());
+        setQuality(read.getQuality());
     }
 
     public String getFilename() {
         return this.filename;
     }
     
+    public void clear() {
+        this.descriptionLength = -1;
+        this.sequenceLength = 0;
+        this.qualityLength = -1;
+        this.sequenceOverlap = 0;
+    }
+    
+    public boolean isEmpty() {
+        return this.descriptionLength < 0;
+    }
+    
+    private static byte[] ensureCapacity(byte[] buffer, int capacity, int keep) {
+        if(buffer.length >= capacity) {
+            return buffer;
+        }
+        
+        byte[] newBuffer = new byte[Math.max(capacity, buffer.length * 2)];
+        System.arraycopy(buffer, 0, newBuffer, 0, keep);
+        return newBuffer;
+    }
+    
+    private static int trimStart(byte[] bytes, int start, int end) {
+        while(start < end && (bytes[start] & 0xff) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+    
+    private static int trimEnd(byte[] bytes, int start, int end) {
+        while(end > start && (bytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+    
     public void setDescription(String description) {
-        this.description = description;
+        if(description == null) {
+            this.descriptionLength = -1;
+            return;
+        }
+        
+        byte[] bytes = description.getBytes(CHARSET);
+        setDescription(bytes, 0, bytes.length);
+    }
+    
+    /**
+     * Set the description from bytes, leading and trailing whitespaces are removed.
+     */
+    public void setDescription(byte[] bytes, int offset, int length) {
+        int start = trimStart(bytes, offset, offset + length);
+        int end = trimEnd(bytes, start, offset + length);
+        
+        this.description = ensureCapacity(this.description, end - start, 0);
+        System.arraycopy(bytes, start, this.description, 0, end - start);
+        this.descriptionLength = end - start;
     }
     
     public String getDescription() {
-        return this.description;
+        if(this.descriptionLength < 0) {
+            return null;
+        }
+        return new String(this.description, 0, this.descriptionLength, CHARSET);
     }
     
     public void setSequence(String sequence) {
-        this.sequence = sequence;
+        this.sequenceLength = 0;
+        if(sequence != null) {
+            byte[] bytes = sequence.getBytes(CHARSET);
+            appendSequence(bytes, 0, bytes.length);
+        }
+    }
+    
+    /**
+     * Append a sequence line, leading and trailing whitespaces are removed.
+     */
+    public void appendSequence(byte[] bytes, int offset, int length) {
+        int start = trimStart(bytes, offset, offset + length);
+        int end = trimEnd(bytes, start, offset + length);
+        
+        this.sequence = ensureCapacity(this.sequence, this.sequenceLength + end - start, this.sequenceLength);
+        System.arraycopy(bytes, start, this.sequence, this.sequenceLength, end - start);
+        this.sequenceLength += end - start;
     }
     
     public String getSequence() {
+        return new String(this.sequence, 0, this.sequenceLength, CHARSET);
+    }
+    
+    /**
+     * Returns the sequence buffer. Only the first getSequenceLength() bytes
+     * are valid and the buffer is reused for the next read.
+     */
+    public byte[] getSequenceBytes() {
         return this.sequence;
     }
+    
+    public int getSequenceLength() {
+        return this.sequenceLength;
+    }
+    
+    /**
+     * Truncate the sequence to the given length.
+     */
+    public void setSequenceLength(int length) {
+        if(length < 0 || length > this.sequenceLength) {
+            throw new IllegalArgumentException("invalid sequence length : " + length);
+        }
+        this.sequenceLength = length;
+    }
+    
+    /**
+     * Set the number of leading bases shared with the previous chunk of the
+     * same record. Zero for reads that do not continue a chunked record.
+     */
+    public void setSequenceOverlap(int overlap) {
+        if(overlap < 0 || overlap > this.sequenceLength) {
+            throw new IllegalArgumentException("invalid sequence overlap : " + overlap);
+        }
+        this.sequenceOverlap = overlap;
+    }
+    
+    public int getSequenceOverlap() {
+        return this.sequenceOverlap;
+    }
+    
+    public void setQuality(String quality) {
+        if(quality == null) {
+            this.qualityLength = -1;
+            return;
+        }
+        
+        byte[] bytes = quality.getBytes(CHARSET);
+        setQuality(bytes, 0, bytes.length);
+    }
+    
+    /**
+     * Set the quality from bytes, leading and trailing whitespaces are removed.
+     */
+    public void setQuality(byte[] bytes, int offset, int length) {
+        int start = trimStart(bytes, offset, offset + length);
+        int end = trimEnd(bytes, start, offset + length);
+        
+        this.quality = ensureCapacity(this.quality, end - start, 0);
+        System.arraycopy(bytes, start, this.quality, 0, end - start);
+        this.qualityLength = end - start;
+    }
+    
+    /**
+     * Returns the FASTQ quality string, or null for FASTA reads.
+     */
+    public String getQuality() {
+        if(this.qualityLength < 0) {
+            return null;
+        }
+        return new String(this.quality, 0, this.qualityLength, CHARSET);
+    }
+    
+    public boolean hasQuality() {
+        return this.qualityLength >= 0;
+    }
+    
+    /**
+     * Returns the quality buffer. Only the first getQualityLength() bytes are
+     * valid and the buffer is reused for the next read.
+     */
+    public byte[] getQualityBytes() {
+        return this.quality;
+    }
+    
+    public int getQualityLength() {
+        return Math.max(this.qualityLength, 0);
+    }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.sequence;
+
+import libra.common.helpers.SequenceHelper;
+
+/**
+ * Rolling 2-bit encoder that keeps the forward and the reverse-complement
+ * strands of the last k bases in one or two longs (k <= 64).
+ * Bases are encoded as A=0, C=1, G=2, T=3, so integer order equals the
+ * lexicographic order used by SequenceHelper.canonicalize.
+ *
+ * @author iychoi
+ */
+public class RollingKmerEncoder {
+
+    public static final int MAX_KMER_SIZE = 64;
+
+    private static final int WORD_BASES = 32;
+    private static final byte INVALID_BASE = -1;
+    private static final byte[] BASE_CODE_LUT = new byte[256];
+
+    static {
+        for(int i=0;i<BASE_CODE_LUT.length;i++) {
+            BASE_CODE_LUT[i] = INVALID_BASE;
+        }
+        BASE_CODE_LUT['A'] = 0;
+        BASE_CODE_LUT['a'] = 0;
+        BASE_CODE_LUT['C'] = 1;
+        BASE_CODE_LUT['c'] = 1;
+        BASE_CODE_LUT['G'] = 2;
+        BASE_CODE_LUT['g'] = 2;
+        BASE_CODE_LUT['T'] = 3;
+        BASE_CODE_LUT['t'] = 3;
+    }
+
+    private final int kmerSize;
+    private final boolean doubleWord;
+    private final long mask;
+    private final int reverseShift;
+    private final int packedBytes;
+
+    private long forwardHigh;
+    private long forwardLow;
+    private long reverseHigh;
+    private long reverseLow;
+    private int validBases;
+
+    public RollingKmerEncoder(int kmerSize) {
+        if(kmerSize <= 0 || kmerSize > MAX_KMER_SIZE) {
+            throw new IllegalArgumentException("kmer size must be between 1 and " + MAX_KMER_SIZE + " : " + kmerSize);
+        }
+
+        this.kmerSize = kmerSize;
+        this.doubleWord = kmerSize > WORD_BASES;
+
+        // bits used by the most significant word
+        int topBits = this.doubleWord ? (kmerSize - WORD_BASES) * 2 : kmerSize * 2;
+        if(topBits == 64) {
+            this.mask = -1L;
+        } else {
+            this.mask = (1L << topBits) - 1;
+        }
+        this.reverseShift = topBits - 2;
+        this.packedBytes = SequenceHelper.getCompressedSize(kmerSize);
+
+        reset();
+    }
+
+    public static int getBaseCode(char ch) {
+        if(ch >= BASE_CODE_LUT.length) {
+            return INVALID_BASE;
+        }
+        return BASE_CODE_LUT[ch];
+    }
+
+    public static int getBaseCode(byte ch) {
+        return BASE_CODE_LUT[ch & 0xff];
+    }
+
+    public int getKmerSize() {
+        return this.kmerSize;
+    }
+
+    public int getPackedSize() {
+        return this.packedBytes;
+    }
+
+    public void reset() {
+        this.forwardHigh = 0;
+        this.forwardLow = 0;
+        this.reverseHigh = 0;
+        this.reverseLow = 0;
+        this.validBases = 0;
+    }
+
+    /**
+     * Append a base. Returns true if the last k bases form a valid k-mer.
+     */
+    public boolean push(char ch) {
+        return pushCode(getBaseCode(ch));
+    }
+
+    public boolean push(byte ch) {
+        return pushCode(getBaseCode(ch));
+    }
+
+    public boolean pushCode(int code) {
+        if(code < 0) {
+            // non-ACGT, start over from the next base
+            this.validBases = 0;
+            return false;
+        }
+
+        long complement = 3 - code;
+        if(this.doubleWord) {
+            this.forwardHigh = ((this.forwardHigh << 2) | (this.forwardLow >>> 62)) & this.mask;
+            this.forwardLow = (this.forwardLow << 2) | code;
+            this.reverseLow = (this.reverseLow >>> 2) | (this.reverseHigh << 62);
+            this.reverseHigh = (this.reverseHigh >>> 2) | (complement << this.reverseShift);
+        } else {
+            this.forwardLow = ((this.forwardLow << 2) | code) & this.mask;
+            this.reverseLow = (this.reverseLow >>> 2) | (complement << this.reverseShift);
+        }
+
+        if(this.validBases < this.kmerSize) {
+            this.validBases++;
+        }
+        return this.validBases == this.kmerSize;
+    }
+
+    public boolean isValid() {
+        return this.validBases == this.kmerSize;
+    }
+
+    /**
+     * Returns true if the forward strand is the canonical form.
+     * Palindromic k-mers keep the forward strand.
+     */
+    public boolean isForwardCanonical() {
+        if(this.forwardHigh != this.reverseHigh) {
+            return unsignedLessThan(this.forwardHigh, this.reverseHigh);
+        }
+        return !unsignedLessThan(this.reverseLow, this.forwardLow);
+    }
+
+    public long getForwardHigh() {
+        return this.forwardHigh;
+    }
+
+    public long getForwardLow() {
+        return this.forwardLow;
+    }
+
+    public long getCanonicalHigh() {
+        return isForwardCanonical() ? this.forwardHigh : this.reverseHigh;
+    }
+
+    public long getCanonicalLow() {
+        return isForwardCanonical() ? this.forwardLow : this.reverseLow;
+    }
+
+    /**
+     * Write the canonical k-mer in the CompressedSequenceWritable layout.
+     */
+    public void packCanonical(byte[] buffer) {
+        if(isForwardCanonical()) {
+            SequenceHelper.compress(this.forwardHigh, this.forwardLow, this.kmerSize, buffer);
+        } else {
+            SequenceHelper.compress(this.reverseHigh, this.reverseLow, this.kmerSize, buffer);
+        }
+    }
+
+    private static boolean unsignedLessThan(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.sequence;
+
+/**
+ * Splits a read into super-k-mers - maximal runs of consecutive k-mers that
+ * share the same minimizer. The minimizer of a k-mer is the canonical m-mer
+ * with the smallest hash, so a k-mer and its reverse complement always get
+ * the same minimizer.
+ *
+ * @author iychoi
+ */
+public class SuperKmerSplitter {
+
+    public static final int MAX_MINIMIZER_SIZE = 32;
+
+    private final int kmerSize;
+    private final int minimizerSize;
+    private final int windowSize;
+    private final RollingKmerEncoder mmerEncoder;
+
+    // per-segment m-mer buffers
+    private long[] mmers = new long[256];
+    private long[] hashes = new long[256];
+    private int[] deque = new int[256];
+
+    // super-k-mers found in the current read
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private long[] minimizers = new long[64];
+    private int size;
+    private int current;
+
+    public SuperKmerSplitter(int kmerSize, int minimizerSize) {
+        if(kmerSize <= 0 || kmerSize > RollingKmerEncoder.MAX_KMER_SIZE) {
+            throw new IllegalArgumentException("kmer size must be between 1 and " + RollingKmerEncoder.MAX_KMER_SIZE + " : " + kmerSize);
+        }
+        if(minimizerSize <= 0 || minimizerSize > MAX_MINIMIZER_SIZE || minimizerSize > kmerSize) {
+            throw new IllegalArgumentException("minimizer size must be between 1 and " + Math.min(kmerSize, MAX_MINIMIZER_SIZE) + " : " + minimizerSize);
+        }
+
+        this.kmerSize = kmerSize;
+        this.minimizerSize = minimizerSize;
+        this.windowSize = kmerSize - minimizerSize + 1;
+        this.mmerEncoder = new RollingKmerEncoder(minimizerSize);
+    }
+
+    public int getKmerSize() {
+        return this.kmerSize;
+    }
+
+    public int getMinimizerSize() {
+        return this.minimizerSize;
+    }
+
+    public static long getMinimizerHash(long mmer) {
+        // murmur3 fmix64 - avoids the poly-A bias of lexicographic minimizers
+        long h = mmer;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Split sequence[0, length). Super-k-mers are then visited with next().
+     */
+    public void reset(byte[] sequence, int length) {
+        reset(sequence, 0, length);
+    }
+
+    /**
+     * Split sequence[offset, offset + length). Start and end offsets of
+     * super-k-mers are indices into sequence.
+     */
+    public void reset(byte[] sequence, int offset, int length) {
+        this.size = 0;
+        this.current = -1;
+
+        int end = offset + length;
+        int segmentStart = offset;
+        for(int i=offset;i<=end;i++) {
+            if(i == end || RollingKmerEncoder.getBaseCode(sequence[i]) < 0) {
+                splitSegment(sequence, segmentStart, i);
+                segmentStart = i + 1;
+            }
+        }
+    }
+
+    private void splitSegment(byte[] sequence, int begin, int end) {
+        if(end - begin < this.kmerSize) {
+            return;
+        }
+
+        int mmerCount = end - begin - this.minimizerSize + 1;
+        ensureSegmentCapacity(mmerCount);
+
+        this.mmerEncoder.reset();
+        for(int i=begin;i<end;i++) {
+            if(this.mmerEncoder.push(sequence[i])) {
+                int p = i - this.minimizerSize + 1 - begin;
+                long mmer = this.mmerEncoder.getCanonicalLow();
+                this.mmers[p] = mmer;
+                this.hashes[p] = getMinimizerHash(mmer);
+            }
+        }
+
+        // sliding window minimum over m-mer hashes
+        int head = 0;
+        int tail = 0;
+        for(int p=0;p<mmerCount;p++) {
+            while(tail > head && this.hashes[this.deque[tail - 1]] >= this.hashes[p]) {
+                tail--;
+            }
+            this.deque[tail++] = p;
+
+            int kmerStart = p - this.windowSize + 1;
+            if(kmerStart < 0) {
+                continue;
+            }
+
+            while(this.deque[head] < kmerStart) {
+                head++;
+            }
+
+            long minimizer = this.mmers[this.deque[head]];
+            int absStart = begin + kmerStart;
+            if(this.size > 0 && this.minimizers[this.size - 1] == minimizer && this.ends[this.size - 1] == absStart + this.kmerSize - 1) {
+                // extend by one base
+                this.ends[this.size - 1]++;
+            } else {
+                addSuperKmer(absStart, absStart + this.kmerSize, minimizer);
+            }
+        }
+    }
+
+    private void ensureSegmentCapacity(int mmerCount) {
+        if(this.mmers.length < mmerCount) {
+            int capacity = Math.max(mmerCount, this.mmers.length * 2);
+            this.mmers = new long[capacity];
+            this.hashes = new long[capacity];
+            this.deque = new int[capacity];
+        }
+    }
+
+    private void addSuperKmer(int start, int end, long minimizer) {
+        if(this.size == this.starts.length) {
+            int capacity = this.size * 2;
+            int[] newStarts = new int[capacity];
+            int[] newEnds = new int[capacity];
+            long[] newMinimizers = new long[capacity];
+            System.arraycopy(this.starts, 0, newStarts, 0, this.size);
+            System.arraycopy(this.ends, 0, newEnds, 0, this.size);
+            System.arraycopy(this.minimizers, 0, newMinimizers, 0, this.size);
+            this.starts = newStarts;
+            this.ends = newEnds;
+            this.minimizers = newMinimizers;
+        }
+
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        this.minimizers[this.size] = minimizer;
+        this.size++;
+    }
+
+    public boolean next() {
+        if(this.current + 1 >= this.size) {
+            return false;
+        }
+        this.current++;
+        return true;
+    }
+
+    /**
+     * Start offset of the current super-k-mer in the read (inclusive).
+     */
+    public int getStart() {
+        return this.starts[this.current];
+    }
+
+    /**
+     * End offset of the current super-k-mer in the read (exclusive).
+     */
+    public int getEnd() {
+        return this.ends[this.current];
+    }
+
+    /**
+     * Canonical m-mer of the current super-k-mer, 2-bit encoded.
+     */
+    public long getMinimizer() {
+        return this.minimizers[this.current];
+    }
+
+    public int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Count sketch of item frequencies, used to estimate the second frequency
+ * moment (sum of squared frequencies). Each row estimates the moment with
+ * a relative standard error of sqrt(2 / width) and the median of the rows
+ * is taken. Sketches of the same shape are merged by adding counters.
+ *
+ * @author iychoi
+ */
+public class CountSketch {
+    
+    public static final int DEFAULT_DEPTH = 5;
+    
+    private long[][] counters;
+    
+    /**
+     * Smallest width whose per-row relative standard error is within the
+     * given error
+     */
+    public static int getWidth(double relativeError) {
+        return (int) Math.ceil(2 / (relativeError * relativeError));
+    }
+    
+    public CountSketch(int depth, int width) {
+        if(depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("invalid sketch shape : " + depth + " x " + width);
+        }
+        
+        this.counters = new long[depth][width];
+    }
+    
+    public CountSketch(long[][] counters) {
+        if(counters.length == 0 || counters[0].length == 0) {
+            throw new IllegalArgumentException("empty sketch");
+        }
+        
+        for(long[] row : counters) {
+            if(row.length != counters[0].length) {
+                throw new IllegalArgumentException("rows have different widths");
+            }
+        }
+        
+        this.counters = counters;
+    }
+    
+    public int getDepth() {
+        return this.counters.length;
+    }
+    
+    public int getWidth() {
+        return this.counters[0].length;
+    }
+    
+    public long[][] getCounters() {
+        return this.counters;
+    }
+    
+    public void add(long hash, long count) {
+        int width = this.counters[0].length;
+        for(int i=0;i<this.counters.length;i++) {
+            long h = SketchHash.rehash(hash, i);
+            int bucket = (int) ((h >>> 1) % width);
+            if((h & 1) == 0) {
+                this.counters[i][bucket] += count;
+            } else {
+                this.counters[i][bucket] -= count;
+            }
+        }
+    }
+    
+    public void merge(CountSketch other) {
+        if(other.getDepth() != getDepth() || other.getWidth() != getWidth()) {
+            throw new IllegalArgumentException("cannot merge sketches of different shapes");
+        }
+        
+        for(int i=0;i<this.counters.length;i++) {
+            for(int j=0;j<this.counters[i].length;j++) {
+                this.counters[i][j] += other.counters[i][j];
+            }
+        }
+    }
+    
+    public double estimateSumOfSquare() {
+        double[] estimates = new double[this.counters.length];
+        for(int i=0;i<this.counters.length;i++) {
+            double sum = 0;
+            for(long counter : this.counters[i]) {
+                sum += (double) counter * counter;
+            }
+            estimates[i] = sum;
+        }
+        
+        Arrays.sort(estimates);
+        int mid = estimates.length / 2;
+        if(estimates.length % 2 == 1) {
+            return estimates[mid];
+        }
+        return (estimates[mid - 1] + estimates[mid]) / 2;
+    }
+}
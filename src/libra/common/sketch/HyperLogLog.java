@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.sketch;
+
+/**
+ * HyperLogLog distinct counter over 64-bit hashes. Sketches of the same
+ * precision are merged by taking the register-wise maximum.
+ *
+ * @author iychoi
+ */
+public class HyperLogLog {
+    
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    
+    private int precision;
+    private byte[] registers;
+    
+    /**
+     * Smallest precision whose relative standard error (1.04 / sqrt(m)) is
+     * within the given error
+     */
+    public static int getPrecision(double relativeError) {
+        double registers = Math.pow(1.04 / relativeError, 2);
+        int precision = (int) Math.ceil(Math.log(registers) / Math.log(2));
+        return Math.min(MAX_PRECISION, Math.max(MIN_PRECISION, precision));
+    }
+    
+    public HyperLogLog(int precision) {
+        if(precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + " : " + precision);
+        }
+        
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+    
+    public HyperLogLog(byte[] registers) {
+        int precision = Integer.numberOfTrailingZeros(registers.length);
+        if(registers.length != (1 << precision) || precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("invalid number of registers : " + registers.length);
+        }
+        
+        this.precision = precision;
+        this.registers = registers;
+    }
+    
+    public int getPrecision() {
+        return this.precision;
+    }
+    
+    public byte[] getRegisters() {
+        return this.registers;
+    }
+    
+    public void add(long hash) {
+        int idx = (int) (hash >>> (64 - this.precision));
+        // the guard bit bounds the rank by 64 - precision + 1
+        long rest = (hash << this.precision) | (1L << (this.precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if(rank > this.registers[idx]) {
+            this.registers[idx] = rank;
+        }
+    }
+    
+    public void merge(HyperLogLog other) {
+        if(other.precision != this.precision) {
+            throw new IllegalArgumentException("cannot merge sketches of different precisions");
+        }
+        
+        for(int i=0;i<this.registers.length;i++) {
+            if(other.registers[i] > this.registers[i]) {
+                this.registers[i] = other.registers[i];
+            }
+        }
+    }
+    
+    public long estimate() {
+        int m = this.registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for(byte register : this.registers) {
+            sum += 1.0 / (1L << register);
+            if(register == 0) {
+                zeros++;
+            }
+        }
+        
+        double estimate = getAlpha(m) * m * m / sum;
+        if(estimate <= 2.5 * m && zeros > 0) {
+            // linear counting for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+    
+    private static double getAlpha(int m) {
+        switch(m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.sketch;
+
+/**
+ * 64-bit hashes for sketches.
+ *
+ * @author iychoi
+ */
+public class SketchHash {
+    
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+    
+    /**
+     * murmur3 fmix64
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    public static long hash(long high, long low) {
+        return mix(low ^ mix(high + SEED));
+    }
+    
+    /**
+     * Derive the i-th independent hash from a hash
+     */
+    public static long rehash(long hash, int i) {
+        return mix(hash + (i + 1) * SEED);
+    }
+}
@@ -15,13 +15,23 @@
  */
 package libra.distancematrix;
 
+import java.io.IOException;
 import libra.common.cmdargs.CommandArgumentsParser;
 import libra.distancematrix.common.DistanceMatrixConfig;
+import libra.distancematrix.common.FrequencyFilterAlgorithm;
 import libra.distancematrix.common.RunMode;
 import libra.distancematrix.kmersimilarity_m.KmerSimilarityMap;
 import libra.distancematrix.kmersimilarity_r.KmerSimilarityReduce;
 import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.FileTableHelper;
+import libra.preprocess.common.helpers.KmerHistogramHelper;
+import libra.preprocess.common.helpers.KmerIndexHelper;
+import libra.preprocess.common.kmerhistogram.KmerHistogram;
+import libra.preprocess.common.kmerhistogram.KmerHistogramTable;
+import libra.preprocess.common.kmerindex.KmerIndexFrequencyBounds;
+import libra.preprocess.common.kmerindex.KmerIndexTable;
+import libra.preprocess.common.kmerstatistics.KmerStatistics;
+import libra.preprocess.common.kmerstatistics.KmerStatisticsTable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -73,6 +83,10 @@ public class DistanceMatrix extends Configured implements Tool {
         
         int res = 0;
         try {
+            if(dmConfig.getFrequencyFilterAlgorithm() != FrequencyFilterAlgorithm.NONE) {
+                applyFrequencyFilter(dmConfig, common_conf);
+            }
+            
             if(dmConfig.getRunMode() == RunMode.MAP) {
                 KmerSimilarityMap kmerSimilarityMap = new KmerSimilarityMap();
                 res = kmerSimilarityMap.runJob(new Configuration(common_conf), dmConfig);
@@ -95,6 +109,75 @@ public class DistanceMatrix extends Configured implements Tool {
         return res;
     }
     
+    /**
+     * Choose frequency bounds of every sample from its histogram and compute
+     * statistics of the k-mers within them. Bounds are passed to index
+     * readers through conf.
+     */
+    private void applyFrequencyFilter(DistanceMatrixConfig dmConfig, Configuration conf) throws IOException {
+        FrequencyFilterAlgorithm algorithm = dmConfig.getFrequencyFilterAlgorithm();
+        
+        for(FileTable fileTable : dmConfig.getFileTables()) {
+            Path kmerIndexTablePath = new Path(dmConfig.getKmerIndexPath(), KmerIndexHelper.makeKmerIndexTableFileName(fileTable.getName()));
+            FileSystem fs = kmerIndexTablePath.getFileSystem(conf);
+            KmerIndexTable kmerIndexTable = KmerIndexTable.createInstance(fs, kmerIndexTablePath);
+            
+            Path histogramTablePath = new Path(dmConfig.getKmerStatisticsPath(), KmerHistogramHelper.makeKmerHistogramTableFileName(fileTable.getName()));
+            if(!fs.exists(histogramTablePath)) {
+                throw new IOException("cannot find frequency histograms of " + fileTable.getName() + " - the index needs to be rebuilt to be filtered");
+            }
+            KmerHistogram[] histograms = KmerHistogramTable.createInstance(fs, histogramTablePath).getHistogram().toArray(new KmerHistogram[0]);
+            
+            int[] frequencyMin = new int[histograms.length];
+            int[] frequencyMax = new int[histograms.length];
+            KmerStatisticsTable statisticsTable = new KmerStatisticsTable();
+            statisticsTable.setName(fileTable.getName());
+            
+            for(int i=0;i<histograms.length;i++) {
+                // only k-mers within bounds of the index are read
+                int indexMin = 1;
+                int indexMax = Integer.MAX_VALUE;
+                if(kmerIndexTable.hasFrequencyBounds()) {
+                    indexMin = kmerIndexTable.getFrequencyMin()[i];
+                    indexMax = kmerIndexTable.getFrequencyMax()[i];
+                }
+                
+                int min = indexMin;
+                int max = indexMax;
+                switch(algorithm) {
+                    case PERCENTILE:
+                        min = histograms[i].getPercentile(dmConfig.getLowPercentile(), indexMin, indexMax);
+                        max = histograms[i].getPercentile(dmConfig.getHighPercentile(), indexMin, indexMax);
+                        break;
+                    case KNEE:
+                        min = histograms[i].getKnee(indexMin, indexMax);
+                        max = histograms[i].getPercentile(dmConfig.getHighPercentile(), min, indexMax);
+                        break;
+                    default:
+                        throw new IOException("Unknown frequency filter algorithm specified : " + algorithm.toString());
+                }
+                
+                if(min < 0 || max < 0) {
+                    // no k-mers
+                    min = indexMin;
+                    max = indexMax;
+                }
+                
+                frequencyMin[i] = min;
+                frequencyMax[i] = max;
+                LOG.info(String.format("Sample %s - frequency filter [%d, %d]", histograms[i].getName(), min, max));
+                
+                KmerStatistics statistics = new KmerStatistics(histograms[i].getName());
+                statistics.setTFWeights(histograms[i].getStatisticsPart(min, max));
+                statisticsTable.addStatistics(statistics);
+            }
+            
+            KmerIndexFrequencyBounds bounds = new KmerIndexFrequencyBounds(fileTable.getName(), frequencyMin, frequencyMax);
+            bounds.saveTo(conf);
+            
+            dmConfig.addStatisticsTable(statisticsTable);
+        }
+    }
 
     private static void printHelp() {
         System.out.println("============================================================");
@@ -17,6 +17,7 @@ package libra.distancematrix;
 
 import libra.common.cmdargs.CommandArgumentsBase;
 import libra.distancematrix.common.DistanceMatrixConfig;
+import libra.distancematrix.common.FrequencyFilterAlgorithm;
 import libra.distancematrix.common.RunMode;
 import libra.distancematrix.common.ScoreAlgorithm;
 import libra.distancematrix.common.WeightAlgorithm;
@@ -54,6 +55,41 @@ public class DistanceMatrixCmdArgs extends CommandArgumentsBase {
         return RunMode.fromString(this.runMode);
     }
     
+    @Option(name = "--splits", usage = "specify number of map tasks per index partition in MAP mode (total-ordered indices only)")
+    protected int splitsPerPartition = DistanceMatrixConfig.DEFAULT_SPLITS_PER_PARTITION;
+    
+    public int getSplitsPerPartition() {
+        return this.splitsPerPartition;
+    }
+    
+    @Option(name = "-f", aliases = "--filter", usage = "specify frequency filter algorithm applied to indices")
+    protected String frequencyFilterAlgorithm = DistanceMatrixConfig.DEFAULT_FREQUENCY_FILTER_ALGORITHM.name();
+    
+    public FrequencyFilterAlgorithm getFrequencyFilterAlgorithm() {
+        return FrequencyFilterAlgorithm.fromString(this.frequencyFilterAlgorithm);
+    }
+    
+    @Option(name = "--lowpercentile", usage = "specify percentile of the lowest k-mer frequency kept by the PERCENTILE filter")
+    protected double lowPercentile = DistanceMatrixConfig.DEFAULT_LOW_PERCENTILE;
+    
+    public double getLowPercentile() {
+        return this.lowPercentile;
+    }
+    
+    @Option(name = "--highpercentile", usage = "specify percentile of the highest k-mer frequency kept by PERCENTILE and KNEE filters")
+    protected double highPercentile = DistanceMatrixConfig.DEFAULT_HIGH_PERCENTILE;
+    
+    public double getHighPercentile() {
+        return this.highPercentile;
+    }
+    
+    @Option(name = "--readahead", usage = "specify total size in bytes of k-mer index records read ahead of the join, shared by index readers (0 disables)")
+    protected long readAheadBytes = DistanceMatrixConfig.DEFAULT_READ_AHEAD_BYTES;
+    
+    public long getReadAheadBytes() {
+        return this.readAheadBytes;
+    }
+    
     @Option(name = "-o", usage = "specify output path")
     private String outputPath = DistanceMatrixConfig.DEFAULT_OUTPUT_PATH;
         
@@ -79,7 +115,11 @@ public class DistanceMatrixCmdArgs extends CommandArgumentsBase {
            return false;
         }
         
-        if(this.preprocessOutputPath == null || this.outputPath == null) {
+        if(this.preprocessOutputPath == null || this.outputPath == null || this.splitsPerPartition <= 0 || this.readAheadBytes < 0) {
+            return false;
+        }
+        
+        if(this.lowPercentile < 0 || this.highPercentile > 100 || this.lowPercentile > this.highPercentile) {
             return false;
         }
         
@@ -93,6 +133,11 @@ public class DistanceMatrixCmdArgs extends CommandArgumentsBase {
         config.setWeightAlgorithm(getWeightAlgorithm());
         config.setScoreAlgorithm(getScoreAlgorithm());
         config.setRunMode(getRunMode());
+        config.setSplitsPerPartition(this.splitsPerPartition);
+        config.setFrequencyFilterAlgorithm(getFrequencyFilterAlgorithm());
+        config.setLowPercentile(this.lowPercentile);
+        config.setHighPercentile(this.highPercentile);
+        config.setReadAheadBytes(this.readAheadBytes);
         config.setPreprocessRootPath(this.preprocessOutputPath);
         config.setOutputPath(this.outputPath);
         return config;
@@ -25,6 +25,8 @@ import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.FileTableHelper;
 import libra.preprocess.common.helpers.KmerIndexHelper;
 import libra.preprocess.common.helpers.KmerStatisticsHelper;
+import libra.preprocess.common.kmerindex.KmerIndexReadAheadReader;
+import libra.preprocess.common.kmerstatistics.KmerStatisticsTable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -41,6 +43,11 @@ public class DistanceMatrixConfig {
     public static WeightAlgorithm DEFAULT_WEIGHT_ALGORITHM = WeightAlgorithm.LOGARITHM;
     public static ScoreAlgorithm DEFAULT_SCORE_ALGORITHM = ScoreAlgorithm.COSINESIMILARITY;
     public static RunMode DEFAULT_RUN_MODE = RunMode.MAP;
+    public static final int DEFAULT_SPLITS_PER_PARTITION = 1;
+    public static FrequencyFilterAlgorithm DEFAULT_FREQUENCY_FILTER_ALGORITHM = FrequencyFilterAlgorithm.NONE;
+    public static final double DEFAULT_LOW_PERCENTILE = 0;
+    public static final double DEFAULT_HIGH_PERCENTILE = 100;
+    public static final long DEFAULT_READ_AHEAD_BYTES = KmerIndexReadAheadReader.DEFAULT_READ_AHEAD_BYTES;
     
     private static final String HADOOP_CONFIG_KEY = "libra.distancematrix.common.distancematrixconfig";
     
@@ -52,6 +59,12 @@ public class DistanceMatrixConfig {
     private WeightAlgorithm weightAlgorithm = WeightAlgorithm.LOGARITHM;
     private ScoreAlgorithm scoreAlgorithm = ScoreAlgorithm.COSINESIMILARITY;
     private RunMode runMode = RunMode.MAP;
+    private int splitsPerPartition = DEFAULT_SPLITS_PER_PARTITION;
+    private FrequencyFilterAlgorithm frequencyFilterAlgorithm = FrequencyFilterAlgorithm.NONE;
+    private double lowPercentile = DEFAULT_LOW_PERCENTILE;
+    private double highPercentile = DEFAULT_HIGH_PERCENTILE;
+    private long readAheadBytes = DEFAULT_READ_AHEAD_BYTES;
+    private List<KmerStatisticsTable> statisticsTables = new ArrayList<KmerStatisticsTable>();
     private String outputPath = DEFAULT_OUTPUT_PATH;
     
     private List<FileTable> fileTables = new ArrayList<FileTable>();
@@ -137,6 +150,85 @@ public class DistanceMatrixConfig {
         this.scoreAlgorithm = scoreAlgorithm;
     }
     
+    @JsonProperty("splits_per_partition")
+    public int getSplitsPerPartition() {
+        return this.splitsPerPartition;
+    }
+    
+    @JsonProperty("splits_per_partition")
+    public void setSplitsPerPartition(int splitsPerPartition) {
+        this.splitsPerPartition = splitsPerPartition;
+    }
+    
+    @JsonProperty("frequency_filter_algorithm")
+    public FrequencyFilterAlgorithm getFrequencyFilterAlgorithm() {
+        return this.frequencyFilterAlgorithm;
+    }
+    
+    @JsonProperty("frequency_filter_algorithm")
+    public void setFrequencyFilterAlgorithm(FrequencyFilterAlgorithm frequencyFilterAlgorithm) {
+        this.frequencyFilterAlgorithm = frequencyFilterAlgorithm;
+    }
+    
+    @JsonProperty("low_percentile")
+    public double getLowPercentile() {
+        return this.lowPercentile;
+    }
+    
+    @JsonProperty("low_percentile")
+    public void setLowPercentile(double lowPercentile) {
+        this.lowPercentile = lowPercentile;
+    }
+    
+    @JsonProperty("high_percentile")
+    public double getHighPercentile() {
+        return this.highPercentile;
+    }
+    
+    @JsonProperty("high_percentile")
+    public void setHighPercentile(double highPercentile) {
+        this.highPercentile = highPercentile;
+    }
+    
+    @JsonProperty("read_ahead_bytes")
+    public long getReadAheadBytes() {
+        return this.readAheadBytes;
+    }
+    
+    @JsonProperty("read_ahead_bytes")
+    public void setReadAheadBytes(long readAheadBytes) {
+        this.readAheadBytes = readAheadBytes;
+    }
+    
+    /**
+     * Statistics of filtered indices, used instead of statistics tables
+     * under the statistics path
+     */
+    @JsonProperty("statistics_table")
+    public Collection<KmerStatisticsTable> getStatisticsTables() {
+        return this.statisticsTables;
+    }
+    
+    @JsonProperty("statistics_table")
+    public void addStatisticsTables(Collection<KmerStatisticsTable> statisticsTables) {
+        this.statisticsTables.addAll(statisticsTables);
+    }
+    
+    @JsonIgnore
+    public void addStatisticsTable(KmerStatisticsTable statisticsTable) {
+        this.statisticsTables.add(statisticsTable);
+    }
+    
+    @JsonIgnore
+    public KmerStatisticsTable getStatisticsTable(String name) {
+        for(KmerStatisticsTable statisticsTable : this.statisticsTables) {
+            if(statisticsTable.getName().equals(name)) {
+                return statisticsTable;
+            }
+        }
+        return null;
+    }
+    
     @JsonProperty("run_mode")
     public RunMode getRunMode() {
         return this.runMode;
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.distancematrix.common;
+
+/**
+ * Frequency filters applied to indices when computing distances, derived
+ * from frequency histograms saved by the preprocessor.
+ *
+ * @author iychoi
+ */
+public enum FrequencyFilterAlgorithm {
+    NONE,
+    PERCENTILE,
+    KNEE;
+    
+    public static FrequencyFilterAlgorithm fromString(String alg) {
+        try {
+            FrequencyFilterAlgorithm fa = FrequencyFilterAlgorithm.valueOf(alg.trim().toUpperCase());
+            return fa;
+        } catch (Exception ex) {
+            // fall
+        }
+        
+        if("n".equalsIgnoreCase(alg.trim())) {
+            return NONE;
+        } else if("pct".equalsIgnoreCase(alg.trim())) {
+            return PERCENTILE;
+        }
+        
+        return NONE;
+    }
+}
@@ -34,6 +34,7 @@ import libra.distancematrix.common.kmersimilarity.KmerSimilarityResultPartRecord
 import libra.distancematrix.common.kmersimilarity.ScoreFactory;
 import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.FileTableHelper;
+import libra.preprocess.common.kmerindex.KmerIndexReadAheadReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -136,8 +137,10 @@ public class KmerSimilarityMap {
         matchInputFormatConfig.setKmerSize(kmerSize);
         matchInputFormatConfig.setFileTablePath(dmConfig.getFileTablePath());
         matchInputFormatConfig.setKmerIndexPath(dmConfig.getKmerIndexPath());
+        matchInputFormatConfig.setSplitsPerPartition(dmConfig.getSplitsPerPartition());
         
         KmerMatchInputFormat.setInputFormatConfig(job, matchInputFormatConfig);
+        KmerIndexReadAheadReader.setReadAheadBytes(conf, dmConfig.getReadAheadBytes());
         
         FileOutputFormat.setOutputPath(job, new Path(dmConfig.getOutputPath()));
         job.setOutputFormatClass(TextOutputFormat.class);
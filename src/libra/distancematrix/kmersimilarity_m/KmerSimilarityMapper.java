@@ -19,8 +19,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
 import libra.common.kmermatch.KmerMatchFileMapping;
 import libra.common.kmermatch.KmerMatchResult;
 import libra.distancematrix.common.DistanceMatrixConfig;
@@ -48,7 +48,7 @@ import org.apache.hadoop.mapreduce.Mapper;
  *
  * @author iychoi
  */
-public class KmerSimilarityMapper extends Mapper<CompressedSequenceWritable, KmerMatchResult, Text, Text> {
+public class KmerSimilarityMapper extends Mapper<AKmerWritable, KmerMatchResult, Text, Text> {
     
     private static final Log LOG = LogFactory.getLog(KmerSimilarityMapper.class);
     
@@ -99,11 +99,15 @@ public class KmerSimilarityMapper extends Mapper<CompressedSequenceWritable, Kme
         int idx = 0;
         KmerStatistics[] statisticsArray = new KmerStatistics[valuesLen];
         for(FileTable fileTable : this.dmConfig.getFileTables()) {
-            String statisticsTableFilename = KmerStatisticsHelper.makeKmerStatisticsTableFileName(fileTable.getName());
-            Path statisticsTablePath = new Path(this.dmConfig.getKmerStatisticsPath(), statisticsTableFilename);
-            FileSystem fs = statisticsTablePath.getFileSystem(conf);
+            // statistics of indices filtered at join time are given
+            KmerStatisticsTable statisticsTable = this.dmConfig.getStatisticsTable(fileTable.getName());
+            if(statisticsTable == null) {
+                String statisticsTableFilename = KmerStatisticsHelper.makeKmerStatisticsTableFileName(fileTable.getName());
+                Path statisticsTablePath = new Path(this.dmConfig.getKmerStatisticsPath(), statisticsTableFilename);
+                FileSystem fs = statisticsTablePath.getFileSystem(conf);
 
-            KmerStatisticsTable statisticsTable = KmerStatisticsTable.createInstance(fs, statisticsTablePath);
+                statisticsTable = KmerStatisticsTable.createInstance(fs, statisticsTablePath);
+            }
             for(KmerStatistics statistics : statisticsTable.getStatistics()) {
                 String sequenceFile = this.fileMapping.getSampleFileFromID(idx);
                 if(!sequenceFile.equals(statistics.getName())) {
@@ -119,7 +123,7 @@ public class KmerSimilarityMapper extends Mapper<CompressedSequenceWritable, Kme
     }
     
     @Override
-    protected void map(CompressedSequenceWritable key, KmerMatchResult value, Context context) throws IOException, InterruptedException {
+    protected void map(AKmerWritable key, KmerMatchResult value, Context context) throws IOException, InterruptedException {
         int valuesLen = this.fileMapping.getSize();
         
         IntArrayWritable[] valueArray = value.getVals();
@@ -17,15 +17,21 @@ package libra.distancematrix.kmersimilarity_r;
 
 import java.io.IOException;
 import java.util.Collection;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
 import libra.common.kmermatch.KmerMatchFileMapping;
 import libra.distancematrix.common.DistanceMatrixConfig;
 import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.KmerIndexHelper;
+import libra.preprocess.common.kmerindex.KmerIndexFrequencyFilter;
+import libra.preprocess.common.kmerindex.KmerIndexTable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 
@@ -33,7 +39,7 @@ import org.apache.hadoop.mapreduce.lib.input.FileSplit;
  *
  * @author iychoi
  */
-public class KmerSimilarityMapper extends Mapper<CompressedSequenceWritable, IntArrayWritable, CompressedSequenceWritable, IntArrayWritable> {
+public class KmerSimilarityMapper extends Mapper<AKmerWritable, IntArrayWritable, AKmerWritable, IntArrayWritable> {
     
     private static final Log LOG = LogFactory.getLog(KmerSimilarityMapper.class);
     
@@ -41,7 +47,7 @@ public class KmerSimilarityMapper extends Mapper<CompressedSequenceWritable, Int
     private FileTable fileTable;
     private String[] samplesInFileTable;
     private KmerMatchFileMapping fileMapping;
-    
+    private KmerIndexFrequencyFilter frequencyFilter;
     
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
@@ -49,7 +55,12 @@ public class KmerSimilarityMapper extends Mapper<CompressedSequenceWritable, Int
         
         this.dmConfig = DistanceMatrixConfig.createInstance(conf);
         FileSplit inputSplit = (FileSplit)context.getInputSplit();
-        String fileTableName = KmerIndexHelper.getFileTableName(inputSplit.getPath().getParent().getName());
+        // data file of a MapFile, or a blocked index data file
+        Path indexDataFile = inputSplit.getPath();
+        if(indexDataFile.getName().equals(MapFile.DATA_FILE_NAME)) {
+            indexDataFile = indexDataFile.getParent();
+        }
+        String fileTableName = KmerIndexHelper.getFileTableName(indexDataFile.getName());
         for(FileTable table : this.dmConfig.getFileTables()) {
             if(table.getName().equals(fileTableName)) {
                 this.fileTable = table;
@@ -62,11 +73,22 @@ public class KmerSimilarityMapper extends Mapper<CompressedSequenceWritable, Int
         
         this.fileMapping = KmerMatchFileMapping.createInstance(conf);
         
+        Path kmerIndexTablePath = new Path(this.dmConfig.getKmerIndexPath(), KmerIndexHelper.makeKmerIndexTableFileName(fileTableName));
+        FileSystem fs = kmerIndexTablePath.getFileSystem(conf);
+        KmerIndexTable kmerIndexTable = KmerIndexTable.createInstance(fs, kmerIndexTablePath);
+        // null unless built in one pass or filtered at join time
+        this.frequencyFilter = KmerIndexFrequencyFilter.getFilter(kmerIndexTable, conf);
     }
     
     @Override
-    protected void map(CompressedSequenceWritable key, IntArrayWritable value, Context context) throws IOException, InterruptedException {
+    protected void map(AKmerWritable key, IntArrayWritable value, Context context) throws IOException, InterruptedException {
         int[] value_arr = value.get();
+        if(this.frequencyFilter != null) {
+            value_arr = this.frequencyFilter.filter(value_arr);
+            if(value_arr == null) {
+                return;
+            }
+        }
         
         for(int i=0;i<value_arr.length/2;i++) {
             int file_id_in_table = value_arr[i*2];
@@ -76,7 +98,7 @@ public class KmerSimilarityMapper extends Mapper<CompressedSequenceWritable, Int
             value_arr[i*2] = file_id;
         }
         
-        context.write(key, new IntArrayWritable(value_arr));
+        context.write(key, new SampleFrequencyArrayWritable(value_arr));
     }
     
     private int convertFileIDToGlobalFileID(int file_id_in_table) throws IOException {
@@ -16,8 +16,8 @@
 package libra.distancematrix.kmersimilarity_r;
 
 
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.mapreduce.Partitioner;
@@ -26,12 +26,12 @@ import org.apache.hadoop.mapreduce.Partitioner;
  *
  * @author iychoi
  */
-public class KmerSimilarityPartitioner extends Partitioner<CompressedSequenceWritable, IntArrayWritable> {
+public class KmerSimilarityPartitioner extends Partitioner<AKmerWritable, IntArrayWritable> {
 
     private static final Log LOG = LogFactory.getLog(KmerSimilarityPartitioner.class);
     
     @Override
-    public int getPartition(CompressedSequenceWritable key, IntArrayWritable value, int numReduceTasks) {
-        return (key.getSequence().hashCode() & Integer.MAX_VALUE) % numReduceTasks;
+    public int getPartition(AKmerWritable key, IntArrayWritable value, int numReduceTasks) {
+        return (key.hashCode() & Integer.MAX_VALUE) % numReduceTasks;
     }
 }
@@ -18,8 +18,8 @@ package libra.distancematrix.kmersimilarity_r;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
 import libra.common.helpers.FileSystemHelper;
 import libra.common.report.Report;
 import libra.common.helpers.MapReduceHelper;
@@ -33,6 +33,8 @@ import libra.distancematrix.common.kmersimilarity.KmerSimilarityResultPartRecord
 import libra.distancematrix.common.kmersimilarity.ScoreFactory;
 import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.KmerIndexHelper;
+import libra.preprocess.common.kmerindex.KmerIndexBlockInputFormat;
+import libra.preprocess.common.kmerindex.KmerIndexFormat;
 import libra.preprocess.common.kmerindex.KmerIndexTable;
 import libra.preprocess.common.kmerindex.KmerIndexTableRecord;
 import org.apache.commons.logging.Log;
@@ -44,9 +46,11 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.LineRecordReader;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
@@ -96,9 +100,15 @@ public class KmerSimilarityReduce {
         
         // Mapper
         job.setMapperClass(KmerSimilarityMapper.class);
-        job.setInputFormatClass(SequenceFileInputFormat.class);
-        job.setMapOutputKeyClass(CompressedSequenceWritable.class);
-        job.setMapOutputValueClass(IntArrayWritable.class);
+        KmerIndexFormat indexFormat = KmerIndexHelper.getIndexFormat(conf, cConfig.getKmerIndexPath(), cConfig.getFileTables());
+        if(indexFormat == KmerIndexFormat.BLOCKED) {
+            job.setInputFormatClass(KmerIndexBlockInputFormat.class);
+        } else {
+            job.setInputFormatClass(SequenceFileInputFormat.class);
+        }
+        KmerKeyType keyType = KmerIndexHelper.getKeyType(conf, cConfig.getKmerIndexPath(), cConfig.getFileTables());
+        job.setMapOutputKeyClass(keyType.getKeyClass());
+        job.setMapOutputValueClass(SampleFrequencyArrayWritable.class);
         
         // Combiner
         job.setCombinerClass(KmerSimilarityCombiner.class);
@@ -127,12 +137,16 @@ public class KmerSimilarityReduce {
             for(KmerIndexTableRecord record : kmerIndexTable.getRecord()) {
                 String indexDataFile = record.getIndexDataFile();
                 Path kmerIndexDataFilePath = new Path(cConfig.getKmerIndexPath(), indexDataFile);
-                Path kmerIndexDataFilePath_DATA = new Path(kmerIndexDataFilePath, "data");
-                inputKmerIndexDataFiles.add(kmerIndexDataFilePath_DATA);
+                if(indexFormat == KmerIndexFormat.BLOCKED) {
+                    inputKmerIndexDataFiles.add(kmerIndexDataFilePath);
+                } else {
+                    Path kmerIndexDataFilePath_DATA = new Path(kmerIndexDataFilePath, MapFile.DATA_FILE_NAME);
+                    inputKmerIndexDataFiles.add(kmerIndexDataFilePath_DATA);
+                }
             }
         }
         
-        SequenceFileInputFormat.addInputPaths(job, FileSystemHelper.makeCommaSeparated(inputKmerIndexDataFiles.toArray(new Path[0])));
+        FileInputFormat.addInputPaths(job, FileSystemHelper.makeCommaSeparated(inputKmerIndexDataFiles.toArray(new Path[0])));
         LOG.info("Input kmer index files : " + inputKmerIndexFiles.size());
         for(Path inputFile : inputKmerIndexFiles) {
             LOG.info("> " + inputFile.toString());
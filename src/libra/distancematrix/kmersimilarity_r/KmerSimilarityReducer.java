@@ -16,8 +16,8 @@
 package libra.distancematrix.kmersimilarity_r;
 
 import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
 import libra.common.kmermatch.KmerMatchFileMapping;
 import libra.distancematrix.common.DistanceMatrixConfig;
 import libra.distancematrix.common.ScoreAlgorithm;
@@ -43,7 +43,7 @@ import org.apache.hadoop.mapreduce.Reducer;
  *
  * @author iychoi
  */
-public class KmerSimilarityReducer extends Reducer<CompressedSequenceWritable, IntArrayWritable, Text, Text> {
+public class KmerSimilarityReducer extends Reducer<AKmerWritable, IntArrayWritable, Text, Text> {
     
     private static final Log LOG = LogFactory.getLog(KmerSimilarityReducer.class);
     
@@ -83,11 +83,15 @@ public class KmerSimilarityReducer extends Reducer<CompressedSequenceWritable, I
         int idx = 0;
         KmerStatistics[] statisticsArray = new KmerStatistics[valuesLen];
         for(FileTable fileTable : this.dmConfig.getFileTables()) {
-            String statisticsTableFilename = KmerStatisticsHelper.makeKmerStatisticsTableFileName(fileTable.getName());
-            Path statisticsTablePath = new Path(this.dmConfig.getKmerStatisticsPath(), statisticsTableFilename);
-            FileSystem fs = statisticsTablePath.getFileSystem(conf);
+            // statistics of indices filtered at join time are given
+            KmerStatisticsTable statisticsTable = this.dmConfig.getStatisticsTable(fileTable.getName());
+            if(statisticsTable == null) {
+                String statisticsTableFilename = KmerStatisticsHelper.makeKmerStatisticsTableFileName(fileTable.getName());
+                Path statisticsTablePath = new Path(this.dmConfig.getKmerStatisticsPath(), statisticsTableFilename);
+                FileSystem fs = statisticsTablePath.getFileSystem(conf);
 
-            KmerStatisticsTable statisticsTable = KmerStatisticsTable.createInstance(fs, statisticsTablePath);
+                statisticsTable = KmerStatisticsTable.createInstance(fs, statisticsTablePath);
+            }
             for(KmerStatistics statistics : statisticsTable.getStatistics()) {
                 String sampleFile = this.fileMapping.getSampleFileFromID(idx);
                 if(!sampleFile.equals(statistics.getName())) {
@@ -103,7 +107,7 @@ public class KmerSimilarityReducer extends Reducer<CompressedSequenceWritable, I
     }
     
     @Override
-    protected void reduce(CompressedSequenceWritable key, Iterable<IntArrayWritable> values, Context context) throws IOException, InterruptedException {
+    protected void reduce(AKmerWritable key, Iterable<IntArrayWritable> values, Context context) throws IOException, InterruptedException {
         // compute normal
         int valuesLen = this.fileMapping.getSize();
         double[] score_array = new double[valuesLen];
@@ -19,8 +19,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
-import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
 import libra.common.helpers.FileSystemHelper;
 import libra.common.report.Report;
 import libra.common.helpers.MapReduceHelper;
@@ -35,6 +35,7 @@ import libra.merge.common.MergeConfig;
 import libra.merge.common.MergeConfigException;
 import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.FileTableHelper;
+import libra.preprocess.common.helpers.KmerIndexHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -98,12 +99,13 @@ public class MergeMap {
         // Mapper
         job.setMapperClass(MergeMapper.class);
         job.setInputFormatClass(KmerMatchInputFormat.class);
-        job.setMapOutputKeyClass(CompressedSequenceWritable.class);
-        job.setMapOutputValueClass(IntArrayWritable.class);
+        KmerKeyType keyType = KmerIndexHelper.getKeyType(conf, mConfig.getKmerIndexPath(), mConfig.getFileTables());
+        job.setMapOutputKeyClass(keyType.getKeyClass());
+        job.setMapOutputValueClass(SampleFrequencyArrayWritable.class);
         
         // Specify key / value
-        job.setOutputKeyClass(CompressedSequenceWritable.class);
-        job.setOutputValueClass(IntArrayWritable.class);
+        job.setOutputKeyClass(keyType.getKeyClass());
+        job.setOutputValueClass(SampleFrequencyArrayWritable.class);
 
         // Inputs
         List<Path> inputFileTableFiles = new ArrayList<Path>();
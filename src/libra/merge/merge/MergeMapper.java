@@ -17,8 +17,9 @@ package libra.merge.merge;
 
 import java.io.IOException;
 import java.util.Hashtable;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
 import libra.common.kmermatch.KmerMatchFileMapping;
 import libra.common.kmermatch.KmerMatchResult;
 import libra.merge.common.MergeConfig;
@@ -34,7 +35,7 @@ import org.apache.hadoop.mapreduce.Mapper;
  *
  * @author iychoi
  */
-public class MergeMapper extends Mapper<CompressedSequenceWritable, KmerMatchResult, CompressedSequenceWritable, IntArrayWritable> {
+public class MergeMapper extends Mapper<AKmerWritable, KmerMatchResult, AKmerWritable, IntArrayWritable> {
     
     private static final Log LOG = LogFactory.getLog(MergeMapper.class);
     
@@ -60,7 +61,7 @@ public class MergeMapper extends Mapper<CompressedSequenceWritable, KmerMatchRes
     }
     
     @Override
-    protected void map(CompressedSequenceWritable key, KmerMatchResult value, Context context) throws IOException, InterruptedException {
+    protected void map(AKmerWritable key, KmerMatchResult value, Context context) throws IOException, InterruptedException {
         IntArrayWritable[] valueArray = value.getVals();
         Path[] kmerIndexTablePathArray = value.getKmerIndexTablePaths();
         
@@ -96,7 +97,7 @@ public class MergeMapper extends Mapper<CompressedSequenceWritable, KmerMatchRes
             }
         }
         
-        context.write(key, new IntArrayWritable(newValueArray));
+        context.write(key, new SampleFrequencyArrayWritable(newValueArray));
     }
     
     private int convertFileTableNameToFileTableID(String fileTableName) {
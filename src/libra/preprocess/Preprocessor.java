@@ -22,8 +22,11 @@ import libra.preprocess.common.PreprocessorConfig;
 import libra.preprocess.common.PreprocessorRoundConfig;
 import libra.preprocess.common.helpers.FileTableHelper;
 import libra.preprocess.common.filetable.FileTable;
+import libra.preprocess.common.kmercount.KmerCountFilePathFilter;
+import libra.preprocess.common.kmerindex.KmerRangeSampler;
 import libra.preprocess.common.samplegroup.SampleGroup;
 import libra.preprocess.common.samplegroup.SampleGrouper;
+import libra.preprocess.common.samplegroup.SampleSizeEstimator;
 import libra.preprocess.stage1.KmerFilterBuilder;
 import libra.preprocess.stage2.KmerIndexBuilder;
 import org.apache.commons.logging.Log;
@@ -65,7 +68,12 @@ public class Preprocessor extends Configured implements Tool {
         PreprocessorConfig ppConfig = cmdParams.getPreprocessorConfig();
         
         // find input files
-        Path[] inputFiles = FileSystemHelper.getAllSamplePaths(common_conf, ppConfig.getSamplePath());
+        Path[] inputFiles;
+        if(ppConfig.isCountInput()) {
+            inputFiles = FileSystemHelper.getAllSamplePaths(common_conf, FileSystemHelper.makePathFromString(common_conf, ppConfig.getSamplePath()), new KmerCountFilePathFilter());
+        } else {
+            inputFiles = FileSystemHelper.getAllSamplePaths(common_conf, ppConfig.getSamplePath());
+        }
         
         // group samples
         SampleGrouper grouper = new SampleGrouper(ppConfig.getGroupSize(), ppConfig.getMaxGroupNum());
@@ -79,15 +87,60 @@ public class Preprocessor extends Configured implements Tool {
             tables[i] = new FileTable(group, ppConfig.getKmerSize());
         }
         
+        // read subsampling
+        if(ppConfig.isSubsampling()) {
+            SampleSizeEstimator estimator = new SampleSizeEstimator(common_conf);
+            estimator.setChunking(ppConfig.getReadChunkLength(), ppConfig.getReadChunkOverlap());
+            for(FileTable table : tables) {
+                for(String sample : table.getSamples()) {
+                    double fraction = ppConfig.getSampleFraction();
+                    if(ppConfig.getMaxReadsPerSample() > 0 || ppConfig.getMaxBasesPerSample() > 0) {
+                        estimator.estimate(new Path(sample));
+                        if(ppConfig.getMaxReadsPerSample() > 0 && estimator.getReads() > 0) {
+                            fraction = Math.min(fraction, (double) ppConfig.getMaxReadsPerSample() / estimator.getReads());
+                        }
+                        if(ppConfig.getMaxBasesPerSample() > 0 && estimator.getBases() > 0) {
+                            fraction = Math.min(fraction, (double) ppConfig.getMaxBasesPerSample() / estimator.getBases());
+                        }
+                    }
+                    
+                    table.setSampleFraction(sample, fraction);
+                    LOG.info(String.format("Sample %s - processing %f of reads", sample, Math.min(fraction, 1.0)));
+                }
+            }
+        }
+        
+        // range boundaries are shared by all groups, so their partitions can be joined
+        if(ppConfig.isTotalOrder()) {
+            int partitions = common_conf.getInt("mapred.reduce.tasks", 1);
+            if(ppConfig.getTaskNum() > 0) {
+                partitions = ppConfig.getTaskNum();
+            }
+            
+            KmerRangeSampler rangeSampler = new KmerRangeSampler(ppConfig.getAllKmerSizes(), KmerRangeSampler.DEFAULT_MAX_SAMPLES, common_conf);
+            rangeSampler.setChunking(ppConfig.getReadChunkLength(), ppConfig.getReadChunkOverlap());
+            for(Path inputFile : inputFiles) {
+                rangeSampler.sample(inputFile);
+            }
+            
+            for(int kmerSize : ppConfig.getAllKmerSizes()) {
+                ppConfig.setRangeBoundaries(kmerSize, rangeSampler.getBoundaries(kmerSize, partitions));
+            }
+        }
+        
         int res = 0;
         try {
             for(int i=0;i<tables.length;i++) {
                 // save file table
-                FileTable table = tables[i];
-                String fileTableFileName = FileTableHelper.makeFileTableFileName(table.getName());
-                Path fileTableFile = new Path(ppConfig.getFileTablePath(), fileTableFileName);
-                FileSystem outputFileSystem = fileTableFile.getFileSystem(common_conf);
-                table.saveTo(outputFileSystem, fileTableFile);
+                for(int kmerSize : ppConfig.getAllKmerSizes()) {
+                    // a separate output root per kmer size in multi-k mode
+                    PreprocessorConfig kmerSizeConfig = ppConfig.getKmerSizeConfig(kmerSize);
+                    FileTable table = new FileTable(tables[i], kmerSize);
+                    String fileTableFileName = FileTableHelper.makeFileTableFileName(table.getName());
+                    Path fileTableFile = new Path(kmerSizeConfig.getFileTablePath(), fileTableFileName);
+                    FileSystem outputFileSystem = fileTableFile.getFileSystem(common_conf);
+                    table.saveTo(outputFileSystem, fileTableFile);
+                }
             }
             
             for(int i=0;i<tables.length;i++) {
@@ -99,7 +152,9 @@ public class Preprocessor extends Configured implements Tool {
                 roundConfig.setFileTable(table);
                 
                 if(ppConfig.getFilterAlgorithm() != FilterAlgorithm.NONE &&
-                        ppConfig.getFilterAlgorithm() != FilterAlgorithm.NOTUNIQUE) {
+                        ppConfig.getFilterAlgorithm() != FilterAlgorithm.NOTUNIQUE &&
+                        !ppConfig.isOnePass()) {
+                    // in one-pass mode, the filter is derived from histograms of the index
                     KmerFilterBuilder kmerFilterBuilder = new KmerFilterBuilder();
                     res = kmerFilterBuilder.runJob(new Configuration(common_conf), roundConfig);
                     if(res != 0) {
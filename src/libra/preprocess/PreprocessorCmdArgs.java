@@ -19,7 +19,11 @@ import libra.preprocess.common.PreprocessorConfig;
 import java.util.ArrayList;
 import java.util.List;
 import libra.common.cmdargs.CommandArgumentsBase;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.sequence.RollingKmerEncoder;
+import libra.common.sequence.SuperKmerSplitter;
 import libra.preprocess.common.FilterAlgorithm;
+import libra.preprocess.common.kmerindex.KmerIndexFormat;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
@@ -33,11 +37,24 @@ public class PreprocessorCmdArgs extends CommandArgumentsBase {
         
     }
     
-    @Option(name = "-k", aliases = "--kmersize", usage = "specify kmer size")
-    protected int kmerSize = PreprocessorConfig.DEFAULT_KMERSIZE;
+    @Option(name = "-k", aliases = "--kmersize", usage = "specify kmer size or comma-separated kmer sizes")
+    protected String kmerSizes = String.valueOf(PreprocessorConfig.DEFAULT_KMERSIZE);
 
+    public int[] getKmerSizes() {
+        String[] tokens = this.kmerSizes.split(",");
+        int[] sizes = new int[tokens.length];
+        for(int i=0;i<tokens.length;i++) {
+            try {
+                sizes[i] = Integer.parseInt(tokens[i].trim());
+            } catch (NumberFormatException ex) {
+                sizes[i] = 0;
+            }
+        }
+        return sizes;
+    }
+    
     public int getKmerSize() {
-        return this.kmerSize;
+        return getKmerSizes()[0];
     }
     
     @Option(name = "-s", aliases = "--groupsize", usage = "specify size of group")
@@ -68,6 +85,146 @@ public class PreprocessorCmdArgs extends CommandArgumentsBase {
         return FilterAlgorithm.fromString(this.filterAlgorithm);
     }
     
+    @Option(name = "--countbuffer", usage = "specify size of in-mapper k-mer count buffer in MB (0 to disable)")
+    protected int countBufferSize = PreprocessorConfig.DEFAULT_COUNT_BUFFER_SIZE;
+    
+    public int getCountBufferSize() {
+        return this.countBufferSize;
+    }
+    
+    @Option(name = "--keytype", usage = "specify k-mer key type (SEQUENCE | LONG for k <= 32 | LONG_PAIR for k <= 64)")
+    protected String keyType = PreprocessorConfig.DEFAULT_KEY_TYPE.name();
+    
+    public KmerKeyType getKeyType() {
+        return KmerKeyType.fromString(this.keyType);
+    }
+    
+    @Option(name = "--indexformat", usage = "specify index data file format (BLOCKED | MAPFILE)")
+    protected String indexFormat = PreprocessorConfig.DEFAULT_INDEX_FORMAT.name();
+    
+    public KmerIndexFormat getIndexFormat() {
+        return KmerIndexFormat.fromString(this.indexFormat);
+    }
+    
+    @Option(name = "--minimizer", usage = "specify minimizer size to shuffle super-k-mers instead of k-mers when building indices (0 to disable)")
+    protected int minimizerSize = PreprocessorConfig.DEFAULT_MINIMIZER_SIZE;
+    
+    public int getMinimizerSize() {
+        return this.minimizerSize;
+    }
+    
+    @Option(name = "--minquality", usage = "specify min Phred quality of bases in k-mers; k-mers with lower quality bases are skipped (0 to disable)")
+    protected int minBaseQuality = PreprocessorConfig.DEFAULT_MIN_BASE_QUALITY;
+    
+    public int getMinBaseQuality() {
+        return this.minBaseQuality;
+    }
+    
+    @Option(name = "--trimquality", usage = "specify Phred quality to trim low quality read tails below (0 to disable)")
+    protected int trimQuality = PreprocessorConfig.DEFAULT_TRIM_QUALITY;
+    
+    public int getTrimQuality() {
+        return this.trimQuality;
+    }
+    
+    @Option(name = "--mapthreads", usage = "specify number of k-mer extraction threads per map task")
+    protected int mapThreads = PreprocessorConfig.DEFAULT_MAP_THREADS;
+    
+    public int getMapThreads() {
+        return this.mapThreads;
+    }
+    
+    @Option(name = "--singletonfilter", usage = "specify size of the map-side singleton k-mer filter in MB for the NOTUNIQUE filter, dropping k-mers seen once in a map task (approximate, 0 to disable)")
+    protected int singletonFilterSize = PreprocessorConfig.DEFAULT_SINGLETON_FILTER_SIZE;
+    
+    public int getSingletonFilterSize() {
+        return this.singletonFilterSize;
+    }
+    
+    @Option(name = "--samplefraction", usage = "specify fraction of reads to process from each sample (1.0 to disable)")
+    protected double sampleFraction = PreprocessorConfig.DEFAULT_SAMPLE_FRACTION;
+    
+    public double getSampleFraction() {
+        return this.sampleFraction;
+    }
+    
+    @Option(name = "--maxreads", usage = "specify approximate max number of reads to process from each sample (0 to disable)")
+    protected long maxReadsPerSample = PreprocessorConfig.DEFAULT_MAX_READS_PER_SAMPLE;
+    
+    public long getMaxReadsPerSample() {
+        return this.maxReadsPerSample;
+    }
+    
+    @Option(name = "--maxbases", usage = "specify approximate max number of bases to process from each sample (0 to disable)")
+    protected long maxBasesPerSample = PreprocessorConfig.DEFAULT_MAX_BASES_PER_SAMPLE;
+    
+    public long getMaxBasesPerSample() {
+        return this.maxBasesPerSample;
+    }
+    
+    @Option(name = "--sampleseed", usage = "specify seed of read subsampling")
+    protected long samplingSeed = PreprocessorConfig.DEFAULT_SAMPLING_SEED;
+    
+    public long getSamplingSeed() {
+        return this.samplingSeed;
+    }
+    
+    @Option(name = "--chunklength", usage = "specify max number of bases of long FASTA records processed at once (0 to disable chunking)")
+    protected int maxChunkLength = PreprocessorConfig.DEFAULT_MAX_CHUNK_LENGTH;
+    
+    public int getMaxChunkLength() {
+        return this.maxChunkLength;
+    }
+    
+    @Option(name = "--totalorder", usage = "partition k-mer indices by k-mer ranges sampled from inputs")
+    protected boolean totalOrder = PreprocessorConfig.DEFAULT_TOTAL_ORDER;
+    
+    public boolean isTotalOrder() {
+        return this.totalOrder;
+    }
+    
+    @Option(name = "--radixsort", usage = "radix-sort map outputs of LONG and LONG_PAIR keys instead of using the default map output collector")
+    protected boolean radixSort = PreprocessorConfig.DEFAULT_RADIX_SORT;
+    
+    public boolean isRadixSort() {
+        return this.radixSort;
+    }
+    
+    @Option(name = "--onepass", usage = "build the index without a separate filter pass (STDDEV and STDDEV2 filters only)")
+    protected boolean onePass = PreprocessorConfig.DEFAULT_ONE_PASS;
+    
+    public boolean isOnePass() {
+        return this.onePass;
+    }
+    
+    @Option(name = "--sketchfilter", usage = "estimate STDDEV and STDDEV2 filter statistics with sketches in a map-only filter pass")
+    protected boolean sketchFilter = PreprocessorConfig.DEFAULT_SKETCH_FILTER;
+    
+    public boolean isSketchFilter() {
+        return this.sketchFilter;
+    }
+    
+    @Option(name = "--sketcherror", usage = "relative standard error of filter statistics estimated by sketches")
+    protected double sketchError = PreprocessorConfig.DEFAULT_SKETCH_ERROR;
+    
+    public double getSketchError() {
+        return this.sketchError;
+    }
+    
+    @Option(name = "--sortedruns", usage = "build indices by merging sorted k-mer count runs of each split instead of shuffling k-mers")
+    protected boolean sortedRuns = PreprocessorConfig.DEFAULT_SORTED_RUNS;
+    
+    public boolean isSortedRuns() {
+        return this.sortedRuns;
+    }
+    
+    @Option(name = "--countinput", usage = "read precomputed k-mer count files (kmer and count per line) instead of FASTA/FASTQ files")
+    protected boolean countInput = PreprocessorConfig.DEFAULT_COUNT_INPUT;
+    
+    public boolean isCountInput() {
+        return this.countInput;
+    }
+    
     @Option(name = "-o", usage = "specify preprocess output path")
     private String outputPath = PreprocessorConfig.DEFAULT_OUTPUT_ROOT_PATH;
         
@@ -118,10 +275,89 @@ public class PreprocessorCmdArgs extends CommandArgumentsBase {
            return false;
         }
         
-        if(this.kmerSize <= 0 ||
-                this.groupSize <= 0 ||
+        int[] sizes = getKmerSizes();
+        for(int i=0;i<sizes.length;i++) {
+            if(sizes[i] <= 0 ||
+                    sizes[i] > getKeyType().getMaxKmerSize() ||
+                    this.minimizerSize >= sizes[i]) {
+                return false;
+            }
+            
+            for(int j=0;j<i;j++) {
+                if(sizes[i] == sizes[j]) {
+                    // duplicated
+                    return false;
+                }
+            }
+        }
+        
+        if(sizes.length > 1 && this.minimizerSize > 0) {
+            // super-k-mer mode takes a single kmer size
+            return false;
+        }
+        
+        if(this.singletonFilterSize > 0 && 
+                (getFilterAlgorithm() != FilterAlgorithm.NOTUNIQUE || this.minimizerSize > 0)) {
+            // singletons can only be dropped early when the filter drops them anyway
+            return false;
+        }
+        
+        if(this.totalOrder && this.minimizerSize > 0) {
+            // super-k-mers are partitioned by minimizer
+            return false;
+        }
+        
+        if(this.onePass && 
+                getFilterAlgorithm() != FilterAlgorithm.STDDEV && getFilterAlgorithm() != FilterAlgorithm.STDDEV2) {
+            // other filters do not need a filter pass
+            return false;
+        }
+        
+        if(this.sketchFilter && 
+                (this.onePass || (getFilterAlgorithm() != FilterAlgorithm.STDDEV && getFilterAlgorithm() != FilterAlgorithm.STDDEV2))) {
+            // sketches replace the exact filter pass
+            return false;
+        }
+        
+        if(this.sortedRuns && 
+                (this.minimizerSize > 0 || this.singletonFilterSize > 0 || this.mapThreads > 1)) {
+            // runs are counted from reads by a single thread per map task
+            return false;
+        }
+        
+        if(this.countInput && 
+                (this.minimizerSize > 0 || this.singletonFilterSize > 0 || this.mapThreads > 1 || this.sketchFilter || this.totalOrder ||
+                this.sampleFraction < 1 || this.maxReadsPerSample > 0 || this.maxBasesPerSample > 0)) {
+            // count files have no reads to split, sample or subsample
+            return false;
+        }
+        
+        if(this.sketchFilter || this.sortedRuns) {
+            for(int size : sizes) {
+                if(size > RollingKmerEncoder.MAX_KMER_SIZE) {
+                    return false;
+                }
+            }
+        }
+        
+        if(this.groupSize <= 0 ||
                 this.maxGroupNum <= 0 ||
                 this.taskNum < 0 ||
+                this.countBufferSize < 0 ||
+                this.minimizerSize < 0 ||
+                this.minBaseQuality < 0 ||
+                this.trimQuality < 0 ||
+                this.mapThreads <= 0 ||
+                this.singletonFilterSize < 0 ||
+                this.sampleFraction <= 0 ||
+                this.sampleFraction > 1 ||
+                this.maxReadsPerSample < 0 ||
+                this.maxBasesPerSample < 0 ||
+                this.maxChunkLength < 0 ||
+                this.sketchError <= 0 ||
+                this.sketchError >= 1 ||
+                this.minimizerSize > SuperKmerSplitter.MAX_MINIMIZER_SIZE ||
+                (this.minimizerSize > 0 && getKmerSize() > RollingKmerEncoder.MAX_KMER_SIZE) ||
                 this.outputPath == null ||
                 this.inputPaths == null || 
                 this.inputPaths.isEmpty() || 
@@ -136,10 +372,39 @@ public class PreprocessorCmdArgs extends CommandArgumentsBase {
         PreprocessorConfig config = new PreprocessorConfig();
         
         config.setReportPath(this.reportfile);
-        config.setKmerSize(this.kmerSize);
+        int[] sizes = getKmerSizes();
+        if(sizes.length > 1) {
+            List<Integer> sizeList = new ArrayList<Integer>();
+            for(int size : sizes) {
+                sizeList.add(size);
+            }
+            config.setKmerSizes(sizeList);
+        } else {
+            config.setKmerSize(sizes[0]);
+        }
         config.setGroupSize(this.groupSize);
         config.setTaskNum(this.taskNum);
         config.setFilterAlgorithm(this.getFilterAlgorithm());
+        config.setCountBufferSize(this.countBufferSize);
+        config.setKeyType(this.getKeyType());
+        config.setIndexFormat(this.getIndexFormat());
+        config.setMinimizerSize(this.minimizerSize);
+        config.setMinBaseQuality(this.minBaseQuality);
+        config.setTrimQuality(this.trimQuality);
+        config.setMapThreads(this.mapThreads);
+        config.setSingletonFilterSize(this.singletonFilterSize);
+        config.setSampleFraction(this.sampleFraction);
+        config.setMaxReadsPerSample(this.maxReadsPerSample);
+        config.setMaxBasesPerSample(this.maxBasesPerSample);
+        config.setSamplingSeed(this.samplingSeed);
+        config.setMaxChunkLength(this.maxChunkLength);
+        config.setTotalOrder(this.totalOrder);
+        config.setRadixSort(this.radixSort);
+        config.setOnePass(this.onePass);
+        config.setSketchFilter(this.sketchFilter);
+        config.setSketchError(this.sketchError);
+        config.setSortedRuns(this.sortedRuns);
+        config.setCountInput(this.countInput);
         config.setMaxGroupNum(this.maxGroupNum);
         config.addSamplePaths(this.inputPaths);
         config.setOutputPath(this.outputPath);
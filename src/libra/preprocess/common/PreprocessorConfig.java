@@ -19,12 +19,17 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.helpers.PathHelper;
 import libra.common.json.JsonSerializer;
 import libra.preprocess.common.helpers.FileTableHelper;
 import libra.preprocess.common.helpers.KmerFilterHelper;
 import libra.preprocess.common.helpers.KmerIndexHelper;
 import libra.preprocess.common.helpers.KmerStatisticsHelper;
+import libra.preprocess.common.kmerindex.KmerIndexFormat;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -43,17 +48,60 @@ public class PreprocessorConfig {
     public static final int DEFAULT_TASKNUM = 0; // use system default
     public static final String DEFAULT_OUTPUT_ROOT_PATH = "./libra_preprocess_output";
     public static final FilterAlgorithm DEFAULT_FILTER_ALGORITHM = FilterAlgorithm.NOTUNIQUE;
+    public static final int DEFAULT_COUNT_BUFFER_SIZE = 64; // 64MB
+    public static final KmerKeyType DEFAULT_KEY_TYPE = KmerKeyType.SEQUENCE;
+    public static final KmerIndexFormat DEFAULT_INDEX_FORMAT = KmerIndexFormat.BLOCKED;
+    public static final int DEFAULT_MINIMIZER_SIZE = 0; // super-k-mer mode disabled
+    public static final int DEFAULT_MIN_BASE_QUALITY = 0; // no masking
+    public static final int DEFAULT_TRIM_QUALITY = 0; // no trimming
+    public static final int DEFAULT_MAP_THREADS = 1;
+    public static final int DEFAULT_SINGLETON_FILTER_SIZE = 0; // singleton suppression disabled
+    public static final double DEFAULT_SAMPLE_FRACTION = 1.0; // no subsampling
+    public static final long DEFAULT_MAX_READS_PER_SAMPLE = 0; // unlimited
+    public static final long DEFAULT_MAX_BASES_PER_SAMPLE = 0; // unlimited
+    public static final long DEFAULT_SAMPLING_SEED = 0;
+    public static final int DEFAULT_MAX_CHUNK_LENGTH = 1024 * 1024; // 1M bases
+    public static final boolean DEFAULT_TOTAL_ORDER = false; // hash partitioning
+    public static final boolean DEFAULT_RADIX_SORT = false; // default map output collector
+    public static final boolean DEFAULT_ONE_PASS = false; // separate filter pass
+    public static final boolean DEFAULT_SKETCH_FILTER = false; // exact filter statistics
+    public static final double DEFAULT_SKETCH_ERROR = 0.02;
+    public static final boolean DEFAULT_SORTED_RUNS = false; // shuffle k-mers
+    public static final boolean DEFAULT_COUNT_INPUT = false; // FASTA/FASTQ
     
     protected static final String HADOOP_CONFIG_KEY = "libra.preprocess.common.preprocessorconfig";
     
     private String reportFilePath;
     
     private int kmerSize = DEFAULT_KMERSIZE;
+    private List<Integer> kmerSizes = new ArrayList<Integer>();
     private long groupSize = DEFAULT_GROUPSIZE;
     private int maxGroupNum = DEFAULT_MAX_GROUPNUM;
     private int taskNum = DEFAULT_TASKNUM;
     private FilterAlgorithm filterAlgorithm = FilterAlgorithm.NOTUNIQUE;
+    private int countBufferSize = DEFAULT_COUNT_BUFFER_SIZE;
+    private KmerKeyType keyType = DEFAULT_KEY_TYPE;
+    private KmerIndexFormat indexFormat = DEFAULT_INDEX_FORMAT;
+    private int minimizerSize = DEFAULT_MINIMIZER_SIZE;
+    private int minBaseQuality = DEFAULT_MIN_BASE_QUALITY;
+    private int trimQuality = DEFAULT_TRIM_QUALITY;
+    private int mapThreads = DEFAULT_MAP_THREADS;
+    private int singletonFilterSize = DEFAULT_SINGLETON_FILTER_SIZE;
+    private double sampleFraction = DEFAULT_SAMPLE_FRACTION;
+    private long maxReadsPerSample = DEFAULT_MAX_READS_PER_SAMPLE;
+    private long maxBasesPerSample = DEFAULT_MAX_BASES_PER_SAMPLE;
+    private long samplingSeed = DEFAULT_SAMPLING_SEED;
+    private int maxChunkLength = DEFAULT_MAX_CHUNK_LENGTH;
+    private boolean totalOrder = DEFAULT_TOTAL_ORDER;
+    private boolean radixSort = DEFAULT_RADIX_SORT;
+    private boolean onePass = DEFAULT_ONE_PASS;
+    private boolean sketchFilter = DEFAULT_SKETCH_FILTER;
+    private double sketchError = DEFAULT_SKETCH_ERROR;
+    private boolean sortedRuns = DEFAULT_SORTED_RUNS;
+    private boolean countInput = DEFAULT_COUNT_INPUT;
+    private Map<Integer, List<String>> rangeBoundaries = new HashMap<Integer, List<String>>();
     private List<String> samplePaths = new ArrayList<String>();
+    private String outputPath = DEFAULT_OUTPUT_ROOT_PATH;
     private String fileTablePath = FileTableHelper.makeFileTableDirPath(DEFAULT_OUTPUT_ROOT_PATH);
     private String kmerFilterPath = KmerFilterHelper.makeKmerFilterDirPath(DEFAULT_OUTPUT_ROOT_PATH);
     private String kmerIndexPath = KmerIndexHelper.makeKmerIndexDirPath(DEFAULT_OUTPUT_ROOT_PATH);
@@ -86,11 +134,34 @@ public class PreprocessorConfig {
     public PreprocessorConfig(PreprocessorConfig config) {
         this.reportFilePath = config.reportFilePath;
         this.kmerSize = config.kmerSize;
+        this.kmerSizes.addAll(config.kmerSizes);
         this.groupSize = config.groupSize;
         this.maxGroupNum = config.maxGroupNum;
         this.taskNum = config.taskNum;
         this.filterAlgorithm = config.filterAlgorithm;
+        this.countBufferSize = config.countBufferSize;
+        this.keyType = config.keyType;
+        this.indexFormat = config.indexFormat;
+        this.minimizerSize = config.minimizerSize;
+        this.minBaseQuality = config.minBaseQuality;
+        this.trimQuality = config.trimQuality;
+        this.mapThreads = config.mapThreads;
+        this.singletonFilterSize = config.singletonFilterSize;
+        this.sampleFraction = config.sampleFraction;
+        this.maxReadsPerSample = config.maxReadsPerSample;
+        this.maxBasesPerSample = config.maxBasesPerSample;
+        this.samplingSeed = config.samplingSeed;
+        this.maxChunkLength = config.maxChunkLength;
+        this.totalOrder = config.totalOrder;
+        this.radixSort = config.radixSort;
+        this.onePass = config.onePass;
+        this.sketchFilter = config.sketchFilter;
+        this.sketchError = config.sketchError;
+        this.sortedRuns = config.sortedRuns;
+        this.countInput = config.countInput;
+        this.rangeBoundaries = new HashMap<Integer, List<String>>(config.rangeBoundaries);
         this.samplePaths.addAll(config.samplePaths);
+        this.outputPath = config.outputPath;
         this.fileTablePath = config.fileTablePath;
         this.kmerFilterPath = config.kmerFilterPath;
         this.kmerIndexPath = config.kmerIndexPath;
@@ -107,6 +178,52 @@ public class PreprocessorConfig {
         this.kmerSize = kmerSize;
     }
     
+    /**
+     * All k-mer sizes built in a single pass. Empty if only kmer_size is used.
+     */
+    @JsonProperty("kmer_sizes")
+    public Collection<Integer> getKmerSizes() {
+        return this.kmerSizes;
+    }
+    
+    @JsonProperty("kmer_sizes")
+    public void setKmerSizes(Collection<Integer> kmerSizes) {
+        this.kmerSizes.clear();
+        this.kmerSizes.addAll(kmerSizes);
+        if(!this.kmerSizes.isEmpty()) {
+            this.kmerSize = this.kmerSizes.get(0);
+        }
+    }
+    
+    @JsonIgnore
+    public int[] getAllKmerSizes() {
+        if(this.kmerSizes.isEmpty()) {
+            return new int[] {this.kmerSize};
+        }
+        
+        int[] arr = new int[this.kmerSizes.size()];
+        for(int i=0;i<this.kmerSizes.size();i++) {
+            arr[i] = this.kmerSizes.get(i);
+        }
+        return arr;
+    }
+    
+    @JsonIgnore
+    public boolean isMultiKmerMode() {
+        return this.kmerSizes.size() > 1;
+    }
+    
+    /**
+     * Returns the k-mer size a reduce partition belongs to. Partitions are
+     * split into equal consecutive blocks, one block per k-mer size.
+     */
+    @JsonIgnore
+    public int getKmerSizeOfPartition(int partition, int numPartitions) {
+        int[] sizes = getAllKmerSizes();
+        int partitionsPerKmerSize = numPartitions / sizes.length;
+        return sizes[Math.min(partition / partitionsPerKmerSize, sizes.length - 1)];
+    }
+    
     @JsonProperty("group_size")
     public long getGroupSize() {
         return this.groupSize;
@@ -147,6 +264,291 @@ public class PreprocessorConfig {
         this.filterAlgorithm = filterAlgorithm;
     }
 
+    @JsonProperty("count_buffer_size")
+    public int getCountBufferSize() {
+        return this.countBufferSize;
+    }
+    
+    @JsonProperty("count_buffer_size")
+    public void setCountBufferSize(int countBufferSize) {
+        this.countBufferSize = countBufferSize;
+    }
+
+    @JsonProperty("key_type")
+    public KmerKeyType getKeyType() {
+        return this.keyType;
+    }
+    
+    @JsonProperty("key_type")
+    public void setKeyType(KmerKeyType keyType) {
+        this.keyType = keyType;
+    }
+    
+    /**
+     * Format of index data files. Indices of k-mers longer than
+     * KmerIndexBlockFile.MAX_KMER_SIZE are always written as MapFiles.
+     */
+    @JsonProperty("index_format")
+    public KmerIndexFormat getIndexFormat() {
+        return this.indexFormat;
+    }
+    
+    @JsonProperty("index_format")
+    public void setIndexFormat(KmerIndexFormat indexFormat) {
+        this.indexFormat = indexFormat;
+    }
+
+    @JsonProperty("minimizer_size")
+    public int getMinimizerSize() {
+        return this.minimizerSize;
+    }
+    
+    @JsonProperty("minimizer_size")
+    public void setMinimizerSize(int minimizerSize) {
+        this.minimizerSize = minimizerSize;
+    }
+    
+    @JsonIgnore
+    public boolean isSuperKmerMode() {
+        return this.minimizerSize > 0;
+    }
+
+    @JsonProperty("min_base_quality")
+    public int getMinBaseQuality() {
+        return this.minBaseQuality;
+    }
+    
+    @JsonProperty("min_base_quality")
+    public void setMinBaseQuality(int minBaseQuality) {
+        this.minBaseQuality = minBaseQuality;
+    }
+    
+    @JsonProperty("trim_quality")
+    public int getTrimQuality() {
+        return this.trimQuality;
+    }
+    
+    @JsonProperty("trim_quality")
+    public void setTrimQuality(int trimQuality) {
+        this.trimQuality = trimQuality;
+    }
+    
+    @JsonProperty("map_threads")
+    public int getMapThreads() {
+        return this.mapThreads;
+    }
+    
+    @JsonProperty("map_threads")
+    public void setMapThreads(int mapThreads) {
+        this.mapThreads = mapThreads;
+    }
+    
+    @JsonProperty("singleton_filter_size")
+    public int getSingletonFilterSize() {
+        return this.singletonFilterSize;
+    }
+    
+    @JsonProperty("singleton_filter_size")
+    public void setSingletonFilterSize(int singletonFilterSize) {
+        this.singletonFilterSize = singletonFilterSize;
+    }
+    
+    @JsonProperty("sample_fraction")
+    public double getSampleFraction() {
+        return this.sampleFraction;
+    }
+    
+    @JsonProperty("sample_fraction")
+    public void setSampleFraction(double sampleFraction) {
+        this.sampleFraction = sampleFraction;
+    }
+    
+    @JsonProperty("max_reads_per_sample")
+    public long getMaxReadsPerSample() {
+        return this.maxReadsPerSample;
+    }
+    
+    @JsonProperty("max_reads_per_sample")
+    public void setMaxReadsPerSample(long maxReadsPerSample) {
+        this.maxReadsPerSample = maxReadsPerSample;
+    }
+    
+    @JsonProperty("max_bases_per_sample")
+    public long getMaxBasesPerSample() {
+        return this.maxBasesPerSample;
+    }
+    
+    @JsonProperty("max_bases_per_sample")
+    public void setMaxBasesPerSample(long maxBasesPerSample) {
+        this.maxBasesPerSample = maxBasesPerSample;
+    }
+    
+    @JsonProperty("sampling_seed")
+    public long getSamplingSeed() {
+        return this.samplingSeed;
+    }
+    
+    @JsonProperty("sampling_seed")
+    public void setSamplingSeed(long samplingSeed) {
+        this.samplingSeed = samplingSeed;
+    }
+    
+    @JsonProperty("max_chunk_length")
+    public int getMaxChunkLength() {
+        return this.maxChunkLength;
+    }
+    
+    @JsonProperty("max_chunk_length")
+    public void setMaxChunkLength(int maxChunkLength) {
+        this.maxChunkLength = maxChunkLength;
+    }
+    
+    /**
+     * Partition k-mers by range instead of by hash, using boundaries
+     * sampled from the inputs before the jobs run
+     */
+    @JsonProperty("total_order")
+    public boolean isTotalOrder() {
+        return this.totalOrder;
+    }
+    
+    @JsonProperty("total_order")
+    public void setTotalOrder(boolean totalOrder) {
+        this.totalOrder = totalOrder;
+    }
+    
+    /**
+     * Sort map outputs with KmerCountMapOutputCollector when keys are
+     * fixed-width
+     */
+    @JsonProperty("radix_sort")
+    public boolean isRadixSort() {
+        return this.radixSort;
+    }
+    
+    @JsonProperty("radix_sort")
+    public void setRadixSort(boolean radixSort) {
+        this.radixSort = radixSort;
+    }
+    
+    /**
+     * Build the index without a filter pass. Unfiltered frequencies are
+     * indexed and the STDDEV bounds are applied when the index is read
+     */
+    @JsonProperty("one_pass")
+    public boolean isOnePass() {
+        return this.onePass;
+    }
+    
+    @JsonProperty("one_pass")
+    public void setOnePass(boolean onePass) {
+        this.onePass = onePass;
+    }
+    
+    /**
+     * Estimate filter statistics with sketches in a map-only filter pass
+     */
+    @JsonProperty("sketch_filter")
+    public boolean isSketchFilter() {
+        return this.sketchFilter;
+    }
+    
+    @JsonProperty("sketch_filter")
+    public void setSketchFilter(boolean sketchFilter) {
+        this.sketchFilter = sketchFilter;
+    }
+    
+    @JsonProperty("sketch_error")
+    public double getSketchError() {
+        return this.sketchError;
+    }
+    
+    @JsonProperty("sketch_error")
+    public void setSketchError(double sketchError) {
+        this.sketchError = sketchError;
+    }
+    
+    /**
+     * Build the index by merging sorted count runs of splits instead of
+     * shuffling k-mers
+     */
+    @JsonProperty("sorted_runs")
+    public boolean isSortedRuns() {
+        return this.sortedRuns;
+    }
+    
+    @JsonProperty("sorted_runs")
+    public void setSortedRuns(boolean sortedRuns) {
+        this.sortedRuns = sortedRuns;
+    }
+    
+    /**
+     * Inputs are precomputed k-mer count files instead of FASTA/FASTQ files
+     */
+    @JsonProperty("count_input")
+    public boolean isCountInput() {
+        return this.countInput;
+    }
+    
+    @JsonProperty("count_input")
+    public void setCountInput(boolean countInput) {
+        this.countInput = countInput;
+    }
+    
+    @JsonProperty("range_boundaries")
+    public Map<Integer, List<String>> getRangeBoundaries() {
+        return this.rangeBoundaries;
+    }
+    
+    @JsonProperty("range_boundaries")
+    public void setRangeBoundaries(Map<Integer, List<String>> rangeBoundaries) {
+        this.rangeBoundaries = rangeBoundaries;
+    }
+    
+    @JsonIgnore
+    public List<String> getRangeBoundaries(int kmerSize) {
+        return this.rangeBoundaries.get(kmerSize);
+    }
+    
+    @JsonIgnore
+    public void setRangeBoundaries(int kmerSize, List<String> boundaries) {
+        this.rangeBoundaries.put(kmerSize, boundaries);
+    }
+    
+    @JsonIgnore
+    public int getMaxKmerSize() {
+        int max = 0;
+        for(int kmerSize : getAllKmerSizes()) {
+            max = Math.max(max, kmerSize);
+        }
+        return max;
+    }
+    
+    /**
+     * Chunk length to read long FASTA records with, at least the largest
+     * k-mer size. 0 if records are read whole.
+     */
+    @JsonIgnore
+    public int getReadChunkLength() {
+        if(getMaxChunkLength() <= 0) {
+            return 0;
+        }
+        return Math.max(getMaxChunkLength(), getMaxKmerSize());
+    }
+    
+    /**
+     * Bases shared by consecutive chunks, so no k-mer spans two chunks
+     */
+    @JsonIgnore
+    public int getReadChunkOverlap() {
+        return getMaxKmerSize() - 1;
+    }
+    
+    @JsonIgnore
+    public boolean isSubsampling() {
+        return this.sampleFraction < 1.0 || this.maxReadsPerSample > 0 || this.maxBasesPerSample > 0;
+    }
+
     @JsonProperty("sample_path")
     public Collection<String> getSamplePath() {
         return this.samplePaths;
@@ -167,14 +569,48 @@ public class PreprocessorConfig {
         this.samplePaths.clear();
     }
 
+    @JsonProperty("output_path")
+    public String getOutputRootPath() {
+        return this.outputPath;
+    }
+    
+    @JsonProperty("output_path")
+    public void setOutputRootPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+    
     @JsonIgnore
     public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
         this.fileTablePath = FileTableHelper.makeFileTableDirPath(outputPath);
         this.kmerFilterPath = KmerFilterHelper.makeKmerFilterDirPath(outputPath);
         this.kmerIndexPath = KmerIndexHelper.makeKmerIndexDirPath(outputPath);
         this.kmerStatisticsPath = KmerStatisticsHelper.makeKmerStatisticsDirPath(outputPath);
     }
     
+    public static String makeKmerSizeOutputPath(String outputPath, int kmerSize) {
+        return PathHelper.concatPath(outputPath, PreprocessorConstants.KMER_SIZE_DIRNAME_PREFIX + kmerSize);
+    }
+    
+    /**
+     * Copy of this config for one k-mer size. In multi-k mode, outputs of each
+     * k-mer size go to a separate output root.
+     */
+    @JsonIgnore
+    public PreprocessorConfig getKmerSizeConfig(int kmerSize) {
+        PreprocessorConfig config = new PreprocessorConfig(this);
+        config.applyKmerSize(kmerSize, isMultiKmerMode());
+        return config;
+    }
+    
+    protected void applyKmerSize(int kmerSize, boolean multiKmerMode) {
+        this.kmerSize = kmerSize;
+        this.kmerSizes.clear();
+        if(multiKmerMode) {
+            setOutputPath(makeKmerSizeOutputPath(this.outputPath, kmerSize));
+        }
+    }
+    
     @JsonProperty("file_table_path")
     public String getFileTablePath() {
         return this.fileTablePath;
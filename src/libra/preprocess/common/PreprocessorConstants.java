@@ -22,12 +22,16 @@ package libra.preprocess.common;
 public class PreprocessorConstants {
     public static final String FILE_TABLE_FILENAME_EXTENSION = "ftbl";
     public static final String KMER_FILTER_TABLE_FILENAME_EXTENSION = "kflt";
+    public static final String KMER_FILTER_SKETCH_FILENAME_EXTENSION = "kfsk";
+    public static final String KMER_COUNT_RUN_FILENAME_EXTENSION = "krun";
     public static final String KMER_INDEX_TABLE_FILENAME_EXTENSION = "kidx";
     public static final String KMER_INDEX_DATA_FILENAME_EXTENSION = "kidxc";
     public static final String KMER_STATISTICS_TABLE_FILENAME_EXTENSION = "kstat";
+    public static final String KMER_HISTOGRAM_TABLE_FILENAME_EXTENSION = "khist";
     
     public static final String FILE_TABLE_DIRNAME = "filetable";
     public static final String KMER_FILTER_DIRNAME = "filter";
     public static final String KMER_INDEX_DIRNAME = "kmerindex";
     public static final String KMER_STATISITCS_DIRNAME = "statistics";
+    public static final String KMER_SIZE_DIRNAME_PREFIX = "k";
 }
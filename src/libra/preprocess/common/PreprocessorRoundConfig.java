@@ -17,11 +17,14 @@ package libra.preprocess.common;
 
 import java.io.File;
 import java.io.IOException;
+import libra.common.hadoop.io.reader.sequence.ReadRecordReader;
+import libra.common.hadoop.io.reader.sequence.ReadSampler;
 import libra.common.json.JsonSerializer;
 import libra.preprocess.common.filetable.FileTable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonProperty;
 
 /**
@@ -59,6 +62,17 @@ public class PreprocessorRoundConfig extends PreprocessorConfig {
         super(config);
     }
     
+    @JsonIgnore
+    @Override
+    public PreprocessorRoundConfig getKmerSizeConfig(int kmerSize) {
+        PreprocessorRoundConfig config = new PreprocessorRoundConfig(this);
+        config.applyKmerSize(kmerSize, isMultiKmerMode());
+        if(this.fileTable != null) {
+            config.setFileTable(new FileTable(this.fileTable, kmerSize));
+        }
+        return config;
+    }
+    
     @JsonProperty("file_table")
     public FileTable getFileTable() {
         return this.fileTable;
@@ -68,4 +82,26 @@ public class PreprocessorRoundConfig extends PreprocessorConfig {
     public void setFileTable(FileTable fileTable) {
         this.fileTable = fileTable;
     }
+    
+    @JsonIgnore
+    @Override
+    public void saveTo(Configuration conf) throws IOException {
+        super.saveTo(conf);
+        
+        // long FASTA records are streamed in chunks overlapping by k - 1 bases
+        if(getReadChunkLength() > 0) {
+            ReadRecordReader.setChunking(conf, getReadChunkLength(), getReadChunkOverlap());
+        }
+        
+        // read subsampling is applied by the record reader
+        if(this.fileTable != null) {
+            ReadSampler.setSeed(conf, getSamplingSeed());
+            for(String sample : this.fileTable.getSamples()) {
+                double fraction = this.fileTable.getSampleFraction(sample);
+                if(fraction < 1.0) {
+                    ReadSampler.setFraction(conf, new Path(sample).getName(), fraction);
+                }
+            }
+        }
+    }
 }
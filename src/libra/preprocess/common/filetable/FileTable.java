@@ -19,8 +19,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import libra.common.json.JsonSerializer;
 import libra.preprocess.common.samplegroup.SampleGroup;
 import libra.preprocess.common.samplegroup.SampleInfo;
@@ -46,6 +48,7 @@ public class FileTable {
     private int kmerSize;
     private List<String> samples = new ArrayList<String>();
     private Hashtable<String, Integer> sampleIDCacheTable = new Hashtable<String, Integer>();
+    private Map<String, Double> sampleFractions = new HashMap<String, Double>();
     
     public static FileTable createInstance(File file) throws IOException {
         JsonSerializer serializer = new JsonSerializer();
@@ -85,6 +88,13 @@ public class FileTable {
         }
     }
     
+    public FileTable(FileTable table, int kmerSize) {
+        this.name = table.name;
+        this.kmerSize = kmerSize;
+        this.samples.addAll(table.samples);
+        this.sampleFractions.putAll(table.sampleFractions);
+    }
+    
     @JsonProperty("name")
     public String getName() {
         return this.name;
@@ -168,6 +178,41 @@ public class FileTable {
     @JsonIgnore
     public void clearSample() {
         this.samples.clear();
+        this.sampleFractions.clear();
+    }
+    
+    /**
+     * Fractions of reads to process, only for subsampled samples.
+     */
+    @JsonProperty("sample_fractions")
+    public Map<String, Double> getSampleFractions() {
+        return this.sampleFractions;
+    }
+    
+    @JsonProperty("sample_fractions")
+    public void setSampleFractions(Map<String, Double> sampleFractions) {
+        this.sampleFractions.clear();
+        if(sampleFractions != null) {
+            this.sampleFractions.putAll(sampleFractions);
+        }
+    }
+    
+    @JsonIgnore
+    public double getSampleFraction(String sample) {
+        Double fraction = this.sampleFractions.get(sample);
+        if(fraction == null) {
+            return 1.0;
+        }
+        return fraction;
+    }
+    
+    @JsonIgnore
+    public void setSampleFraction(String sample, double fraction) {
+        if(fraction >= 1.0) {
+            this.sampleFractions.remove(sample);
+        } else {
+            this.sampleFractions.put(sample, fraction);
+        }
     }
     
     @JsonIgnore
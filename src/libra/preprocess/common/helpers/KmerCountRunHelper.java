@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.helpers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import libra.preprocess.common.PreprocessorConstants;
+import libra.preprocess.common.kmercount.KmerCountRunPathFilter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Count runs of all kmer sizes of a round are kept in one directory next to
+ * the index directory, and carry the kmer size in their names.
+ *
+ * @author iychoi
+ */
+public class KmerCountRunHelper {
+    
+    private final static String KMER_COUNT_RUN_PATH_EXP = ".+\\." + PreprocessorConstants.KMER_SIZE_DIRNAME_PREFIX + "(\\d+)\\." + PreprocessorConstants.KMER_COUNT_RUN_FILENAME_EXTENSION + "\\.\\d+\\.\\d+$";
+    private final static Pattern KMER_COUNT_RUN_PATH_PATTERN = Pattern.compile(KMER_COUNT_RUN_PATH_EXP);
+    
+    public static String makeKmerCountRunFileName(String filename, int kmerSize, int taskID, int runID) {
+        return filename + "." + PreprocessorConstants.KMER_SIZE_DIRNAME_PREFIX + kmerSize + "." + PreprocessorConstants.KMER_COUNT_RUN_FILENAME_EXTENSION + "." + taskID + "." + runID;
+    }
+    
+    public static String makeKmerCountRunDirPath(String kmerIndexPath) {
+        return kmerIndexPath + "_runs";
+    }
+    
+    public static boolean isKmerCountRunFile(Path path) {
+        return isKmerCountRunFile(path.getName());
+    }
+    
+    public static boolean isKmerCountRunFile(String path) {
+        Matcher matcher = KMER_COUNT_RUN_PATH_PATTERN.matcher(path.toLowerCase());
+        if(matcher.matches()) {
+            return true;
+        }
+        return false;
+    }
+    
+    public static int getKmerSize(Path path) {
+        return getKmerSize(path.getName());
+    }
+    
+    public static int getKmerSize(String path) {
+        Matcher matcher = KMER_COUNT_RUN_PATH_PATTERN.matcher(path.toLowerCase());
+        if(matcher.matches()) {
+            return Integer.parseInt(matcher.group(1));
+        }
+        return -1;
+    }
+    
+    public static Path[] getKmerCountRunFilePaths(Configuration conf, Path inputPath, int kmerSize) throws IOException {
+        List<Path> inputFiles = new ArrayList<Path>();
+        KmerCountRunPathFilter filter = new KmerCountRunPathFilter();
+        
+        FileSystem fs = inputPath.getFileSystem(conf);
+        if(fs.exists(inputPath)) {
+            FileStatus status = fs.getFileStatus(inputPath);
+            if(status.isDirectory()) {
+                // check child
+                FileStatus[] entries = fs.listStatus(inputPath);
+                for (FileStatus entry : entries) {
+                    if(entry.isFile()) {
+                        if (filter.accept(entry.getPath()) && getKmerSize(entry.getPath()) == kmerSize) {
+                            inputFiles.add(entry.getPath());
+                        }
+                    }
+                }
+            } else {
+                if (filter.accept(inputPath) && getKmerSize(inputPath) == kmerSize) {
+                    inputFiles.add(inputPath);
+                }
+            }
+        }
+        
+        Path[] files = inputFiles.toArray(new Path[0]);
+        return files;
+    }
+}
@@ -23,6 +23,7 @@ import java.util.regex.Pattern;
 import libra.common.helpers.PathHelper;
 import libra.preprocess.common.PreprocessorConstants;
 import libra.preprocess.common.kmerfilter.KmerFilterPartTablePathFilter;
+import libra.preprocess.common.kmerfilter.KmerFilterSketchPathFilter;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -40,6 +41,9 @@ public class KmerFilterHelper {
     private final static String KMER_FILTER_PART_TABLE_PATH_EXP = ".+\\." + PreprocessorConstants.KMER_FILTER_TABLE_FILENAME_EXTENSION + "\\.\\d+$";
     private final static Pattern KMER_FILTER_PART_TABLE_PATH_PATTERN = Pattern.compile(KMER_FILTER_PART_TABLE_PATH_EXP);
     
+    private final static String KMER_FILTER_SKETCH_PATH_EXP = ".+\\." + PreprocessorConstants.KMER_FILTER_SKETCH_FILENAME_EXTENSION + "\\.\\d+$";
+    private final static Pattern KMER_FILTER_SKETCH_PATH_PATTERN = Pattern.compile(KMER_FILTER_SKETCH_PATH_EXP);
+    
     public static String makeKmerFilterTableFileName(String filename) {
         return filename + "." + PreprocessorConstants.KMER_FILTER_TABLE_FILENAME_EXTENSION;
     }
@@ -48,6 +52,10 @@ public class KmerFilterHelper {
         return filename + "." + PreprocessorConstants.KMER_FILTER_TABLE_FILENAME_EXTENSION + "." + taskID;
     }
     
+    public static String makeKmerFilterSketchFileName(String filename, int taskID) {
+        return filename + "." + PreprocessorConstants.KMER_FILTER_SKETCH_FILENAME_EXTENSION + "." + taskID;
+    }
+    
     public static String makeKmerFilterDirPath(String rootPath) {
         return PathHelper.concatPath(rootPath, PreprocessorConstants.KMER_FILTER_DIRNAME);
     }
@@ -76,6 +84,18 @@ public class KmerFilterHelper {
         return false;
     }
     
+    public static boolean isKmerFilterSketchFile(Path path) {
+        return isKmerFilterSketchFile(path.getName());
+    }
+    
+    public static boolean isKmerFilterSketchFile(String path) {
+        Matcher matcher = KMER_FILTER_SKETCH_PATH_PATTERN.matcher(path.toLowerCase());
+        if(matcher.matches()) {
+            return true;
+        }
+        return false;
+    }
+    
     public static Path[] getKmerFilterPartTableFilePaths(Configuration conf, Path inputPath) throws IOException {
         List<Path> inputFiles = new ArrayList<Path>();
         KmerFilterPartTablePathFilter filter = new KmerFilterPartTablePathFilter();
@@ -103,4 +123,32 @@ public class KmerFilterHelper {
         Path[] files = inputFiles.toArray(new Path[0]);
         return files;
     }
+    
+    public static Path[] getKmerFilterSketchFilePaths(Configuration conf, Path inputPath) throws IOException {
+        List<Path> inputFiles = new ArrayList<Path>();
+        KmerFilterSketchPathFilter filter = new KmerFilterSketchPathFilter();
+        
+        FileSystem fs = inputPath.getFileSystem(conf);
+        if(fs.exists(inputPath)) {
+            FileStatus status = fs.getFileStatus(inputPath);
+            if(status.isDirectory()) {
+                // check child
+                FileStatus[] entries = fs.listStatus(inputPath);
+                for (FileStatus entry : entries) {
+                    if(entry.isFile()) {
+                        if (filter.accept(entry.getPath())) {
+                            inputFiles.add(entry.getPath());
+                        }
+                    }
+                }
+            } else {
+                if (filter.accept(inputPath)) {
+                    inputFiles.add(inputPath);
+                }
+            }
+        }
+        
+        Path[] files = inputFiles.toArray(new Path[0]);
+        return files;
+    }
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.helpers;
+
+/**
+ * K-mers are hashed into a fixed number of virtual buckets, and each index
+ * partition holds a contiguous range of buckets. Indices built with
+ * different numbers of partitions can then be joined over bucket ranges
+ * that are unions of whole partitions of every index.
+ * 
+ * @author iychoi
+ */
+public class KmerIndexBucketHelper {
+    
+    public static final int VIRTUAL_BUCKETS = 4096;
+    
+    public static int getBucket(int hash) {
+        return (hash & Integer.MAX_VALUE) % VIRTUAL_BUCKETS;
+    }
+    
+    /**
+     * Return the partition holding the bucket. Partition i holds buckets
+     * [getBucketBegin(i), getBucketBegin(i + 1)).
+     */
+    public static int getPartition(int bucket, int partitions) {
+        return (int) ((long) bucket * partitions / VIRTUAL_BUCKETS);
+    }
+    
+    public static int getBucketBegin(int partition, int partitions) {
+        // smallest bucket b with b * partitions / VIRTUAL_BUCKETS >= partition
+        return (int) (((long) partition * VIRTUAL_BUCKETS + partitions - 1) / partitions);
+    }
+    
+    public static int getBucketEnd(int partition, int partitions) {
+        return getBucketBegin(partition + 1, partitions);
+    }
+}
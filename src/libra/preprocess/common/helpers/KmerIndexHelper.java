@@ -18,14 +18,23 @@ package libra.preprocess.common.helpers;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
 import libra.common.helpers.PathHelper;
 import libra.preprocess.common.PreprocessorConstants;
+import libra.preprocess.common.filetable.FileTable;
+import libra.preprocess.common.kmerindex.AKmerIndexReader;
+import libra.preprocess.common.kmerindex.KmerIndexBlockReader;
 import libra.preprocess.common.kmerindex.KmerIndexDataPathFilter;
+import libra.preprocess.common.kmerindex.KmerIndexFormat;
+import libra.preprocess.common.kmerindex.KmerIndexMappedBlockReader;
+import libra.preprocess.common.kmerindex.KmerIndexReader;
+import libra.preprocess.common.kmerindex.KmerIndexTable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -158,13 +167,11 @@ public class KmerIndexHelper {
                     inputFiles.add(inputPath);
                 }
                 
-                // check child
+                // check child - MapFile directories or blocked index data files
                 FileStatus[] entries = fs.listStatus(inputPath);
                 for (FileStatus entry : entries) {
-                    if(entry.isDirectory()) {
-                        if (filter.accept(entry.getPath())) {
-                            inputFiles.add(entry.getPath());
-                        }
+                    if (filter.accept(entry.getPath())) {
+                        inputFiles.add(entry.getPath());
                     }
                 }
             }
@@ -173,6 +180,60 @@ public class KmerIndexHelper {
         return inputFiles.toArray(new Path[0]);
     }
     
+    public static KmerKeyType getKeyType(Configuration conf, String kmerIndexPath, Collection<FileTable> fileTables) throws IOException {
+        KmerKeyType keyType = null;
+        for(FileTable fileTable : fileTables) {
+            Path kmerIndexTableFilePath = new Path(kmerIndexPath, makeKmerIndexTableFileName(fileTable.getName()));
+            FileSystem fs = kmerIndexTableFilePath.getFileSystem(conf);
+            KmerIndexTable kmerIndexTable = KmerIndexTable.createInstance(fs, kmerIndexTableFilePath);
+            if(keyType == null) {
+                keyType = kmerIndexTable.getKeyType();
+            } else if(keyType != kmerIndexTable.getKeyType()) {
+                throw new IOException(String.format("key types are different between kmer indices - %s expected, but %s got", keyType.name(), kmerIndexTable.getKeyType().name()));
+            }
+        }
+        
+        if(keyType == null) {
+            return KmerKeyType.SEQUENCE;
+        }
+        return keyType;
+    }
+    
+    public static KmerIndexFormat getIndexFormat(Configuration conf, String kmerIndexPath, Collection<FileTable> fileTables) throws IOException {
+        KmerIndexFormat indexFormat = null;
+        for(FileTable fileTable : fileTables) {
+            Path kmerIndexTableFilePath = new Path(kmerIndexPath, makeKmerIndexTableFileName(fileTable.getName()));
+            FileSystem fs = kmerIndexTableFilePath.getFileSystem(conf);
+            KmerIndexTable kmerIndexTable = KmerIndexTable.createInstance(fs, kmerIndexTableFilePath);
+            if(indexFormat == null) {
+                indexFormat = kmerIndexTable.getIndexFormat();
+            } else if(indexFormat != kmerIndexTable.getIndexFormat()) {
+                throw new IOException(String.format("index formats are different between kmer indices - %s expected, but %s got", indexFormat.name(), kmerIndexTable.getIndexFormat().name()));
+            }
+        }
+        
+        if(indexFormat == null) {
+            return KmerIndexFormat.MAPFILE;
+        }
+        return indexFormat;
+    }
+    
+    /**
+     * Open a reader of k-mers in [rangeBegin, rangeEnd) of the partition,
+     * for the format of the index. Blocked indices on a local file system
+     * are memory-mapped, others are read through streams.
+     */
+    public static AKmerIndexReader createKmerIndexReader(FileSystem fs, int kmerSize, Path kmerIndexTablePath, int partitionNo, String rangeBegin, String rangeEnd, Configuration conf) throws IOException {
+        KmerIndexTable indexTable = KmerIndexTable.createInstance(fs, kmerIndexTablePath);
+        if(indexTable.getIndexFormat() == KmerIndexFormat.BLOCKED) {
+            if(KmerIndexMappedBlockReader.isMappable(fs)) {
+                return new KmerIndexMappedBlockReader(fs, kmerSize, kmerIndexTablePath, indexTable, partitionNo, rangeBegin, rangeEnd, conf);
+            }
+            return new KmerIndexBlockReader(fs, kmerSize, kmerIndexTablePath, indexTable, partitionNo, rangeBegin, rangeEnd, conf);
+        }
+        return new KmerIndexReader(fs, kmerSize, kmerIndexTablePath, indexTable, partitionNo, rangeBegin, rangeEnd, conf);
+    }
+    
     public static Path[][] groupKmerIndices(Path[] inputIndexPaths) {
         List<Path[]> groups = new ArrayList<Path[]>();
         
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.IOException;
+import libra.common.helpers.SequenceHelper;
+import libra.common.sequence.RollingKmerEncoder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Parses a line of a precomputed k-mer count file ("kmer count", separated
+ * by spaces or tabs, as written by "jellyfish dump -c" and "kmc_dump").
+ * K-mers are canonicalized, so counts of either strand give the same index.
+ *
+ * @author iychoi
+ */
+public class KmerCountLineParser {
+    
+    private static final Log LOG = LogFactory.getLog(KmerCountLineParser.class);
+    
+    private int[] kmerSizes;
+    private RollingKmerEncoder[] encoders;
+    
+    private int kmerSizeIndex;
+    private long high;
+    private long low;
+    private String sequence;
+    private int count;
+    
+    public KmerCountLineParser(int[] kmerSizes) {
+        this.kmerSizes = kmerSizes;
+        this.encoders = new RollingKmerEncoder[kmerSizes.length];
+        for(int i=0;i<kmerSizes.length;i++) {
+            if(kmerSizes[i] <= RollingKmerEncoder.MAX_KMER_SIZE) {
+                this.encoders[i] = new RollingKmerEncoder(kmerSizes[i]);
+            }
+        }
+    }
+    
+    /**
+     * Parse a line. Returns false for empty lines and k-mers with bases
+     * other than A/C/G/T, which are never counted from reads either.
+     */
+    public boolean parse(Text line) throws IOException {
+        byte[] bytes = line.getBytes();
+        int length = line.getLength();
+        
+        int kmerEnd = 0;
+        while(kmerEnd < length && !isSeparator(bytes[kmerEnd])) {
+            kmerEnd++;
+        }
+        
+        if(kmerEnd == 0) {
+            if(length == 0 || isBlank(bytes, length)) {
+                return false;
+            }
+            throw new IOException("Malformed k-mer count line : " + line.toString());
+        }
+        
+        this.kmerSizeIndex = getKmerSizeIndex(kmerEnd);
+        if(this.kmerSizeIndex < 0) {
+            throw new IOException(String.format("K-mer of length %d does not match any of the kmer sizes : %s", kmerEnd, line.toString()));
+        }
+        
+        this.count = parseCount(bytes, kmerEnd, length, line);
+        
+        RollingKmerEncoder encoder = this.encoders[this.kmerSizeIndex];
+        if(encoder == null) {
+            // k-mers longer than RollingKmerEncoder.MAX_KMER_SIZE
+            String kmer = new String(bytes, 0, kmerEnd, "US-ASCII").toUpperCase();
+            if(!SequenceHelper.isValidSequence(kmer)) {
+                return false;
+            }
+            this.sequence = SequenceHelper.canonicalize(kmer);
+            return this.count > 0;
+        }
+        
+        encoder.reset();
+        boolean valid = false;
+        for(int i=0;i<kmerEnd;i++) {
+            valid = encoder.push(bytes[i]);
+        }
+        
+        if(!valid) {
+            return false;
+        }
+        
+        this.high = encoder.getCanonicalHigh();
+        this.low = encoder.getCanonicalLow();
+        return this.count > 0;
+    }
+    
+    private static boolean isSeparator(byte ch) {
+        return ch == ' ' || ch == '\t';
+    }
+    
+    private static boolean isBlank(byte[] bytes, int length) {
+        for(int i=0;i<length;i++) {
+            if(!isSeparator(bytes[i]) && bytes[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private int getKmerSizeIndex(int kmerSize) {
+        for(int i=0;i<this.kmerSizes.length;i++) {
+            if(this.kmerSizes[i] == kmerSize) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int parseCount(byte[] bytes, int offset, int length, Text line) throws IOException {
+        int i = offset;
+        while(i < length && isSeparator(bytes[i])) {
+            i++;
+        }
+        
+        long count = 0;
+        int digits = 0;
+        while(i < length && bytes[i] >= '0' && bytes[i] <= '9') {
+            // saturate, counts are 32-bit in the index
+            count = Math.min(count * 10 + (bytes[i] - '0'), Integer.MAX_VALUE);
+            digits++;
+            i++;
+        }
+        
+        while(i < length && (isSeparator(bytes[i]) || bytes[i] == '\r')) {
+            i++;
+        }
+        
+        if(digits == 0 || i != length) {
+            throw new IOException("Malformed k-mer count line : " + line.toString());
+        }
+        return (int) count;
+    }
+    
+    /**
+     * Index of the kmer size of the parsed k-mer in the kmer sizes given
+     */
+    public int getKmerSizeIndex() {
+        return this.kmerSizeIndex;
+    }
+    
+    public int getKmerSize() {
+        return this.kmerSizes[this.kmerSizeIndex];
+    }
+    
+    public boolean isPacked() {
+        return this.encoders[this.kmerSizeIndex] != null;
+    }
+    
+    public long getHigh() {
+        return this.high;
+    }
+    
+    public long getLow() {
+        return this.low;
+    }
+    
+    /**
+     * Canonical k-mer, when the k-mer is longer than
+     * RollingKmerEncoder.MAX_KMER_SIZE
+     */
+    public String getSequence() {
+        return this.sequence;
+    }
+    
+    public int getCount() {
+        return this.count;
+    }
+}
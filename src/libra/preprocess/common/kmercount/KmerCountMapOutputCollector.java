@@ -0,0 +1,684 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerLongPairWritable;
+import libra.common.hadoop.io.datatypes.KmerLongWritable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.IFile;
+import org.apache.hadoop.mapred.IndexRecord;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapOutputCollector;
+import org.apache.hadoop.mapred.MapOutputFile;
+import org.apache.hadoop.mapred.MapTask;
+import org.apache.hadoop.mapred.Merger;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapred.SpillRecord;
+import org.apache.hadoop.mapred.Task;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Map output collector for k-mer count jobs with fixed-width keys
+ * (KmerLongWritable and KmerLongPairWritable) and [sampleID, count] values.
+ * Records are buffered as primitive (partition, k-mer, sampleID, count)
+ * tuples, LSD radix-sorted on spill, and counts of the same k-mer and sample
+ * are summed while writing, as the combiners of the preprocess jobs do. The
+ * job's combiner is not called. Jobs with other keys or values fall back to
+ * the default collector.
+ *
+ * @author iychoi
+ */
+public class KmerCountMapOutputCollector<K, V> implements MapOutputCollector<K, V> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerCountMapOutputCollector.class);
+    
+    private static final String MAP_OUTPUT_COLLECTOR_CLASS = "mapreduce.job.map.output.collector.class";
+    
+    // partition, high, low, sampleID and count, and their copies for sorting
+    private static final int BYTES_PER_RECORD = 2 * (4 + 8 + 8 + 4 + 4);
+    private static final int DEFAULT_IO_SORT_MB = 100;
+    private static final int RADIX = 256;
+    private static final int MAX_CACHED_VALUE_LENGTH = 64;
+    
+    /**
+     * Use this collector for map outputs of the job.
+     */
+    public static void setCollector(Configuration conf) {
+        conf.set(MAP_OUTPUT_COLLECTOR_CLASS, KmerCountMapOutputCollector.class.getName());
+    }
+    
+    private MapOutputCollector<K, V> fallback;
+    
+    private JobConf job;
+    private Task.TaskReporter reporter;
+    private MapTask mapTask;
+    private MapOutputFile mapOutputFile;
+    private FileSystem rfs;
+    private CompressionCodec codec;
+    private Class<K> keyClass;
+    private Class<V> valClass;
+    private RawComparator<K> comparator;
+    private boolean pairKey;
+    private int partitions;
+    // k-mers of a partition are of one size
+    private int[] partitionKmerSizes;
+    
+    private Counters.Counter mapOutputRecordCounter;
+    private Counters.Counter spilledRecordsCounter;
+    private Counters.Counter combineInputCounter;
+    private Counters.Counter combineOutputCounter;
+    
+    private int capacity;
+    private int size;
+    private int[] parts;
+    private long[] highs;
+    private long[] lows;
+    private int[] sampleIDs;
+    private int[] counts;
+    private int[] tmpParts;
+    private long[] tmpHighs;
+    private long[] tmpLows;
+    private int[] tmpSampleIDs;
+    private int[] tmpCounts;
+    private int[][] histograms;
+    
+    private List<SpillRecord> spillIndices;
+    
+    private K outputKey;
+    private V outputValue;
+    private int[][] valueArrays;
+    private int[] pairBuffer;
+    private int[] mergeBuffer;
+    
+    public KmerCountMapOutputCollector() {
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(Context context) throws IOException, ClassNotFoundException {
+        this.job = context.getJobConf();
+        
+        if(!isSupported(this.job)) {
+            LOG.info("Map outputs are not k-mer counts with fixed-width keys - using the default map output collector");
+            this.fallback = new MapTask.MapOutputBuffer<K, V>();
+            this.fallback.init(context);
+            return;
+        }
+        
+        this.reporter = context.getReporter();
+        this.mapTask = context.getMapTask();
+        this.mapOutputFile = this.mapTask.getMapOutputFile();
+        this.rfs = FileSystem.getLocal(this.job).getRaw();
+        this.keyClass = (Class<K>) this.job.getMapOutputKeyClass();
+        this.valClass = (Class<V>) this.job.getMapOutputValueClass();
+        this.comparator = this.job.getOutputKeyComparator();
+        this.pairKey = this.keyClass == KmerLongPairWritable.class;
+        this.partitions = this.job.getNumReduceTasks();
+        this.partitionKmerSizes = new int[this.partitions];
+        
+        if(this.job.getCompressMapOutput()) {
+            Class<? extends CompressionCodec> codecClass = this.job.getMapOutputCompressorClass(DefaultCodec.class);
+            this.codec = ReflectionUtils.newInstance(codecClass, this.job);
+        }
+        
+        this.mapOutputRecordCounter = this.reporter.getCounter(TaskCounter.MAP_OUTPUT_RECORDS);
+        this.spilledRecordsCounter = this.reporter.getCounter(TaskCounter.SPILLED_RECORDS);
+        this.combineInputCounter = this.reporter.getCounter(TaskCounter.COMBINE_INPUT_RECORDS);
+        this.combineOutputCounter = this.reporter.getCounter(TaskCounter.COMBINE_OUTPUT_RECORDS);
+        
+        int sortmb = this.job.getInt(MRJobConfig.IO_SORT_MB, DEFAULT_IO_SORT_MB);
+        if((sortmb & 0x7FF) != sortmb) {
+            throw new IOException("Invalid \"" + MRJobConfig.IO_SORT_MB + "\": " + sortmb);
+        }
+        
+        this.capacity = (int) ((long) sortmb * 1024 * 1024 / BYTES_PER_RECORD);
+        this.size = 0;
+        this.parts = new int[this.capacity];
+        this.lows = new long[this.capacity];
+        this.sampleIDs = new int[this.capacity];
+        this.counts = new int[this.capacity];
+        this.tmpParts = new int[this.capacity];
+        this.tmpLows = new long[this.capacity];
+        this.tmpSampleIDs = new int[this.capacity];
+        this.tmpCounts = new int[this.capacity];
+        if(this.pairKey) {
+            this.highs = new long[this.capacity];
+            this.tmpHighs = new long[this.capacity];
+        }
+        this.histograms = new int[4 + 8 + 8 + 4][RADIX];
+        
+        this.spillIndices = new ArrayList<SpillRecord>();
+        
+        this.outputKey = ReflectionUtils.newInstance(this.keyClass, this.job);
+        this.outputValue = ReflectionUtils.newInstance(this.valClass, this.job);
+        this.valueArrays = new int[MAX_CACHED_VALUE_LENGTH + 1][];
+        this.pairBuffer = new int[64];
+        this.mergeBuffer = new int[64];
+        
+        LOG.info(String.format("Radix-sorting map outputs - %d records per spill", this.capacity));
+    }
+    
+    private static boolean isSupported(JobConf job) {
+        Class<?> keyClass = job.getMapOutputKeyClass();
+        if(keyClass != KmerLongWritable.class && keyClass != KmerLongPairWritable.class) {
+            return false;
+        }
+        
+        if(!IntArrayWritable.class.isAssignableFrom(job.getMapOutputValueClass())) {
+            return false;
+        }
+        
+        // radix sort gives the natural order of keys only
+        Class<?> comparatorClass = job.getOutputKeyComparator().getClass();
+        return comparatorClass == KmerLongWritable.Comparator.class || comparatorClass == KmerLongPairWritable.Comparator.class;
+    }
+    
+    @Override
+    public synchronized void collect(K key, V value, int partition) throws IOException, InterruptedException {
+        if(this.fallback != null) {
+            this.fallback.collect(key, value, partition);
+            return;
+        }
+        
+        if(partition < 0 || partition >= this.partitions) {
+            throw new IOException("Illegal partition for " + key + " (" + partition + ")");
+        }
+        
+        int kmerSize = ((AKmerWritable) key).getSequenceLength();
+        if(this.partitionKmerSizes[partition] == 0) {
+            this.partitionKmerSizes[partition] = kmerSize;
+        } else if(this.partitionKmerSizes[partition] != kmerSize) {
+            throw new IOException(String.format("k-mers of sizes %d and %d are in the same partition %d", this.partitionKmerSizes[partition], kmerSize, partition));
+        }
+        
+        long high = 0;
+        long low;
+        if(this.pairKey) {
+            KmerLongPairWritable pairKey = (KmerLongPairWritable) key;
+            high = pairKey.getHigh();
+            low = pairKey.getLow();
+        } else {
+            low = ((KmerLongWritable) key).get();
+        }
+        
+        int[] v_arr = ((IntArrayWritable) value).get();
+        if(v_arr.length % 2 != 0) {
+            throw new IOException("Map output record is not valid");
+        }
+        
+        for(int i=0;i<v_arr.length;i+=2) {
+            if(this.size == this.capacity) {
+                sortAndSpill();
+            }
+            
+            this.parts[this.size] = partition;
+            if(this.pairKey) {
+                this.highs[this.size] = high;
+            }
+            this.lows[this.size] = low;
+            this.sampleIDs[this.size] = v_arr[i];
+            this.counts[this.size] = v_arr[i + 1];
+            this.size++;
+        }
+        
+        this.mapOutputRecordCounter.increment(1);
+    }
+    
+    /**
+     * LSD radix sort of buffered records by (partition, high, low, sampleID).
+     * k-mers are compared as unsigned, as the key comparators do. Digits
+     * that are the same in all records are skipped.
+     */
+    private void sort() {
+        for(int[] histogram : this.histograms) {
+            for(int j=0;j<RADIX;j++) {
+                histogram[j] = 0;
+            }
+        }
+        
+        for(int i=0;i<this.size;i++) {
+            int sampleID = this.sampleIDs[i];
+            for(int d=0;d<4;d++) {
+                this.histograms[d][(sampleID >>> (d << 3)) & 0xFF]++;
+            }
+            long low = this.lows[i];
+            for(int d=0;d<8;d++) {
+                this.histograms[4 + d][(int) (low >>> (d << 3)) & 0xFF]++;
+            }
+            if(this.pairKey) {
+                long high = this.highs[i];
+                for(int d=0;d<8;d++) {
+                    this.histograms[12 + d][(int) (high >>> (d << 3)) & 0xFF]++;
+                }
+            }
+            int part = this.parts[i];
+            for(int d=0;d<4;d++) {
+                this.histograms[20 + d][(part >>> (d << 3)) & 0xFF]++;
+            }
+        }
+        
+        for(int d=0;d<4;d++) {
+            if(toOffsets(this.histograms[d])) {
+                scatter(this.sampleIDs, d << 3, this.histograms[d]);
+            }
+        }
+        for(int d=0;d<8;d++) {
+            if(toOffsets(this.histograms[4 + d])) {
+                scatter(this.lows, d << 3, this.histograms[4 + d]);
+            }
+        }
+        if(this.pairKey) {
+            for(int d=0;d<8;d++) {
+                if(toOffsets(this.histograms[12 + d])) {
+                    scatter(this.highs, d << 3, this.histograms[12 + d]);
+                }
+            }
+        }
+        for(int d=0;d<4;d++) {
+            if(toOffsets(this.histograms[20 + d])) {
+                scatter(this.parts, d << 3, this.histograms[20 + d]);
+            }
+        }
+    }
+    
+    /**
+     * Turn the histogram into bucket offsets. Return false if all records
+     * fall in one bucket, so the pass can be skipped.
+     */
+    private boolean toOffsets(int[] histogram) {
+        int offset = 0;
+        for(int j=0;j<RADIX;j++) {
+            int count = histogram[j];
+            if(count == this.size) {
+                return false;
+            }
+            histogram[j] = offset;
+            offset += count;
+        }
+        return true;
+    }
+    
+    private void scatter(int[] keys, int shift, int[] offsets) {
+        for(int i=0;i<this.size;i++) {
+            move(i, offsets[(keys[i] >>> shift) & 0xFF]++);
+        }
+        swapBuffers();
+    }
+    
+    private void scatter(long[] keys, int shift, int[] offsets) {
+        for(int i=0;i<this.size;i++) {
+            move(i, offsets[(int) (keys[i] >>> shift) & 0xFF]++);
+        }
+        swapBuffers();
+    }
+    
+    private void move(int from, int to) {
+        this.tmpParts[to] = this.parts[from];
+        if(this.pairKey) {
+            this.tmpHighs[to] = this.highs[from];
+        }
+        this.tmpLows[to] = this.lows[from];
+        this.tmpSampleIDs[to] = this.sampleIDs[from];
+        this.tmpCounts[to] = this.counts[from];
+    }
+    
+    private void swapBuffers() {
+        int[] parts = this.parts;
+        this.parts = this.tmpParts;
+        this.tmpParts = parts;
+        
+        long[] highs = this.highs;
+        this.highs = this.tmpHighs;
+        this.tmpHighs = highs;
+        
+        long[] lows = this.lows;
+        this.lows = this.tmpLows;
+        this.tmpLows = lows;
+        
+        int[] sampleIDs = this.sampleIDs;
+        this.sampleIDs = this.tmpSampleIDs;
+        this.tmpSampleIDs = sampleIDs;
+        
+        int[] counts = this.counts;
+        this.counts = this.tmpCounts;
+        this.tmpCounts = counts;
+    }
+    
+    private void sortAndSpill() throws IOException {
+        long begin = System.currentTimeMillis();
+        sort();
+        long sorted = System.currentTimeMillis();
+        
+        int spillNo = this.spillIndices.size();
+        long estimatedSize = (long) this.size * (this.pairKey ? 25 : 17) + this.partitions * 150L;
+        Path spillFile = this.mapOutputFile.getSpillFileForWrite(spillNo, estimatedSize);
+        SpillRecord spillRec = new SpillRecord(this.partitions);
+        
+        long records = 0;
+        FSDataOutputStream out = this.rfs.create(spillFile);
+        try {
+            int i = 0;
+            for(int p=0;p<this.partitions;p++) {
+                long segmentStart = out.getPos();
+                IFile.Writer<K, V> writer = new IFile.Writer<K, V>(this.job, out, this.keyClass, this.valClass, this.codec, this.spilledRecordsCounter);
+                while(i < this.size && this.parts[i] == p) {
+                    i = writeKmer(writer, i);
+                    records++;
+                }
+                writer.close();
+                
+                spillRec.putIndex(new IndexRecord(segmentStart, writer.getRawLength(), writer.getCompressedLength()), p);
+                this.reporter.progress();
+            }
+        } finally {
+            out.close();
+        }
+        
+        Path spillIndexFile = this.mapOutputFile.getSpillIndexFileForWrite(spillNo, this.partitions * MapTask.MAP_OUTPUT_INDEX_RECORD_LENGTH);
+        spillRec.writeToFile(spillIndexFile, this.job);
+        this.spillIndices.add(spillRec);
+        
+        this.combineInputCounter.increment(this.size);
+        this.combineOutputCounter.increment(records);
+        
+        LOG.info(String.format("Finished spill %d - %d records sorted in %d ms, %d k-mers written in %d ms", spillNo, this.size, sorted - begin, records, System.currentTimeMillis() - sorted));
+        this.size = 0;
+    }
+    
+    /**
+     * Write records of the k-mer starting at begin and return the index of
+     * the next k-mer. Records of the same sample are adjacent after sorting.
+     */
+    private int writeKmer(IFile.Writer<K, V> writer, int begin) throws IOException {
+        int part = this.parts[begin];
+        long high = this.pairKey ? this.highs[begin] : 0;
+        long low = this.lows[begin];
+        
+        int pairs = 0;
+        int i = begin;
+        while(i < this.size && this.parts[i] == part && this.lows[i] == low && (!this.pairKey || this.highs[i] == high)) {
+            int sampleID = this.sampleIDs[i];
+            if(pairs > 0 && this.pairBuffer[(pairs - 1) * 2] == sampleID) {
+                this.pairBuffer[(pairs - 1) * 2 + 1] += this.counts[i];
+            } else {
+                ensurePairBuffer(pairs + 1);
+                this.pairBuffer[pairs * 2] = sampleID;
+                this.pairBuffer[pairs * 2 + 1] = this.counts[i];
+                pairs++;
+            }
+            i++;
+        }
+        
+        write(writer, this.partitionKmerSizes[part], high, low, this.pairBuffer, pairs);
+        return i;
+    }
+    
+    private void ensurePairBuffer(int pairs) {
+        if(this.pairBuffer.length < pairs * 2) {
+            int[] newBuffer = new int[Math.max(pairs * 2, this.pairBuffer.length * 2)];
+            System.arraycopy(this.pairBuffer, 0, newBuffer, 0, this.pairBuffer.length);
+            this.pairBuffer = newBuffer;
+        }
+    }
+    
+    private void write(IFile.Writer<K, V> writer, int kmerSize, long high, long low, int[] pairArr, int pairs) throws IOException {
+        if(this.pairKey) {
+            ((KmerLongPairWritable) this.outputKey).set(high, low, kmerSize);
+        } else {
+            ((KmerLongWritable) this.outputKey).set(low, kmerSize);
+        }
+        
+        int length = pairs * 2;
+        int[] arr;
+        if(length <= MAX_CACHED_VALUE_LENGTH) {
+            arr = this.valueArrays[length];
+            if(arr == null) {
+                arr = new int[length];
+                this.valueArrays[length] = arr;
+            }
+        } else {
+            arr = new int[length];
+        }
+        System.arraycopy(pairArr, 0, arr, 0, length);
+        ((IntArrayWritable) this.outputValue).set(arr);
+        
+        writer.append(this.outputKey, this.outputValue);
+    }
+    
+    @Override
+    public void flush() throws IOException, InterruptedException, ClassNotFoundException {
+        if(this.fallback != null) {
+            this.fallback.flush();
+            return;
+        }
+        
+        if(this.size > 0 || this.spillIndices.isEmpty()) {
+            sortAndSpill();
+        }
+        
+        // release buffers before merging
+        this.parts = null;
+        this.highs = null;
+        this.lows = null;
+        this.sampleIDs = null;
+        this.counts = null;
+        this.tmpParts = null;
+        this.tmpHighs = null;
+        this.tmpLows = null;
+        this.tmpSampleIDs = null;
+        this.tmpCounts = null;
+        
+        if(this.spillIndices.size() == 1) {
+            Path spillFile = this.mapOutputFile.getSpillFile(0);
+            Path spillIndexFile = this.mapOutputFile.getSpillIndexFile(0);
+            rename(spillFile, this.mapOutputFile.getOutputFileForWriteInVolume(spillFile));
+            rename(spillIndexFile, this.mapOutputFile.getOutputIndexFileForWriteInVolume(spillFile));
+        } else {
+            mergeSpills();
+        }
+        
+        long outputBytes = this.rfs.getFileStatus(this.mapOutputFile.getOutputFile()).getLen();
+        this.reporter.getCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).increment(outputBytes);
+    }
+    
+    private void rename(Path src, Path dst) throws IOException {
+        if(!this.rfs.mkdirs(dst.getParent())) {
+            throw new IOException("Mkdirs failed to create " + dst.getParent().toString());
+        }
+        if(!this.rfs.rename(src, dst)) {
+            throw new IOException("Unable to rename " + src + " to " + dst);
+        }
+    }
+    
+    /**
+     * Merge spills partition by partition. Counts of a k-mer in different
+     * spills are combined.
+     */
+    private void mergeSpills() throws IOException {
+        int spills = this.spillIndices.size();
+        Path[] spillFiles = new Path[spills];
+        long totalLength = 0;
+        for(int i=0;i<spills;i++) {
+            spillFiles[i] = this.mapOutputFile.getSpillFile(i);
+            totalLength += this.rfs.getFileStatus(spillFiles[i]).getLen();
+        }
+        
+        Path outputFile = this.mapOutputFile.getOutputFileForWrite(totalLength);
+        Path outputIndexFile = this.mapOutputFile.getOutputIndexFileForWrite(this.partitions * MapTask.MAP_OUTPUT_INDEX_RECORD_LENGTH);
+        SpillRecord spillRec = new SpillRecord(this.partitions);
+        int mergeFactor = this.job.getInt(MRJobConfig.IO_SORT_FACTOR, 100);
+        Path tmpDir = new Path(this.mapTask.getTaskID().toString());
+        
+        FSDataOutputStream out = this.rfs.create(outputFile, true, 4096);
+        try {
+            for(int p=0;p<this.partitions;p++) {
+                List<Merger.Segment<K, V>> segments = new ArrayList<Merger.Segment<K, V>>();
+                for(int i=0;i<spills;i++) {
+                    IndexRecord indexRecord = this.spillIndices.get(i).getIndex(p);
+                    segments.add(new Merger.Segment<K, V>(this.job, this.rfs, spillFiles[i], indexRecord.startOffset, indexRecord.partLength, this.codec, true));
+                }
+                
+                RawKeyValueIterator kvIter = Merger.merge(this.job, this.rfs, this.keyClass, this.valClass, this.codec, segments, mergeFactor, tmpDir, this.comparator, this.reporter, false, null, this.spilledRecordsCounter, new Progress(), TaskType.MAP);
+                
+                long segmentStart = out.getPos();
+                IFile.Writer<K, V> writer = new IFile.Writer<K, V>(this.job, out, this.keyClass, this.valClass, this.codec, this.spilledRecordsCounter);
+                combineMerged(kvIter, writer);
+                writer.close();
+                kvIter.close();
+                
+                spillRec.putIndex(new IndexRecord(segmentStart, writer.getRawLength(), writer.getCompressedLength()), p);
+            }
+        } finally {
+            out.close();
+        }
+        
+        spillRec.writeToFile(outputIndexFile, this.job);
+        
+        for(int i=0;i<spills;i++) {
+            this.rfs.delete(spillFiles[i], true);
+            this.rfs.delete(this.mapOutputFile.getSpillIndexFile(i), true);
+        }
+        
+        LOG.info(String.format("Merged %d spills", spills));
+    }
+    
+    /**
+     * Write merged records, summing counts of the same k-mer and sample.
+     * Values of a spill are sorted by sampleID, so they are merged pairwise.
+     */
+    private void combineMerged(RawKeyValueIterator kvIter, IFile.Writer<K, V> writer) throws IOException {
+        K key = ReflectionUtils.newInstance(this.keyClass, this.job);
+        V value = ReflectionUtils.newInstance(this.valClass, this.job);
+        byte[] prevKey = new byte[16];
+        int prevKeyLength = -1;
+        int prevKmerSize = 0;
+        long prevHigh = 0;
+        long prevLow = 0;
+        int pairs = 0;
+        long inputs = 0;
+        long outputs = 0;
+        
+        while(kvIter.next()) {
+            DataInputBuffer keyIn = kvIter.getKey();
+            int keyLength = keyIn.getLength() - keyIn.getPosition();
+            boolean same = prevKeyLength == keyLength && this.comparator.compare(prevKey, 0, prevKeyLength, keyIn.getData(), keyIn.getPosition(), keyLength) == 0;
+            
+            if(!same) {
+                if(prevKeyLength >= 0) {
+                    write(writer, prevKmerSize, prevHigh, prevLow, this.pairBuffer, pairs);
+                    outputs++;
+                }
+                
+                if(prevKey.length < keyLength) {
+                    prevKey = new byte[keyLength];
+                }
+                System.arraycopy(keyIn.getData(), keyIn.getPosition(), prevKey, 0, keyLength);
+                prevKeyLength = keyLength;
+                
+                ((Writable) key).readFields(keyIn);
+                prevKmerSize = ((AKmerWritable) key).getSequenceLength();
+                if(this.pairKey) {
+                    prevHigh = ((KmerLongPairWritable) key).getHigh();
+                    prevLow = ((KmerLongPairWritable) key).getLow();
+                } else {
+                    prevLow = ((KmerLongWritable) key).get();
+                }
+                pairs = 0;
+            }
+            
+            DataInputBuffer valueIn = kvIter.getValue();
+            ((Writable) value).readFields(valueIn);
+            pairs = mergePairs(pairs, ((IntArrayWritable) value).get());
+            inputs++;
+            
+            if((inputs & 0xFFFF) == 0) {
+                this.reporter.progress();
+            }
+        }
+        
+        if(prevKeyLength >= 0) {
+            write(writer, prevKmerSize, prevHigh, prevLow, this.pairBuffer, pairs);
+            outputs++;
+        }
+        
+        this.combineInputCounter.increment(inputs);
+        this.combineOutputCounter.increment(outputs);
+    }
+    
+    /**
+     * Merge sorted [sampleID, count] pairs into the first pairs entries of
+     * pairBuffer and return the new number of pairs.
+     */
+    private int mergePairs(int pairs, int[] v_arr) {
+        int otherPairs = v_arr.length / 2;
+        if(this.mergeBuffer.length < (pairs + otherPairs) * 2) {
+            this.mergeBuffer = new int[Math.max((pairs + otherPairs) * 2, this.mergeBuffer.length * 2)];
+        }
+        
+        int a = 0;
+        int b = 0;
+        int n = 0;
+        while(a < pairs || b < otherPairs) {
+            if(b >= otherPairs || (a < pairs && this.pairBuffer[a * 2] < v_arr[b * 2])) {
+                this.mergeBuffer[n * 2] = this.pairBuffer[a * 2];
+                this.mergeBuffer[n * 2 + 1] = this.pairBuffer[a * 2 + 1];
+                a++;
+            } else if(a >= pairs || v_arr[b * 2] < this.pairBuffer[a * 2]) {
+                this.mergeBuffer[n * 2] = v_arr[b * 2];
+                this.mergeBuffer[n * 2 + 1] = v_arr[b * 2 + 1];
+                b++;
+            } else {
+                this.mergeBuffer[n * 2] = v_arr[b * 2];
+                this.mergeBuffer[n * 2 + 1] = this.pairBuffer[a * 2 + 1] + v_arr[b * 2 + 1];
+                a++;
+                b++;
+            }
+            n++;
+        }
+        
+        int[] merged = this.mergeBuffer;
+        this.mergeBuffer = this.pairBuffer;
+        this.pairBuffer = merged;
+        return n;
+    }
+    
+    @Override
+    public void close() throws IOException, InterruptedException {
+        if(this.fallback != null) {
+            this.fallback.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.IOException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * A sorted run of k-mer counts of one sample, written to HDFS in one
+ * section per index partition. Sections are followed by a footer holding
+ * the kmer size, the sample ID and section offsets, and the file ends with
+ * the offset of the footer. Entries are (high, low, count), with high
+ * omitted for k <= 32.
+ *
+ * @author iychoi
+ */
+public class KmerCountRun {
+
+    private static final Log LOG = LogFactory.getLog(KmerCountRun.class);
+
+    public static int getEntryBytes(int kmerSize) {
+        // low + count, and high for k > 32
+        int bytes = 8 + 4;
+        if(kmerSize > 32) {
+            bytes += 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the sorted table to file and clear the table. Entry i of the
+     * table belongs to section partitionIDs[i].
+     */
+    public static void write(KmerCountTable table, int kmerSize, int sampleID, int[] partitionIDs, int partitions, FileSystem fs, Path file) throws IOException {
+        int entries = table.size();
+
+        // stable counting sort by partition keeps entries sorted within sections
+        int[] sectionBegin = new int[partitions + 1];
+        for(int i=0;i<entries;i++) {
+            sectionBegin[partitionIDs[i] + 1]++;
+        }
+        for(int p=0;p<partitions;p++) {
+            sectionBegin[p + 1] += sectionBegin[p];
+        }
+
+        int[] order = new int[entries];
+        int[] next = new int[partitions];
+        System.arraycopy(sectionBegin, 0, next, 0, partitions);
+        for(int i=0;i<entries;i++) {
+            order[next[partitionIDs[i]]++] = i;
+        }
+
+        boolean doubleWord = kmerSize > 32;
+        long entryBytes = getEntryBytes(kmerSize);
+
+        FSDataOutputStream out = fs.create(file, true);
+        try {
+            for(int i=0;i<entries;i++) {
+                int slot = order[i];
+                if(doubleWord) {
+                    out.writeLong(table.getHigh(slot));
+                }
+                out.writeLong(table.getLow(slot));
+                out.writeInt(table.getCount(slot));
+            }
+
+            long footerOffset = out.getPos();
+            out.writeInt(kmerSize);
+            out.writeInt(sampleID);
+            out.writeInt(partitions);
+            for(int p=0;p<=partitions;p++) {
+                out.writeLong(sectionBegin[p] * entryBytes);
+            }
+            out.writeLong(footerOffset);
+        } finally {
+            out.close();
+        }
+
+        table.clear();
+
+        LOG.info(String.format("Wrote a run of %d k-mer counts to %s", entries, file.toString()));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.kmermatch.KmerMatchResult;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.helpers.KmerCountRunHelper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Creates a split per index partition of every kmer size, merging the
+ * matching section of all count runs of the round.
+ *
+ * @author iychoi
+ */
+public class KmerCountRunInputFormat extends InputFormat<AKmerWritable, KmerMatchResult> {
+
+    private static final Log LOG = LogFactory.getLog(KmerCountRunInputFormat.class);
+
+    private static final String HADOOP_CONFIG_KEY_PARTITIONS = "libra.preprocess.common.kmercount.kmercountruninputformat.partitions";
+    
+    /**
+     * Set the number of partitions per kmer size, equal to the number of
+     * sections in each run
+     */
+    public static void setPartitions(Configuration conf, int partitions) {
+        conf.setInt(HADOOP_CONFIG_KEY_PARTITIONS, partitions);
+    }
+    
+    public static int getPartitions(Configuration conf) {
+        return conf.getInt(HADOOP_CONFIG_KEY_PARTITIONS, 0);
+    }
+    
+    @Override
+    public RecordReader<AKmerWritable, KmerMatchResult> createRecordReader(InputSplit split, TaskAttemptContext context) throws IOException {
+        return new KmerCountRunRecordReader();
+    }
+    
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        PreprocessorRoundConfig ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        
+        int partitions = getPartitions(conf);
+        if(partitions <= 0) {
+            throw new IOException("number of partitions is not set");
+        }
+        
+        Path runDirPath = new Path(KmerCountRunHelper.makeKmerCountRunDirPath(ppConfig.getKmerIndexPath()));
+        
+        List<InputSplit> splits = new ArrayList<InputSplit>();
+        int[] kmerSizes = ppConfig.getAllKmerSizes();
+        for(int i=0;i<kmerSizes.length;i++) {
+            Path[] runPaths = KmerCountRunHelper.getKmerCountRunFilePaths(conf, runDirPath, kmerSizes[i]);
+            LOG.info(String.format("Merging %d runs of kmer size %d", runPaths.length, kmerSizes[i]));
+            
+            // a separate block of partitions per kmer size
+            for(int j=0;j<partitions;j++) {
+                splits.add(new KmerCountRunInputSplit(kmerSizes[i], runPaths, j, i * partitions + j));
+            }
+        }
+        
+        LOG.debug("Total # of splits: " + splits.size());
+        return splits;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+/**
+ * A partition of an index to be merged from a section of each count run.
+ *
+ * @author iychoi
+ */
+public class KmerCountRunInputSplit extends InputSplit implements Writable {
+
+    private int kmerSize;
+    private Path[] runPaths;
+    // section of runs to read
+    private int partitionNo;
+    // partition of the index across kmer sizes
+    private int partitionID;
+
+    public KmerCountRunInputSplit() {
+    }
+    
+    public KmerCountRunInputSplit(int kmerSize, Path[] runPaths, int partitionNo, int partitionID) {
+        this.kmerSize = kmerSize;
+        this.runPaths = runPaths;
+        this.partitionNo = partitionNo;
+        this.partitionID = partitionID;
+    }
+    
+    public int getKmerSize() {
+        return this.kmerSize;
+    }
+    
+    public Path[] getRunPaths() {
+        return this.runPaths;
+    }
+    
+    public int getPartitionNo() {
+        return this.partitionNo;
+    }
+    
+    public int getPartitionID() {
+        return this.partitionID;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for(Path path : this.runPaths) {
+            if(sb.length() != 0) {
+                sb.append(", ");
+            }
+            sb.append(path.toString());
+        }
+        return this.partitionID + " (k" + this.kmerSize + ", " + this.partitionNo + ")\n" + sb.toString();
+    }
+
+    @Override
+    public String[] getLocations() throws IOException, InterruptedException {
+        return new String[] {"localhost"};
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(this.kmerSize);
+        out.writeInt(this.partitionNo);
+        out.writeInt(this.partitionID);
+        out.writeInt(this.runPaths.length);
+        for(Path runPath : this.runPaths) {
+            Text.writeString(out, runPath.toString());
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        this.kmerSize = in.readInt();
+        this.partitionNo = in.readInt();
+        this.partitionID = in.readInt();
+        this.runPaths = new Path[in.readInt()];
+        for(int i=0;i<this.runPaths.length;i++) {
+            this.runPaths[i] = new Path(Text.readString(in));
+        }
+    }
+
+    @Override
+    public long getLength() throws IOException, InterruptedException {
+        return Long.MAX_VALUE;
+    }
+}
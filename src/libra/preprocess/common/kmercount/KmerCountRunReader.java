@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.preprocess.common.kmerindex.AKmerIndexReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Streams one section of a KmerCountRun as (k-mer, [sampleID, count])
+ * records, so runs can be merged by KmerJoiner like index partitions.
+ *
+ * @author iychoi
+ */
+public class KmerCountRunReader extends AKmerIndexReader {
+
+    private static final Log LOG = LogFactory.getLog(KmerCountRunReader.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Path runPath;
+    private KmerKeyType keyType;
+    private int kmerSize;
+    private int sampleID;
+    private long entries;
+    private long read;
+    private FSDataInputStream fileIn;
+    private DataInputStream in;
+
+    public KmerCountRunReader(FileSystem fs, Path runPath, int partition, KmerKeyType keyType) throws IOException {
+        this.runPath = runPath;
+        this.keyType = keyType;
+
+        long fileLength = fs.getFileStatus(runPath).getLen();
+        this.fileIn = fs.open(runPath);
+
+        // footer
+        this.fileIn.seek(fileLength - 8);
+        long footerOffset = this.fileIn.readLong();
+        this.fileIn.seek(footerOffset);
+        this.kmerSize = this.fileIn.readInt();
+        this.sampleID = this.fileIn.readInt();
+        int partitions = this.fileIn.readInt();
+        if(partition < 0 || partition >= partitions) {
+            this.fileIn.close();
+            throw new IOException(String.format("partition %d is not in run %s of %d partitions", partition, runPath.toString(), partitions));
+        }
+
+        long[] offsets = new long[partitions + 1];
+        for(int p=0;p<=partitions;p++) {
+            offsets[p] = this.fileIn.readLong();
+        }
+
+        this.entries = (offsets[partition + 1] - offsets[partition]) / KmerCountRun.getEntryBytes(this.kmerSize);
+        this.read = 0;
+
+        this.fileIn.seek(offsets[partition]);
+        this.in = new DataInputStream(new BufferedInputStream(this.fileIn, BUFFER_SIZE));
+    }
+
+    public int getKmerSize() {
+        return this.kmerSize;
+    }
+
+    public int getSampleID() {
+        return this.sampleID;
+    }
+
+    @Override
+    public Path getKmerIndexTablePath() {
+        return this.runPath;
+    }
+
+    @Override
+    public KmerKeyType getKeyType() {
+        return this.keyType;
+    }
+
+    @Override
+    public boolean next(AKmerWritable key, IntArrayWritable val) throws IOException {
+        if(this.read >= this.entries) {
+            return false;
+        }
+
+        try {
+            long high = 0;
+            if(this.kmerSize > 32) {
+                high = this.in.readLong();
+            }
+            long low = this.in.readLong();
+            int count = this.in.readInt();
+
+            key.set(high, low, this.kmerSize);
+            val.set(new int[] {this.sampleID, count});
+        } catch (EOFException ex) {
+            throw new IOException("Run file is truncated : " + this.runPath.toString());
+        }
+        this.read++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(this.in != null) {
+            this.in.close();
+            this.in = null;
+        }
+    }
+    
+    @Override
+    public boolean reusesValues() {
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.kmermatch.KmerJoiner;
+import libra.common.kmermatch.KmerMatchResult;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.kmerindex.AKmerIndexReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Merges a section of count runs in k-mer order. Each result holds the
+ * [sampleID, count] of every run containing the k-mer.
+ *
+ * @author iychoi
+ */
+public class KmerCountRunRecordReader extends RecordReader<AKmerWritable, KmerMatchResult> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerCountRunRecordReader.class);
+    
+    private KmerJoiner joiner;
+    private KmerMatchResult curResult;
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+        if(!(split instanceof KmerCountRunInputSplit)) {
+            throw new IOException("split is not an instance of KmerCountRunInputSplit");
+        }
+        
+        KmerCountRunInputSplit runSplit = (KmerCountRunInputSplit) split;
+        Configuration conf = context.getConfiguration();
+        PreprocessorRoundConfig ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        
+        Path[] runPaths = runSplit.getRunPaths();
+        AKmerIndexReader[] readers = new AKmerIndexReader[runPaths.length];
+        for(int i=0;i<runPaths.length;i++) {
+            FileSystem fs = runPaths[i].getFileSystem(conf);
+            readers[i] = new KmerCountRunReader(fs, runPaths[i], runSplit.getPartitionNo(), ppConfig.getKeyType());
+        }
+        
+        this.joiner = new KmerJoiner(runSplit.getKmerSize(), readers, runSplit.getPartitionNo(), conf);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+        this.curResult = this.joiner.stepNext();
+        if(this.curResult != null) {
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public AKmerWritable getCurrentKey() {
+        if(this.curResult != null) {
+            return this.curResult.getKey();
+        }
+        return null;
+    }
+
+    @Override
+    public KmerMatchResult getCurrentValue() {
+        return this.curResult;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+        return this.joiner.getProgress();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.joiner.close();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A sorted run of (k-mer, sampleID, count) entries spilled from a
+ * KmerCountTable to a local file. The file is removed on close().
+ *
+ * @author iychoi
+ */
+public class KmerCountSpill {
+
+    private static final Log LOG = LogFactory.getLog(KmerCountSpill.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static final int ENTRY_BYTES = 8 + 8 + 4 + 4;
+
+    private File file;
+    private int entries;
+    private DataInputStream in;
+    private int read;
+
+    private long high;
+    private long low;
+    private int sampleID;
+    private int count;
+
+    /**
+     * Sort the table, write it to the given file and clear the table.
+     */
+    public static KmerCountSpill write(KmerCountTable table, File file) throws IOException {
+        File dir = file.getParentFile();
+        if(dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create spill directory " + dir.getPath());
+        }
+        file.deleteOnExit();
+
+        int entries = table.size();
+        table.sort();
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            for(int i=0;i<entries;i++) {
+                out.writeLong(table.getHigh(i));
+                out.writeLong(table.getLow(i));
+                out.writeInt(table.getSampleID(i));
+                out.writeInt(table.getCount(i));
+            }
+        } finally {
+            out.close();
+        }
+
+        table.clear();
+
+        LOG.info(String.format("Spilled %d k-mer counts to %s", entries, file.getPath()));
+        return new KmerCountSpill(file, entries);
+    }
+
+    private KmerCountSpill(File file, int entries) {
+        this.file = file;
+        this.entries = entries;
+        this.read = 0;
+    }
+
+    public int getEntries() {
+        return this.entries;
+    }
+
+    public boolean next() throws IOException {
+        if(this.read >= this.entries) {
+            return false;
+        }
+
+        if(this.in == null) {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file), BUFFER_SIZE));
+        }
+
+        try {
+            this.high = this.in.readLong();
+            this.low = this.in.readLong();
+            this.sampleID = this.in.readInt();
+            this.count = this.in.readInt();
+        } catch (EOFException ex) {
+            throw new IOException("Spill file is truncated : " + this.file.getPath());
+        }
+        this.read++;
+        return true;
+    }
+
+    public long getHigh() {
+        return this.high;
+    }
+
+    public long getLow() {
+        return this.low;
+    }
+
+    public int getSampleID() {
+        return this.sampleID;
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    public void close() throws IOException {
+        if(this.in != null) {
+            this.in.close();
+            this.in = null;
+        }
+        this.file.delete();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Merges sorted spills into one stream ordered by k-mer. Entries of the same
+ * k-mer may come from different spills and are returned one after another.
+ *
+ * @author iychoi
+ */
+public class KmerCountSpillMerger {
+
+    private static final Log LOG = LogFactory.getLog(KmerCountSpillMerger.class);
+
+    private KmerCountSpill[] spills;
+    private boolean[] hasEntry;
+    private KmerCountSpill current;
+
+    public KmerCountSpillMerger(List<KmerCountSpill> spills) throws IOException {
+        this.spills = spills.toArray(new KmerCountSpill[0]);
+        this.hasEntry = new boolean[this.spills.length];
+        for(int i=0;i<this.spills.length;i++) {
+            this.hasEntry[i] = this.spills[i].next();
+        }
+        this.current = null;
+
+        LOG.info("Merging " + this.spills.length + " spills");
+    }
+
+    public boolean next() throws IOException {
+        if(this.current != null) {
+            for(int i=0;i<this.spills.length;i++) {
+                if(this.spills[i] == this.current) {
+                    this.hasEntry[i] = this.current.next();
+                    break;
+                }
+            }
+        }
+
+        KmerCountSpill min = null;
+        for(int i=0;i<this.spills.length;i++) {
+            if(this.hasEntry[i]) {
+                if(min == null || lessThan(this.spills[i], min)) {
+                    min = this.spills[i];
+                }
+            }
+        }
+
+        this.current = min;
+        return min != null;
+    }
+
+    private static boolean lessThan(KmerCountSpill a, KmerCountSpill b) {
+        if(a.getHigh() != b.getHigh()) {
+            return (a.getHigh() ^ Long.MIN_VALUE) < (b.getHigh() ^ Long.MIN_VALUE);
+        }
+        return (a.getLow() ^ Long.MIN_VALUE) < (b.getLow() ^ Long.MIN_VALUE);
+    }
+
+    public long getHigh() {
+        return this.current.getHigh();
+    }
+
+    public long getLow() {
+        return this.current.getLow();
+    }
+
+    public int getSampleID() {
+        return this.current.getSampleID();
+    }
+
+    public int getCount() {
+        return this.current.getCount();
+    }
+
+    public void close() throws IOException {
+        for(KmerCountSpill spill : this.spills) {
+            spill.close();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing counter table keyed by a packed k-mer (one or two longs)
+ * and a sample ID. Slots are kept in parallel primitive arrays; a slot is
+ * empty when its count is zero.
+ *
+ * @author iychoi
+ */
+public class KmerCountTable {
+
+    private static final int MIN_CAPACITY = 1024;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private final boolean doubleWord;
+    private final int capacity;
+    private final int slotMask;
+    private final int maxSize;
+
+    private final long[] highs;
+    private final long[] lows;
+    private final int[] sampleIDs;
+    private final int[] counts;
+    private int size;
+
+    public static int getSlotBytes(int kmerSize) {
+        // low + sample + count, and high for k > 32
+        int bytes = 8 + 4 + 4;
+        if(kmerSize > 32) {
+            bytes += 8;
+        }
+        return bytes;
+    }
+
+    public KmerCountTable(int kmerSize, long memoryBytes) {
+        this.doubleWord = kmerSize > 32;
+
+        long slots = memoryBytes / getSlotBytes(kmerSize);
+        int capacity = MIN_CAPACITY;
+        while(capacity < (1 << 30) && (long)capacity * 2 <= slots) {
+            capacity *= 2;
+        }
+
+        this.capacity = capacity;
+        this.slotMask = capacity - 1;
+        this.maxSize = (int)(capacity * MAX_LOAD_FACTOR);
+
+        if(this.doubleWord) {
+            this.highs = new long[capacity];
+        } else {
+            this.highs = null;
+        }
+        this.lows = new long[capacity];
+        this.sampleIDs = new int[capacity];
+        this.counts = new int[capacity];
+        this.size = 0;
+    }
+
+    private static long mix(long h) {
+        // murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private int slotOf(long high, long low, int sampleID) {
+        long h = mix(low ^ mix(high + sampleID));
+        return (int)h & this.slotMask;
+    }
+
+    /**
+     * Add count to the entry. Callers should flush the table once isFull()
+     * returns true.
+     */
+    public void add(long high, long low, int sampleID, int count) {
+        if(!this.doubleWord) {
+            high = 0;
+        }
+
+        int slot = slotOf(high, low, sampleID);
+        while(true) {
+            if(this.counts[slot] == 0) {
+                if(this.doubleWord) {
+                    this.highs[slot] = high;
+                }
+                this.lows[slot] = low;
+                this.sampleIDs[slot] = sampleID;
+                this.counts[slot] = count;
+                this.size++;
+                return;
+            }
+
+            if(this.lows[slot] == low && this.sampleIDs[slot] == sampleID && (!this.doubleWord || this.highs[slot] == high)) {
+                this.counts[slot] += count;
+                return;
+            }
+
+            slot = (slot + 1) & this.slotMask;
+        }
+    }
+
+    public boolean isFull() {
+        return this.size >= this.maxSize;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public boolean isOccupied(int slot) {
+        return this.counts[slot] != 0;
+    }
+
+    public long getHigh(int slot) {
+        if(this.doubleWord) {
+            return this.highs[slot];
+        }
+        return 0;
+    }
+
+    public long getLow(int slot) {
+        return this.lows[slot];
+    }
+
+    public int getSampleID(int slot) {
+        return this.sampleIDs[slot];
+    }
+
+    public int getCount(int slot) {
+        return this.counts[slot];
+    }
+
+    public void clear() {
+        Arrays.fill(this.counts, 0);
+        this.size = 0;
+    }
+
+    /**
+     * Move all entries to slots [0, size()) ordered by (k-mer, sampleID),
+     * k-mers compared as unsigned. The table can no longer be looked up
+     * afterwards; call clear() before adding again.
+     */
+    public void sort() {
+        int n = 0;
+        for(int i=0;i<this.capacity;i++) {
+            if(this.counts[i] != 0) {
+                if(i != n) {
+                    if(this.doubleWord) {
+                        this.highs[n] = this.highs[i];
+                    }
+                    this.lows[n] = this.lows[i];
+                    this.sampleIDs[n] = this.sampleIDs[i];
+                    this.counts[n] = this.counts[i];
+                    this.counts[i] = 0;
+                }
+                n++;
+            }
+        }
+
+        quickSort(0, n - 1);
+    }
+
+    private void quickSort(int left, int right) {
+        while(right - left > 16) {
+            int mid = (left + right) >>> 1;
+            // median of three as pivot, moved to right
+            if(compare(mid, left) < 0) {
+                swap(mid, left);
+            }
+            if(compare(right, left) < 0) {
+                swap(right, left);
+            }
+            if(compare(mid, right) < 0) {
+                swap(mid, right);
+            }
+
+            int store = left;
+            for(int i=left;i<right;i++) {
+                if(compare(i, right) < 0) {
+                    swap(i, store);
+                    store++;
+                }
+            }
+            swap(store, right);
+
+            // recurse on the smaller side
+            if(store - left < right - store) {
+                quickSort(left, store - 1);
+                left = store + 1;
+            } else {
+                quickSort(store + 1, right);
+                right = store - 1;
+            }
+        }
+
+        for(int i=left+1;i<=right;i++) {
+            for(int j=i;j>left && compare(j, j - 1) < 0;j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int compare(int a, int b) {
+        if(this.doubleWord && this.highs[a] != this.highs[b]) {
+            return unsignedLessThan(this.highs[a], this.highs[b]) ? -1 : 1;
+        }
+        if(this.lows[a] != this.lows[b]) {
+            return unsignedLessThan(this.lows[a], this.lows[b]) ? -1 : 1;
+        }
+        return this.sampleIDs[a] - this.sampleIDs[b];
+    }
+
+    private void swap(int a, int b) {
+        if(this.doubleWord) {
+            long high = this.highs[a];
+            this.highs[a] = this.highs[b];
+            this.highs[b] = high;
+        }
+        long low = this.lows[a];
+        this.lows[a] = this.lows[b];
+        this.lows[b] = low;
+        int sampleID = this.sampleIDs[a];
+        this.sampleIDs[a] = this.sampleIDs[b];
+        this.sampleIDs[b] = sampleID;
+        int count = this.counts[a];
+        this.counts[a] = this.counts[b];
+        this.counts[b] = count;
+    }
+
+    private static boolean unsignedLessThan(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
+import libra.common.helpers.SequenceHelper;
+import libra.common.sequence.RollingKmerEncoder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * Extracts canonical k-mers from reads and writes (k-mer, [sampleID, count])
+ * records. When a count buffer is given, counts are aggregated in a
+ * KmerCountTable and written when the table fills up or on flush().
+ *
+ * @author iychoi
+ */
+public class KmerCounter {
+
+    private static final Log LOG = LogFactory.getLog(KmerCounter.class);
+
+    private int kmerSize;
+    private RollingKmerEncoder encoder;
+    private KmerCountTable countTable;
+    private int[] freqArr;
+    private AKmerWritable outputKey;
+    private IntArrayWritable outputValue;
+    private Object writeLock;
+    private SingletonKmerFilter singletonFilter;
+
+    public KmerCounter(int kmerSize, KmerKeyType keyType, long countBufferBytes) {
+        this(kmerSize, keyType, countBufferBytes, null);
+    }
+
+    /**
+     * When writeLock is given, all writes to the context are made while
+     * holding it so counters in different threads can share one context.
+     */
+    public KmerCounter(int kmerSize, KmerKeyType keyType, long countBufferBytes, Object writeLock) {
+        this.kmerSize = kmerSize;
+        this.writeLock = writeLock;
+
+        if(kmerSize <= RollingKmerEncoder.MAX_KMER_SIZE) {
+            this.encoder = new RollingKmerEncoder(kmerSize);
+
+            if(countBufferBytes > 0) {
+                this.countTable = new KmerCountTable(kmerSize, countBufferBytes);
+                LOG.info(String.format("In-mapper k-mer count table - %d slots", this.countTable.getCapacity()));
+            }
+        }
+
+        // reused for every record; context.write serializes them immediately
+        this.freqArr = new int[2];
+        this.outputKey = keyType.newKey(kmerSize);
+        this.outputValue = new SampleFrequencyArrayWritable(this.freqArr);
+    }
+
+    public int getKmerSize() {
+        return this.kmerSize;
+    }
+
+    /**
+     * Hold back k-mers seen once through the given filter. K-mers still held
+     * at flush() are dropped, so counts are approximate.
+     * The filter must not be shared with other counters. Not applied to
+     * k-mers longer than RollingKmerEncoder.MAX_KMER_SIZE.
+     */
+    public void setSingletonFilter(SingletonKmerFilter singletonFilter) {
+        if(singletonFilter != null && singletonFilter.getKmerSize() != this.kmerSize) {
+            throw new IllegalArgumentException("kmer size of the singleton filter is " + singletonFilter.getKmerSize() + ", but " + this.kmerSize + " expected");
+        }
+        this.singletonFilter = singletonFilter;
+    }
+
+    /**
+     * Count k-mers in sequence[0, length). Bases are case-folded by the
+     * encoder's lookup table so the bytes are never decoded into a String.
+     */
+    public void count(byte[] sequence, int length, int sampleID, TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) throws IOException, InterruptedException {
+        count(sequence, 0, length, sampleID, context);
+    }
+
+    public void count(byte[] sequence, int offset, int length, int sampleID, TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) throws IOException, InterruptedException {
+        if(length < this.kmerSize) {
+            return;
+        }
+
+        if(this.encoder == null) {
+            countBySubstring(new String(sequence, offset, length, "US-ASCII"), sampleID, context);
+            return;
+        }
+
+        this.encoder.reset();
+        int end = offset + length;
+        for(int i=offset;i<end;i++) {
+            if(this.encoder.push(sequence[i])) {
+                if(this.countTable != null) {
+                    this.countTable.add(this.encoder.getCanonicalHigh(), this.encoder.getCanonicalLow(), sampleID, 1);
+                    if(this.countTable.isFull()) {
+                        flushCountTable(context);
+                    }
+                } else if(this.writeLock != null) {
+                    synchronized(this.writeLock) {
+                        write(this.encoder.getCanonicalHigh(), this.encoder.getCanonicalLow(), sampleID, 1, context);
+                    }
+                } else {
+                    write(this.encoder.getCanonicalHigh(), this.encoder.getCanonicalLow(), sampleID, 1, context);
+                }
+            }
+        }
+    }
+
+    private void countBySubstring(String sequence, int sampleID, TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) throws IOException, InterruptedException {
+        // k-mers longer than RollingKmerEncoder.MAX_KMER_SIZE
+        sequence = sequence.toUpperCase();
+
+        this.freqArr[0] = sampleID;
+        this.freqArr[1] = 1;
+
+        boolean pvalid = false;
+        for (int i = 0; i < (sequence.length() - this.kmerSize + 1); i++) {
+            String kmer = sequence.substring(i, i + this.kmerSize);
+            if (pvalid) {
+                if (!SequenceHelper.isValidSequence(kmer.charAt(this.kmerSize - 1))) {
+                    pvalid = false;
+                    continue;
+                } else {
+                    pvalid = true;
+                }
+            } else {
+                if (!SequenceHelper.isValidSequence(kmer)) {
+                    pvalid = false;
+                    continue;
+                } else {
+                    pvalid = true;
+                }
+            }
+
+            String canonicalKmer = SequenceHelper.canonicalize(kmer);
+            if(this.writeLock != null) {
+                synchronized(this.writeLock) {
+                    context.write(new CompressedSequenceWritable(canonicalKmer), this.outputValue);
+                }
+            } else {
+                context.write(new CompressedSequenceWritable(canonicalKmer), this.outputValue);
+            }
+        }
+    }
+
+    private void write(long high, long low, int sampleID, int count, TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) throws IOException, InterruptedException {
+        if(this.singletonFilter != null) {
+            count = this.singletonFilter.admit(high, low, sampleID, count);
+            if(count == 0) {
+                return;
+            }
+        }
+
+        emit(high, low, sampleID, count, context);
+    }
+
+    private void emit(long high, long low, int sampleID, int count, TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) throws IOException, InterruptedException {
+        this.freqArr[0] = sampleID;
+        this.freqArr[1] = count;
+        this.outputKey.set(high, low, this.kmerSize);
+        context.write(this.outputKey, this.outputValue);
+    }
+
+    /**
+     * Write out all aggregated counts and empty the count table. K-mers still
+     * held back by the singleton filter are dropped.
+     */
+    public void flush(TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) throws IOException, InterruptedException {
+        flushCountTable(context);
+
+        if(this.singletonFilter != null) {
+            this.singletonFilter.drop();
+            LOG.info(String.format("Singleton filter of k=%d - held back %d k-mers, released %d, dropped %d", this.kmerSize, this.singletonFilter.getHeldCount(), this.singletonFilter.getReleasedCount(), this.singletonFilter.getDroppedCount()));
+        }
+    }
+
+    private void flushCountTable(TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) throws IOException, InterruptedException {
+        if(this.countTable == null || this.countTable.isEmpty()) {
+            return;
+        }
+
+        if(this.writeLock != null) {
+            synchronized(this.writeLock) {
+                flushTable(context);
+            }
+        } else {
+            flushTable(context);
+        }
+    }
+
+    private void flushTable(TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) throws IOException, InterruptedException {
+        int capacity = this.countTable.getCapacity();
+        for(int i=0;i<capacity;i++) {
+            if(this.countTable.isOccupied(i)) {
+                write(this.countTable.getHigh(i), this.countTable.getLow(i), this.countTable.getSampleID(i), this.countTable.getCount(i), context);
+            }
+        }
+
+        this.countTable.clear();
+    }
+}
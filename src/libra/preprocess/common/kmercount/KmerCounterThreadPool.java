@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.sequence.ReadBatch;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * Extracts k-mers with several worker threads inside one map task. The map
+ * thread copies sequences into batches and hands them to the workers; each worker
+ * aggregates k-mers in its own KmerCounters and writes to the shared context
+ * under a lock, so the task keeps a single sort buffer.
+ *
+ * @author iychoi
+ */
+public class KmerCounterThreadPool {
+    
+    private static final Log LOG = LogFactory.getLog(KmerCounterThreadPool.class);
+    
+    private static final long POLL_INTERVAL_MS = 1000;
+    
+    private final TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context;
+    private final Worker[] workers;
+    private final BlockingQueue<CountBatch> fullBatches;
+    private final BlockingQueue<CountBatch> freeBatches;
+    private final CountBatch endOfInput = new CountBatch(null);
+    private CountBatch current;
+    private volatile Throwable error;
+    
+    /**
+     * countBufferBytes is the total count buffer of the task. It is divided
+     * among threads and k-mer sizes so the heap usage does not grow with the
+     * number of threads. singletonFilterBytes is divided the same way, 0
+     * disables singleton filters.
+     */
+    public KmerCounterThreadPool(int threads, int[] kmerSizes, KmerKeyType keyType, long countBufferBytes, long singletonFilterBytes, TaskInputOutputContext<?, ?, AKmerWritable, IntArrayWritable> context) {
+        if(threads <= 0) {
+            throw new IllegalArgumentException("number of threads must be positive : " + threads);
+        }
+        
+        this.context = context;
+        this.fullBatches = new ArrayBlockingQueue<CountBatch>(threads * 2);
+        this.freeBatches = new ArrayBlockingQueue<CountBatch>(threads * 2 + 1);
+        for(int i=0;i<threads * 2;i++) {
+            this.freeBatches.add(new CountBatch(new ReadBatch()));
+        }
+        
+        long workerBufferBytes = countBufferBytes / threads / kmerSizes.length;
+        long workerFilterBytes = singletonFilterBytes / threads / kmerSizes.length;
+        Object writeLock = new Object();
+        
+        this.workers = new Worker[threads];
+        for(int i=0;i<threads;i++) {
+            KmerCounter[] counters = new KmerCounter[kmerSizes.length];
+            for(int j=0;j<kmerSizes.length;j++) {
+                counters[j] = new KmerCounter(kmerSizes[j], keyType, workerBufferBytes, writeLock);
+                if(workerFilterBytes > 0) {
+                    counters[j].setSingletonFilter(new SingletonKmerFilter(kmerSizes[j], workerFilterBytes));
+                }
+            }
+            this.workers[i] = new Worker(counters);
+            this.workers[i].setName("KmerCounter-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+        
+        LOG.info(String.format("Started %d k-mer counting threads", threads));
+    }
+    
+    private void checkError() throws IOException {
+        if(this.error != null) {
+            throw new IOException("k-mer counting thread failed", this.error);
+        }
+    }
+    
+    /**
+     * Copy sequence[offset, offset + length) into the current batch.
+     */
+    public void add(int sampleID, byte[] sequence, int offset, int length) throws IOException, InterruptedException {
+        add(sampleID, sequence, offset, length, 0);
+    }
+    
+    /**
+     * Copy a chunk whose first overlap bases are shared with the previous
+     * chunk of the same record into the current batch.
+     */
+    public void add(int sampleID, byte[] sequence, int offset, int length, int overlap) throws IOException, InterruptedException {
+        checkError();
+        
+        if(this.current != null && (this.current.sampleID != sampleID || !this.current.reads.hasRoom(length, 0))) {
+            dispatch();
+        }
+        
+        if(this.current == null) {
+            this.current = takeFreeBatch();
+            this.current.reads.clear();
+            this.current.sampleID = sampleID;
+        }
+        
+        this.current.reads.add(sequence, offset, length, Math.min(overlap, length));
+    }
+    
+    private CountBatch takeFreeBatch() throws IOException, InterruptedException {
+        while(true) {
+            CountBatch batch = this.freeBatches.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if(batch != null) {
+                return batch;
+            }
+            checkError();
+            this.context.progress();
+        }
+    }
+    
+    private void dispatch() throws IOException, InterruptedException {
+        if(this.current != null && !this.current.reads.isEmpty()) {
+            while(!this.fullBatches.offer(this.current, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                checkError();
+                this.context.progress();
+            }
+        } else if(this.current != null) {
+            this.freeBatches.add(this.current);
+        }
+        this.current = null;
+    }
+    
+    /**
+     * Process remaining reads, flush all counters and stop the workers.
+     */
+    public void finish() throws IOException, InterruptedException {
+        dispatch();
+        
+        for(int i=0;i<this.workers.length;i++) {
+            while(!this.fullBatches.offer(this.endOfInput, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                checkError();
+                this.context.progress();
+            }
+        }
+        
+        for(Worker worker : this.workers) {
+            while(worker.isAlive()) {
+                worker.join(POLL_INTERVAL_MS);
+                this.context.progress();
+            }
+        }
+        
+        checkError();
+    }
+    
+    private static class CountBatch {
+        private int sampleID;
+        private final ReadBatch reads;
+        
+        CountBatch(ReadBatch reads) {
+            this.reads = reads;
+        }
+    }
+    
+    private class Worker extends Thread {
+        
+        private final KmerCounter[] counters;
+        
+        Worker(KmerCounter[] counters) {
+            this.counters = counters;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while(true) {
+                    CountBatch batch = fullBatches.take();
+                    if(batch == endOfInput) {
+                        break;
+                    }
+                    
+                    if(error == null) {
+                        process(batch);
+                    }
+                    freeBatches.put(batch);
+                }
+                
+                if(error == null) {
+                    for(KmerCounter counter : this.counters) {
+                        counter.flush(context);
+                    }
+                }
+            } catch (Throwable ex) {
+                LOG.error("k-mer counting thread failed", ex);
+                error = ex;
+            }
+        }
+        
+        private void process(CountBatch batch) throws IOException, InterruptedException {
+            ReadBatch reads = batch.reads;
+            byte[] sequences = reads.getSequenceBytes();
+            for(int i=0;i<reads.size();i++) {
+                int start = reads.getSequenceStart(i);
+                int length = reads.getSequenceLength(i);
+                for(KmerCounter counter : this.counters) {
+                    int skip = reads.getKmerSkip(i, counter.getKmerSize());
+                    counter.count(sequences, start + skip, length - skip, batch.sampleID, context);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmercount;
+
+import java.util.Arrays;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Holds back the first sighting of (k-mer, sample) pairs seen once so far in
+ * a map task, so k-mers seen only once in the task are never shuffled.
+ * Held sightings are kept in an exact table; when a held k-mer shows up
+ * again its count is emitted with the held sighting added back. Sightings
+ * still held when the task ends are dropped.
+ * 
+ * This is approximate: a k-mer loses at most one count per sample and map
+ * task, so a k-mer seen once in each of several map tasks is lost entirely.
+ * Counts are never increased, so it is only meant for the NOTUNIQUE filter.
+ * 
+ * Released slots are reused by later sightings; the table is rebuilt
+ * without them when it fills up. A Bloom filter of held k-mers is only used
+ * to skip table lookups of k-mers that were never held; a false positive
+ * costs a lookup, never a count.
+ * 
+ * Not thread-safe; each counter owns its filter.
+ *
+ * @author iychoi
+ */
+public class SingletonKmerFilter {
+    
+    private static final Log LOG = LogFactory.getLog(SingletonKmerFilter.class);
+    
+    private static final int HASH_FUNCTIONS = 3;
+    private static final int ENTRY_BYTES = 8 + 8 + 4 + 4;
+    private static final double MAX_LOAD = 0.75;
+    
+    private final int kmerSize;
+    
+    private final long[] bloom;
+    private final long bloomBits;
+    
+    private final long[] highs;
+    private final long[] lows;
+    private final int[] sampleIDs;
+    // held sightings, 0 once released; -1 marks an empty slot
+    private final int[] counts;
+    private final int mask;
+    private final int maxSize;
+    // held and released slots
+    private int size;
+    private int held;
+    
+    private long heldCount;
+    private long releasedCount;
+    private long droppedCount;
+    
+    /**
+     * A quarter of bytes is given to the Bloom filter and the rest to the
+     * table of held k-mers.
+     */
+    public SingletonKmerFilter(int kmerSize, long bytes) {
+        this.kmerSize = kmerSize;
+        
+        long words = Math.max(1, bytes / 4 / 8);
+        if(words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("singleton filter is too large : " + bytes);
+        }
+        this.bloom = new long[(int) words];
+        this.bloomBits = words * 64;
+        
+        long slots = Math.max(16, (bytes - (bytes / 4)) / ENTRY_BYTES);
+        int capacity = Integer.highestOneBit((int) Math.min(slots, 1 << 30));
+        this.highs = new long[capacity];
+        this.lows = new long[capacity];
+        this.sampleIDs = new int[capacity];
+        this.counts = new int[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = (int) (capacity * MAX_LOAD);
+        clear();
+        
+        LOG.info(String.format("Singleton k-mer filter - %d bloom bits, %d held k-mers at most", this.bloomBits, this.maxSize));
+    }
+    
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    private boolean bloomContains(long h1, long h2) {
+        for(int i=0;i<HASH_FUNCTIONS;i++) {
+            long bit = ((h1 + i * h2) >>> 1) % this.bloomBits;
+            if((this.bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void bloomAdd(long h1, long h2) {
+        for(int i=0;i<HASH_FUNCTIONS;i++) {
+            long bit = ((h1 + i * h2) >>> 1) % this.bloomBits;
+            this.bloom[(int) (bit >>> 6)] |= (1L << bit);
+        }
+    }
+    
+    private static long hash(long high, long low, int sampleID) {
+        // chain mixes; xor-ing the sample into the k-mer bits would collide one-base variants
+        return mix(mix(mix(high) ^ low) ^ sampleID);
+    }
+    
+    /**
+     * Return the slot holding the k-mer, or -1
+     */
+    private int find(long h1, long high, long low, int sampleID) {
+        int slot = (int) h1 & this.mask;
+        while(this.counts[slot] >= 0) {
+            if(this.counts[slot] > 0 && this.highs[slot] == high && this.lows[slot] == low && this.sampleIDs[slot] == sampleID) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+    
+    /**
+     * Return the first released or empty slot on the probe sequence
+     */
+    private int findFree(long h1) {
+        int slot = (int) h1 & this.mask;
+        while(this.counts[slot] > 0) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+    
+    private void put(int slot, long high, long low, int sampleID) {
+        if(this.counts[slot] < 0) {
+            this.size++;
+        }
+        this.highs[slot] = high;
+        this.lows[slot] = low;
+        this.sampleIDs[slot] = sampleID;
+        this.counts[slot] = 1;
+        this.held++;
+    }
+    
+    /**
+     * Rebuild the table and the Bloom filter with held slots only
+     */
+    private void purge() {
+        long[] heldHighs = new long[this.held];
+        long[] heldLows = new long[this.held];
+        int[] heldSampleIDs = new int[this.held];
+        int n = 0;
+        for(int i=0;i<this.counts.length;i++) {
+            if(this.counts[i] > 0) {
+                heldHighs[n] = this.highs[i];
+                heldLows[n] = this.lows[i];
+                heldSampleIDs[n] = this.sampleIDs[i];
+                n++;
+            }
+        }
+        
+        clear();
+        for(int i=0;i<n;i++) {
+            long h1 = hash(heldHighs[i], heldLows[i], heldSampleIDs[i]);
+            put(findFree(h1), heldHighs[i], heldLows[i], heldSampleIDs[i]);
+            bloomAdd(h1, mix(h1) | 1);
+        }
+    }
+    
+    /**
+     * Return the count to emit for count sightings of the k-mer in the
+     * sample, or 0 if the sighting is held back.
+     */
+    public int admit(long high, long low, int sampleID, int count) {
+        long h1 = hash(high, low, sampleID);
+        long h2 = mix(h1) | 1;
+        
+        if(bloomContains(h1, h2)) {
+            int slot = find(h1, high, low, sampleID);
+            if(slot >= 0) {
+                // add the held sighting back and release the slot
+                this.counts[slot] = 0;
+                this.held--;
+                this.releasedCount++;
+                return (int) Math.min(Integer.MAX_VALUE, (long) count + 1);
+            }
+        }
+        
+        if(count != 1) {
+            return count;
+        }
+        
+        int slot = findFree(h1);
+        if(this.counts[slot] < 0 && this.size >= this.maxSize) {
+            if(this.held >= this.maxSize / 2) {
+                // mostly held k-mers, rebuilding would not free much
+                return count;
+            }
+            purge();
+            slot = findFree(h1);
+        }
+        
+        put(slot, high, low, sampleID);
+        bloomAdd(h1, h2);
+        this.heldCount++;
+        return 0;
+    }
+    
+    public int getKmerSize() {
+        return this.kmerSize;
+    }
+    
+    /**
+     * Return the number of sightings held back now
+     */
+    public int getHeld() {
+        return this.held;
+    }
+    
+    public void clear() {
+        Arrays.fill(this.bloom, 0L);
+        Arrays.fill(this.counts, -1);
+        this.size = 0;
+        this.held = 0;
+    }
+    
+    /**
+     * Drop the sightings still held, at the end of the task
+     */
+    public void drop() {
+        this.droppedCount += this.held;
+        clear();
+    }
+    
+    public long getHeldCount() {
+        return this.heldCount;
+    }
+    
+    public long getReleasedCount() {
+        return this.releasedCount;
+    }
+    
+    public long getDroppedCount() {
+        return this.droppedCount;
+    }
+}
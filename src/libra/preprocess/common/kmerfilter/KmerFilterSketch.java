@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerfilter;
+
+import java.io.File;
+import java.io.IOException;
+import libra.common.json.JsonSerializer;
+import libra.common.sketch.CountSketch;
+import libra.common.sketch.HyperLogLog;
+import libra.common.sketch.SketchHash;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * Approximate k-mer counts of a sample. The number of k-mers is exact,
+ * unique k-mers are estimated by a HyperLogLog and the sum of squared
+ * frequencies by a count sketch.
+ *
+ * @author iychoi
+ */
+public class KmerFilterSketch {
+    
+    private static final Log LOG = LogFactory.getLog(KmerFilterSketch.class);
+    
+    private static final String HADOOP_CONFIG_KEY = "libra.preprocess.common.kmerfilter.kmerfiltersketch";
+    
+    private String name;
+    private long totalKmers;
+    private HyperLogLog uniqueKmerSketch;
+    private CountSketch frequencySketch;
+    
+    public static KmerFilterSketch createInstance(File file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerFilterSketch) serializer.fromJsonFile(file, KmerFilterSketch.class);
+    }
+    
+    public static KmerFilterSketch createInstance(String json) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerFilterSketch) serializer.fromJson(json, KmerFilterSketch.class);
+    }
+    
+    public static KmerFilterSketch createInstance(Configuration conf) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerFilterSketch) serializer.fromJsonConfiguration(conf, HADOOP_CONFIG_KEY, KmerFilterSketch.class);
+    }
+    
+    public static KmerFilterSketch createInstance(FileSystem fs, Path file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerFilterSketch) serializer.fromJsonFile(fs, file, KmerFilterSketch.class);
+    }
+    
+    public KmerFilterSketch() {
+    }
+    
+    /**
+     * Create sketches whose relative standard errors are within the given
+     * error
+     */
+    public KmerFilterSketch(String name, double relativeError) {
+        this.name = name;
+        this.uniqueKmerSketch = new HyperLogLog(HyperLogLog.getPrecision(relativeError));
+        this.frequencySketch = new CountSketch(CountSketch.DEFAULT_DEPTH, CountSketch.getWidth(relativeError));
+    }
+    
+    @JsonProperty("name")
+    public String getName() {
+        return this.name;
+    }
+    
+    @JsonProperty("name")
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    @JsonProperty("total_kmers")
+    public long getTotalKmers() {
+        return this.totalKmers;
+    }
+    
+    @JsonProperty("total_kmers")
+    public void setTotalKmers(long totalKmers) {
+        this.totalKmers = totalKmers;
+    }
+    
+    @JsonProperty("unique_kmer_sketch")
+    public byte[] getUniqueKmerSketch() {
+        return this.uniqueKmerSketch.getRegisters();
+    }
+    
+    @JsonProperty("unique_kmer_sketch")
+    public void setUniqueKmerSketch(byte[] registers) {
+        this.uniqueKmerSketch = new HyperLogLog(registers);
+    }
+    
+    @JsonProperty("frequency_sketch")
+    public long[][] getFrequencySketch() {
+        return this.frequencySketch.getCounters();
+    }
+    
+    @JsonProperty("frequency_sketch")
+    public void setFrequencySketch(long[][] counters) {
+        this.frequencySketch = new CountSketch(counters);
+    }
+    
+    /**
+     * Count an occurrence of the k-mer
+     */
+    @JsonIgnore
+    public void add(long high, long low) {
+        long hash = SketchHash.hash(high, low);
+        this.totalKmers++;
+        this.uniqueKmerSketch.add(hash);
+        this.frequencySketch.add(hash, 1);
+    }
+    
+    @JsonIgnore
+    public void merge(KmerFilterSketch sketch) {
+        this.totalKmers += sketch.totalKmers;
+        this.uniqueKmerSketch.merge(sketch.uniqueKmerSketch);
+        this.frequencySketch.merge(sketch.frequencySketch);
+    }
+    
+    /**
+     * Return a filter of the estimated counts
+     */
+    @JsonIgnore
+    public KmerFilter toKmerFilter() {
+        KmerFilter filter = new KmerFilter(this.name);
+        filter.setTotalKmers(this.totalKmers);
+        
+        if(this.totalKmers == 0) {
+            return filter;
+        }
+        
+        // a k-mer is counted at least once
+        long uniqueKmers = Math.max(1, Math.min(this.totalKmers, this.uniqueKmerSketch.estimate()));
+        filter.setUniqueKmers(uniqueKmers);
+        
+        // the variance of frequencies is not negative and each frequency is at least 1
+        double sumOfSquare = this.frequencySketch.estimateSumOfSquare();
+        double minSumOfSquare = Math.max(this.totalKmers, Math.pow(this.totalKmers, 2) / uniqueKmers);
+        filter.setSumOfSquare((long) Math.ceil(Math.max(sumOfSquare, minSumOfSquare)));
+        return filter;
+    }
+    
+    @JsonIgnore
+    public void saveTo(Configuration conf) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        serializer.toJsonConfiguration(conf, HADOOP_CONFIG_KEY, this);
+    }
+    
+    @JsonIgnore
+    public void saveTo(FileSystem fs, Path file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        serializer.toJsonFile(fs, file, this);
+    }
+}
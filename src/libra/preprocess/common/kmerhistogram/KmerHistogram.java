@@ -0,0 +1,304 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerhistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import libra.common.json.JsonSerializer;
+import libra.preprocess.common.kmerstatistics.KmerStatisticsPart;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * Number of distinct k-mers of a sample at each frequency.
+ *
+ * @author iychoi
+ */
+public class KmerHistogram {
+    
+    private static final Log LOG = LogFactory.getLog(KmerHistogram.class);
+    
+    private static final String HADOOP_CONFIG_KEY = "libra.preprocess.common.kmerhistogram.kmerhistogram";
+    
+    // most k-mers have low frequencies
+    private static final int DENSE_FREQUENCIES = 1024;
+    
+    private String name;
+    private long[] denseCounts = new long[DENSE_FREQUENCIES];
+    private TreeMap<Integer, Long> sparseCounts = new TreeMap<Integer, Long>();
+    
+    public static KmerHistogram createInstance(File file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerHistogram) serializer.fromJsonFile(file, KmerHistogram.class);
+    }
+    
+    public static KmerHistogram createInstance(String json) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerHistogram) serializer.fromJson(json, KmerHistogram.class);
+    }
+    
+    public static KmerHistogram createInstance(Configuration conf) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerHistogram) serializer.fromJsonConfiguration(conf, HADOOP_CONFIG_KEY, KmerHistogram.class);
+    }
+    
+    public static KmerHistogram createInstance(FileSystem fs, Path file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerHistogram) serializer.fromJsonFile(fs, file, KmerHistogram.class);
+    }
+    
+    public KmerHistogram() {
+    }
+    
+    public KmerHistogram(String name) {
+        this.name = name;
+    }
+    
+    @JsonProperty("name")
+    public String getName() {
+        return this.name;
+    }
+    
+    @JsonProperty("name")
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Non-zero counts keyed by frequency
+     */
+    @JsonProperty("counts")
+    public Map<Integer, Long> getCounts() {
+        TreeMap<Integer, Long> counts = new TreeMap<Integer, Long>();
+        for(int i=0;i<DENSE_FREQUENCIES;i++) {
+            if(this.denseCounts[i] != 0) {
+                counts.put(i, this.denseCounts[i]);
+            }
+        }
+        counts.putAll(this.sparseCounts);
+        return counts;
+    }
+    
+    @JsonProperty("counts")
+    public void setCounts(Map<Integer, Long> counts) {
+        clear();
+        for(Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            increment(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    @JsonIgnore
+    public void increment(int frequency) {
+        increment(frequency, 1);
+    }
+    
+    @JsonIgnore
+    public void increment(int frequency, long count) {
+        if(frequency < 0) {
+            throw new IllegalArgumentException("frequency must not be negative : " + frequency);
+        }
+        
+        if(frequency < DENSE_FREQUENCIES) {
+            this.denseCounts[frequency] += count;
+        } else {
+            Long prev = this.sparseCounts.get(frequency);
+            this.sparseCounts.put(frequency, prev == null ? count : prev + count);
+        }
+    }
+    
+    @JsonIgnore
+    public void increment(KmerHistogram histogram) {
+        for(int i=0;i<DENSE_FREQUENCIES;i++) {
+            this.denseCounts[i] += histogram.denseCounts[i];
+        }
+        for(Map.Entry<Integer, Long> entry : histogram.sparseCounts.entrySet()) {
+            increment(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    @JsonIgnore
+    public long getCount(int frequency) {
+        if(frequency < DENSE_FREQUENCIES) {
+            return this.denseCounts[frequency];
+        }
+        Long count = this.sparseCounts.get(frequency);
+        return count == null ? 0 : count;
+    }
+    
+    @JsonIgnore
+    public void clear() {
+        for(int i=0;i<DENSE_FREQUENCIES;i++) {
+            this.denseCounts[i] = 0;
+        }
+        this.sparseCounts.clear();
+    }
+    
+    /**
+     * Sum of frequencies, as KmerFilter.getTotalKmers()
+     */
+    @JsonIgnore
+    public long getTotalKmers() {
+        long total = 0;
+        for(Map.Entry<Integer, Long> entry : getCounts().entrySet()) {
+            total += entry.getKey() * entry.getValue();
+        }
+        return total;
+    }
+    
+    /**
+     * Number of distinct k-mers, as KmerFilter.getUniqueKmers()
+     */
+    @JsonIgnore
+    public long getUniqueKmers() {
+        long unique = 0;
+        for(Map.Entry<Integer, Long> entry : getCounts().entrySet()) {
+            if(entry.getKey() > 0) {
+                unique += entry.getValue();
+            }
+        }
+        return unique;
+    }
+    
+    /**
+     * Sum of squared frequencies, as KmerFilter.getSumOfSquare()
+     */
+    @JsonIgnore
+    public long getSumOfSquare() {
+        long sum = 0;
+        for(Map.Entry<Integer, Long> entry : getCounts().entrySet()) {
+            long frequency = entry.getKey();
+            sum += frequency * frequency * entry.getValue();
+        }
+        return sum;
+    }
+    
+    /**
+     * Smallest frequency in [min, max] at or below which the given percent
+     * of distinct k-mers in [min, max] are, or -1 if there is none
+     */
+    @JsonIgnore
+    public int getPercentile(double percent, int min, int max) {
+        TreeMap<Integer, Long> counts = getCounts(min, max);
+        long unique = 0;
+        for(long count : counts.values()) {
+            unique += count;
+        }
+        
+        if(unique == 0) {
+            return -1;
+        }
+        
+        double rank = unique * percent / 100;
+        long accumulated = 0;
+        for(Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            accumulated += entry.getValue();
+            if(accumulated >= rank) {
+                return entry.getKey();
+            }
+        }
+        return counts.lastKey();
+    }
+    
+    /**
+     * Frequency of the first valley of the spectrum in [min, max], the
+     * boundary between low-frequency (mostly erroneous) k-mers and the
+     * coverage peak. The valley is only taken if k-mers at or above it hold
+     * at least half of all k-mer occurrences, so noise in the tail of a
+     * decreasing spectrum is ignored. Returns min if there is none.
+     */
+    @JsonIgnore
+    public int getKnee(int min, int max) {
+        TreeMap<Integer, Long> counts = getCounts(min, max);
+        
+        double total = 0;
+        for(Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            total += (double) entry.getKey() * entry.getValue();
+        }
+        
+        double below = 0;
+        int prevFrequency = -1;
+        long prevCount = 0;
+        for(Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            int frequency = entry.getKey();
+            long count = entry.getValue();
+            
+            int valley = -1;
+            if(prevFrequency >= 0) {
+                if(frequency > prevFrequency + 1) {
+                    // frequencies without k-mers count as 0
+                    valley = prevFrequency + 1;
+                } else if(count > prevCount) {
+                    valley = prevFrequency;
+                    below -= (double) prevFrequency * prevCount;
+                }
+            }
+            
+            if(valley >= 0) {
+                if(total - below >= total / 2) {
+                    return valley;
+                }
+                return min;
+            }
+            
+            below += (double) frequency * count;
+            prevFrequency = frequency;
+            prevCount = count;
+        }
+        return min;
+    }
+    
+    /**
+     * TF weights of k-mers with frequencies in [min, max]
+     */
+    @JsonIgnore
+    public KmerStatisticsPart getStatisticsPart(int min, int max) throws IOException {
+        KmerStatisticsPart statisticsPart = new KmerStatisticsPart(this.name);
+        for(Map.Entry<Integer, Long> entry : getCounts(min, max).entrySet()) {
+            statisticsPart.incrementTFWeights(entry.getKey(), entry.getValue());
+        }
+        return statisticsPart;
+    }
+    
+    private TreeMap<Integer, Long> getCounts(int min, int max) {
+        TreeMap<Integer, Long> counts = new TreeMap<Integer, Long>();
+        for(Map.Entry<Integer, Long> entry : getCounts().entrySet()) {
+            int frequency = entry.getKey();
+            if(frequency > 0 && frequency >= min && frequency <= max) {
+                counts.put(frequency, entry.getValue());
+            }
+        }
+        return counts;
+    }
+    
+    @JsonIgnore
+    public void saveTo(Configuration conf) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        serializer.toJsonConfiguration(conf, HADOOP_CONFIG_KEY, this);
+    }
+    
+    @JsonIgnore
+    public void saveTo(FileSystem fs, Path file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        serializer.toJsonFile(fs, file, this);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerhistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import libra.common.json.JsonSerializer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ *
+ * @author iychoi
+ */
+public class KmerHistogramTable {
+    
+    private static final Log LOG = LogFactory.getLog(KmerHistogramTable.class);
+    
+    private static final String HADOOP_CONFIG_KEY = "libra.preprocess.common.kmerhistogram.kmerhistogramtable";
+    
+    private String name;
+    private List<KmerHistogram> histogram = new ArrayList<KmerHistogram>();
+    
+    public static KmerHistogramTable createInstance(File file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerHistogramTable) serializer.fromJsonFile(file, KmerHistogramTable.class);
+    }
+    
+    public static KmerHistogramTable createInstance(String json) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerHistogramTable) serializer.fromJson(json, KmerHistogramTable.class);
+    }
+    
+    public static KmerHistogramTable createInstance(Configuration conf) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerHistogramTable) serializer.fromJsonConfiguration(conf, HADOOP_CONFIG_KEY, KmerHistogramTable.class);
+    }
+    
+    public static KmerHistogramTable createInstance(FileSystem fs, Path file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerHistogramTable) serializer.fromJsonFile(fs, file, KmerHistogramTable.class);
+    }
+    
+    public KmerHistogramTable() {
+    }
+    
+    public KmerHistogramTable(String name) {
+        this.name = name;
+    }
+    
+    @JsonProperty("name")
+    public String getName() {
+        return this.name;
+    }
+    
+    @JsonProperty("name")
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    @JsonIgnore
+    public int histogramNum() {
+        return this.histogram.size();
+    }
+    
+    @JsonProperty("histogram")
+    public Collection<KmerHistogram> getHistogram() {
+        return this.histogram;
+    }
+    
+    @JsonProperty("histogram")
+    public void addHistogram(Collection<KmerHistogram> histogram) {
+        this.histogram.addAll(histogram);
+    }
+    
+    @JsonIgnore
+    public void addHistogram(KmerHistogram histogram) {
+        this.histogram.add(histogram);
+    }
+    
+    @JsonIgnore
+    public void clearHistogram() {
+        this.histogram.clear();
+    }
+    
+    @JsonIgnore
+    public void saveTo(Configuration conf) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        serializer.toJsonConfiguration(conf, HADOOP_CONFIG_KEY, this);
+    }
+    
+    @JsonIgnore
+    public void saveTo(FileSystem fs, Path file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        serializer.toJsonFile(fs, file, this);
+    }
+}
@@ -17,8 +17,9 @@ package libra.preprocess.common.kmerindex;
 
 import java.io.Closeable;
 import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
 import org.apache.hadoop.fs.Path;
 
 /**
@@ -29,5 +30,20 @@ public abstract class AKmerIndexReader implements Closeable {
     @Override
     public abstract void close() throws IOException;
     public abstract Path getKmerIndexTablePath();
-    public abstract boolean next(CompressedSequenceWritable key, IntArrayWritable val) throws IOException;
+    public abstract KmerKeyType getKeyType();
+    
+    /**
+     * Read the next k-mer into key and val. Unless reusesValues() returns
+     * false, the array given to val may be overwritten by the reader on the
+     * following call.
+     */
+    public abstract boolean next(AKmerWritable key, IntArrayWritable val) throws IOException;
+    
+    /**
+     * Returns false if next() gives a new value array on every call, so the
+     * caller may keep the array.
+     */
+    public boolean reusesValues() {
+        return true;
+    }
 }
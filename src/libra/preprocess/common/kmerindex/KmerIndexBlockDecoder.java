@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes entries of a block of a blocked k-mer index from a ByteBuffer.
+ * The buffer may be a mapped file or a heap buffer holding the block. See
+ * KmerIndexBlockFile for the layout.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBlockDecoder {
+    
+    private int kmerSize;
+    
+    // reusable value arrays, by the number of samples
+    private int[][] pairsBuffers;
+    
+    // current block
+    private ByteBuffer buffer;
+    private int blockEntries;
+    private int blockEntry;
+    private int keyPos;
+    private int valuePos;
+    private long high;
+    private long low;
+    private int varintPos;
+    
+    /**
+     * If reuseValues is set, the array returned by next() belongs to the
+     * decoder and may be overwritten by the following call.
+     */
+    public KmerIndexBlockDecoder(int kmerSize, boolean reuseValues) {
+        this.kmerSize = kmerSize;
+        if(reuseValues) {
+            this.pairsBuffers = new int[1][];
+        }
+    }
+    
+    /**
+     * Start decoding the block at blockBegin of the buffer
+     */
+    public void reset(ByteBuffer buffer, int blockBegin, int blockEntries, long firstHigh, long firstLow) throws EOFException {
+        try {
+            int keyStreamLength = buffer.getInt(blockBegin);
+            this.keyPos = blockBegin + 8;
+            this.valuePos = this.keyPos + keyStreamLength;
+        } catch (IndexOutOfBoundsException ex) {
+            throw new EOFException("block is truncated");
+        }
+        
+        this.buffer = buffer;
+        this.blockEntries = blockEntries;
+        this.blockEntry = 0;
+        this.high = firstHigh;
+        this.low = firstLow;
+    }
+    
+    public void clear() {
+        this.buffer = null;
+        this.blockEntries = 0;
+        this.blockEntry = 0;
+    }
+    
+    public boolean hasNext() {
+        return this.blockEntry < this.blockEntries;
+    }
+    
+    private long readVLong(int pos) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = this.buffer.get(pos++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while(b < 0);
+        this.varintPos = pos;
+        return value;
+    }
+    
+    private int[] getPairsBuffer(int samples) {
+        if(this.pairsBuffers == null) {
+            return new int[samples * 2];
+        }
+        
+        if(samples >= this.pairsBuffers.length) {
+            int[][] newBuffers = new int[samples + 1][];
+            System.arraycopy(this.pairsBuffers, 0, newBuffers, 0, this.pairsBuffers.length);
+            this.pairsBuffers = newBuffers;
+        }
+        
+        int[] pairs = this.pairsBuffers[samples];
+        if(pairs == null) {
+            pairs = new int[samples * 2];
+            this.pairsBuffers[samples] = pairs;
+        }
+        return pairs;
+    }
+    
+    /**
+     * Decode the next entry of the block into high, low and pairs
+     */
+    public int[] next() throws EOFException {
+        try {
+            if(this.blockEntry > 0) {
+                // 128-bit sum
+                long deltaHigh = 0;
+                if(this.kmerSize > 32) {
+                    deltaHigh = readVLong(this.keyPos);
+                    this.keyPos = this.varintPos;
+                }
+                long deltaLow = readVLong(this.keyPos);
+                this.keyPos = this.varintPos;
+                
+                long newLow = this.low + deltaLow;
+                long carry = ((newLow ^ Long.MIN_VALUE) < (this.low ^ Long.MIN_VALUE)) ? 1 : 0;
+                this.high = this.high + deltaHigh + carry;
+                this.low = newLow;
+            }
+            
+            int samples = (int) readVLong(this.valuePos);
+            int[] pairs = getPairsBuffer(samples);
+            int sampleID = 0;
+            for(int i=0;i<samples;i++) {
+                sampleID += KmerIndexBlockFile.unzigzag((int) readVLong(this.varintPos));
+                pairs[i * 2] = sampleID;
+                pairs[(i * 2) + 1] = (int) readVLong(this.varintPos);
+            }
+            this.valuePos = this.varintPos;
+            
+            this.blockEntry++;
+            return pairs;
+        } catch (IndexOutOfBoundsException ex) {
+            throw new EOFException("block is truncated");
+        }
+    }
+    
+    public long getHigh() {
+        return this.high;
+    }
+    
+    public long getLow() {
+        return this.low;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+/**
+ * Layout of a blocked k-mer index partition.
+ * 
+ * The file starts with MAGIC and VERSION, followed by blocks of up to a
+ * fixed number of entries. A block holds the lengths of its key and value
+ * streams, the key stream and the value stream. The key stream has the
+ * differences between consecutive k-mers (packed as right-aligned 2-bit
+ * words) as unsigned varints, high word first for k > 32. The first k-mer
+ * of a block is kept in the block directory. The value stream has, per
+ * entry, the number of samples followed by varint sample ID deltas and
+ * frequencies.
+ * 
+ * Blocks are followed by the directory (first k-mer, offset and entries of
+ * each block) and a footer with partition statistics. The file ends with
+ * the offset of the footer and MAGIC.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBlockFile {
+    
+    public static final int MAGIC = 0x4C4B4258; // "LKBX"
+    public static final int VERSION = 1;
+    
+    public static final int HEADER_BYTES = 4 + 4;
+    public static final int TRAILER_BYTES = 8 + 4;
+    public static final int DIRECTORY_ENTRY_BYTES = 8 + 8 + 8 + 4;
+    
+    public static final int DEFAULT_BLOCK_ENTRIES = 1024;
+    
+    /**
+     * Largest k-mer that can be packed into two words
+     */
+    public static final int MAX_KMER_SIZE = 64;
+    
+    public static int writeVLong(byte[] buffer, int offset, long value) {
+        while((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+    
+    public static int getVLongSize(long value) {
+        int size = 1;
+        while((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+    
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    public static int compareKmers(long high1, long low1, long high2, long low2) {
+        if(high1 != high2) {
+            return ((high1 ^ Long.MIN_VALUE) < (high2 ^ Long.MIN_VALUE)) ? -1 : 1;
+        }
+        if(low1 != low2) {
+            return ((low1 ^ Long.MIN_VALUE) < (low2 ^ Long.MIN_VALUE)) ? -1 : 1;
+        }
+        return 0;
+    }
+}
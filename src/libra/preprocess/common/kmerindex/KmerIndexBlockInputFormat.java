@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+
+/**
+ * Reads all records of blocked k-mer index partitions, a split per
+ * partition.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBlockInputFormat extends FileInputFormat<AKmerWritable, IntArrayWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBlockInputFormat.class);
+    
+    @Override
+    public RecordReader<AKmerWritable, IntArrayWritable> createRecordReader(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+        return new KmerIndexBlockRecordReader();
+    }
+    
+    @Override
+    protected boolean isSplitable(JobContext context, Path filename) {
+        return false;
+    }
+}
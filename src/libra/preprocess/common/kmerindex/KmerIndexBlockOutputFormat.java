@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+/**
+ * Writes a blocked k-mer index partition per task. Keys must arrive sorted,
+ * as reducer outputs do.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBlockOutputFormat extends FileOutputFormat<AKmerWritable, IntArrayWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBlockOutputFormat.class);
+    
+    private static final String HADOOP_CONFIG_KEY_BLOCK_ENTRIES = "libra.preprocess.common.kmerindex.kmerindexblockoutputformat.block_entries";
+    
+    public static void setBlockEntries(Configuration conf, int blockEntries) {
+        conf.setInt(HADOOP_CONFIG_KEY_BLOCK_ENTRIES, blockEntries);
+    }
+    
+    public static int getBlockEntries(Configuration conf) {
+        return conf.getInt(HADOOP_CONFIG_KEY_BLOCK_ENTRIES, KmerIndexBlockFile.DEFAULT_BLOCK_ENTRIES);
+    }
+    
+    @Override
+    public RecordWriter<AKmerWritable, IntArrayWritable> getRecordWriter(TaskAttemptContext context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        Path file = getDefaultWorkFile(context, "");
+        FileSystem fs = file.getFileSystem(conf);
+        
+        // kmer size is taken from keys, partitions of kmer sizes share a job
+        KmerKeyType keyType = KmerKeyType.fromKeyClass(context.getOutputKeyClass());
+        KmerIndexBlockWriter writer = new KmerIndexBlockWriter(fs, file, keyType, 0, getBlockEntries(conf));
+        return new KmerIndexBlockRecordWriter(writer);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.hadoop.io.datatypes.KmerLongPairWritable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Reads a blocked k-mer index partition. Blocks are read whole and decoded
+ * from memory. See KmerIndexBlockFile for the layout.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBlockReader extends AKmerIndexReader {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBlockReader.class);
+    
+    private Path kmerIndexTablePath;
+    private Path indexDataFile;
+    private FSDataInputStream in;
+    private KmerIndexFrequencyFilter frequencyFilter;
+    
+    // footer
+    private KmerKeyType keyType;
+    private int kmerSize;
+    private int blocks;
+    private long directoryOffset;
+    private long entries;
+    private long totalFrequency;
+    private int maxSamples;
+    
+    // block directory
+    private long[] blockFirstHighs;
+    private long[] blockFirstLows;
+    private long[] blockOffsets;
+    private int[] blockSizes;
+    
+    // current block
+    private int block;
+    private byte[] blockBuffer;
+    private ByteBuffer blockByteBuffer;
+    private KmerIndexBlockDecoder decoder;
+    
+    // optional key range [rangeBegin, rangeEnd) to read
+    private boolean hasRangeBegin;
+    private long rangeBeginHigh;
+    private long rangeBeginLow;
+    private boolean hasRangeEnd;
+    private long rangeEndHigh;
+    private long rangeEndLow;
+    private boolean eof;
+    
+    public KmerIndexBlockReader(FileSystem fs, int kmerSize, Path kmerIndexTablePath, int partitionNo, Configuration conf) throws IOException {
+        this(fs, kmerSize, kmerIndexTablePath, KmerIndexTable.createInstance(fs, kmerIndexTablePath), partitionNo, null, null, conf);
+    }
+    
+    /**
+     * Read k-mers in [rangeBegin, rangeEnd) of the partition. The reader
+     * seeks to the block holding rangeBegin through the block directory.
+     * Null means unbounded.
+     */
+    public KmerIndexBlockReader(FileSystem fs, int kmerSize, Path kmerIndexTablePath, KmerIndexTable indexTable, int partitionNo, String rangeBegin, String rangeEnd, Configuration conf) throws IOException {
+        this.kmerIndexTablePath = kmerIndexTablePath;
+        
+        KmerIndexTableRecord tableRecord = indexTable.getRecord(partitionNo);
+        
+        // null unless built in one pass or filtered at join time
+        this.frequencyFilter = KmerIndexFrequencyFilter.getFilter(indexTable, conf);
+        
+        Path indexDataFile = new Path(kmerIndexTablePath.getParent(), tableRecord.getIndexDataFile());
+        open(fs, indexDataFile);
+        
+        if(this.entries > 0 && this.kmerSize != kmerSize) {
+            close();
+            throw new IOException(String.format("kmer size of %s is %d, but %d expected", indexDataFile.toString(), this.kmerSize, kmerSize));
+        }
+        
+        KmerLongPairWritable rangeKey = new KmerLongPairWritable();
+        if(rangeBegin != null) {
+            rangeKey.set(new CompressedSequenceWritable(rangeBegin));
+            this.hasRangeBegin = true;
+            this.rangeBeginHigh = rangeKey.getHigh();
+            this.rangeBeginLow = rangeKey.getLow();
+        }
+        
+        if(rangeEnd != null) {
+            rangeKey.set(new CompressedSequenceWritable(rangeEnd));
+            this.hasRangeEnd = true;
+            this.rangeEndHigh = rangeKey.getHigh();
+            this.rangeEndLow = rangeKey.getLow();
+        }
+        
+        seekRangeBegin();
+    }
+    
+    /**
+     * Read all k-mers of the given index data file without filtering
+     */
+    public KmerIndexBlockReader(FileSystem fs, Path indexDataFile) throws IOException {
+        open(fs, indexDataFile);
+        seekRangeBegin();
+    }
+    
+    private void open(FileSystem fs, Path indexDataFile) throws IOException {
+        this.indexDataFile = indexDataFile;
+        
+        long fileLength = fs.getFileStatus(indexDataFile).getLen();
+        if(fileLength < KmerIndexBlockFile.HEADER_BYTES + KmerIndexBlockFile.TRAILER_BYTES) {
+            throw new IOException("not a blocked k-mer index : " + indexDataFile.toString());
+        }
+        
+        this.in = fs.open(indexDataFile);
+        try {
+            this.in.seek(fileLength - KmerIndexBlockFile.TRAILER_BYTES);
+            long footerOffset = this.in.readLong();
+            if(this.in.readInt() != KmerIndexBlockFile.MAGIC) {
+                throw new IOException("not a blocked k-mer index : " + indexDataFile.toString());
+            }
+            
+            this.in.seek(footerOffset);
+            this.keyType = KmerKeyType.fromString(this.in.readUTF());
+            this.kmerSize = this.in.readInt();
+            this.in.readInt(); // max entries per block
+            this.blocks = this.in.readInt();
+            this.directoryOffset = this.in.readLong();
+            this.entries = this.in.readLong();
+            this.totalFrequency = this.in.readLong();
+            this.maxSamples = this.in.readInt();
+            
+            this.blockFirstHighs = new long[this.blocks];
+            this.blockFirstLows = new long[this.blocks];
+            this.blockOffsets = new long[this.blocks];
+            this.blockSizes = new int[this.blocks];
+            
+            this.in.seek(this.directoryOffset);
+            for(int i=0;i<this.blocks;i++) {
+                this.blockFirstHighs[i] = this.in.readLong();
+                this.blockFirstLows[i] = this.in.readLong();
+                this.blockOffsets[i] = this.in.readLong();
+                this.blockSizes[i] = this.in.readInt();
+            }
+        } catch (EOFException ex) {
+            close();
+            throw new IOException("blocked k-mer index is truncated : " + indexDataFile.toString());
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+        
+        this.blockBuffer = new byte[64 * 1024];
+        this.blockByteBuffer = ByteBuffer.wrap(this.blockBuffer);
+        this.block = -1;
+        this.decoder = new KmerIndexBlockDecoder(this.kmerSize, false);
+    }
+    
+    private void seekRangeBegin() throws IOException {
+        this.eof = false;
+        if(!this.hasRangeBegin) {
+            return;
+        }
+        
+        // last block whose first k-mer is not after rangeBegin
+        int lo = 0;
+        int hi = this.blocks - 1;
+        int found = 0;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if(KmerIndexBlockFile.compareKmers(this.blockFirstHighs[mid], this.blockFirstLows[mid], this.rangeBeginHigh, this.rangeBeginLow) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        
+        this.block = found - 1;
+    }
+    
+    private boolean readBlock() throws IOException {
+        this.block++;
+        if(this.block >= this.blocks) {
+            return false;
+        }
+        
+        if(this.hasRangeEnd && KmerIndexBlockFile.compareKmers(this.blockFirstHighs[this.block], this.blockFirstLows[this.block], this.rangeEndHigh, this.rangeEndLow) >= 0) {
+            return false;
+        }
+        
+        long blockEnd = (this.block + 1 < this.blocks) ? this.blockOffsets[this.block + 1] : this.directoryOffset;
+        int blockLength = (int) (blockEnd - this.blockOffsets[this.block]);
+        if(this.blockBuffer.length < blockLength) {
+            this.blockBuffer = new byte[Math.max(blockLength, this.blockBuffer.length * 2)];
+            this.blockByteBuffer = ByteBuffer.wrap(this.blockBuffer);
+        }
+        
+        try {
+            this.in.readFully(this.blockOffsets[this.block], this.blockBuffer, 0, blockLength);
+            this.blockByteBuffer.limit(blockLength);
+            this.decoder.reset(this.blockByteBuffer, 0, this.blockSizes[this.block], this.blockFirstHighs[this.block], this.blockFirstLows[this.block]);
+        } catch (EOFException ex) {
+            throw new IOException("blocked k-mer index is truncated : " + this.indexDataFile.toString());
+        }
+        return true;
+    }
+    
+    /**
+     * Decode the next entry of the partition
+     */
+    private int[] readEntry() throws IOException {
+        if(!this.decoder.hasNext()) {
+            if(!readBlock()) {
+                return null;
+            }
+        }
+        
+        try {
+            return this.decoder.next();
+        } catch (EOFException ex) {
+            throw new IOException("blocked k-mer index is truncated : " + this.indexDataFile.toString());
+        }
+    }
+    
+    @Override
+    public boolean next(AKmerWritable key, IntArrayWritable val) throws IOException {
+        if(this.eof) {
+            return false;
+        }
+        
+        while(true) {
+            int[] pairs = readEntry();
+            if(pairs == null) {
+                this.eof = true;
+                return false;
+            }
+            
+            if(this.hasRangeBegin && KmerIndexBlockFile.compareKmers(this.decoder.getHigh(), this.decoder.getLow(), this.rangeBeginHigh, this.rangeBeginLow) < 0) {
+                continue;
+            }
+            
+            if(this.hasRangeEnd && KmerIndexBlockFile.compareKmers(this.decoder.getHigh(), this.decoder.getLow(), this.rangeEndHigh, this.rangeEndLow) >= 0) {
+                this.eof = true;
+                return false;
+            }
+            
+            if(this.frequencyFilter != null) {
+                pairs = this.frequencyFilter.filter(pairs);
+                if(pairs == null) {
+                    // no sample left, skip the k-mer
+                    continue;
+                }
+            }
+            
+            key.set(this.decoder.getHigh(), this.decoder.getLow(), this.kmerSize);
+            val.set(pairs);
+            return true;
+        }
+    }
+    
+    public int getKmerSize() {
+        return this.kmerSize;
+    }
+    
+    public long getEntries() {
+        return this.entries;
+    }
+    
+    public long getTotalFrequency() {
+        return this.totalFrequency;
+    }
+    
+    public int getMaxSamples() {
+        return this.maxSamples;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if(this.in != null) {
+            this.in.close();
+            this.in = null;
+        }
+    }
+    
+    @Override
+    public Path getKmerIndexTablePath() {
+        return this.kmerIndexTablePath;
+    }
+    
+    @Override
+    public KmerKeyType getKeyType() {
+        return this.keyType;
+    }
+    
+    @Override
+    public boolean reusesValues() {
+        return false;
+    }
+}
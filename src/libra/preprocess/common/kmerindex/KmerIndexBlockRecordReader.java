@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ *
+ * @author iychoi
+ */
+public class KmerIndexBlockRecordReader extends RecordReader<AKmerWritable, IntArrayWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBlockRecordReader.class);
+    
+    private KmerIndexBlockReader reader;
+    private AKmerWritable key;
+    private IntArrayWritable value;
+    private long entries;
+    private long read;
+    
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        Path indexDataFile = ((FileSplit) split).getPath();
+        FileSystem fs = indexDataFile.getFileSystem(conf);
+        
+        this.reader = new KmerIndexBlockReader(fs, indexDataFile);
+        this.key = this.reader.getKeyType().newKey(this.reader.getKmerSize());
+        this.value = new SampleFrequencyArrayWritable();
+        this.entries = this.reader.getEntries();
+        this.read = 0;
+    }
+    
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+        if(this.reader.next(this.key, this.value)) {
+            this.read++;
+            return true;
+        }
+        return false;
+    }
+    
+    @Override
+    public AKmerWritable getCurrentKey() throws IOException, InterruptedException {
+        return this.key;
+    }
+    
+    @Override
+    public IntArrayWritable getCurrentValue() throws IOException, InterruptedException {
+        return this.value;
+    }
+    
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+        if(this.entries == 0) {
+            return 1.0f;
+        }
+        return Math.min(1.0f, (float) this.read / this.entries);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if(this.reader != null) {
+            this.reader.close();
+            this.reader = null;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ *
+ * @author iychoi
+ */
+public class KmerIndexBlockRecordWriter extends RecordWriter<AKmerWritable, IntArrayWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBlockRecordWriter.class);
+    
+    private KmerIndexBlockWriter writer;
+    
+    public KmerIndexBlockRecordWriter(KmerIndexBlockWriter writer) {
+        this.writer = writer;
+    }
+    
+    @Override
+    public void write(AKmerWritable key, IntArrayWritable value) throws IOException, InterruptedException {
+        this.writer.append(key, value);
+    }
+    
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+        this.writer.close();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.hadoop.io.datatypes.KmerLongPairWritable;
+import libra.common.hadoop.io.datatypes.KmerLongWritable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Writes sorted (k-mer, [sampleID, frequency, ...]) records to a blocked
+ * k-mer index partition. See KmerIndexBlockFile for the layout.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBlockWriter implements Closeable {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBlockWriter.class);
+    
+    private Path path;
+    private FSDataOutputStream out;
+    private KmerKeyType keyType;
+    private int kmerSize;
+    private int blockEntries;
+    
+    // current block
+    private int entries;
+    private byte[] keyStream;
+    private int keyStreamLength;
+    private byte[] valueStream;
+    private int valueStreamLength;
+    private long firstHigh;
+    private long firstLow;
+    private long prevHigh;
+    private long prevLow;
+    
+    // block directory
+    private long[] blockFirstHighs;
+    private long[] blockFirstLows;
+    private long[] blockOffsets;
+    private int[] blockSizes;
+    private int blocks;
+    
+    // partition statistics
+    private long totalEntries;
+    private long totalFrequency;
+    private int maxSamples;
+    
+    private long high;
+    private long low;
+    
+    /**
+     * When kmerSize is 0, it is taken from the first key appended
+     */
+    public KmerIndexBlockWriter(FileSystem fs, Path path, KmerKeyType keyType, int kmerSize, int blockEntries) throws IOException {
+        if(kmerSize < 0 || kmerSize > KmerIndexBlockFile.MAX_KMER_SIZE) {
+            throw new IOException("kmer size is too large for blocked k-mer index : " + kmerSize);
+        }
+        
+        this.path = path;
+        this.keyType = keyType;
+        this.kmerSize = kmerSize;
+        this.blockEntries = blockEntries > 0 ? blockEntries : KmerIndexBlockFile.DEFAULT_BLOCK_ENTRIES;
+        
+        // two varints of up to 10 bytes per key
+        this.keyStream = new byte[this.blockEntries * 20];
+        this.valueStream = new byte[this.blockEntries * 8];
+        
+        this.blockFirstHighs = new long[64];
+        this.blockFirstLows = new long[64];
+        this.blockOffsets = new long[64];
+        this.blockSizes = new int[64];
+        
+        this.out = fs.create(path, true);
+        this.out.writeInt(KmerIndexBlockFile.MAGIC);
+        this.out.writeInt(KmerIndexBlockFile.VERSION);
+    }
+    
+    public void append(AKmerWritable key, IntArrayWritable val) throws IOException {
+        if(this.kmerSize == 0) {
+            if(key.getSequenceLength() <= 0 || key.getSequenceLength() > KmerIndexBlockFile.MAX_KMER_SIZE) {
+                throw new IOException("kmer size is too large for blocked k-mer index : " + key.getSequenceLength());
+            }
+            this.kmerSize = key.getSequenceLength();
+        }
+        
+        unpack(key);
+        append(this.high, this.low, val.get());
+    }
+    
+    private void unpack(AKmerWritable key) throws IOException {
+        if(key instanceof KmerLongPairWritable) {
+            KmerLongPairWritable k = (KmerLongPairWritable) key;
+            this.high = k.getHigh();
+            this.low = k.getLow();
+        } else if(key instanceof KmerLongWritable) {
+            this.high = 0;
+            this.low = ((KmerLongWritable) key).get();
+        } else if(key instanceof CompressedSequenceWritable) {
+            unpack(((CompressedSequenceWritable) key).getCompressedSequence(), key.getSequenceLength());
+        } else {
+            throw new IOException("unknown key type : " + key.getClass().getName());
+        }
+    }
+    
+    private void unpack(byte[] compressed, int seqLength) throws IOException {
+        if(seqLength != this.kmerSize) {
+            throw new IOException(String.format("kmer size of key %d does not match %d", seqLength, this.kmerSize));
+        }
+        
+        // compressed k-mers are left-aligned 2-bit words
+        long first = 0;
+        long second = 0;
+        for(int i=0;i<compressed.length && i<16;i++) {
+            long b = compressed[i] & 0xFFL;
+            if(i < 8) {
+                first |= b << (56 - (i * 8));
+            } else {
+                second |= b << (56 - ((i - 8) * 8));
+            }
+        }
+        
+        int shift = 128 - (seqLength * 2);
+        if(shift >= 64) {
+            this.high = 0;
+            this.low = first >>> (shift - 64);
+        } else if(shift == 0) {
+            this.high = first;
+            this.low = second;
+        } else {
+            this.high = first >>> shift;
+            this.low = (second >>> shift) | (first << (64 - shift));
+        }
+    }
+    
+    /**
+     * Append a k-mer packed as right-aligned 2-bit words. K-mers must be
+     * appended in increasing order.
+     */
+    public void append(long high, long low, int[] pairs) throws IOException {
+        if(this.kmerSize == 0) {
+            throw new IOException("kmer size is not set : " + this.path.toString());
+        }
+        
+        if(this.entries == 0) {
+            if(this.totalEntries > 0 && KmerIndexBlockFile.compareKmers(high, low, this.prevHigh, this.prevLow) <= 0) {
+                throw new IOException("k-mers must be appended in increasing order : " + this.path.toString());
+            }
+            
+            this.firstHigh = high;
+            this.firstLow = low;
+        } else {
+            if(KmerIndexBlockFile.compareKmers(high, low, this.prevHigh, this.prevLow) <= 0) {
+                throw new IOException("k-mers must be appended in increasing order : " + this.path.toString());
+            }
+            
+            // 128-bit difference
+            long deltaLow = low - this.prevLow;
+            long borrow = ((low ^ Long.MIN_VALUE) < (this.prevLow ^ Long.MIN_VALUE)) ? 1 : 0;
+            long deltaHigh = high - this.prevHigh - borrow;
+            
+            if(this.kmerSize > 32) {
+                this.keyStreamLength = KmerIndexBlockFile.writeVLong(this.keyStream, this.keyStreamLength, deltaHigh);
+            }
+            this.keyStreamLength = KmerIndexBlockFile.writeVLong(this.keyStream, this.keyStreamLength, deltaLow);
+        }
+        
+        appendValue(pairs);
+        
+        this.prevHigh = high;
+        this.prevLow = low;
+        this.entries++;
+        this.totalEntries++;
+        
+        if(this.entries >= this.blockEntries) {
+            writeBlock();
+        }
+    }
+    
+    private void appendValue(int[] pairs) {
+        int samples = pairs.length / 2;
+        
+        // count + (sampleID delta, frequency) pairs of up to 5 bytes each
+        int maxBytes = 5 + (samples * 10);
+        if(this.valueStream.length - this.valueStreamLength < maxBytes) {
+            byte[] newStream = new byte[Math.max(this.valueStream.length * 2, this.valueStreamLength + maxBytes)];
+            System.arraycopy(this.valueStream, 0, newStream, 0, this.valueStreamLength);
+            this.valueStream = newStream;
+        }
+        
+        this.valueStreamLength = KmerIndexBlockFile.writeVLong(this.valueStream, this.valueStreamLength, samples);
+        int prevSampleID = 0;
+        for(int i=0;i<samples;i++) {
+            int sampleID = pairs[i * 2];
+            int frequency = pairs[(i * 2) + 1];
+            this.valueStreamLength = KmerIndexBlockFile.writeVLong(this.valueStream, this.valueStreamLength, KmerIndexBlockFile.zigzag(sampleID - prevSampleID) & 0xFFFFFFFFL);
+            this.valueStreamLength = KmerIndexBlockFile.writeVLong(this.valueStream, this.valueStreamLength, frequency & 0xFFFFFFFFL);
+            prevSampleID = sampleID;
+            
+            this.totalFrequency += frequency;
+        }
+        
+        this.maxSamples = Math.max(this.maxSamples, samples);
+    }
+    
+    private void writeBlock() throws IOException {
+        if(this.entries == 0) {
+            return;
+        }
+        
+        if(this.blocks == this.blockOffsets.length) {
+            int capacity = this.blocks * 2;
+            long[] newFirstHighs = new long[capacity];
+            long[] newFirstLows = new long[capacity];
+            long[] newOffsets = new long[capacity];
+            int[] newSizes = new int[capacity];
+            System.arraycopy(this.blockFirstHighs, 0, newFirstHighs, 0, this.blocks);
+            System.arraycopy(this.blockFirstLows, 0, newFirstLows, 0, this.blocks);
+            System.arraycopy(this.blockOffsets, 0, newOffsets, 0, this.blocks);
+            System.arraycopy(this.blockSizes, 0, newSizes, 0, this.blocks);
+            this.blockFirstHighs = newFirstHighs;
+            this.blockFirstLows = newFirstLows;
+            this.blockOffsets = newOffsets;
+            this.blockSizes = newSizes;
+        }
+        
+        this.blockFirstHighs[this.blocks] = this.firstHigh;
+        this.blockFirstLows[this.blocks] = this.firstLow;
+        this.blockOffsets[this.blocks] = this.out.getPos();
+        this.blockSizes[this.blocks] = this.entries;
+        this.blocks++;
+        
+        this.out.writeInt(this.keyStreamLength);
+        this.out.writeInt(this.valueStreamLength);
+        this.out.write(this.keyStream, 0, this.keyStreamLength);
+        this.out.write(this.valueStream, 0, this.valueStreamLength);
+        
+        this.entries = 0;
+        this.keyStreamLength = 0;
+        this.valueStreamLength = 0;
+    }
+    
+    public long getEntries() {
+        return this.totalEntries;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if(this.out == null) {
+            return;
+        }
+        
+        try {
+            writeBlock();
+            
+            long directoryOffset = this.out.getPos();
+            for(int i=0;i<this.blocks;i++) {
+                this.out.writeLong(this.blockFirstHighs[i]);
+                this.out.writeLong(this.blockFirstLows[i]);
+                this.out.writeLong(this.blockOffsets[i]);
+                this.out.writeInt(this.blockSizes[i]);
+            }
+            
+            long footerOffset = this.out.getPos();
+            this.out.writeUTF(this.keyType.name());
+            this.out.writeInt(this.kmerSize);
+            this.out.writeInt(this.blockEntries);
+            this.out.writeInt(this.blocks);
+            this.out.writeLong(directoryOffset);
+            this.out.writeLong(this.totalEntries);
+            this.out.writeLong(this.totalFrequency);
+            this.out.writeInt(this.maxSamples);
+            
+            this.out.writeLong(footerOffset);
+            this.out.writeInt(KmerIndexBlockFile.MAGIC);
+        } finally {
+            this.out.close();
+            this.out = null;
+        }
+        
+        LOG.info(String.format("Wrote %d k-mers in %d blocks to %s", this.totalEntries, this.blocks, this.path.toString()));
+    }
+}
@@ -15,27 +15,20 @@
  */
 package libra.preprocess.common.kmerindex;
 
-import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
-
 /**
  *
  * @author iychoi
  */
-public class KmerIndexRecordBufferEntry {
-    private CompressedSequenceWritable key;
-    private IntArrayWritable val;
-
-    public KmerIndexRecordBufferEntry(CompressedSequenceWritable key, IntArrayWritable val) {
-        this.key = key;
-        this.val = val;
-    }
-
-    public CompressedSequenceWritable getKey() {
-        return this.key;
-    }
-
-    public IntArrayWritable getVal() {
-        return this.val;
+public enum KmerIndexFormat {
+    MAPFILE,
+    BLOCKED;
+    
+    public static KmerIndexFormat fromString(String format) {
+        try {
+            KmerIndexFormat f = KmerIndexFormat.valueOf(format.trim().toUpperCase());
+            return f;
+        } catch (Exception ex) {
+            return BLOCKED;
+        }
     }
 }
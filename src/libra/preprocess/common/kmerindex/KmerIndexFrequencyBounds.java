@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.File;
+import java.io.IOException;
+import libra.common.json.JsonSerializer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * Per-sample frequency bounds of an index chosen when the index is read.
+ * They replace bounds recorded in the index table.
+ *
+ * @author iychoi
+ */
+public class KmerIndexFrequencyBounds {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexFrequencyBounds.class);
+    
+    private static final String HADOOP_CONFIG_KEY = "libra.preprocess.common.kmerindex.kmerindexfrequencybounds";
+    
+    private String name;
+    private int[] frequencyMin;
+    private int[] frequencyMax;
+    
+    public static KmerIndexFrequencyBounds createInstance(File file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerIndexFrequencyBounds) serializer.fromJsonFile(file, KmerIndexFrequencyBounds.class);
+    }
+    
+    public static KmerIndexFrequencyBounds createInstance(String json) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerIndexFrequencyBounds) serializer.fromJson(json, KmerIndexFrequencyBounds.class);
+    }
+    
+    /**
+     * Return bounds of the named index, or null if none is set
+     */
+    public static KmerIndexFrequencyBounds createInstance(Configuration conf, String name) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerIndexFrequencyBounds) serializer.fromJsonConfiguration(conf, makeHadoopConfigKey(name), KmerIndexFrequencyBounds.class);
+    }
+    
+    public static KmerIndexFrequencyBounds createInstance(FileSystem fs, Path file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        return (KmerIndexFrequencyBounds) serializer.fromJsonFile(fs, file, KmerIndexFrequencyBounds.class);
+    }
+    
+    private static String makeHadoopConfigKey(String name) {
+        return HADOOP_CONFIG_KEY + "." + name;
+    }
+    
+    public KmerIndexFrequencyBounds() {
+    }
+    
+    public KmerIndexFrequencyBounds(String name, int[] frequencyMin, int[] frequencyMax) {
+        this.name = name;
+        this.frequencyMin = frequencyMin;
+        this.frequencyMax = frequencyMax;
+    }
+    
+    @JsonProperty("name")
+    public String getName() {
+        return this.name;
+    }
+    
+    @JsonProperty("name")
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    @JsonProperty("frequency_min")
+    public int[] getFrequencyMin() {
+        return this.frequencyMin;
+    }
+    
+    @JsonProperty("frequency_min")
+    public void setFrequencyMin(int[] frequencyMin) {
+        this.frequencyMin = frequencyMin;
+    }
+    
+    @JsonProperty("frequency_max")
+    public int[] getFrequencyMax() {
+        return this.frequencyMax;
+    }
+    
+    @JsonProperty("frequency_max")
+    public void setFrequencyMax(int[] frequencyMax) {
+        this.frequencyMax = frequencyMax;
+    }
+    
+    @JsonIgnore
+    public void saveTo(Configuration conf) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        serializer.toJsonConfiguration(conf, makeHadoopConfigKey(this.name), this);
+    }
+    
+    @JsonIgnore
+    public void saveTo(FileSystem fs, Path file) throws IOException {
+        JsonSerializer serializer = new JsonSerializer();
+        serializer.toJsonFile(fs, file, this);
+    }
+}
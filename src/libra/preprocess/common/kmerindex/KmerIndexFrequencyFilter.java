@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.IOException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Drops (fid, freq) pairs outside of per-sample frequency bounds from values
+ * read from an index built without filtering.
+ *
+ * @author iychoi
+ */
+public class KmerIndexFrequencyFilter {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexFrequencyFilter.class);
+    
+    private int[] frequencyMin;
+    private int[] frequencyMax;
+    
+    public KmerIndexFrequencyFilter(int[] frequencyMin, int[] frequencyMax) {
+        if(frequencyMin.length != frequencyMax.length) {
+            throw new IllegalArgumentException("frequency bounds have different number of samples");
+        }
+        
+        this.frequencyMin = frequencyMin;
+        this.frequencyMax = frequencyMax;
+    }
+    
+    public KmerIndexFrequencyFilter(KmerIndexTable indexTable) {
+        this(indexTable.getFrequencyMin(), indexTable.getFrequencyMax());
+    }
+    
+    /**
+     * Return the filter of the index, bounds in conf taking precedence over
+     * bounds in the index table, or null if the index is read unfiltered
+     */
+    public static KmerIndexFrequencyFilter getFilter(KmerIndexTable indexTable, Configuration conf) throws IOException {
+        KmerIndexFrequencyBounds bounds = KmerIndexFrequencyBounds.createInstance(conf, indexTable.getName());
+        if(bounds != null) {
+            return new KmerIndexFrequencyFilter(bounds.getFrequencyMin(), bounds.getFrequencyMax());
+        }
+        
+        if(indexTable.hasFrequencyBounds()) {
+            return new KmerIndexFrequencyFilter(indexTable);
+        }
+        return null;
+    }
+    
+    public boolean isAllowed(int fid, int frequency) {
+        return frequency > 0 && frequency >= this.frequencyMin[fid] && frequency <= this.frequencyMax[fid];
+    }
+    
+    /**
+     * Return the pairs within bounds, the given array itself if all are,
+     * or null if none is.
+     */
+    public int[] filter(int[] pairs) {
+        int kept = 0;
+        for(int i=0;i<pairs.length/2;i++) {
+            if(isAllowed(pairs[i*2], pairs[i*2 + 1])) {
+                kept++;
+            }
+        }
+        
+        if(kept == 0) {
+            return null;
+        }
+        
+        if(kept * 2 == pairs.length) {
+            return pairs;
+        }
+        
+        int[] filtered = new int[kept * 2];
+        int idx = 0;
+        for(int i=0;i<pairs.length/2;i++) {
+            if(isAllowed(pairs[i*2], pairs[i*2 + 1])) {
+                filtered[idx] = pairs[i*2];
+                filtered[idx + 1] = pairs[i*2 + 1];
+                idx += 2;
+            }
+        }
+        return filtered;
+    }
+}
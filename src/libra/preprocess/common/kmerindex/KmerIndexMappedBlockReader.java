@@ -0,0 +1,381 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.hadoop.io.datatypes.KmerLongPairWritable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Reads a blocked k-mer index partition on a local file system by mapping
+ * the file into memory. Keys and values are decoded in place from the
+ * mapped pages, without copying blocks into a heap buffer. See
+ * KmerIndexBlockFile for the layout.
+ * 
+ * Values are reusable: the array given to val by next() belongs to the
+ * reader and may be overwritten by the following call.
+ *
+ * @author iychoi
+ */
+public class KmerIndexMappedBlockReader extends AKmerIndexReader {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexMappedBlockReader.class);
+    
+    // a single mapping is limited to 2GB, so blocks are mapped in segments
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    
+    private Path kmerIndexTablePath;
+    private Path indexDataFile;
+    private KmerIndexFrequencyFilter frequencyFilter;
+    
+    // footer
+    private KmerKeyType keyType;
+    private int kmerSize;
+    private int blocks;
+    private long directoryOffset;
+    private long entries;
+    private long totalFrequency;
+    private int maxSamples;
+    
+    // block directory
+    private long[] blockFirstHighs;
+    private long[] blockFirstLows;
+    private long[] blockOffsets;
+    private int[] blockSizes;
+    
+    // mapped segments of whole blocks
+    private MappedByteBuffer[] segments;
+    private long[] segmentOffsets;
+    private int[] blockSegments;
+    
+    // current block
+    private int block;
+    private KmerIndexBlockDecoder decoder;
+    
+    // optional key range [rangeBegin, rangeEnd) to read
+    private boolean hasRangeBegin;
+    private long rangeBeginHigh;
+    private long rangeBeginLow;
+    private boolean hasRangeEnd;
+    private long rangeEndHigh;
+    private long rangeEndLow;
+    private boolean eof;
+    
+    public static boolean isMappable(FileSystem fs) {
+        return "file".equals(fs.getUri().getScheme());
+    }
+    
+    public KmerIndexMappedBlockReader(FileSystem fs, int kmerSize, Path kmerIndexTablePath, int partitionNo, Configuration conf) throws IOException {
+        this(fs, kmerSize, kmerIndexTablePath, KmerIndexTable.createInstance(fs, kmerIndexTablePath), partitionNo, null, null, conf);
+    }
+    
+    /**
+     * Read k-mers in [rangeBegin, rangeEnd) of the partition. Null means
+     * unbounded.
+     */
+    public KmerIndexMappedBlockReader(FileSystem fs, int kmerSize, Path kmerIndexTablePath, KmerIndexTable indexTable, int partitionNo, String rangeBegin, String rangeEnd, Configuration conf) throws IOException {
+        this.kmerIndexTablePath = kmerIndexTablePath;
+        
+        KmerIndexTableRecord tableRecord = indexTable.getRecord(partitionNo);
+        
+        // null unless built in one pass or filtered at join time
+        this.frequencyFilter = KmerIndexFrequencyFilter.getFilter(indexTable, conf);
+        
+        Path indexDataFile = new Path(kmerIndexTablePath.getParent(), tableRecord.getIndexDataFile());
+        open(fs, indexDataFile);
+        
+        if(this.entries > 0 && this.kmerSize != kmerSize) {
+            close();
+            throw new IOException(String.format("kmer size of %s is %d, but %d expected", indexDataFile.toString(), this.kmerSize, kmerSize));
+        }
+        
+        KmerLongPairWritable rangeKey = new KmerLongPairWritable();
+        if(rangeBegin != null) {
+            rangeKey.set(new CompressedSequenceWritable(rangeBegin));
+            this.hasRangeBegin = true;
+            this.rangeBeginHigh = rangeKey.getHigh();
+            this.rangeBeginLow = rangeKey.getLow();
+        }
+        
+        if(rangeEnd != null) {
+            rangeKey.set(new CompressedSequenceWritable(rangeEnd));
+            this.hasRangeEnd = true;
+            this.rangeEndHigh = rangeKey.getHigh();
+            this.rangeEndLow = rangeKey.getLow();
+        }
+        
+        seekRangeBegin();
+    }
+    
+    /**
+     * Read all k-mers of the given index data file without filtering
+     */
+    public KmerIndexMappedBlockReader(FileSystem fs, Path indexDataFile) throws IOException {
+        open(fs, indexDataFile);
+        seekRangeBegin();
+    }
+    
+    private void open(FileSystem fs, Path indexDataFile) throws IOException {
+        if(!isMappable(fs)) {
+            throw new IOException("cannot map a file that is not on a local file system : " + indexDataFile.toString());
+        }
+        
+        this.indexDataFile = indexDataFile;
+        File file = new File(fs.makeQualified(indexDataFile).toUri().getPath());
+        
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long fileLength = channel.size();
+            if(fileLength < KmerIndexBlockFile.HEADER_BYTES + KmerIndexBlockFile.TRAILER_BYTES) {
+                throw new IOException("not a blocked k-mer index : " + indexDataFile.toString());
+            }
+            
+            ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, fileLength - KmerIndexBlockFile.TRAILER_BYTES, KmerIndexBlockFile.TRAILER_BYTES);
+            long footerOffset = trailer.getLong();
+            if(trailer.getInt() != KmerIndexBlockFile.MAGIC || footerOffset < KmerIndexBlockFile.HEADER_BYTES || footerOffset > fileLength - KmerIndexBlockFile.TRAILER_BYTES) {
+                throw new IOException("not a blocked k-mer index : " + indexDataFile.toString());
+            }
+            
+            try {
+                readFooter(channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, fileLength - KmerIndexBlockFile.TRAILER_BYTES - footerOffset));
+                if(this.directoryOffset < KmerIndexBlockFile.HEADER_BYTES || this.directoryOffset + ((long) this.blocks * KmerIndexBlockFile.DIRECTORY_ENTRY_BYTES) > footerOffset) {
+                    throw new IOException("blocked k-mer index is truncated : " + indexDataFile.toString());
+                }
+                readDirectory(channel.map(FileChannel.MapMode.READ_ONLY, this.directoryOffset, (long) this.blocks * KmerIndexBlockFile.DIRECTORY_ENTRY_BYTES));
+            } catch (BufferUnderflowException ex) {
+                throw new IOException("blocked k-mer index is truncated : " + indexDataFile.toString());
+            }
+            
+            mapSegments(channel);
+        } finally {
+            // mappings stay valid after the channel is closed
+            raf.close();
+        }
+        
+        this.block = -1;
+        this.decoder = new KmerIndexBlockDecoder(this.kmerSize, true);
+    }
+    
+    private void readFooter(ByteBuffer footer) throws IOException {
+        byte[] keyTypeName = new byte[footer.getShort() & 0xFFFF];
+        footer.get(keyTypeName);
+        this.keyType = KmerKeyType.fromString(new String(keyTypeName, "UTF-8"));
+        this.kmerSize = footer.getInt();
+        footer.getInt(); // max entries per block
+        this.blocks = footer.getInt();
+        this.directoryOffset = footer.getLong();
+        this.entries = footer.getLong();
+        this.totalFrequency = footer.getLong();
+        this.maxSamples = footer.getInt();
+    }
+    
+    private void readDirectory(ByteBuffer directory) {
+        this.blockFirstHighs = new long[this.blocks];
+        this.blockFirstLows = new long[this.blocks];
+        this.blockOffsets = new long[this.blocks];
+        this.blockSizes = new int[this.blocks];
+        
+        for(int i=0;i<this.blocks;i++) {
+            this.blockFirstHighs[i] = directory.getLong();
+            this.blockFirstLows[i] = directory.getLong();
+            this.blockOffsets[i] = directory.getLong();
+            this.blockSizes[i] = directory.getInt();
+        }
+    }
+    
+    private long getBlockEnd(int block) {
+        return (block + 1 < this.blocks) ? this.blockOffsets[block + 1] : this.directoryOffset;
+    }
+    
+    private void mapSegments(FileChannel channel) throws IOException {
+        this.blockSegments = new int[this.blocks];
+        
+        // count segments first
+        int numSegments = 0;
+        long segmentBegin = -1;
+        for(int i=0;i<this.blocks;i++) {
+            if(segmentBegin < 0 || getBlockEnd(i) - segmentBegin > MAX_SEGMENT_BYTES) {
+                segmentBegin = this.blockOffsets[i];
+                numSegments++;
+            }
+        }
+        
+        this.segments = new MappedByteBuffer[numSegments];
+        this.segmentOffsets = new long[numSegments];
+        
+        int segment = -1;
+        for(int i=0;i<this.blocks;i++) {
+            if(segment < 0 || getBlockEnd(i) - this.segmentOffsets[segment] > MAX_SEGMENT_BYTES) {
+                segment++;
+                this.segmentOffsets[segment] = this.blockOffsets[i];
+            }
+            this.blockSegments[i] = segment;
+        }
+        
+        for(int i=0;i<numSegments;i++) {
+            long segmentEnd = (i + 1 < numSegments) ? this.segmentOffsets[i + 1] : this.directoryOffset;
+            this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, this.segmentOffsets[i], segmentEnd - this.segmentOffsets[i]);
+        }
+    }
+    
+    private void seekRangeBegin() throws IOException {
+        this.eof = false;
+        if(!this.hasRangeBegin) {
+            return;
+        }
+        
+        // last block whose first k-mer is not after rangeBegin
+        int lo = 0;
+        int hi = this.blocks - 1;
+        int found = 0;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if(KmerIndexBlockFile.compareKmers(this.blockFirstHighs[mid], this.blockFirstLows[mid], this.rangeBeginHigh, this.rangeBeginLow) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        
+        this.block = found - 1;
+    }
+    
+    private boolean readBlock() throws IOException {
+        this.block++;
+        if(this.block >= this.blocks) {
+            return false;
+        }
+        
+        if(this.hasRangeEnd && KmerIndexBlockFile.compareKmers(this.blockFirstHighs[this.block], this.blockFirstLows[this.block], this.rangeEndHigh, this.rangeEndLow) >= 0) {
+            return false;
+        }
+        
+        int segment = this.blockSegments[this.block];
+        int blockBegin = (int) (this.blockOffsets[this.block] - this.segmentOffsets[segment]);
+        try {
+            this.decoder.reset(this.segments[segment], blockBegin, this.blockSizes[this.block], this.blockFirstHighs[this.block], this.blockFirstLows[this.block]);
+        } catch (EOFException ex) {
+            throw new IOException("blocked k-mer index is truncated : " + this.indexDataFile.toString());
+        }
+        return true;
+    }
+    
+    /**
+     * Decode the next entry of the partition
+     */
+    private int[] readEntry() throws IOException {
+        if(!this.decoder.hasNext()) {
+            if(!readBlock()) {
+                return null;
+            }
+        }
+        
+        try {
+            return this.decoder.next();
+        } catch (EOFException ex) {
+            throw new IOException("blocked k-mer index is truncated : " + this.indexDataFile.toString());
+        }
+    }
+    
+    @Override
+    public boolean next(AKmerWritable key, IntArrayWritable val) throws IOException {
+        if(this.eof) {
+            return false;
+        }
+        
+        while(true) {
+            int[] pairs = readEntry();
+            if(pairs == null) {
+                this.eof = true;
+                return false;
+            }
+            
+            if(this.hasRangeBegin && KmerIndexBlockFile.compareKmers(this.decoder.getHigh(), this.decoder.getLow(), this.rangeBeginHigh, this.rangeBeginLow) < 0) {
+                continue;
+            }
+            
+            if(this.hasRangeEnd && KmerIndexBlockFile.compareKmers(this.decoder.getHigh(), this.decoder.getLow(), this.rangeEndHigh, this.rangeEndLow) >= 0) {
+                this.eof = true;
+                return false;
+            }
+            
+            if(this.frequencyFilter != null) {
+                pairs = this.frequencyFilter.filter(pairs);
+                if(pairs == null) {
+                    // no sample left, skip the k-mer
+                    continue;
+                }
+            }
+            
+            key.set(this.decoder.getHigh(), this.decoder.getLow(), this.kmerSize);
+            val.set(pairs);
+            return true;
+        }
+    }
+    
+    public int getKmerSize() {
+        return this.kmerSize;
+    }
+    
+    public long getEntries() {
+        return this.entries;
+    }
+    
+    public long getTotalFrequency() {
+        return this.totalFrequency;
+    }
+    
+    public int getMaxSamples() {
+        return this.maxSamples;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        // pages are unmapped when the buffers are garbage collected
+        this.segments = null;
+        if(this.decoder != null) {
+            this.decoder.clear();
+        }
+        this.eof = true;
+    }
+    
+    @Override
+    public Path getKmerIndexTablePath() {
+        return this.kmerIndexTablePath;
+    }
+    
+    @Override
+    public KmerKeyType getKeyType() {
+        return this.keyType;
+    }
+}
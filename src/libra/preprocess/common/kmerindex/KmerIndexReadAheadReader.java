@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Reads records of another reader ahead in a background thread, so I/O of
+ * the reader overlaps with the work of the caller. Decoded records are kept
+ * in a ring of batches of about a quarter of the read-ahead size each. The
+ * ring has a single producer and a single consumer, and its slots are
+ * handed over through volatile positions without locks.
+ * 
+ * The read-ahead size of a join is shared by its readers and only a limited
+ * number of readers get a background thread, others are read directly.
+ * 
+ * Only readers whose reusesValues() returns false can be wrapped.
+ *
+ * @author iychoi
+ */
+public class KmerIndexReadAheadReader extends AKmerIndexReader {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexReadAheadReader.class);
+    
+    private static final String HADOOP_CONFIG_KEY_READ_AHEAD_BYTES = "libra.preprocess.common.kmerindex.readahead_bytes";
+    
+    public static final long DEFAULT_READ_AHEAD_BYTES = 4L * 1024 * 1024;
+    public static final int MAX_READ_AHEAD_THREADS = 16;
+    
+    // smallest read-ahead worth a background thread
+    private static final long MIN_READ_AHEAD_BYTES = 64L * 1024;
+    
+    private static final int SLOTS = 4;
+    private static final int MIN_BATCH_RECORDS = 16;
+    private static final long WAIT_NANOS = 1000000L;
+    
+    // rough heap size of a decoded record besides its value array
+    private static final int RECORD_OVERHEAD_BYTES = 64;
+    
+    private AKmerIndexReader reader;
+    private int kmerSize;
+    private long batchBytes;
+    
+    private Batch[] ring;
+    // batches taken by the consumer and published by the producer
+    private volatile long head;
+    private volatile long tail;
+    private volatile boolean done;
+    private volatile boolean closed;
+    private volatile Throwable error;
+    
+    private Thread producer;
+    private volatile Thread consumer;
+    
+    // consumer side
+    private Batch current;
+    private int currentPos;
+    
+    private static class Batch {
+        private AKmerWritable[] keys = new AKmerWritable[0];
+        private IntArrayWritable[] vals = new IntArrayWritable[0];
+        private int size;
+    }
+    
+    public static void setReadAheadBytes(Configuration conf, long bytes) {
+        conf.setLong(HADOOP_CONFIG_KEY_READ_AHEAD_BYTES, bytes);
+    }
+    
+    public static long getReadAheadBytes(Configuration conf) {
+        return conf.getLong(HADOOP_CONFIG_KEY_READ_AHEAD_BYTES, DEFAULT_READ_AHEAD_BYTES);
+    }
+    
+    /**
+     * Wrap readers of a join in place if read-ahead is enabled in conf. The
+     * read-ahead size is split across at most MAX_READ_AHEAD_THREADS readers
+     * of at least MIN_READ_AHEAD_BYTES each. Readers reusing their value
+     * arrays and readers beyond the limit are read directly.
+     */
+    public static void wrap(AKmerIndexReader[] readers, int kmerSize, Configuration conf) {
+        long bytes = getReadAheadBytes(conf);
+        if(bytes <= 0) {
+            return;
+        }
+        
+        int wrappableReaders = 0;
+        for(AKmerIndexReader reader : readers) {
+            if(!reader.reusesValues()) {
+                wrappableReaders++;
+            }
+        }
+        
+        long threads = Math.min(Math.min(wrappableReaders, MAX_READ_AHEAD_THREADS), Math.max(1, bytes / MIN_READ_AHEAD_BYTES));
+        if(threads <= 0) {
+            return;
+        }
+        
+        long readerBytes = bytes / threads;
+        int wrapped = 0;
+        for(int i=0;i<readers.length && wrapped < threads;i++) {
+            if(!readers[i].reusesValues()) {
+                readers[i] = new KmerIndexReadAheadReader(readers[i], kmerSize, readerBytes);
+                wrapped++;
+            }
+        }
+        
+        if(wrapped < wrappableReaders) {
+            LOG.info(String.format("Reading ahead %d of %d k-mer index readers, %d bytes each", wrapped, wrappableReaders, readerBytes));
+        }
+    }
+    
+    public KmerIndexReadAheadReader(AKmerIndexReader reader, int kmerSize, long readAheadBytes) {
+        if(reader.reusesValues()) {
+            throw new IllegalArgumentException("wrapped reader must give a new value array on every next()");
+        }
+        
+        this.reader = reader;
+        this.kmerSize = kmerSize;
+        this.batchBytes = Math.max(1, readAheadBytes / SLOTS);
+        
+        this.ring = new Batch[SLOTS];
+        for(int i=0;i<SLOTS;i++) {
+            this.ring[i] = new Batch();
+        }
+        this.head = 0;
+        this.tail = 0;
+        this.done = false;
+        this.closed = false;
+        
+        this.producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                produce();
+            }
+        }, "KmerIndexReadAhead-" + getName());
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+    
+    private String getName() {
+        Path path = this.reader.getKmerIndexTablePath();
+        return path == null ? "unnamed" : path.getName();
+    }
+    
+    private void produce() {
+        boolean eof = false;
+        while(!eof && !this.closed) {
+            // wait for a free slot
+            while(this.tail - this.head >= SLOTS && !this.closed) {
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+            
+            if(this.closed) {
+                break;
+            }
+            
+            Batch batch = this.ring[(int) (this.tail % SLOTS)];
+            try {
+                eof = !fill(batch);
+            } catch (Throwable t) {
+                // records read before the failure are still given out
+                this.error = t;
+                eof = true;
+            }
+            
+            if(batch.size > 0) {
+                this.tail = this.tail + 1;
+                wakeUp(this.consumer);
+            }
+        }
+        
+        this.done = true;
+        wakeUp(this.consumer);
+    }
+    
+    /**
+     * Fill the batch up to the batch size. Return false at the end of the
+     * wrapped reader.
+     */
+    private boolean fill(Batch batch) throws IOException {
+        batch.size = 0;
+        long bytes = 0;
+        while(bytes < this.batchBytes || batch.size < MIN_BATCH_RECORDS) {
+            if(batch.size == batch.keys.length) {
+                grow(batch);
+            }
+            
+            if(!this.reader.next(batch.keys[batch.size], batch.vals[batch.size])) {
+                return false;
+            }
+            
+            bytes += RECORD_OVERHEAD_BYTES + (batch.vals[batch.size].get().length * 4);
+            batch.size++;
+        }
+        return true;
+    }
+    
+    private void grow(Batch batch) {
+        int capacity = Math.max(MIN_BATCH_RECORDS, batch.keys.length * 2);
+        AKmerWritable[] keys = new AKmerWritable[capacity];
+        IntArrayWritable[] vals = new IntArrayWritable[capacity];
+        System.arraycopy(batch.keys, 0, keys, 0, batch.keys.length);
+        System.arraycopy(batch.vals, 0, vals, 0, batch.vals.length);
+        KmerKeyType keyType = this.reader.getKeyType();
+        for(int i=batch.keys.length;i<capacity;i++) {
+            keys[i] = keyType.newKey(this.kmerSize);
+            vals[i] = new IntArrayWritable();
+        }
+        batch.keys = keys;
+        batch.vals = vals;
+    }
+    
+    private static void wakeUp(Thread thread) {
+        if(thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    /**
+     * Take the next batch from the ring, releasing the current one
+     */
+    private boolean nextBatch() throws IOException {
+        if(this.current != null) {
+            this.current = null;
+            this.head = this.head + 1;
+            wakeUp(this.producer);
+        }
+        
+        if(this.consumer == null) {
+            this.consumer = Thread.currentThread();
+        }
+        
+        while(this.head == this.tail) {
+            if(this.done) {
+                // recheck, the last batch may be published before done
+                if(this.head != this.tail) {
+                    break;
+                }
+                
+                if(this.error != null) {
+                    if(this.error instanceof IOException) {
+                        throw (IOException) this.error;
+                    }
+                    throw new IOException("failed to read ahead " + getName(), this.error);
+                }
+                return false;
+            }
+            LockSupport.parkNanos(this, WAIT_NANOS);
+        }
+        
+        this.current = this.ring[(int) (this.head % SLOTS)];
+        this.currentPos = 0;
+        return true;
+    }
+    
+    @Override
+    public boolean next(AKmerWritable key, IntArrayWritable val) throws IOException {
+        if(this.closed) {
+            return false;
+        }
+        
+        if(this.current == null || this.currentPos >= this.current.size) {
+            if(!nextBatch()) {
+                return false;
+            }
+        }
+        
+        key.set(this.current.keys[this.currentPos]);
+        val.set(this.current.vals[this.currentPos].get());
+        this.currentPos++;
+        return true;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        wakeUp(this.producer);
+        
+        // the wrapped reader is closed after the producer stops using it
+        boolean interrupted = false;
+        while(this.producer.isAlive()) {
+            try {
+                this.producer.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        
+        this.reader.close();
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Override
+    public Path getKmerIndexTablePath() {
+        return this.reader.getKmerIndexTablePath();
+    }
+    
+    @Override
+    public KmerKeyType getKeyType() {
+        return this.reader.getKeyType();
+    }
+    
+    @Override
+    public boolean reusesValues() {
+        return false;
+    }
+}
@@ -16,16 +16,18 @@
 package libra.preprocess.common.kmerindex;
 
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
 import libra.common.hadoop.io.reader.map.IndexCloseableMapFileReader;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.util.ReflectionUtils;
 
 /**
  *
@@ -35,8 +37,6 @@ public class KmerIndexReader extends AKmerIndexReader {
     
     private static final Log LOG = LogFactory.getLog(KmerIndexReader.class);
     
-    private static final int BUFFER_SIZE = 100;
-    
     private Configuration conf;
     private FileSystem fs;
     private int kmerSize;
@@ -44,54 +44,108 @@ public class KmerIndexReader extends AKmerIndexReader {
     private int partitionNo;
     private KmerIndexTable indexTable;
     private KmerIndexTableRecord tableRecord;
+    private KmerIndexFrequencyFilter frequencyFilter;
     
     private IndexCloseableMapFileReader indexDataReader;
-    private BlockingQueue<KmerIndexRecordBufferEntry> buffer = new LinkedBlockingQueue<KmerIndexRecordBufferEntry>();
+    private IntArrayWritable readVal;
     private boolean eof;
+    // optional key range [rangeBeginKey, rangeEndKey) to read
+    private AKmerWritable rangeBeginKey;
+    private AKmerWritable rangeEndKey;
+    private boolean started;
     
     public KmerIndexReader(FileSystem fs, int kmerSize, Path kmerIndexTablePath, int partitionNo, Configuration conf) throws IOException {
-        initialize(fs, kmerSize, kmerIndexTablePath, partitionNo, conf);
+        initialize(fs, kmerSize, kmerIndexTablePath, KmerIndexTable.createInstance(fs, kmerIndexTablePath), partitionNo, null, null, conf);
+    }
+    
+    /**
+     * Read k-mers in [rangeBegin, rangeEnd) of the partition. The reader
+     * seeks to rangeBegin through the index of the MapFile. Null means
+     * unbounded.
+     */
+    public KmerIndexReader(FileSystem fs, int kmerSize, Path kmerIndexTablePath, int partitionNo, String rangeBegin, String rangeEnd, Configuration conf) throws IOException {
+        initialize(fs, kmerSize, kmerIndexTablePath, KmerIndexTable.createInstance(fs, kmerIndexTablePath), partitionNo, rangeBegin, rangeEnd, conf);
+    }
+    
+    public KmerIndexReader(FileSystem fs, int kmerSize, Path kmerIndexTablePath, KmerIndexTable indexTable, int partitionNo, String rangeBegin, String rangeEnd, Configuration conf) throws IOException {
+        initialize(fs, kmerSize, kmerIndexTablePath, indexTable, partitionNo, rangeBegin, rangeEnd, conf);
     }
     
-    private void initialize(FileSystem fs, int kmerSize, Path kmerIndexTablePath, int partitionNo, Configuration conf) throws IOException {
+    private void initialize(FileSystem fs, int kmerSize, Path kmerIndexTablePath, KmerIndexTable indexTable, int partitionNo, String rangeBegin, String rangeEnd, Configuration conf) throws IOException {
         this.conf = conf;
         this.fs = fs;
         this.kmerSize = kmerSize;
         this.kmerIndexTablePath = kmerIndexTablePath;
         this.partitionNo = partitionNo;
-        this.indexTable = KmerIndexTable.createInstance(fs, this.kmerIndexTablePath);
+        this.indexTable = indexTable;
         
         this.tableRecord = this.indexTable.getRecord(this.partitionNo);
         
+        // null unless built in one pass or filtered at join time
+        this.frequencyFilter = KmerIndexFrequencyFilter.getFilter(this.indexTable, conf);
+        
         Path indexDataFile = new Path(this.kmerIndexTablePath.getParent(), this.tableRecord.getIndexDataFile());
         this.indexDataReader = new IndexCloseableMapFileReader(fs, indexDataFile.toString(), conf);
         
+        if(rangeBegin != null) {
+            this.rangeBeginKey = makeKey(rangeBegin);
+        }
+        
+        if(rangeEnd != null) {
+            this.rangeEndKey = makeKey(rangeEnd);
+        }
+        
+        // indices written before SampleFrequencyArrayWritable hold plain IntArrayWritable values
+        this.readVal = (IntArrayWritable) ReflectionUtils.newInstance(this.indexDataReader.getValueClass(), this.conf);
+        
+        this.started = false;
         this.eof = false;
-        fillBuffer();
     }
     
-    private void fillBuffer() throws IOException {
-        if(!this.eof) {
-            int added = 0;
-            while(added < BUFFER_SIZE) {
-                CompressedSequenceWritable key = new CompressedSequenceWritable();
-                IntArrayWritable val = new IntArrayWritable();
-                if(this.indexDataReader.next(key, val)) {
-                    KmerIndexRecordBufferEntry entry = new KmerIndexRecordBufferEntry(key, val);
-                    if(!this.buffer.offer(entry)) {
-                        throw new IOException("buffer is full");
-                    }
-                    
-                    added++;
-                } else {
-                    // EOF of this part
-                    this.eof = true;
-                    break;
+    private boolean readNext(AKmerWritable key, IntArrayWritable val) throws IOException {
+        while(true) {
+            boolean found;
+            if(!this.started && this.rangeBeginKey != null) {
+                WritableComparable<?> closest = this.indexDataReader.getClosest(this.rangeBeginKey, val);
+                found = closest != null;
+                if(found) {
+                    key.set((AKmerWritable) closest);
+                }
+            } else {
+                found = this.indexDataReader.next(key, val);
+            }
+            this.started = true;
+
+            if(!found) {
+                return false;
+            }
+            
+            if(this.rangeEndKey != null && key.compareTo(this.rangeEndKey) >= 0) {
+                return false;
+            }
+            
+            if(this.frequencyFilter == null) {
+                return true;
+            }
+            
+            int[] pairs = val.get();
+            int[] filtered = this.frequencyFilter.filter(pairs);
+            if(filtered != null) {
+                if(filtered != pairs) {
+                    val.set(filtered);
                 }
+                return true;
             }
+            // no sample left, skip the k-mer
         }
     }
     
+    private AKmerWritable makeKey(String sequence) throws IOException {
+        AKmerWritable key = this.indexTable.getKeyType().newKey(this.kmerSize);
+        key.set(new CompressedSequenceWritable(sequence));
+        return key;
+    }
+    
     @Override
     public void close() throws IOException {
         if(this.indexDataReader != null) {
@@ -106,21 +160,29 @@ public class KmerIndexReader extends AKmerIndexReader {
     }
     
     @Override
-    public boolean next(CompressedSequenceWritable key, IntArrayWritable val) throws IOException {
-        KmerIndexRecordBufferEntry entry = this.buffer.poll();
-        if(entry != null) {
-            key.set(entry.getKey());
-            val.set(entry.getVal().get());
-            return true;
+    public KmerKeyType getKeyType() {
+        return this.indexTable.getKeyType();
+    }
+    
+    @Override
+    public boolean next(AKmerWritable key, IntArrayWritable val) throws IOException {
+        if(this.eof) {
+            return false;
         }
         
-        fillBuffer();
-        entry = this.buffer.poll();
-        if(entry != null) {
-            key.set(entry.getKey());
-            val.set(entry.getVal().get());
-            return true;
+        if(!readNext(key, this.readVal)) {
+            this.eof = true;
+            return false;
         }
+        
+        val.set(this.readVal.get());
+        // decode the next record into a new array, the caller may keep this one
+        this.readVal.setEmpty();
+        return true;
+    }
+    
+    @Override
+    public boolean reusesValues() {
         return false;
     }
 }
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
 import libra.common.json.JsonSerializer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,6 +42,13 @@ public class KmerIndexTable {
     private static final String HADOOP_CONFIG_KEY = "libra.preprocess.common.kmerindex.kmerindextable";
     
     private String name;
+    private KmerKeyType keyType = KmerKeyType.SEQUENCE;
+    private KmerIndexFormat indexFormat = KmerIndexFormat.MAPFILE;
+    private int minimizerSize = 0;
+    private boolean totalOrder = false;
+    private int virtualBuckets = 0;
+    private int[] frequencyMin;
+    private int[] frequencyMax;
     private List<KmerIndexTableRecord> records = new ArrayList<KmerIndexTableRecord>();
     
     public static KmerIndexTable createInstance(File file) throws IOException {
@@ -80,6 +88,103 @@ public class KmerIndexTable {
         this.name = name;
     }
     
+    @JsonProperty("key_type")
+    public KmerKeyType getKeyType() {
+        return this.keyType;
+    }
+    
+    @JsonProperty("key_type")
+    public void setKeyType(KmerKeyType keyType) {
+        this.keyType = keyType;
+    }
+    
+    /**
+     * Format of index data files, MAPFILE for indices built before blocked
+     * index data files
+     */
+    @JsonProperty("index_format")
+    public KmerIndexFormat getIndexFormat() {
+        return this.indexFormat;
+    }
+    
+    @JsonProperty("index_format")
+    public void setIndexFormat(KmerIndexFormat indexFormat) {
+        this.indexFormat = indexFormat;
+    }
+    
+    /**
+     * Size of minimizers used to partition k-mers, 0 if partitioned by k-mer hash
+     */
+    @JsonProperty("minimizer_size")
+    public int getMinimizerSize() {
+        return this.minimizerSize;
+    }
+    
+    @JsonProperty("minimizer_size")
+    public void setMinimizerSize(int minimizerSize) {
+        this.minimizerSize = minimizerSize;
+    }
+    
+    /**
+     * True if partitions hold contiguous k-mer ranges given by their records
+     */
+    @JsonProperty("total_order")
+    public boolean isTotalOrder() {
+        return this.totalOrder;
+    }
+    
+    @JsonProperty("total_order")
+    public void setTotalOrder(boolean totalOrder) {
+        this.totalOrder = totalOrder;
+    }
+    
+    /**
+     * Number of virtual buckets k-mers are hashed into, 0 if partitioned
+     * directly by k-mer hash (indices built before virtual buckets)
+     */
+    @JsonProperty("virtual_buckets")
+    public int getVirtualBuckets() {
+        return this.virtualBuckets;
+    }
+    
+    @JsonProperty("virtual_buckets")
+    public void setVirtualBuckets(int virtualBuckets) {
+        this.virtualBuckets = virtualBuckets;
+    }
+    
+    /**
+     * Lowest frequency of each sample to be read from the index, null if
+     * frequencies were filtered when the index was built
+     */
+    @JsonProperty("frequency_min")
+    public int[] getFrequencyMin() {
+        return this.frequencyMin;
+    }
+    
+    @JsonProperty("frequency_min")
+    public void setFrequencyMin(int[] frequencyMin) {
+        this.frequencyMin = frequencyMin;
+    }
+    
+    /**
+     * Highest frequency of each sample to be read from the index, null if
+     * frequencies were filtered when the index was built
+     */
+    @JsonProperty("frequency_max")
+    public int[] getFrequencyMax() {
+        return this.frequencyMax;
+    }
+    
+    @JsonProperty("frequency_max")
+    public void setFrequencyMax(int[] frequencyMax) {
+        this.frequencyMax = frequencyMax;
+    }
+    
+    @JsonIgnore
+    public boolean hasFrequencyBounds() {
+        return this.frequencyMin != null && this.frequencyMax != null;
+    }
+    
     @JsonIgnore
     public void addRecord(KmerIndexTableRecord record) {
         this.records.add(record);
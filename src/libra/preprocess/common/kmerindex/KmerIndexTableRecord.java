@@ -25,6 +25,10 @@ import org.codehaus.jackson.annotate.JsonProperty;
 public class KmerIndexTableRecord implements Comparable<KmerIndexTableRecord> {
     private String indexDataFile;
     private int partitionID;
+    private String rangeBegin;
+    private String rangeEnd;
+    private int bucketBegin;
+    private int bucketEnd;
     
     public KmerIndexTableRecord() {
         
@@ -55,6 +59,60 @@ public class KmerIndexTableRecord implements Comparable<KmerIndexTableRecord> {
         this.indexDataFile = indexDataFile;
     }
     
+    /**
+     * First k-mer of the partition's range (inclusive), null if unbounded
+     * or partitioned by k-mer hash
+     */
+    @JsonProperty("range_begin")
+    public String getRangeBegin() {
+        return this.rangeBegin;
+    }
+    
+    @JsonProperty("range_begin")
+    public void setRangeBegin(String rangeBegin) {
+        this.rangeBegin = rangeBegin;
+    }
+    
+    /**
+     * End k-mer of the partition's range (exclusive), null if unbounded
+     * or partitioned by k-mer hash
+     */
+    @JsonProperty("range_end")
+    public String getRangeEnd() {
+        return this.rangeEnd;
+    }
+    
+    @JsonProperty("range_end")
+    public void setRangeEnd(String rangeEnd) {
+        this.rangeEnd = rangeEnd;
+    }
+    
+    /**
+     * First virtual bucket of the partition (inclusive)
+     */
+    @JsonProperty("bucket_begin")
+    public int getBucketBegin() {
+        return this.bucketBegin;
+    }
+    
+    @JsonProperty("bucket_begin")
+    public void setBucketBegin(int bucketBegin) {
+        this.bucketBegin = bucketBegin;
+    }
+    
+    /**
+     * End virtual bucket of the partition (exclusive)
+     */
+    @JsonProperty("bucket_end")
+    public int getBucketEnd() {
+        return this.bucketEnd;
+    }
+    
+    @JsonProperty("bucket_end")
+    public void setBucketEnd(int bucketEnd) {
+        this.bucketEnd = bucketEnd;
+    }
+    
     @JsonIgnore
     @Override
     public int compareTo(KmerIndexTableRecord right) {
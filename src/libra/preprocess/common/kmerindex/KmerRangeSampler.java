@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.kmerindex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import libra.common.hadoop.io.reader.sequence.RawReadReader;
+import libra.common.hadoop.io.reader.sequence.SampleFormat;
+import libra.common.helpers.SequenceHelper;
+import libra.common.sequence.ReadInfo;
+import libra.common.sequence.RollingKmerEncoder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+
+/**
+ * Samples canonical k-mers from the heads of sample files and picks range
+ * boundaries that split the sampled k-mers into partitions of about equal
+ * size. A fixed-size reservoir is kept per k-mer size.
+ * 
+ * @author iychoi
+ */
+public class KmerRangeSampler {
+    
+    private static final Log LOG = LogFactory.getLog(KmerRangeSampler.class);
+    
+    private static final long HEAD_BYTES = 4 * 1024 * 1024;
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+    
+    public static final int DEFAULT_MAX_SAMPLES = 100000;
+    
+    private Configuration conf;
+    private int[] kmerSizes;
+    private int maxSamples;
+    private String[][] reservoirs;
+    private long[] seen;
+    private Random random;
+    private int maxChunkLength;
+    private int chunkOverlap;
+    
+    public KmerRangeSampler(int[] kmerSizes, int maxSamples, Configuration conf) {
+        this.conf = conf;
+        this.kmerSizes = kmerSizes;
+        this.maxSamples = maxSamples;
+        this.reservoirs = new String[kmerSizes.length][maxSamples];
+        this.seen = new long[kmerSizes.length];
+        // fixed seed, so the same inputs give the same boundaries
+        this.random = new Random(0);
+    }
+    
+    /**
+     * Read long FASTA records in chunks as the jobs do, so the head of a
+     * genome file is not read whole. See RawReadReader.setChunking().
+     */
+    public void setChunking(int maxChunkLength, int overlap) {
+        this.maxChunkLength = maxChunkLength;
+        this.chunkOverlap = overlap;
+    }
+    
+    public void sample(Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(this.conf);
+        FSDataInputStream fileIn = fs.open(path);
+        CompressionCodec codec = new CompressionCodecFactory(this.conf).getCodec(path);
+        InputStream in = fileIn;
+        if(codec != null) {
+            in = codec.createInputStream(fileIn);
+        }
+        
+        RawReadReader reader = new RawReadReader(SampleFormat.fromPath(path), in);
+        if(this.maxChunkLength > 0) {
+            reader.setChunking(this.maxChunkLength, this.chunkOverlap);
+        }
+        
+        try {
+            ReadInfo read = new ReadInfo(path.getName());
+            long headBytes = 0;
+            while(headBytes < HEAD_BYTES) {
+                headBytes += reader.readRead(read);
+                if(read.isEmpty()) {
+                    break;
+                }
+                
+                for(int i=0;i<this.kmerSizes.length;i++) {
+                    sampleRead(i, read.getSequenceBytes(), read.getSequenceLength(), read.getSequenceOverlap());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+    
+    private void sampleRead(int idx, byte[] sequence, int length, int overlap) {
+        int kmerSize = this.kmerSizes[idx];
+        String[] reservoir = this.reservoirs[idx];
+        
+        // k-mers within the overlap were sampled from the previous chunk
+        int skip = Math.max(0, overlap - kmerSize + 1);
+        
+        int validRun = 0;
+        for(int i=0;i<length;i++) {
+            if(RollingKmerEncoder.getBaseCode(sequence[i]) < 0) {
+                validRun = 0;
+                continue;
+            }
+            
+            validRun++;
+            if(validRun < kmerSize || i - kmerSize + 1 < skip) {
+                continue;
+            }
+            
+            // reservoir sampling - the k-mer string is only built when kept
+            long n = this.seen[idx]++;
+            int slot;
+            if(n < this.maxSamples) {
+                slot = (int) n;
+            } else {
+                long r = (long) (this.random.nextDouble() * (n + 1));
+                if(r >= this.maxSamples) {
+                    continue;
+                }
+                slot = (int) r;
+            }
+            
+            char[] kmer = new char[kmerSize];
+            int start = i - kmerSize + 1;
+            for(int j=0;j<kmerSize;j++) {
+                kmer[j] = BASES[RollingKmerEncoder.getBaseCode(sequence[start + j])];
+            }
+            reservoir[slot] = SequenceHelper.canonicalize(new String(kmer));
+        }
+    }
+    
+    /**
+     * Return partitions - 1 ascending boundaries. Partition i holds k-mers
+     * in [boundary i - 1, boundary i).
+     */
+    public List<String> getBoundaries(int kmerSize, int partitions) throws IOException {
+        int idx = -1;
+        for(int i=0;i<this.kmerSizes.length;i++) {
+            if(this.kmerSizes[i] == kmerSize) {
+                idx = i;
+            }
+        }
+        
+        if(idx < 0) {
+            throw new IllegalArgumentException("kmer size is not sampled : " + kmerSize);
+        }
+        
+        int samples = (int) Math.min(this.seen[idx], this.maxSamples);
+        if(partitions > 1 && samples < partitions) {
+            throw new IOException(String.format("too few k-mers sampled (%d) to make %d partitions", samples, partitions));
+        }
+        
+        String[] sorted = Arrays.copyOf(this.reservoirs[idx], samples);
+        Arrays.sort(sorted);
+        
+        List<String> boundaries = new ArrayList<String>();
+        for(int i=1;i<partitions;i++) {
+            boundaries.add(sorted[(int) ((long) samples * i / partitions)]);
+        }
+        
+        LOG.info(String.format("Range boundaries of %d-mers - %d partitions from %d sampled k-mers", kmerSize, partitions, samples));
+        return boundaries;
+    }
+}
@@ -171,6 +171,20 @@ public class KmerStatistics {
         this.logTFSum += weight;
     }
     
+    /**
+     * Set norm bases and sums from TF weights accumulated over all k-mers
+     */
+    @JsonIgnore
+    public void setTFWeights(KmerStatisticsPart statisticsPart) {
+        setBooleanTFCosineNormBase(Math.sqrt(statisticsPart.getBooleanTFWeight()));
+        setLogTFCosineNormBase(Math.sqrt(statisticsPart.getLogTFWeightSquare()));
+        setNaturalTFCosineNormBase(Math.sqrt(statisticsPart.getNaturalTFWeightSquare()));
+        
+        setBooleanTFSum(statisticsPart.getBooleanTFWeight());
+        setNaturalTFSum(statisticsPart.getNaturalTFWeight());
+        setLogTFSum(statisticsPart.getLogTFWeight());
+    }
+    
     @JsonIgnore
     public void saveTo(Configuration conf) throws IOException {
         JsonSerializer serializer = new JsonSerializer();
@@ -18,6 +18,8 @@ package libra.preprocess.common.kmerstatistics;
 import java.io.File;
 import java.io.IOException;
 import libra.common.json.JsonSerializer;
+import libra.distancematrix.common.Weight;
+import libra.distancematrix.common.WeightAlgorithm;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -155,6 +157,22 @@ public class KmerStatisticsPart {
         this.booleanTFWeight += weight;
     }
     
+    /**
+     * Add TF weights of count k-mers of the given frequency
+     */
+    @JsonIgnore
+    public void incrementTFWeights(int frequency, long count) throws IOException {
+        double logTFWeight = Weight.getTFWeight(WeightAlgorithm.LOGARITHM, frequency);
+        double naturalTFWeight = Weight.getTFWeight(WeightAlgorithm.NATURAL, frequency);
+        double booleanTFWeight = Weight.getTFWeight(WeightAlgorithm.BOOLEAN, frequency);
+        
+        incrementLogTFWeightSquare(Math.pow(logTFWeight, 2) * count);
+        incrementLogTFWeight(logTFWeight * count);
+        incrementNaturalTFWeightSquare(Math.pow(naturalTFWeight, 2) * count);
+        incrementNaturalTFWeight(naturalTFWeight * count);
+        incrementBooleanTFWeight(booleanTFWeight * count);
+    }
+    
     @JsonIgnore
     public void saveTo(Configuration conf) throws IOException {
         JsonSerializer serializer = new JsonSerializer();
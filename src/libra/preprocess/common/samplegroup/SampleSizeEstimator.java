@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.common.samplegroup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import libra.common.hadoop.io.reader.sequence.RawReadReader;
+import libra.common.hadoop.io.reader.sequence.SampleFormat;
+import libra.common.sequence.ReadInfo;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+
+/**
+ * Estimates the number of reads and bases of a sample file by parsing the
+ * head of the file and scaling by the file size.
+ * 
+ * @author iychoi
+ */
+public class SampleSizeEstimator {
+    
+    private static final Log LOG = LogFactory.getLog(SampleSizeEstimator.class);
+    
+    private static final long HEAD_BYTES = 4 * 1024 * 1024;
+    
+    private Configuration conf;
+    private int maxChunkLength;
+    private int chunkOverlap;
+    
+    private long reads;
+    private long bases;
+    
+    public SampleSizeEstimator(Configuration conf) {
+        this.conf = conf;
+    }
+    
+    /**
+     * Read long FASTA records in chunks as the jobs do, so the head of a
+     * genome file is not read whole. See RawReadReader.setChunking().
+     */
+    public void setChunking(int maxChunkLength, int overlap) {
+        this.maxChunkLength = maxChunkLength;
+        this.chunkOverlap = overlap;
+    }
+    
+    public void estimate(Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(this.conf);
+        long fileLength = fs.getFileStatus(path).getLen();
+        
+        FSDataInputStream fileIn = fs.open(path);
+        CompressionCodec codec = new CompressionCodecFactory(this.conf).getCodec(path);
+        InputStream in = fileIn;
+        if(codec != null) {
+            in = codec.createInputStream(fileIn);
+        }
+        
+        RawReadReader reader = new RawReadReader(SampleFormat.fromPath(path), in);
+        if(this.maxChunkLength > 0) {
+            reader.setChunking(this.maxChunkLength, this.chunkOverlap);
+        }
+        
+        try {
+            ReadInfo read = new ReadInfo(path.getName());
+            long headReads = 0;
+            long headBases = 0;
+            long headBytes = 0;
+            boolean eof = false;
+            while(headBytes < HEAD_BYTES) {
+                headBytes += reader.readRead(read);
+                if(read.isEmpty()) {
+                    eof = true;
+                    break;
+                }
+                // a chunked record is one read, its chunks overlap
+                if(!reader.isRecordContinued()) {
+                    headReads++;
+                }
+                headBases += read.getSequenceLength() - read.getSequenceOverlap();
+            }
+            
+            double scale = 1.0;
+            if(!eof) {
+                // compressed bytes read so far, for compressed input
+                long consumed = codec == null ? headBytes : fileIn.getPos();
+                scale = (double) fileLength / Math.max(1, consumed);
+            }
+            
+            this.reads = (long) (headReads * scale);
+            this.bases = (long) (headBases * scale);
+        } finally {
+            reader.close();
+        }
+        
+        LOG.info(String.format("Estimated size of %s - %d reads, %d bases", path.toString(), this.reads, this.bases));
+    }
+    
+    public long getReads() {
+        return this.reads;
+    }
+    
+    public long getBases() {
+        return this.bases;
+    }
+}
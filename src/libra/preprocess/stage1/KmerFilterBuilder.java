@@ -15,21 +15,23 @@
  */
 package libra.preprocess.stage1;
 
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
-import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
 import libra.common.helpers.FileSystemHelper;
 import libra.common.report.Report;
-import libra.common.hadoop.io.format.sequence.SequenceFileInputFormat;
+import libra.common.hadoop.io.format.sequence.SequenceFileBatchInputFormat;
+import libra.common.sequence.RollingKmerEncoder;
 import libra.preprocess.common.PreprocessorConfigException;
 import libra.preprocess.common.PreprocessorRoundConfig;
 import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.KmerFilterHelper;
+import libra.preprocess.common.kmercount.KmerCountMapOutputCollector;
 import libra.preprocess.common.kmerfilter.KmerFilter;
 import libra.preprocess.common.kmerfilter.KmerFilterPart;
 import libra.preprocess.common.kmerfilter.KmerFilterPartTable;
+import libra.preprocess.common.kmerfilter.KmerFilterSketch;
 import libra.preprocess.common.kmerfilter.KmerFilterTable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,6 +41,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.NullOutputFormat;
 
 /**
@@ -62,8 +65,22 @@ public class KmerFilterBuilder {
             throw new PreprocessorConfigException("cannot find input sample path");
         }
         
-        if(ppConfig.getKmerSize() <= 0) {
-            throw new PreprocessorConfigException("invalid kmer size");
+        for(int kmerSize : ppConfig.getAllKmerSizes()) {
+            if(kmerSize <= 0) {
+                throw new PreprocessorConfigException("invalid kmer size");
+            }
+
+            if(kmerSize > ppConfig.getKeyType().getMaxKmerSize()) {
+                throw new PreprocessorConfigException("kmer size is too large for key type " + ppConfig.getKeyType().name());
+            }
+            
+            if(ppConfig.isSketchFilter() && kmerSize > RollingKmerEncoder.MAX_KMER_SIZE) {
+                throw new PreprocessorConfigException("kmer size is too large for sketch filter");
+            }
+        }
+        
+        if(ppConfig.isCountInput() && ppConfig.isSketchFilter()) {
+            throw new PreprocessorConfigException("sketch filter is not supported with k-mer count input");
         }
         
         if(ppConfig.getKmerFilterPath()== null) {
@@ -85,17 +102,30 @@ public class KmerFilterBuilder {
         
         job.setJarByClass(KmerFilterBuilder.class);
         
+        if(ppConfig.isSketchFilter()) {
+            return runSketchJob(job, conf, ppConfig, report);
+        }
+        
         // Mapper
-        job.setMapperClass(KmerFilterBuilderMapper.class);
-        job.setInputFormatClass(SequenceFileInputFormat.class);
-        job.setMapOutputKeyClass(CompressedSequenceWritable.class);
-        job.setMapOutputValueClass(IntArrayWritable.class);
+        if(ppConfig.isCountInput()) {
+            job.setMapperClass(KmerFilterBuilderCountMapper.class);
+            job.setInputFormatClass(TextInputFormat.class);
+        } else {
+            job.setMapperClass(KmerFilterBuilderMapper.class);
+            job.setInputFormatClass(SequenceFileBatchInputFormat.class);
+        }
+        job.setMapOutputKeyClass(ppConfig.getKeyType().getKeyClass());
+        job.setMapOutputValueClass(SampleFrequencyArrayWritable.class);
         
         // Combiner
         job.setCombinerClass(KmerFilterBuilderCombiner.class);
 
         // Partitioner
         job.setPartitionerClass(KmerFilterBuilderPartitioner.class);
+        
+        if(ppConfig.isRadixSort()) {
+            KmerCountMapOutputCollector.setCollector(conf);
+        }
 
         // Reducer
         job.setReducerClass(KmerFilterBuilderReducer.class);
@@ -121,15 +151,66 @@ public class KmerFilterBuilder {
             reducers = ppConfig.getTaskNum();
         }
         
-        job.setNumReduceTasks(reducers);
-        LOG.info("# of Reducers : " + reducers);
+        // a separate block of partitions per kmer size
+        int kmerSizes = ppConfig.getAllKmerSizes().length;
+        job.setNumReduceTasks(reducers * kmerSizes);
+        LOG.info("# of Reducers : " + reducers * kmerSizes);
         
         // Execute job and return status
         boolean result = job.waitForCompletion(true);
         
         // commit results
         if(result) {
-            commit(new Path(ppConfig.getKmerFilterPath()), ppConfig.getFileTable(), conf);
+            for(int kmerSize : ppConfig.getAllKmerSizes()) {
+                PreprocessorRoundConfig kmerSizeConfig = ppConfig.getKmerSizeConfig(kmerSize);
+                commit(new Path(kmerSizeConfig.getKmerFilterPath()), kmerSizeConfig.getFileTable(), conf);
+            }
+        }
+        
+        report.addJob(job);
+        
+        // report
+        if(ppConfig.getReportPath() != null && !ppConfig.getReportPath().isEmpty()) {
+            report.writeTo(ppConfig.getReportPath());
+        }
+        
+        return result ? 0 : 1;
+    }
+    
+    private int runSketchJob(Job job, Configuration conf, PreprocessorRoundConfig ppConfig, Report report) throws Exception {
+        // Mapper
+        job.setMapperClass(KmerFilterBuilderSketchMapper.class);
+        job.setInputFormatClass(SequenceFileBatchInputFormat.class);
+        job.setMapOutputKeyClass(NullWritable.class);
+        job.setMapOutputValueClass(NullWritable.class);
+        
+        // Specify key / value
+        job.setOutputKeyClass(NullWritable.class);
+        job.setOutputValueClass(NullWritable.class);
+        
+        // Inputs
+        Path[] inputFiles = FileSystemHelper.makePathFromString(conf, ppConfig.getFileTable().getSamples());
+        FileInputFormat.addInputPaths(job, FileSystemHelper.makeCommaSeparated(inputFiles));
+        
+        LOG.info("Input sample files : " + inputFiles.length);
+        for(Path inputFile : inputFiles) {
+            LOG.info("> " + inputFile.toString());
+        }
+        
+        job.setOutputFormatClass(NullOutputFormat.class);
+        
+        // sketches are merged on commit
+        job.setNumReduceTasks(0);
+        
+        // Execute job and return status
+        boolean result = job.waitForCompletion(true);
+        
+        // commit results
+        if(result) {
+            for(int kmerSize : ppConfig.getAllKmerSizes()) {
+                PreprocessorRoundConfig kmerSizeConfig = ppConfig.getKmerSizeConfig(kmerSize);
+                commitSketch(new Path(kmerSizeConfig.getKmerFilterPath()), kmerSizeConfig.getFileTable(), conf);
+            }
         }
         
         report.addJob(job);
@@ -195,4 +276,57 @@ public class KmerFilterBuilder {
             fs.delete(filterTablePartFile, true);
         }
     }
+    
+    private void commitSketch(Path filterPath, FileTable fileTable, Configuration conf) throws IOException {
+        String filterTableFileName = KmerFilterHelper.makeKmerFilterTableFileName(fileTable.getName());
+        Path filterTableOutputFile = new Path(filterPath, filterTableFileName);
+        
+        LOG.info("Creating a kmer filter table file from sketches : " + filterTableFileName);
+        
+        // splits of a sample are sketched by different mappers
+        KmerFilterSketch[] sketches = new KmerFilterSketch[fileTable.samples()];
+        
+        Path[] kmerFilterSketchFiles = KmerFilterHelper.getKmerFilterSketchFilePaths(conf, filterPath);
+        for(Path kmerFilterSketchFile : kmerFilterSketchFiles) {
+            FileSystem fs = kmerFilterSketchFile.getFileSystem(conf);
+            KmerFilterSketch sketch = KmerFilterSketch.createInstance(fs, kmerFilterSketchFile);
+            int idx = fileTable.getSampleID(sketch.getName());
+            if(idx < 0) {
+                throw new IOException(String.format("Cannot find fileID from path %s", sketch.getName()));
+            }
+            
+            if(sketches[idx] == null) {
+                sketches[idx] = sketch;
+            } else {
+                sketches[idx].merge(sketch);
+            }
+        }
+        
+        KmerFilterTable filterTable = new KmerFilterTable();
+        filterTable.setName(fileTable.getName());
+        
+        Iterator<String> iterator = fileTable.getSamples().iterator();
+        for(int j=0;j<fileTable.samples();j++) {
+            String sample_name = iterator.next();
+            if(sketches[j] == null) {
+                // no k-mers
+                filterTable.addFilter(new KmerFilter(sample_name));
+            } else {
+                KmerFilter filter = sketches[j].toKmerFilter();
+                filter.setName(sample_name);
+                filterTable.addFilter(filter);
+            }
+        }
+        
+        // save
+        FileSystem outputFileSystem = filterTableOutputFile.getFileSystem(conf);
+
+        filterTable.saveTo(outputFileSystem, filterTableOutputFile);
+        
+        // delete sketch files
+        for(Path kmerFilterSketchFile : kmerFilterSketchFiles) {
+            FileSystem fs = kmerFilterSketchFile.getFileSystem(conf);
+            fs.delete(kmerFilterSketchFile, true);
+        }
+    }
 }
@@ -16,8 +16,10 @@
 package libra.preprocess.stage1;
 
 import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyMerger;
 import libra.preprocess.common.PreprocessorRoundConfig;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,59 +30,33 @@ import org.apache.hadoop.mapreduce.Reducer;
  *
  * @author iychoi
  */
-public class KmerFilterBuilderCombiner extends Reducer<CompressedSequenceWritable, IntArrayWritable, CompressedSequenceWritable, IntArrayWritable> {
+public class KmerFilterBuilderCombiner extends Reducer<AKmerWritable, IntArrayWritable, AKmerWritable, IntArrayWritable> {
     
     private static final Log LOG = LogFactory.getLog(KmerFilterBuilderCombiner.class);
     
     private PreprocessorRoundConfig ppConfig;
+    private SampleFrequencyMerger merger;
+    private SampleFrequencyArrayWritable outputValue;
     
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
         Configuration conf = context.getConfiguration();
         
         this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        this.merger = new SampleFrequencyMerger();
+        this.outputValue = new SampleFrequencyArrayWritable();
     }
     
     @Override
-    protected void reduce(CompressedSequenceWritable key, Iterable<IntArrayWritable> values, Context context) throws IOException, InterruptedException {
-        int[] freqTable = new int[this.ppConfig.getFileTable().samples()];
-        for(int i=0;i<freqTable.length;i++) {
-            freqTable[i] = 0;
-        }
-        
+    protected void reduce(AKmerWritable key, Iterable<IntArrayWritable> values, Context context) throws IOException, InterruptedException {
+        this.merger.clear();
         for(IntArrayWritable value : values) {
-            int[] v_arr = value.get();
-            
-            if(v_arr.length % 2 != 0) {
-                throw new IOException("Input record is not valid");
-            }
-            
-            for(int j=0;j<v_arr.length/2;j++) {
-                int fid = v_arr[j*2];
-                int freq = v_arr[j*2 + 1];
-                
-                freqTable[fid] += freq;
-            }
-        }
-        
-        int nonZeroFiles = 0;
-        for(int k=0;k<freqTable.length;k++) {
-            if(freqTable[k] > 0) {
-                nonZeroFiles++;
-            }
-        }
-        
-        int[] outputFreqArr = new int[nonZeroFiles*2];
-        int idx = 0;
-        for(int l=0;l<freqTable.length;l++) {
-            if(freqTable[l] > 0) {
-                outputFreqArr[idx] = l; // fid
-                outputFreqArr[idx+1] = freqTable[l]; // freq
-                idx += 2;
-            }
+            this.merger.add(value.get());
         }
+        this.merger.merge();
         
-        context.write(key, new IntArrayWritable(outputFreqArr));
+        this.outputValue.set(this.merger.toPairs());
+        context.write(key, this.outputValue);
     }
     
     @Override
@@ -16,12 +16,14 @@
 package libra.preprocess.stage1;
 
 import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
-import libra.common.helpers.SequenceHelper;
-import libra.common.sequence.ReadInfo;
+import libra.common.sequence.QualityMasker;
+import libra.common.sequence.ReadBatch;
 import libra.preprocess.common.PreprocessorRoundConfig;
 import libra.preprocess.common.filetable.FileTable;
+import libra.preprocess.common.kmercount.KmerCounter;
+import libra.preprocess.common.kmercount.KmerCounterThreadPool;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -34,21 +36,42 @@ import org.apache.hadoop.mapreduce.lib.input.FileSplit;
  *
  * @author iychoi
  */
-public class KmerFilterBuilderMapper extends Mapper<LongWritable, ReadInfo, CompressedSequenceWritable, IntArrayWritable> {
+public class KmerFilterBuilderMapper extends Mapper<LongWritable, ReadBatch, AKmerWritable, IntArrayWritable> {
     
     private static final Log LOG = LogFactory.getLog(KmerFilterBuilderMapper.class);
     
     private PreprocessorRoundConfig ppConfig;
-    private int kmerSize;
     private FileTable fileTable;
+    private int fileID;
+    private KmerCounter[] kmerCounters;
+    private KmerCounterThreadPool kmerCounterPool;
+    private QualityMasker qualityMasker;
     
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
         Configuration conf = context.getConfiguration();
         
         this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
-        this.kmerSize = this.ppConfig.getKmerSize();
         this.fileTable = this.ppConfig.getFileTable();
+        
+        // all reads of a split come from one sample
+        FileSplit fis = (FileSplit)context.getInputSplit();
+        this.fileID = getFileID(fis.getPath());
+        
+        this.qualityMasker = new QualityMasker(this.ppConfig.getMinBaseQuality(), this.ppConfig.getTrimQuality());
+        
+        int[] kmerSizes = this.ppConfig.getAllKmerSizes();
+        if(this.ppConfig.getMapThreads() > 1) {
+            this.kmerCounterPool = new KmerCounterThreadPool(this.ppConfig.getMapThreads(), kmerSizes, this.ppConfig.getKeyType(), this.ppConfig.getCountBufferSize() * 1024L * 1024L, 0, context);
+            return;
+        }
+        
+        // one counter per kmer size, sharing the count buffer
+        long countBufferBytes = this.ppConfig.getCountBufferSize() * 1024L * 1024L / kmerSizes.length;
+        this.kmerCounters = new KmerCounter[kmerSizes.length];
+        for(int i=0;i<kmerSizes.length;i++) {
+            this.kmerCounters[i] = new KmerCounter(kmerSizes[i], this.ppConfig.getKeyType(), countBufferBytes);
+        }
     }
     
     private int getFileID(Path filePath) throws IOException {
@@ -60,45 +83,33 @@ public class KmerFilterBuilderMapper extends Mapper<LongWritable, ReadInfo, Comp
     }
     
     @Override
-    protected void map(LongWritable key, ReadInfo value, Context context) throws IOException, InterruptedException {
-        FileSplit fis = (FileSplit)context.getInputSplit();
-        int fileID = getFileID(fis.getPath());
-        
-        String sequence = value.getSequence();
-        if(sequence.length() >= this.kmerSize) {
-            sequence = sequence.toUpperCase();
-            boolean pvalid = false;
-            for (int i = 0; i < (sequence.length() - this.kmerSize + 1); i++) {
-                String kmer = sequence.substring(i, i + this.kmerSize);
-                if (pvalid) {
-                    if (!SequenceHelper.isValidSequence(kmer.charAt(this.kmerSize - 1))) {
-                        //LOG.info("discard invalid kmer sequence : " + kmer);
-                        pvalid = false;
-                        continue;
-                    } else {
-                        pvalid = true;
-                    }
-                } else {
-                    if (!SequenceHelper.isValidSequence(kmer)) {
-                        //LOG.info("discard invalid kmer sequence : " + kmer);
-                        pvalid = false;
-                        continue;
-                    } else {
-                        pvalid = true;
-                    }
-                }
-                
-                String canonicalKmer = SequenceHelper.canonicalize(kmer);
-
-                int[] arr = new int[2];
-                arr[0] = fileID;
-                arr[1] = 1;
-                context.write(new CompressedSequenceWritable(canonicalKmer), new IntArrayWritable(arr));
+    protected void map(LongWritable key, ReadBatch value, Context context) throws IOException, InterruptedException {
+        byte[] sequences = value.getSequenceBytes();
+        for(int i=0;i<value.size();i++) {
+            int start = value.getSequenceStart(i);
+            int length = this.qualityMasker.apply(value, i);
+            
+            if(this.kmerCounterPool != null) {
+                this.kmerCounterPool.add(this.fileID, sequences, start, length, value.getSequenceOverlap(i));
+                continue;
+            }
+            
+            for(KmerCounter kmerCounter : this.kmerCounters) {
+                int skip = Math.min(value.getKmerSkip(i, kmerCounter.getKmerSize()), length);
+                kmerCounter.count(sequences, start + skip, length - skip, this.fileID, context);
             }
         }
     }
     
     @Override
     protected void cleanup(Context context) throws IOException, InterruptedException {
+        if(this.kmerCounterPool != null) {
+            this.kmerCounterPool.finish();
+            return;
+        }
+        
+        for(KmerCounter kmerCounter : this.kmerCounters) {
+            kmerCounter.flush(context);
+        }
     }
 }
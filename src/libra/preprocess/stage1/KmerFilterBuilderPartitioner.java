@@ -16,8 +16,10 @@
 package libra.preprocess.stage1;
 
 
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.preprocess.common.PreprocessorRoundConfig;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
@@ -28,15 +30,37 @@ import org.apache.hadoop.mapreduce.Partitioner;
  *
  * @author iychoi
  */
-public class KmerFilterBuilderPartitioner extends Partitioner<CompressedSequenceWritable, IntArrayWritable> implements Configurable {
+public class KmerFilterBuilderPartitioner extends Partitioner<AKmerWritable, IntArrayWritable> implements Configurable {
 
     private static final Log LOG = LogFactory.getLog(KmerFilterBuilderPartitioner.class);
     
     private Configuration conf;
+    private int[] kmerSizeIndex;
+    private int kmerSizes;
     
     @Override
     public void setConf(Configuration conf) {
         this.conf = conf;
+        
+        PreprocessorRoundConfig ppConfig;
+        try {
+            ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot read preprocessor config", ex);
+        }
+        
+        // lookup table from kmer size to its block of partitions
+        int[] sizes = ppConfig.getAllKmerSizes();
+        int maxSize = 0;
+        for(int size : sizes) {
+            maxSize = Math.max(maxSize, size);
+        }
+        
+        this.kmerSizes = sizes.length;
+        this.kmerSizeIndex = new int[maxSize + 1];
+        for(int i=0;i<sizes.length;i++) {
+            this.kmerSizeIndex[sizes[i]] = i;
+        }
     }
 
     @Override
@@ -45,7 +69,13 @@ public class KmerFilterBuilderPartitioner extends Partitioner<CompressedSequence
     }
     
     @Override
-    public int getPartition(CompressedSequenceWritable key, IntArrayWritable value, int numReduceTasks) {
-        return (key.hashCode() & Integer.MAX_VALUE) % numReduceTasks;
+    public int getPartition(AKmerWritable key, IntArrayWritable value, int numReduceTasks) {
+        if(this.kmerSizes <= 1) {
+            return (key.hashCode() & Integer.MAX_VALUE) % numReduceTasks;
+        }
+        
+        int partitionsPerKmerSize = numReduceTasks / this.kmerSizes;
+        int block = this.kmerSizeIndex[key.getSequenceLength()];
+        return block * partitionsPerKmerSize + (key.hashCode() & Integer.MAX_VALUE) % partitionsPerKmerSize;
     }
 }
@@ -16,8 +16,9 @@
 package libra.preprocess.stage1;
 
 import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyMerger;
 import libra.preprocess.common.PreprocessorRoundConfig;
 import libra.preprocess.common.filetable.FileTable;
 import libra.preprocess.common.helpers.KmerFilterHelper;
@@ -35,13 +36,15 @@ import org.apache.hadoop.mapreduce.Reducer;
  *
  * @author iychoi
  */
-public class KmerFilterBuilderReducer extends Reducer<CompressedSequenceWritable, IntArrayWritable, NullWritable, NullWritable> {
+public class KmerFilterBuilderReducer extends Reducer<AKmerWritable, IntArrayWritable, NullWritable, NullWritable> {
     
     private static final Log LOG = LogFactory.getLog(KmerFilterBuilderReducer.class);
 
     private PreprocessorRoundConfig ppConfig;
     private FileTable fileTable;
+    private String kmerFilterPath;
     private KmerFilterPart[] filterParts;
+    private SampleFrequencyMerger merger;
     
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
@@ -49,7 +52,13 @@ public class KmerFilterBuilderReducer extends Reducer<CompressedSequenceWritable
         
         this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
         this.fileTable = this.ppConfig.getFileTable();
+        
+        int taskID = context.getTaskAttemptID().getTaskID().getId();
+        int kmerSize = this.ppConfig.getKmerSizeOfPartition(taskID, context.getNumReduceTasks());
+        this.kmerFilterPath = this.ppConfig.getKmerSizeConfig(kmerSize).getKmerFilterPath();
+        
         this.filterParts = new KmerFilterPart[this.ppConfig.getFileTable().samples()];
+        this.merger = new SampleFrequencyMerger();
         
         int idx = 0;
         for(String sample : this.fileTable.getSamples()) {
@@ -59,34 +68,21 @@ public class KmerFilterBuilderReducer extends Reducer<CompressedSequenceWritable
     }
     
     @Override
-    protected void reduce(CompressedSequenceWritable key, Iterable<IntArrayWritable> values, Context context) throws IOException, InterruptedException {
-        int[] freqTable = new int[this.fileTable.samples()];
-        for(int i=0;i<freqTable.length;i++) {
-            freqTable[i] = 0;
-        }
-        
+    protected void reduce(AKmerWritable key, Iterable<IntArrayWritable> values, Context context) throws IOException, InterruptedException {
+        this.merger.clear();
         for(IntArrayWritable value : values) {
-            int[] v_arr = value.get();
-            
-            if(v_arr.length % 2 != 0) {
-                throw new IOException("Input record is not valid");
-            }
-            
-            for(int j=0;j<v_arr.length/2;j++) {
-                int fid = v_arr[j*2];
-                int freq = v_arr[j*2 + 1];
-                
-                freqTable[fid] += freq;
-            }
+            this.merger.add(value.get());
         }
+        this.merger.merge();
 
         // compute base
-        for(int m=0;m<freqTable.length;m++) {
-            int frequency = freqTable[m];
+        for(int m=0;m<this.merger.size();m++) {
+            int frequency = this.merger.getFrequency(m);
             if(frequency > 0) {
-                this.filterParts[m].incrementTotalKmers(frequency);
-                this.filterParts[m].incrementUniqueKmers(1);
-                this.filterParts[m].incrementSumOfSquare(Math.pow(frequency, 2));
+                KmerFilterPart filterPart = this.filterParts[this.merger.getSampleID(m)];
+                filterPart.incrementTotalKmers(frequency);
+                filterPart.incrementUniqueKmers(1);
+                filterPart.incrementSumOfSquare(Math.pow(frequency, 2));
             }
         }
     }
@@ -102,7 +98,7 @@ public class KmerFilterBuilderReducer extends Reducer<CompressedSequenceWritable
         
         String filterPartTableFileName = KmerFilterHelper.makeKmerFilterPartTableFileName(this.fileTable.getName(), taskID);
 
-        Path filterPartTableOutputFile = new Path(this.ppConfig.getKmerFilterPath(), filterPartTableFileName);
+        Path filterPartTableOutputFile = new Path(this.kmerFilterPath, filterPartTableFileName);
         FileSystem outputFileSystem = filterPartTableOutputFile.getFileSystem(context.getConfiguration());
 
         table.saveTo(outputFileSystem, filterPartTableOutputFile);
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage1;
+
+import java.io.IOException;
+import java.util.Iterator;
+import libra.common.sequence.QualityMasker;
+import libra.common.sequence.ReadBatch;
+import libra.common.sequence.RollingKmerEncoder;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.filetable.FileTable;
+import libra.preprocess.common.helpers.KmerFilterHelper;
+import libra.preprocess.common.kmerfilter.KmerFilterSketch;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Sketches k-mers of a split instead of emitting them, so the filter pass
+ * runs without a shuffle. Sketches are written to the kmer filter path of
+ * each kmer size and merged when the job is committed.
+ *
+ * @author iychoi
+ */
+public class KmerFilterBuilderSketchMapper extends Mapper<LongWritable, ReadBatch, NullWritable, NullWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerFilterBuilderSketchMapper.class);
+    
+    private PreprocessorRoundConfig ppConfig;
+    private FileTable fileTable;
+    private int[] kmerSizes;
+    private RollingKmerEncoder[] encoders;
+    private KmerFilterSketch[] sketches;
+    private QualityMasker qualityMasker;
+    
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        this.fileTable = this.ppConfig.getFileTable();
+        
+        // all reads of a split come from one sample
+        FileSplit fis = (FileSplit)context.getInputSplit();
+        String sampleName = getSampleName(fis.getPath());
+        
+        this.qualityMasker = new QualityMasker(this.ppConfig.getMinBaseQuality(), this.ppConfig.getTrimQuality());
+        
+        this.kmerSizes = this.ppConfig.getAllKmerSizes();
+        this.encoders = new RollingKmerEncoder[this.kmerSizes.length];
+        this.sketches = new KmerFilterSketch[this.kmerSizes.length];
+        for(int i=0;i<this.kmerSizes.length;i++) {
+            this.encoders[i] = new RollingKmerEncoder(this.kmerSizes[i]);
+            this.sketches[i] = new KmerFilterSketch(sampleName, this.ppConfig.getSketchError());
+        }
+    }
+    
+    private String getSampleName(Path filePath) throws IOException {
+        int fileID = this.fileTable.getSampleID(filePath.toString());
+        if(fileID < 0) {
+            throw new IOException(String.format("Cannot find fileID from path %s", filePath.toString()));
+        }
+        
+        Iterator<String> iterator = this.fileTable.getSamples().iterator();
+        for(int i=0;i<fileID;i++) {
+            iterator.next();
+        }
+        return iterator.next();
+    }
+    
+    @Override
+    protected void map(LongWritable key, ReadBatch value, Context context) throws IOException, InterruptedException {
+        byte[] sequences = value.getSequenceBytes();
+        for(int i=0;i<value.size();i++) {
+            int start = value.getSequenceStart(i);
+            int length = this.qualityMasker.apply(value, i);
+            int end = start + length;
+            
+            for(int j=0;j<this.encoders.length;j++) {
+                RollingKmerEncoder encoder = this.encoders[j];
+                KmerFilterSketch sketch = this.sketches[j];
+                
+                encoder.reset();
+                for(int k=start + value.getKmerSkip(i, encoder.getKmerSize());k<end;k++) {
+                    if(encoder.push(sequences[k])) {
+                        sketch.add(encoder.getCanonicalHigh(), encoder.getCanonicalLow());
+                    }
+                }
+            }
+        }
+    }
+    
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        int taskID = context.getTaskAttemptID().getTaskID().getId();
+        
+        for(int i=0;i<this.kmerSizes.length;i++) {
+            String kmerFilterPath = this.ppConfig.getKmerSizeConfig(this.kmerSizes[i]).getKmerFilterPath();
+            String sketchFileName = KmerFilterHelper.makeKmerFilterSketchFileName(this.fileTable.getName(), taskID);
+            
+            Path sketchOutputFile = new Path(kmerFilterPath, sketchFileName);
+            FileSystem outputFileSystem = sketchOutputFile.getFileSystem(context.getConfiguration());
+            
+            this.sketches[i].saveTo(outputFileSystem, sketchOutputFile);
+        }
+    }
+}
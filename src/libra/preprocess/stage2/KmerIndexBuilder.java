@@ -15,23 +15,38 @@
  */
 package libra.preprocess.stage2;
 
+import libra.preprocess.common.helpers.KmerIndexBucketHelper;
 import libra.preprocess.common.helpers.KmerIndexHelper;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
-import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import java.util.List;
+import libra.common.hadoop.io.datatypes.KmerKeyType;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
+import libra.common.hadoop.io.datatypes.SuperKmerWritable;
 import libra.common.helpers.FileSystemHelper;
 import libra.common.report.Report;
-import libra.common.hadoop.io.format.sequence.SequenceFileInputFormat;
+import libra.common.hadoop.io.format.sequence.SequenceFileBatchInputFormat;
 import libra.common.helpers.MapReduceHelper;
+import libra.common.sequence.RollingKmerEncoder;
+import libra.common.sequence.SuperKmerSplitter;
 import libra.preprocess.common.FilterAlgorithm;
 import libra.preprocess.common.PreprocessorConfigException;
 import libra.preprocess.common.PreprocessorRoundConfig;
 import libra.preprocess.common.filetable.FileTable;
+import libra.preprocess.common.helpers.KmerCountRunHelper;
 import libra.preprocess.common.helpers.KmerFilterHelper;
+import libra.preprocess.common.helpers.KmerHistogramHelper;
 import libra.preprocess.common.helpers.KmerStatisticsHelper;
+import libra.preprocess.common.kmercount.KmerCountMapOutputCollector;
+import libra.preprocess.common.kmercount.KmerCountRunInputFormat;
+import libra.preprocess.common.kmerfilter.KmerFilter;
 import libra.preprocess.common.kmerfilter.KmerFilterTable;
+import libra.preprocess.common.kmerhistogram.KmerHistogram;
+import libra.preprocess.common.kmerhistogram.KmerHistogramTable;
+import libra.preprocess.common.kmerindex.KmerIndexBlockFile;
+import libra.preprocess.common.kmerindex.KmerIndexBlockOutputFormat;
+import libra.preprocess.common.kmerindex.KmerIndexFormat;
 import libra.preprocess.common.kmerindex.KmerIndexTable;
 import libra.preprocess.common.kmerindex.KmerIndexTableRecord;
 import libra.preprocess.common.kmerstatistics.KmerStatistics;
@@ -44,10 +59,15 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 
 /**
  *
@@ -70,8 +90,84 @@ public class KmerIndexBuilder {
             throw new PreprocessorConfigException("cannot find input sample path");
         }
         
-        if(ppConfig.getKmerSize() <= 0) {
-            throw new PreprocessorConfigException("invalid kmer size");
+        for(int kmerSize : ppConfig.getAllKmerSizes()) {
+            if(kmerSize <= 0) {
+                throw new PreprocessorConfigException("invalid kmer size");
+            }
+
+            if(kmerSize > ppConfig.getKeyType().getMaxKmerSize()) {
+                throw new PreprocessorConfigException("kmer size is too large for key type " + ppConfig.getKeyType().name());
+            }
+        }
+        
+        if(ppConfig.isSuperKmerMode()) {
+            if(ppConfig.isMultiKmerMode()) {
+                throw new PreprocessorConfigException("super-k-mer mode takes a single kmer size");
+            }
+            
+            if(ppConfig.getKmerSize() > RollingKmerEncoder.MAX_KMER_SIZE) {
+                throw new PreprocessorConfigException("kmer size is too large for super-k-mer mode");
+            }
+            
+            if(ppConfig.getMinimizerSize() > SuperKmerSplitter.MAX_MINIMIZER_SIZE ||
+                    ppConfig.getMinimizerSize() >= ppConfig.getKmerSize()) {
+                throw new PreprocessorConfigException("invalid minimizer size");
+            }
+        }
+        
+        if(ppConfig.getSingletonFilterSize() > 0) {
+            if(ppConfig.getFilterAlgorithm() != FilterAlgorithm.NOTUNIQUE) {
+                throw new PreprocessorConfigException("singleton filter requires NOTUNIQUE filter algorithm");
+            }
+            
+            if(ppConfig.isSuperKmerMode()) {
+                throw new PreprocessorConfigException("singleton filter is not supported in super-k-mer mode");
+            }
+        }
+        
+        if(ppConfig.isTotalOrder()) {
+            if(ppConfig.isSuperKmerMode()) {
+                throw new PreprocessorConfigException("total order partitioning is not supported in super-k-mer mode");
+            }
+            
+            for(int kmerSize : ppConfig.getAllKmerSizes()) {
+                if(ppConfig.getRangeBoundaries(kmerSize) == null) {
+                    throw new PreprocessorConfigException("cannot find range boundaries of kmer size " + kmerSize);
+                }
+            }
+        }
+        
+        if(ppConfig.isOnePass()) {
+            if(ppConfig.getFilterAlgorithm() != FilterAlgorithm.STDDEV &&
+                    ppConfig.getFilterAlgorithm() != FilterAlgorithm.STDDEV2) {
+                throw new PreprocessorConfigException("one-pass mode requires STDDEV or STDDEV2 filter algorithm");
+            }
+        }
+        
+        if(ppConfig.isSortedRuns()) {
+            if(ppConfig.isSuperKmerMode()) {
+                throw new PreprocessorConfigException("sorted runs are not supported in super-k-mer mode");
+            }
+            
+            if(ppConfig.getSingletonFilterSize() > 0) {
+                throw new PreprocessorConfigException("singleton filter is not supported with sorted runs");
+            }
+            
+            for(int kmerSize : ppConfig.getAllKmerSizes()) {
+                if(kmerSize > RollingKmerEncoder.MAX_KMER_SIZE) {
+                    throw new PreprocessorConfigException("kmer size is too large for sorted runs");
+                }
+            }
+        }
+        
+        if(ppConfig.isCountInput()) {
+            if(ppConfig.isSuperKmerMode()) {
+                throw new PreprocessorConfigException("k-mer count input is not supported in super-k-mer mode");
+            }
+            
+            if(ppConfig.getSingletonFilterSize() > 0) {
+                throw new PreprocessorConfigException("singleton filter is not supported with k-mer count input");
+            }
         }
         
         if(ppConfig.getKmerIndexPath() == null) {
@@ -83,6 +179,10 @@ public class KmerIndexBuilder {
         // check config
         validatePreprocessorConfig(ppConfig);
         
+        if(ppConfig.isSortedRuns()) {
+            return runSortedRunJobs(conf, ppConfig);
+        }
+        
         Job job = Job.getInstance(conf, "Libra - Building Kmer Index");
         conf = job.getConfiguration();
 
@@ -93,27 +193,56 @@ public class KmerIndexBuilder {
         
         job.setJarByClass(KmerIndexBuilder.class);
         
-        // Mapper
-        job.setMapperClass(KmerIndexBuilderMapper.class);
-        job.setInputFormatClass(SequenceFileInputFormat.class);
-        job.setMapOutputKeyClass(CompressedSequenceWritable.class);
-        job.setMapOutputValueClass(IntArrayWritable.class);
+        if(ppConfig.isCountInput()) {
+            job.setInputFormatClass(TextInputFormat.class);
+        } else {
+            job.setInputFormatClass(SequenceFileBatchInputFormat.class);
+        }
         
         //TEST
-        //SequenceFileInputFormat.setMaxInputSplitSize(job, 1024*1024);
+        //SequenceFileBatchInputFormat.setMaxInputSplitSize(job, 1024*1024);
         
-        // Combiner
-        job.setCombinerClass(KmerIndexBuilderCombiner.class);
+        if(ppConfig.isSuperKmerMode()) {
+            // shuffle super-k-mers grouped by minimizer
+            LOG.info("Super-k-mer mode - minimizer size : " + ppConfig.getMinimizerSize());
+            
+            // Mapper
+            job.setMapperClass(KmerIndexBuilderSuperKmerMapper.class);
+            job.setMapOutputKeyClass(LongWritable.class);
+            job.setMapOutputValueClass(SuperKmerWritable.class);
+            
+            // Partitioner
+            job.setPartitionerClass(KmerIndexBuilderSuperKmerPartitioner.class);
+            
+            // Reducer
+            job.setReducerClass(KmerIndexBuilderSuperKmerReducer.class);
+        } else {
+            // Mapper
+            if(ppConfig.isCountInput()) {
+                job.setMapperClass(KmerIndexBuilderCountMapper.class);
+            } else {
+                job.setMapperClass(KmerIndexBuilderMapper.class);
+            }
+            job.setMapOutputKeyClass(ppConfig.getKeyType().getKeyClass());
+            job.setMapOutputValueClass(SampleFrequencyArrayWritable.class);
+            
+            // Combiner
+            job.setCombinerClass(KmerIndexBuilderCombiner.class);
 
-        // Partitioner
-        job.setPartitionerClass(KmerIndexBuilderPartitioner.class);
+            // Partitioner
+            job.setPartitionerClass(KmerIndexBuilderPartitioner.class);
+            
+            if(ppConfig.isRadixSort()) {
+                KmerCountMapOutputCollector.setCollector(conf);
+            }
 
-        // Reducer
-        job.setReducerClass(KmerIndexBuilderReducer.class);
+            // Reducer
+            job.setReducerClass(KmerIndexBuilderReducer.class);
+        }
         
         // Specify key / value
-        job.setOutputKeyClass(CompressedSequenceWritable.class);
-        job.setOutputValueClass(IntArrayWritable.class);
+        job.setOutputKeyClass(ppConfig.getKeyType().getKeyClass());
+        job.setOutputValueClass(SampleFrequencyArrayWritable.class);
         
         // Inputs
         Path[] inputFiles = FileSystemHelper.makePathFromString(conf, ppConfig.getFileTable().getSamples());
@@ -125,47 +254,143 @@ public class KmerIndexBuilder {
         }
         
         // filter
-        if(ppConfig.getFilterAlgorithm() != FilterAlgorithm.NONE &&
-                ppConfig.getFilterAlgorithm() != FilterAlgorithm.NOTUNIQUE) {
-            // read filter
-            String filterTableFileName = KmerFilterHelper.makeKmerFilterTableFileName(ppConfig.getFileTable().getName());
-            Path filterTablePath = new Path(ppConfig.getKmerFilterPath(), filterTableFileName);
-            
-            FileSystem fs = filterTablePath.getFileSystem(conf);
-            KmerFilterTable filterTable = KmerFilterTable.createInstance(fs, filterTablePath);
-            
-            filterTable.saveTo(conf);
-        }
+        saveFilterTable(ppConfig, conf);
         
         // output
         String tempKmerIndexPath = ppConfig.getKmerIndexPath() + "_temp";
         FileOutputFormat.setOutputPath(job, new Path(tempKmerIndexPath));
-        job.setOutputFormatClass(MapFileOutputFormat.class);
+        if(getIndexFormat(ppConfig) == KmerIndexFormat.BLOCKED) {
+            job.setOutputFormatClass(KmerIndexBlockOutputFormat.class);
+        } else {
+            job.setOutputFormatClass(MapFileOutputFormat.class);
+        }
 
         // reducers
-        int reducers = conf.getInt("mapred.reduce.tasks", 1);
-        if(ppConfig.getTaskNum() > 0) {
-            reducers = ppConfig.getTaskNum();
-        }
+        int reducers = getPartitions(conf, ppConfig);
         
-        job.setNumReduceTasks(reducers);
-        LOG.info("# of Reducers : " + reducers);
+        // a separate block of partitions per kmer size
+        int kmerSizes = ppConfig.getAllKmerSizes().length;
+        job.setNumReduceTasks(reducers * kmerSizes);
+        LOG.info("# of Reducers : " + reducers * kmerSizes);
         
         // Execute job and return status
         boolean result = job.waitForCompletion(true);
         
         // commit results
         if(result) {
-            commit(ppConfig.getFileTable(), new Path(tempKmerIndexPath), new Path(ppConfig.getKmerIndexPath()), conf);
+            commitIndex(ppConfig, new Path(tempKmerIndexPath), reducers, conf);
+        }
+        
+        report.addJob(job);
+        
+        // report
+        if(ppConfig.getReportPath() != null && !ppConfig.getReportPath().isEmpty()) {
+            report.writeTo(ppConfig.getReportPath());
+        }
+        
+        return result ? 0 : 1;
+    }
+    
+    /**
+     * Build the index without a shuffle. Map tasks write sorted count runs of
+     * their splits, then a map task per partition merges its section of
+     * every run.
+     */
+    private int runSortedRunJobs(Configuration conf, PreprocessorRoundConfig ppConfig) throws Exception {
+        Report report = new Report();
+        
+        int partitions = getPartitions(conf, ppConfig);
+        int kmerSizes = ppConfig.getAllKmerSizes().length;
+        Path runDirPath = new Path(KmerCountRunHelper.makeKmerCountRunDirPath(ppConfig.getKmerIndexPath()));
+        
+        Job runJob = Job.getInstance(conf, "Libra - Counting Kmer Runs");
+        Configuration runConf = runJob.getConfiguration();
+        
+        // set user configuration
+        ppConfig.saveTo(runConf);
+        KmerCountRunInputFormat.setPartitions(runConf, partitions);
+        
+        runJob.setJarByClass(KmerIndexBuilder.class);
+        
+        // Mapper
+        if(ppConfig.isCountInput()) {
+            runJob.setInputFormatClass(TextInputFormat.class);
+            runJob.setMapperClass(KmerIndexBuilderCountMapper.class);
+        } else {
+            runJob.setInputFormatClass(SequenceFileBatchInputFormat.class);
+            runJob.setMapperClass(KmerIndexBuilderRunMapper.class);
+        }
+        runJob.setMapOutputKeyClass(NullWritable.class);
+        runJob.setMapOutputValueClass(NullWritable.class);
+        
+        // Specify key / value
+        runJob.setOutputKeyClass(NullWritable.class);
+        runJob.setOutputValueClass(NullWritable.class);
+        
+        // Inputs
+        Path[] inputFiles = FileSystemHelper.makePathFromString(runConf, ppConfig.getFileTable().getSamples());
+        FileInputFormat.addInputPaths(runJob, FileSystemHelper.makeCommaSeparated(inputFiles));
+        
+        LOG.info("Input sample files : " + inputFiles.length);
+        for(Path inputFile : inputFiles) {
+            LOG.info("> " + inputFile.toString());
+        }
+        
+        // runs are written by mappers
+        FileOutputFormat.setOutputPath(runJob, runDirPath);
+        LazyOutputFormat.setOutputFormatClass(runJob, SequenceFileOutputFormat.class);
+        runJob.setNumReduceTasks(0);
+        
+        boolean result = runJob.waitForCompletion(true);
+        report.addJob(runJob);
+        
+        if(result) {
+            Job mergeJob = Job.getInstance(conf, "Libra - Merging Kmer Runs");
+            Configuration mergeConf = mergeJob.getConfiguration();
             
-            // create index of index
-            createIndexTable(new Path(ppConfig.getKmerIndexPath()), ppConfig.getFileTable(), conf);
+            // set user configuration
+            ppConfig.saveTo(mergeConf);
+            KmerCountRunInputFormat.setPartitions(mergeConf, partitions);
             
-            // create statistics of index
-            createStatistics(new Path(ppConfig.getKmerStatisticsPath()), ppConfig.getFileTable(), conf);
+            mergeJob.setJarByClass(KmerIndexBuilder.class);
+            
+            // Mapper
+            mergeJob.setInputFormatClass(KmerCountRunInputFormat.class);
+            mergeJob.setMapperClass(KmerIndexBuilderRunMergeMapper.class);
+            mergeJob.setMapOutputKeyClass(ppConfig.getKeyType().getKeyClass());
+            mergeJob.setMapOutputValueClass(SampleFrequencyArrayWritable.class);
+            
+            // Specify key / value
+            mergeJob.setOutputKeyClass(ppConfig.getKeyType().getKeyClass());
+            mergeJob.setOutputValueClass(SampleFrequencyArrayWritable.class);
+            
+            // filter
+            saveFilterTable(ppConfig, mergeConf);
+            
+            // partitions are written by mappers as reducers of a shuffled build would
+            String tempKmerIndexPath = ppConfig.getKmerIndexPath() + "_temp";
+            FileOutputFormat.setOutputPath(mergeJob, new Path(tempKmerIndexPath));
+            if(getIndexFormat(ppConfig) == KmerIndexFormat.BLOCKED) {
+                LazyOutputFormat.setOutputFormatClass(mergeJob, KmerIndexBlockOutputFormat.class);
+            } else {
+                LazyOutputFormat.setOutputFormatClass(mergeJob, MapFileOutputFormat.class);
+            }
+            mergeJob.setNumReduceTasks(0);
+            LOG.info("# of Partitions : " + partitions * kmerSizes);
+            
+            result = mergeJob.waitForCompletion(true);
+            
+            // commit results
+            if(result) {
+                commitIndex(ppConfig, new Path(tempKmerIndexPath), partitions, mergeConf);
+            }
+            
+            report.addJob(mergeJob);
         }
         
-        report.addJob(job);
+        // delete runs
+        FileSystem fs = runDirPath.getFileSystem(conf);
+        fs.delete(runDirPath, true);
         
         // report
         if(ppConfig.getReportPath() != null && !ppConfig.getReportPath().isEmpty()) {
@@ -175,10 +400,103 @@ public class KmerIndexBuilder {
         return result ? 0 : 1;
     }
     
-    private void commit(FileTable fileTable, Path MROutputPath, Path finalOutputPath, Configuration conf) throws IOException {
+    private void saveFilterTable(PreprocessorRoundConfig ppConfig, Configuration conf) throws IOException {
+        if(ppConfig.getFilterAlgorithm() != FilterAlgorithm.NONE &&
+                ppConfig.getFilterAlgorithm() != FilterAlgorithm.NOTUNIQUE &&
+                !ppConfig.isMultiKmerMode() &&
+                !ppConfig.isOnePass()) {
+            // in multi-k mode, reducers read the filter table of their kmer size
+            // read filter
+            String filterTableFileName = KmerFilterHelper.makeKmerFilterTableFileName(ppConfig.getFileTable().getName());
+            Path filterTablePath = new Path(ppConfig.getKmerFilterPath(), filterTableFileName);
+            
+            FileSystem fs = filterTablePath.getFileSystem(conf);
+            KmerFilterTable filterTable = KmerFilterTable.createInstance(fs, filterTablePath);
+            
+            filterTable.saveTo(conf);
+        }
+    }
+    
+    /**
+     * Return the format of index data files. K-mers too long to be packed
+     * are written as MapFiles.
+     */
+    static KmerIndexFormat getIndexFormat(PreprocessorRoundConfig ppConfig) {
+        if(ppConfig.getIndexFormat() != KmerIndexFormat.BLOCKED) {
+            return KmerIndexFormat.MAPFILE;
+        }
+        
+        for(int kmerSize : ppConfig.getAllKmerSizes()) {
+            if(kmerSize > KmerIndexBlockFile.MAX_KMER_SIZE) {
+                return KmerIndexFormat.MAPFILE;
+            }
+        }
+        return KmerIndexFormat.BLOCKED;
+    }
+    
+    /**
+     * Return the number of index partitions per kmer size
+     */
+    private int getPartitions(Configuration conf, PreprocessorRoundConfig ppConfig) throws PreprocessorConfigException {
+        int reducers = conf.getInt("mapred.reduce.tasks", 1);
+        if(ppConfig.getTaskNum() > 0) {
+            reducers = ppConfig.getTaskNum();
+        }
+        
+        if(ppConfig.isTotalOrder()) {
+            // one partition per range
+            reducers = ppConfig.getRangeBoundaries(ppConfig.getAllKmerSizes()[0]).size() + 1;
+            for(int kmerSize : ppConfig.getAllKmerSizes()) {
+                if(ppConfig.getRangeBoundaries(kmerSize).size() + 1 != reducers) {
+                    throw new PreprocessorConfigException("kmer sizes have different number of ranges");
+                }
+            }
+        }
+        return reducers;
+    }
+    
+    private void commitIndex(PreprocessorRoundConfig ppConfig, Path MROutputPath, int reducers, Configuration conf) throws IOException {
+        commit(ppConfig, MROutputPath, reducers * ppConfig.getAllKmerSizes().length, conf);
+        
+        for(int kmerSize : ppConfig.getAllKmerSizes()) {
+            PreprocessorRoundConfig kmerSizeConfig = ppConfig.getKmerSizeConfig(kmerSize);
+            
+            // frequency histograms of k-mers in the index
+            KmerHistogramTable histogramTable = createHistogram(new Path(kmerSizeConfig.getKmerStatisticsPath()), kmerSizeConfig.getFileTable(), conf);
+            
+            int[] frequencyMin = null;
+            int[] frequencyMax = null;
+            if(kmerSizeConfig.isOnePass()) {
+                // derive the filter and statistics from exact frequency histograms
+                KmerFilterTable filterTable = createFilterTable(new Path(kmerSizeConfig.getKmerFilterPath()), histogramTable, conf);
+                
+                KmerFilter[] filters = filterTable.getFilter().toArray(new KmerFilter[0]);
+                frequencyMin = new int[filters.length];
+                frequencyMax = new int[filters.length];
+                for(int i=0;i<filters.length;i++) {
+                    frequencyMin[i] = KmerIndexBuilderFilter.getAllowedFrequencyMin(kmerSizeConfig.getFilterAlgorithm(), filters[i]);
+                    frequencyMax[i] = KmerIndexBuilderFilter.getAllowedFrequencyMax(kmerSizeConfig.getFilterAlgorithm(), filters[i]);
+                }
+                
+                createStatisticsPart(new Path(kmerSizeConfig.getKmerStatisticsPath()), histogramTable, frequencyMin, frequencyMax, conf);
+            }
+            
+            // create index of index
+            createIndexTable(new Path(kmerSizeConfig.getKmerIndexPath()), kmerSizeConfig.getFileTable(), kmerSizeConfig.getKeyType(), getIndexFormat(ppConfig), kmerSizeConfig.getMinimizerSize(), kmerSizeConfig.isTotalOrder() ? kmerSizeConfig.getRangeBoundaries(kmerSize) : null, reducers, frequencyMin, frequencyMax, conf);
+
+            // create statistics of index
+            createStatistics(new Path(kmerSizeConfig.getKmerStatisticsPath()), kmerSizeConfig.getFileTable(), conf);
+        }
+    }
+    
+    private void commit(PreprocessorRoundConfig ppConfig, Path MROutputPath, int partitions, Configuration conf) throws IOException {
         FileSystem fs = MROutputPath.getFileSystem(conf);
-        if(!fs.exists(finalOutputPath)) {
-            fs.mkdirs(finalOutputPath);
+        int partitionsPerKmerSize = partitions / ppConfig.getAllKmerSizes().length;
+        for(int kmerSize : ppConfig.getAllKmerSizes()) {
+            Path finalOutputPath = new Path(ppConfig.getKmerSizeConfig(kmerSize).getKmerIndexPath());
+            if(!fs.exists(finalOutputPath)) {
+                fs.mkdirs(finalOutputPath);
+            }
         }
         
         FileStatus status = fs.getFileStatus(MROutputPath);
@@ -193,7 +511,9 @@ public class KmerIndexBuilder {
                 } else if(MapReduceHelper.isPartialOutputFiles(entryPath)) {
                     // rename outputs
                     int mapreduceID = MapReduceHelper.getMapReduceID(entryPath);
-                    Path toPath = new Path(finalOutputPath, KmerIndexHelper.makeKmerIndexDataFileName(fileTable.getName(), mapreduceID));
+                    int kmerSize = ppConfig.getKmerSizeOfPartition(mapreduceID, partitions);
+                    Path finalOutputPath = new Path(ppConfig.getKmerSizeConfig(kmerSize).getKmerIndexPath());
+                    Path toPath = new Path(finalOutputPath, KmerIndexHelper.makeKmerIndexDataFileName(ppConfig.getFileTable().getName(), mapreduceID % partitionsPerKmerSize));
 
                     LOG.info(String.format("rename %s ==> %s", entryPath.toString(), toPath.toString()));
                     fs.rename(entryPath, toPath);
@@ -206,7 +526,94 @@ public class KmerIndexBuilder {
         fs.delete(MROutputPath, true);
     }
     
-    private void createIndexTable(Path indexPath, FileTable fileTable, Configuration conf) throws IOException {
+    private KmerHistogramTable createHistogram(Path statisticsPath, FileTable fileTable, Configuration conf) throws IOException {
+        String histogramTableFileName = KmerHistogramHelper.makeKmerHistogramTableFileName(fileTable.getName());
+        Path histogramTableOutputFile = new Path(statisticsPath, histogramTableFileName);
+        
+        LOG.info("Creating a histogram table file : " + histogramTableFileName);
+        
+        KmerHistogram[] histograms = new KmerHistogram[fileTable.samples()];
+        Iterator<String> iterator = fileTable.getSamples().iterator();
+        for(int i=0;i<fileTable.samples();i++) {
+            histograms[i] = new KmerHistogram(iterator.next());
+        }
+        
+        Path[] kmerHistogramTablePartFiles = KmerHistogramHelper.getKmerHistogramPartTableFilePaths(conf, statisticsPath);
+        for(Path histogramTablePartFile : kmerHistogramTablePartFiles) {
+            FileSystem fs = histogramTablePartFile.getFileSystem(conf);
+            KmerHistogramTable table = KmerHistogramTable.createInstance(fs, histogramTablePartFile);
+            int idx = 0;
+            for(KmerHistogram histogram : table.getHistogram()) {
+                histograms[idx].increment(histogram);
+                idx++;
+            }
+        }
+        
+        KmerHistogramTable histogramTable = new KmerHistogramTable(fileTable.getName());
+        for(KmerHistogram histogram : histograms) {
+            histogramTable.addHistogram(histogram);
+        }
+        
+        // save
+        FileSystem outputFileSystem = histogramTableOutputFile.getFileSystem(conf);
+        
+        histogramTable.saveTo(outputFileSystem, histogramTableOutputFile);
+        
+        // delete part files
+        for(Path histogramTablePartFile : kmerHistogramTablePartFiles) {
+            FileSystem fs = histogramTablePartFile.getFileSystem(conf);
+            fs.delete(histogramTablePartFile, true);
+        }
+        
+        return histogramTable;
+    }
+    
+    private KmerFilterTable createFilterTable(Path filterPath, KmerHistogramTable histogramTable, Configuration conf) throws IOException {
+        String filterTableFileName = KmerFilterHelper.makeKmerFilterTableFileName(histogramTable.getName());
+        Path filterTableOutputFile = new Path(filterPath, filterTableFileName);
+        
+        LOG.info("Creating a kmer filter table file : " + filterTableFileName);
+        
+        KmerFilterTable filterTable = new KmerFilterTable();
+        filterTable.setName(histogramTable.getName());
+        
+        for(KmerHistogram histogram : histogramTable.getHistogram()) {
+            KmerFilter filter = new KmerFilter(histogram.getName());
+            filter.setTotalKmers(histogram.getTotalKmers());
+            filter.setUniqueKmers(histogram.getUniqueKmers());
+            filter.setSumOfSquare(histogram.getSumOfSquare());
+            
+            filterTable.addFilter(filter);
+        }
+        
+        // save
+        FileSystem outputFileSystem = filterTableOutputFile.getFileSystem(conf);
+        
+        filterTable.saveTo(outputFileSystem, filterTableOutputFile);
+        return filterTable;
+    }
+    
+    /**
+     * Write a statistics part of k-mers within the frequency bounds, to be
+     * merged by createStatistics as parts written by reducers are
+     */
+    private void createStatisticsPart(Path statisticsPath, KmerHistogramTable histogramTable, int[] frequencyMin, int[] frequencyMax, Configuration conf) throws IOException {
+        KmerStatisticsPartTable table = new KmerStatisticsPartTable(histogramTable.getName());
+        
+        int idx = 0;
+        for(KmerHistogram histogram : histogramTable.getHistogram()) {
+            table.addStatisticsPart(histogram.getStatisticsPart(frequencyMin[idx], frequencyMax[idx]));
+            idx++;
+        }
+        
+        String statisticsPartTableFileName = KmerStatisticsHelper.makeKmerStatisticsPartTableFileName(histogramTable.getName(), 0);
+        Path statisticsPartTableOutputFile = new Path(statisticsPath, statisticsPartTableFileName);
+        FileSystem outputFileSystem = statisticsPartTableOutputFile.getFileSystem(conf);
+        
+        table.saveTo(outputFileSystem, statisticsPartTableOutputFile);
+    }
+    
+    private void createIndexTable(Path indexPath, FileTable fileTable, KmerKeyType keyType, KmerIndexFormat indexFormat, int minimizerSize, List<String> rangeBoundaries, int partitions, int[] frequencyMin, int[] frequencyMax, Configuration conf) throws IOException {
         String kmerIndexTableFileName = KmerIndexHelper.makeKmerIndexTableFileName(fileTable.getName());
         Path kmerIndexTableFilePath = new Path(indexPath, kmerIndexTableFileName);
         
@@ -214,10 +621,28 @@ public class KmerIndexBuilder {
         
         Path[] indexDataFiles = KmerIndexHelper.getKmerIndexDataFilePaths(conf, indexPath);
         KmerIndexTable indexTable = new KmerIndexTable(fileTable.getName());
+        indexTable.setKeyType(keyType);
+        indexTable.setIndexFormat(indexFormat);
+        indexTable.setMinimizerSize(minimizerSize);
+        indexTable.setTotalOrder(rangeBoundaries != null);
+        indexTable.setFrequencyMin(frequencyMin);
+        indexTable.setFrequencyMax(frequencyMax);
+        if(rangeBoundaries == null) {
+            indexTable.setVirtualBuckets(KmerIndexBucketHelper.VIRTUAL_BUCKETS);
+        }
         for(Path indexDataFile : indexDataFiles) {
             if(KmerIndexHelper.isSameKmerIndex(kmerIndexTableFilePath, indexDataFile)) {
                 int partition_id = KmerIndexHelper.getIndexDataID(indexDataFile);
-                indexTable.addRecord(new KmerIndexTableRecord(indexDataFile.getName(), partition_id));
+                KmerIndexTableRecord record = new KmerIndexTableRecord(indexDataFile.getName(), partition_id);
+                if(rangeBoundaries != null) {
+                    // partition i holds k-mers in [boundary i - 1, boundary i)
+                    record.setRangeBegin(partition_id > 0 ? rangeBoundaries.get(partition_id - 1) : null);
+                    record.setRangeEnd(partition_id < rangeBoundaries.size() ? rangeBoundaries.get(partition_id) : null);
+                } else {
+                    record.setBucketBegin(KmerIndexBucketHelper.getBucketBegin(partition_id, partitions));
+                    record.setBucketEnd(KmerIndexBucketHelper.getBucketEnd(partition_id, partitions));
+                }
+                indexTable.addRecord(record);
             }
         }
         
@@ -266,18 +691,7 @@ public class KmerIndexBuilder {
         statisticsTable.setName(fileTable.getName());
         
         for(int j=0;j<fileTable.samples();j++) {
-            double bool_norm_base = Math.sqrt(statisticsWeight[j].getBooleanTFWeight());
-            statistics[j].setBooleanTFCosineNormBase(bool_norm_base);
-            
-            double log_norm_base = Math.sqrt(statisticsWeight[j].getLogTFWeightSquare());
-            statistics[j].setLogTFCosineNormBase(log_norm_base);
-            
-            double natural_norm_base = Math.sqrt(statisticsWeight[j].getNaturalTFWeightSquare());
-            statistics[j].setNaturalTFCosineNormBase(natural_norm_base);
-            
-            statistics[j].setBooleanTFSum(statisticsWeight[j].getBooleanTFWeight());
-            statistics[j].setNaturalTFSum(statisticsWeight[j].getNaturalTFWeight());
-            statistics[j].setLogTFSum(statisticsWeight[j].getLogTFWeight());
+            statistics[j].setTFWeights(statisticsWeight[j]);
             
             statisticsTable.addStatistics(statistics[j]);
         }
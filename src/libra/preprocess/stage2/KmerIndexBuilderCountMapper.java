@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage2;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.filetable.FileTable;
+import libra.preprocess.common.kmercount.KmerCountLineParser;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Reads precomputed k-mer counts instead of counting k-mers from reads.
+ * Records are the same as those of KmerIndexBuilderMapper, or counts are
+ * written to sorted count runs when building with sorted runs.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBuilderCountMapper extends Mapper<LongWritable, Text, AKmerWritable, IntArrayWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBuilderCountMapper.class);
+    
+    private PreprocessorRoundConfig ppConfig;
+    private FileTable fileTable;
+    private int fileID;
+    private KmerCountLineParser parser;
+    private AKmerWritable[] keys;
+    private int[] freqArr;
+    private IntArrayWritable value;
+    private KmerIndexBuilderRunBuffer runBuffer;
+    
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        this.fileTable = this.ppConfig.getFileTable();
+        
+        // all counts of a split come from one sample
+        FileSplit fis = (FileSplit)context.getInputSplit();
+        this.fileID = getFileID(fis.getPath());
+        
+        int[] kmerSizes = this.ppConfig.getAllKmerSizes();
+        this.parser = new KmerCountLineParser(kmerSizes);
+        
+        if(this.ppConfig.isSortedRuns()) {
+            this.runBuffer = new KmerIndexBuilderRunBuffer(this.ppConfig, this.fileID, context);
+            return;
+        }
+        
+        this.keys = new AKmerWritable[kmerSizes.length];
+        for(int i=0;i<kmerSizes.length;i++) {
+            this.keys[i] = this.ppConfig.getKeyType().newKey(kmerSizes[i]);
+        }
+        
+        this.freqArr = new int[2];
+        this.freqArr[0] = this.fileID;
+        this.value = new SampleFrequencyArrayWritable(this.freqArr);
+    }
+    
+    private int getFileID(Path filePath) throws IOException {
+        int fileID = this.fileTable.getSampleID(filePath.toString());
+        if(fileID < 0) {
+            throw new IOException(String.format("Cannot find fileID from path %s", filePath.toString()));
+        }
+        return fileID;
+    }
+    
+    @Override
+    protected void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+        if(!this.parser.parse(value)) {
+            return;
+        }
+        
+        int idx = this.parser.getKmerSizeIndex();
+        if(this.runBuffer != null) {
+            this.runBuffer.add(idx, this.parser.getHigh(), this.parser.getLow(), this.parser.getCount(), context);
+            return;
+        }
+        
+        this.freqArr[1] = this.parser.getCount();
+        if(this.parser.isPacked()) {
+            AKmerWritable outputKey = this.keys[idx];
+            outputKey.set(this.parser.getHigh(), this.parser.getLow(), this.parser.getKmerSize());
+            context.write(outputKey, this.value);
+        } else {
+            context.write(new CompressedSequenceWritable(this.parser.getSequence()), this.value);
+        }
+    }
+    
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if(this.runBuffer != null) {
+            this.runBuffer.flush(context);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage2;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.SampleFrequencyMerger;
+import libra.preprocess.common.FilterAlgorithm;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.filetable.FileTable;
+import libra.preprocess.common.helpers.KmerFilterHelper;
+import libra.preprocess.common.helpers.KmerHistogramHelper;
+import libra.preprocess.common.helpers.KmerStatisticsHelper;
+import libra.preprocess.common.kmerfilter.KmerFilter;
+import libra.preprocess.common.kmerfilter.KmerFilterTable;
+import libra.preprocess.common.kmerhistogram.KmerHistogram;
+import libra.preprocess.common.kmerhistogram.KmerHistogramTable;
+import libra.preprocess.common.kmerstatistics.KmerStatisticsPart;
+import libra.preprocess.common.kmerstatistics.KmerStatisticsPartTable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Applies the frequency filter to the merged per-sample frequencies of a
+ * k-mer and accumulates statistics and per-sample frequency histograms of
+ * the k-mers kept in the index. In one-pass mode all k-mers are kept and
+ * statistics are later computed from the histograms.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBuilderFilter {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBuilderFilter.class);
+
+    private PreprocessorRoundConfig ppConfig;
+    private FileTable fileTable;
+    private int[] allowedFrequencyMin;
+    private int[] allowedFrequencyMax;
+    private KmerStatisticsPart[] statisticsParts;
+    private KmerHistogram[] histograms;
+    
+    public KmerIndexBuilderFilter(PreprocessorRoundConfig ppConfig, int kmerSize, Configuration conf) throws IOException {
+        this.ppConfig = ppConfig.getKmerSizeConfig(kmerSize);
+        this.fileTable = this.ppConfig.getFileTable();
+        
+        int sample_size = this.ppConfig.getFileTable().samples();
+        // filter
+        this.allowedFrequencyMin = new int[sample_size];
+        this.allowedFrequencyMax = new int[sample_size];
+        
+        FilterAlgorithm filterAlgorithm = this.ppConfig.getFilterAlgorithm();
+        
+        switch(filterAlgorithm) {
+            case NONE:
+                {
+                    for(int i=0;i<sample_size;i++) {
+                        this.allowedFrequencyMin[i] = 1;
+                        this.allowedFrequencyMax[i] = Integer.MAX_VALUE;
+                    }
+                }
+                break;
+            case NOTUNIQUE:
+                {
+                    for(int i=0;i<sample_size;i++) {
+                        this.allowedFrequencyMin[i] = 2;
+                        this.allowedFrequencyMax[i] = Integer.MAX_VALUE;
+                    }
+                }
+                break;
+            case STDDEV:
+            case STDDEV2:
+                {
+                    if(this.ppConfig.isOnePass()) {
+                        // keep all k-mers, bounds are applied when the index is read
+                        for(int i=0;i<sample_size;i++) {
+                            this.allowedFrequencyMin[i] = 1;
+                            this.allowedFrequencyMax[i] = Integer.MAX_VALUE;
+                        }
+                        break;
+                    }
+                    
+                    // read filter
+                    KmerFilterTable kmerFilterTable = getKmerFilterTable(ppConfig, conf);
+                    KmerFilter[] filters = kmerFilterTable.getFilter().toArray(new KmerFilter[0]);
+                    
+                    for(int i=0;i<sample_size;i++) {
+                        this.allowedFrequencyMin[i] = getAllowedFrequencyMin(filterAlgorithm, filters[i]);
+                        this.allowedFrequencyMax[i] = getAllowedFrequencyMax(filterAlgorithm, filters[i]);
+                    }
+                }
+                break;
+            default:
+                LOG.info("Unknown filter algorithm specified : " + filterAlgorithm.toString());
+                throw new IOException("Unknown filter algorithm specified : " + filterAlgorithm.toString());
+        }
+        
+        this.histograms = new KmerHistogram[sample_size];
+        if(!this.ppConfig.isOnePass()) {
+            // in one-pass mode, statistics are computed from histograms
+            this.statisticsParts = new KmerStatisticsPart[sample_size];
+        }
+        
+        int idx = 0;
+        for(String sample : this.fileTable.getSamples()) {
+            this.histograms[idx] = new KmerHistogram(sample);
+            if(this.statisticsParts != null) {
+                this.statisticsParts[idx] = new KmerStatisticsPart(sample);
+            }
+            idx++;
+        }
+    }
+    
+    /**
+     * Lowest frequency kept by STDDEV and STDDEV2 filters
+     */
+    public static int getAllowedFrequencyMin(FilterAlgorithm filterAlgorithm, KmerFilter filter) {
+        double mean = filter.getMean();
+        double stddev = getStddevWidth(filterAlgorithm, filter);
+        return (int) Math.max(0, Math.ceil(mean - stddev));
+    }
+    
+    /**
+     * Highest frequency kept by STDDEV and STDDEV2 filters
+     */
+    public static int getAllowedFrequencyMax(FilterAlgorithm filterAlgorithm, KmerFilter filter) {
+        double mean = filter.getMean();
+        double stddev = getStddevWidth(filterAlgorithm, filter);
+        return (int) Math.floor(mean + stddev);
+    }
+    
+    private static double getStddevWidth(FilterAlgorithm filterAlgorithm, KmerFilter filter) {
+        if(filterAlgorithm == FilterAlgorithm.STDDEV2) {
+            return filter.getStddev() * 2;
+        }
+        return filter.getStddev();
+    }
+    
+    private KmerFilterTable getKmerFilterTable(PreprocessorRoundConfig ppConfig, Configuration conf) throws IOException {
+        if(ppConfig.isMultiKmerMode()) {
+            // one filter table per kmer size, read from its output root
+            String filterTableFileName = KmerFilterHelper.makeKmerFilterTableFileName(this.fileTable.getName());
+            Path filterTablePath = new Path(this.ppConfig.getKmerFilterPath(), filterTableFileName);
+            FileSystem fs = filterTablePath.getFileSystem(conf);
+            return KmerFilterTable.createInstance(fs, filterTablePath);
+        }
+        return KmerFilterTable.createInstance(conf);
+    }
+    
+    /**
+     * Filter the merged frequencies of a k-mer and return the remaining
+     * (fid, freq) pairs, or null if no sample is left.
+     */
+    public int[] filter(SampleFrequencyMerger merged) throws IOException {
+        int samples = merged.size();
+        
+        int nonZeroFiles = 0;
+        for(int i=0;i<samples;i++) {
+            if(isAllowed(merged.getSampleID(i), merged.getFrequency(i))) {
+                nonZeroFiles++;
+            }
+        }
+        
+        if(nonZeroFiles == 0) {
+            return null;
+        }
+        
+        int[] outputFreqArr = new int[nonZeroFiles*2];
+        int idx = 0;
+        for(int i=0;i<samples;i++) {
+            int fid = merged.getSampleID(i);
+            int frequency = merged.getFrequency(i);
+            if(isAllowed(fid, frequency)) {
+                outputFreqArr[idx] = fid; // fid
+                outputFreqArr[idx+1] = frequency; // freq
+                idx += 2;
+                
+                // compute base
+                this.histograms[fid].increment(frequency);
+                if(this.statisticsParts != null) {
+                    this.statisticsParts[fid].incrementTFWeights(frequency, 1);
+                }
+            }
+        }
+        
+        return outputFreqArr;
+    }
+    
+    private boolean isAllowed(int fid, int frequency) {
+        return frequency > 0 && frequency >= this.allowedFrequencyMin[fid] && frequency <= this.allowedFrequencyMax[fid];
+    }
+    
+    public void saveStatistics(Configuration conf, int taskID) throws IOException {
+        saveHistograms(conf, taskID);
+        if(this.statisticsParts == null) {
+            return;
+        }
+        
+        KmerStatisticsPartTable table = new KmerStatisticsPartTable(this.fileTable.getName());
+        for(KmerStatisticsPart statisticsPart : this.statisticsParts) {
+            table.addStatisticsPart(statisticsPart);
+        }
+        
+        String statisticsPartTableFileName = KmerStatisticsHelper.makeKmerStatisticsPartTableFileName(this.fileTable.getName(), taskID);
+
+        Path statisticsPartTableOutputFile = new Path(this.ppConfig.getKmerStatisticsPath(), statisticsPartTableFileName);
+        FileSystem outputFileSystem = statisticsPartTableOutputFile.getFileSystem(conf);
+
+        table.saveTo(outputFileSystem, statisticsPartTableOutputFile);
+    }
+    
+    private void saveHistograms(Configuration conf, int taskID) throws IOException {
+        KmerHistogramTable table = new KmerHistogramTable(this.fileTable.getName());
+        for(KmerHistogram histogram : this.histograms) {
+            table.addHistogram(histogram);
+        }
+        
+        String histogramPartTableFileName = KmerHistogramHelper.makeKmerHistogramPartTableFileName(this.fileTable.getName(), taskID);
+
+        Path histogramPartTableOutputFile = new Path(this.ppConfig.getKmerStatisticsPath(), histogramPartTableFileName);
+        FileSystem outputFileSystem = histogramPartTableOutputFile.getFileSystem(conf);
+
+        table.saveTo(outputFileSystem, histogramPartTableOutputFile);
+    }
+}
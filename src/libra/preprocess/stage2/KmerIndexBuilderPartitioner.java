@@ -16,8 +16,13 @@
 package libra.preprocess.stage2;
 
 
-import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import java.io.IOException;
+import java.util.List;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.helpers.KmerIndexBucketHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configurable;
@@ -28,16 +33,60 @@ import org.apache.hadoop.mapreduce.Partitioner;
  *
  * @author iychoi
  */
-public class KmerIndexBuilderPartitioner extends Partitioner<CompressedSequenceWritable, IntArrayWritable> implements Configurable {
+public class KmerIndexBuilderPartitioner extends Partitioner<AKmerWritable, IntArrayWritable> implements Configurable {
 
     private static final Log LOG = LogFactory.getLog(KmerIndexBuilderPartitioner.class);
     
     private Configuration conf;
-    
+    private int[] kmerSizeIndex;
+    private int kmerSizes;
+    // range boundaries per kmer size in total order mode
+    private AKmerWritable[][] boundaries;
     
     @Override
     public void setConf(Configuration conf) {
         this.conf = conf;
+        
+        PreprocessorRoundConfig ppConfig;
+        try {
+            ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot read preprocessor config", ex);
+        }
+        
+        // lookup table from kmer size to its block of partitions
+        int[] sizes = ppConfig.getAllKmerSizes();
+        int maxSize = 0;
+        for(int size : sizes) {
+            maxSize = Math.max(maxSize, size);
+        }
+        
+        this.kmerSizes = sizes.length;
+        this.kmerSizeIndex = new int[maxSize + 1];
+        for(int i=0;i<sizes.length;i++) {
+            this.kmerSizeIndex[sizes[i]] = i;
+        }
+        
+        if(ppConfig.isTotalOrder()) {
+            this.boundaries = new AKmerWritable[sizes.length][];
+            for(int i=0;i<sizes.length;i++) {
+                List<String> boundaryList = ppConfig.getRangeBoundaries(sizes[i]);
+                if(boundaryList == null) {
+                    throw new IllegalStateException("No range boundaries for kmer size " + sizes[i]);
+                }
+                
+                this.boundaries[i] = new AKmerWritable[boundaryList.size()];
+                for(int j=0;j<boundaryList.size();j++) {
+                    try {
+                        AKmerWritable boundary = ppConfig.getKeyType().newKey(sizes[i]);
+                        boundary.set(new CompressedSequenceWritable(boundaryList.get(j)));
+                        this.boundaries[i][j] = boundary;
+                    } catch (IOException ex) {
+                        throw new IllegalStateException("Invalid range boundary " + boundaryList.get(j), ex);
+                    }
+                }
+            }
+        }
     }
 
     @Override
@@ -46,7 +95,36 @@ public class KmerIndexBuilderPartitioner extends Partitioner<CompressedSequenceW
     }
     
     @Override
-    public int getPartition(CompressedSequenceWritable key, IntArrayWritable value, int numReduceTasks) {
-        return (key.hashCode() & Integer.MAX_VALUE) % numReduceTasks;
+    public int getPartition(AKmerWritable key, IntArrayWritable value, int numReduceTasks) {
+        if(this.boundaries != null) {
+            int partitionsPerKmerSize = numReduceTasks / this.kmerSizes;
+            int block = this.kmerSizeIndex[key.getSequenceLength()];
+            return block * partitionsPerKmerSize + findRange(this.boundaries[block], key);
+        }
+        
+        // partitions hold contiguous ranges of virtual buckets
+        int bucket = KmerIndexBucketHelper.getBucket(key.hashCode());
+        if(this.kmerSizes <= 1) {
+            return KmerIndexBucketHelper.getPartition(bucket, numReduceTasks);
+        }
+        
+        int partitionsPerKmerSize = numReduceTasks / this.kmerSizes;
+        int block = this.kmerSizeIndex[key.getSequenceLength()];
+        return block * partitionsPerKmerSize + KmerIndexBucketHelper.getPartition(bucket, partitionsPerKmerSize);
+    }
+    
+    private static int findRange(AKmerWritable[] boundaries, AKmerWritable key) {
+        // number of boundaries less than or equal to the key
+        int low = 0;
+        int high = boundaries.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(boundaries[mid].compareTo(key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
     }
 }
@@ -16,38 +16,29 @@
 package libra.preprocess.stage2;
 
 import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
 import libra.common.hadoop.io.datatypes.IntArrayWritable;
-import libra.common.hadoop.io.datatypes.CompressedSequenceWritable;
-import libra.distancematrix.common.Weight;
-import libra.distancematrix.common.WeightAlgorithm;
-import libra.preprocess.common.FilterAlgorithm;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyMerger;
 import libra.preprocess.common.PreprocessorRoundConfig;
 import libra.preprocess.common.filetable.FileTable;
-import libra.preprocess.common.helpers.KmerStatisticsHelper;
-import libra.preprocess.common.kmerfilter.KmerFilter;
-import libra.preprocess.common.kmerfilter.KmerFilterTable;
-import libra.preprocess.common.kmerstatistics.KmerStatisticsPart;
-import libra.preprocess.common.kmerstatistics.KmerStatisticsPartTable;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Reducer;
 
 /**
  *
  * @author iychoi
  */
-public class KmerIndexBuilderReducer extends Reducer<CompressedSequenceWritable, IntArrayWritable, CompressedSequenceWritable, IntArrayWritable> {
+public class KmerIndexBuilderReducer extends Reducer<AKmerWritable, IntArrayWritable, AKmerWritable, IntArrayWritable> {
     
     private static final Log LOG = LogFactory.getLog(KmerIndexBuilderReducer.class);
 
     private PreprocessorRoundConfig ppConfig;
     private FileTable fileTable;
-    private int[] allowedFrequencyMin;
-    private int[] allowedFrequencyMax;
-    private KmerStatisticsPart[] statisticsParts;
+    private KmerIndexBuilderFilter filter;
+    private SampleFrequencyMerger merger;
     
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
@@ -56,141 +47,23 @@ public class KmerIndexBuilderReducer extends Reducer<CompressedSequenceWritable,
         this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
         this.fileTable = this.ppConfig.getFileTable();
         
-        int sample_size = this.ppConfig.getFileTable().samples();
-        // filter
-        this.allowedFrequencyMin = new int[sample_size];
-        this.allowedFrequencyMax = new int[sample_size];
-        
-        FilterAlgorithm filterAlgorithm = this.ppConfig.getFilterAlgorithm();
-        
-        switch(filterAlgorithm) {
-            case NONE:
-                {
-                    for(int i=0;i<sample_size;i++) {
-                        this.allowedFrequencyMin[i] = 1;
-                        this.allowedFrequencyMax[i] = Integer.MAX_VALUE;
-                    }
-                }
-                break;
-            case NOTUNIQUE:
-                {
-                    for(int i=0;i<sample_size;i++) {
-                        this.allowedFrequencyMin[i] = 2;
-                        this.allowedFrequencyMax[i] = Integer.MAX_VALUE;
-                    }
-                }
-                break;
-            case STDDEV:
-                {
-                    // read filter
-                    KmerFilterTable kmerFilterTable = KmerFilterTable.createInstance(conf);
-                    KmerFilter[] filters = kmerFilterTable.getFilter().toArray(new KmerFilter[0]);
-                    
-                    for(int i=0;i<sample_size;i++) {
-                        double mean = filters[i].getMean();
-                        double stddev = filters[i].getStddev();
-                        this.allowedFrequencyMin[i] = (int) Math.max(0, Math.ceil(mean - stddev));
-                        this.allowedFrequencyMax[i] = (int) Math.floor(mean + stddev);
-                    }
-                }
-                break;
-            case STDDEV2:
-                {
-                    // read filter
-                    KmerFilterTable kmerFilterTable = KmerFilterTable.createInstance(conf);
-                    KmerFilter[] filters = kmerFilterTable.getFilter().toArray(new KmerFilter[0]);
-                    
-                    for(int i=0;i<sample_size;i++) {
-                        double mean = filters[i].getMean();
-                        double stddev = filters[i].getStddev() * 2;
-                        this.allowedFrequencyMin[i] = (int) Math.max(0, Math.ceil(mean - stddev));
-                        this.allowedFrequencyMax[i] = (int) Math.floor(mean + stddev);
-                    }
-                }
-                break;
-            default:
-                LOG.info("Unknown filter algorithm specified : " + filterAlgorithm.toString());
-                throw new IOException("Unknown filter algorithm specified : " + filterAlgorithm.toString());
-        }
-        
-        this.statisticsParts = new KmerStatisticsPart[sample_size];
-        
-        int idx = 0;
-        for(String sample : this.fileTable.getSamples()) {
-            this.statisticsParts[idx] = new KmerStatisticsPart(sample);
-            idx++;
-        }
+        int taskID = context.getTaskAttemptID().getTaskID().getId();
+        int kmerSize = this.ppConfig.getKmerSizeOfPartition(taskID, context.getNumReduceTasks());
+        this.filter = new KmerIndexBuilderFilter(this.ppConfig, kmerSize, conf);
+        this.merger = new SampleFrequencyMerger();
     }
     
     @Override
-    protected void reduce(CompressedSequenceWritable key, Iterable<IntArrayWritable> values, Context context) throws IOException, InterruptedException {
-        int[] freqTable = new int[this.fileTable.samples()];
-        for(int i=0;i<freqTable.length;i++) {
-            freqTable[i] = 0;
-        }
-        
+    protected void reduce(AKmerWritable key, Iterable<IntArrayWritable> values, Context context) throws IOException, InterruptedException {
+        this.merger.clear();
         for(IntArrayWritable value : values) {
-            int[] v_arr = value.get();
-            
-            if(v_arr.length % 2 != 0) {
-                throw new IOException("Input record is not valid");
-            }
-            
-            for(int j=0;j<v_arr.length/2;j++) {
-                int fid = v_arr[j*2];
-                int freq = v_arr[j*2 + 1];
-                
-                freqTable[fid] += freq;
-            }
-        }
-        
-        // filter
-        for(int i=0;i<freqTable.length;i++) {
-            if(freqTable[i] < this.allowedFrequencyMin[i]) {
-                // out of min boundary
-                freqTable[i] = 0;
-            } else if(freqTable[i] > this.allowedFrequencyMax[i]) {
-                // out of max boundary
-                freqTable[i] = 0;
-            }
+            this.merger.add(value.get());
         }
+        this.merger.merge();
         
-        int nonZeroFiles = 0;
-        for(int i=0;i<freqTable.length;i++) {
-            if(freqTable[i] > 0) {
-                nonZeroFiles++;
-            }
-        }
-        
-        int[] outputFreqArr = new int[nonZeroFiles*2];
-        int idx = 0;
-        for(int i=0;i<freqTable.length;i++) {
-            if(freqTable[i] > 0) {
-                outputFreqArr[idx] = i; // fid
-                outputFreqArr[idx+1] = freqTable[i]; // freq
-                idx += 2;
-            }
-        }
-
-        // compute base
-        for(int i=0;i<freqTable.length;i++) {
-            int frequency = freqTable[i];
-            if(frequency > 0) {
-                double logTFWeight = Weight.getTFWeight(WeightAlgorithm.LOGARITHM, frequency);
-                double naturalTFWeight = Weight.getTFWeight(WeightAlgorithm.NATURAL, frequency);
-                double booleanTFWeight = Weight.getTFWeight(WeightAlgorithm.BOOLEAN, frequency);
-                
-                this.statisticsParts[i].incrementLogTFWeightSquare(Math.pow(logTFWeight, 2));
-                this.statisticsParts[i].incrementLogTFWeight(logTFWeight);
-                this.statisticsParts[i].incrementNaturalTFWeightSquare(Math.pow(naturalTFWeight, 2));
-                this.statisticsParts[i].incrementNaturalTFWeight(naturalTFWeight);
-                this.statisticsParts[i].incrementBooleanTFWeight(booleanTFWeight);
-            }
-        }
-        
-        //LOG.info("Non-zero files : " + nonZeroFiles);
-        if(nonZeroFiles > 0) {
-            context.write(key, new IntArrayWritable(outputFreqArr));
+        int[] outputFreqArr = this.filter.filter(this.merger);
+        if(outputFreqArr != null) {
+            context.write(key, new SampleFrequencyArrayWritable(outputFreqArr));
         }
     }
     
@@ -198,16 +71,6 @@ public class KmerIndexBuilderReducer extends Reducer<CompressedSequenceWritable,
     protected void cleanup(Context context) throws IOException, InterruptedException {
         int taskID = context.getTaskAttemptID().getTaskID().getId();
         
-        KmerStatisticsPartTable table = new KmerStatisticsPartTable(this.fileTable.getName());
-        for(KmerStatisticsPart statisticsPart : this.statisticsParts) {
-            table.addStatisticsPart(statisticsPart);
-        }
-        
-        String statisticsPartTableFileName = KmerStatisticsHelper.makeKmerStatisticsPartTableFileName(this.fileTable.getName(), taskID);
-
-        Path statisticsPartTableOutputFile = new Path(this.ppConfig.getKmerStatisticsPath(), statisticsPartTableFileName);
-        FileSystem outputFileSystem = statisticsPartTableOutputFile.getFileSystem(context.getConfiguration());
-
-        table.saveTo(outputFileSystem, statisticsPartTableOutputFile);
+        this.filter.saveStatistics(context.getConfiguration(), taskID);
     }
 }
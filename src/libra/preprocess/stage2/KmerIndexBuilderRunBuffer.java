@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage2;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.preprocess.common.PreprocessorConfig;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.helpers.KmerCountRunHelper;
+import libra.preprocess.common.kmercount.KmerCountRun;
+import libra.preprocess.common.kmercount.KmerCountRunInputFormat;
+import libra.preprocess.common.kmercount.KmerCountTable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+/**
+ * Counts k-mers of a map task in a KmerCountTable per kmer size and writes
+ * a table as a sorted count run whenever it fills up. Runs are sectioned by
+ * the index partitions of KmerIndexBuilderPartitioner.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBuilderRunBuffer {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBuilderRunBuffer.class);
+    
+    private String name;
+    private int[] kmerSizes;
+    private KmerCountTable[] countTables;
+    private AKmerWritable[] keys;
+    private int[] runIDs;
+    private int sampleID;
+    private KmerIndexBuilderPartitioner partitioner;
+    private int partitions;
+    private int[] partitionIDs;
+    private Path runDirPath;
+    private int taskID;
+    
+    /**
+     * All k-mers of a map task come from the given sample
+     */
+    public KmerIndexBuilderRunBuffer(PreprocessorRoundConfig ppConfig, int sampleID, TaskInputOutputContext<?, ?, ?, ?> context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        this.name = ppConfig.getFileTable().getName();
+        this.sampleID = sampleID;
+        
+        this.partitioner = new KmerIndexBuilderPartitioner();
+        this.partitioner.setConf(conf);
+        this.partitions = KmerCountRunInputFormat.getPartitions(conf);
+        this.partitionIDs = new int[1024];
+        
+        // runs are promoted to the output directory only when the task commits
+        this.runDirPath = FileOutputFormat.getWorkOutputPath(context);
+        this.taskID = context.getTaskAttemptID().getTaskID().getId();
+        
+        int countBufferSize = ppConfig.getCountBufferSize();
+        if(countBufferSize <= 0) {
+            countBufferSize = PreprocessorConfig.DEFAULT_COUNT_BUFFER_SIZE;
+        }
+        
+        // one table per kmer size, sharing the count buffer
+        this.kmerSizes = ppConfig.getAllKmerSizes();
+        long countBufferBytes = countBufferSize * 1024L * 1024L / this.kmerSizes.length;
+        this.countTables = new KmerCountTable[this.kmerSizes.length];
+        this.keys = new AKmerWritable[this.kmerSizes.length];
+        this.runIDs = new int[this.kmerSizes.length];
+        for(int i=0;i<this.kmerSizes.length;i++) {
+            this.countTables[i] = new KmerCountTable(this.kmerSizes[i], countBufferBytes);
+            this.keys[i] = ppConfig.getKeyType().newKey(this.kmerSizes[i]);
+            LOG.info(String.format("Count run table of kmer size %d - %d slots", this.kmerSizes[i], this.countTables[i].getCapacity()));
+        }
+    }
+    
+    /**
+     * Add count to the k-mer of the idx-th kmer size
+     */
+    public void add(int idx, long high, long low, int count, TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+        KmerCountTable countTable = this.countTables[idx];
+        countTable.add(high, low, this.sampleID, count);
+        if(countTable.isFull()) {
+            writeRun(idx, context);
+        }
+    }
+    
+    private void writeRun(int idx, TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+        KmerCountTable countTable = this.countTables[idx];
+        AKmerWritable key = this.keys[idx];
+        int kmerSize = this.kmerSizes[idx];
+        
+        int entries = countTable.size();
+        countTable.sort();
+        
+        if(this.partitionIDs.length < entries) {
+            this.partitionIDs = new int[Math.max(entries, this.partitionIDs.length * 2)];
+        }
+        
+        // partitions of a kmer size form a block of the partitioner's output
+        int numPartitions = this.partitions * this.kmerSizes.length;
+        for(int i=0;i<entries;i++) {
+            key.set(countTable.getHigh(i), countTable.getLow(i), kmerSize);
+            this.partitionIDs[i] = this.partitioner.getPartition(key, null, numPartitions) % this.partitions;
+        }
+        
+        String runFileName = KmerCountRunHelper.makeKmerCountRunFileName(this.name, kmerSize, this.taskID, this.runIDs[idx]);
+        this.runIDs[idx]++;
+        
+        Path runFile = new Path(this.runDirPath, runFileName);
+        FileSystem fs = runFile.getFileSystem(context.getConfiguration());
+        KmerCountRun.write(countTable, kmerSize, this.sampleID, this.partitionIDs, this.partitions, fs, runFile);
+        
+        context.progress();
+    }
+    
+    /**
+     * Write the remaining counts as runs
+     */
+    public void flush(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+        for(int i=0;i<this.countTables.length;i++) {
+            if(!this.countTables[i].isEmpty()) {
+                writeRun(i, context);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage2;
+
+import java.io.IOException;
+import libra.common.sequence.QualityMasker;
+import libra.common.sequence.ReadBatch;
+import libra.common.sequence.RollingKmerEncoder;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.filetable.FileTable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Counts k-mers of a split into sorted count runs instead of shuffling
+ * k-mers. Runs are merged by KmerIndexBuilderRunMergeMapper.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBuilderRunMapper extends Mapper<LongWritable, ReadBatch, NullWritable, NullWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBuilderRunMapper.class);
+    
+    private PreprocessorRoundConfig ppConfig;
+    private FileTable fileTable;
+    private int fileID;
+    private QualityMasker qualityMasker;
+    private RollingKmerEncoder[] encoders;
+    private KmerIndexBuilderRunBuffer runBuffer;
+    
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        this.fileTable = this.ppConfig.getFileTable();
+        
+        // all reads of a split come from one sample
+        FileSplit fis = (FileSplit)context.getInputSplit();
+        this.fileID = getFileID(fis.getPath());
+        
+        this.qualityMasker = new QualityMasker(this.ppConfig.getMinBaseQuality(), this.ppConfig.getTrimQuality());
+        
+        int[] kmerSizes = this.ppConfig.getAllKmerSizes();
+        this.encoders = new RollingKmerEncoder[kmerSizes.length];
+        for(int i=0;i<kmerSizes.length;i++) {
+            this.encoders[i] = new RollingKmerEncoder(kmerSizes[i]);
+        }
+        
+        this.runBuffer = new KmerIndexBuilderRunBuffer(this.ppConfig, this.fileID, context);
+    }
+    
+    private int getFileID(Path filePath) throws IOException {
+        int fileID = this.fileTable.getSampleID(filePath.toString());
+        if(fileID < 0) {
+            throw new IOException(String.format("Cannot find fileID from path %s", filePath.toString()));
+        }
+        return fileID;
+    }
+    
+    @Override
+    protected void map(LongWritable key, ReadBatch value, Context context) throws IOException, InterruptedException {
+        byte[] sequences = value.getSequenceBytes();
+        for(int i=0;i<value.size();i++) {
+            int start = value.getSequenceStart(i);
+            int length = this.qualityMasker.apply(value, i);
+            int end = start + length;
+            
+            for(int j=0;j<this.encoders.length;j++) {
+                RollingKmerEncoder encoder = this.encoders[j];
+                
+                encoder.reset();
+                for(int k=start + value.getKmerSkip(i, encoder.getKmerSize());k<end;k++) {
+                    if(encoder.push(sequences[k])) {
+                        this.runBuffer.add(j, encoder.getCanonicalHigh(), encoder.getCanonicalLow(), 1, context);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        this.runBuffer.flush(context);
+    }
+}
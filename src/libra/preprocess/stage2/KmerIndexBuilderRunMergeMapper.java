@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage2;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyMerger;
+import libra.common.kmermatch.KmerMatchResult;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.kmercount.KmerCountRunInputSplit;
+import libra.preprocess.common.kmerindex.KmerIndexBlockOutputFormat;
+import libra.preprocess.common.kmerindex.KmerIndexBlockWriter;
+import libra.preprocess.common.kmerindex.KmerIndexFormat;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Sums the counts of k-mers merged from count runs, applies the frequency
+ * filter and writes an index partition. The partition is written as the
+ * reducer output of the same partition would be, so the index is committed
+ * like a shuffled build.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBuilderRunMergeMapper extends Mapper<AKmerWritable, KmerMatchResult, AKmerWritable, IntArrayWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBuilderRunMergeMapper.class);
+    
+    private PreprocessorRoundConfig ppConfig;
+    private int partitionID;
+    private KmerIndexBuilderFilter filter;
+    private SampleFrequencyMerger merger;
+    private MapFile.Writer writer;
+    private KmerIndexBlockWriter blockWriter;
+    
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        
+        KmerCountRunInputSplit split = (KmerCountRunInputSplit) context.getInputSplit();
+        this.partitionID = split.getPartitionID();
+        this.filter = new KmerIndexBuilderFilter(this.ppConfig, split.getKmerSize(), conf);
+        this.merger = new SampleFrequencyMerger();
+        
+        if(KmerIndexBuilder.getIndexFormat(this.ppConfig) == KmerIndexFormat.BLOCKED) {
+            this.blockWriter = createBlockWriter(context, split.getKmerSize());
+        } else {
+            this.writer = createWriter(context);
+        }
+    }
+    
+    private Path getPartitionFile(Context context) throws IOException, InterruptedException {
+        return new Path(FileOutputFormat.getWorkOutputPath(context), String.format("part-r-%05d", this.partitionID));
+    }
+    
+    private KmerIndexBlockWriter createBlockWriter(Context context, int kmerSize) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        // same as KmerIndexBlockOutputFormat
+        Path file = getPartitionFile(context);
+        FileSystem fs = file.getFileSystem(conf);
+        return new KmerIndexBlockWriter(fs, file, this.ppConfig.getKeyType(), kmerSize, KmerIndexBlockOutputFormat.getBlockEntries(conf));
+    }
+    
+    private MapFile.Writer createWriter(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        // same as MapFileOutputFormat
+        CompressionCodec codec = null;
+        CompressionType compressionType = CompressionType.NONE;
+        if(FileOutputFormat.getCompressOutput(context)) {
+            compressionType = SequenceFileOutputFormat.getOutputCompressionType(context);
+            Class<?> codecClass = FileOutputFormat.getOutputCompressorClass(context, DefaultCodec.class);
+            codec = (CompressionCodec) ReflectionUtils.newInstance(codecClass, conf);
+        }
+        
+        Path file = getPartitionFile(context);
+        return new MapFile.Writer(conf, file, MapFile.Writer.keyClass(this.ppConfig.getKeyType().getKeyClass()), SequenceFile.Writer.valueClass(SampleFrequencyArrayWritable.class), SequenceFile.Writer.compression(compressionType, codec), SequenceFile.Writer.progressable(context));
+    }
+    
+    @Override
+    protected void map(AKmerWritable key, KmerMatchResult value, Context context) throws IOException, InterruptedException {
+        this.merger.clear();
+        for(IntArrayWritable val : value.getVals()) {
+            this.merger.add(val.get());
+        }
+        this.merger.merge();
+        
+        int[] outputFreqArr = this.filter.filter(this.merger);
+        if(outputFreqArr != null) {
+            if(this.blockWriter != null) {
+                this.blockWriter.append(key, new SampleFrequencyArrayWritable(outputFreqArr));
+            } else {
+                this.writer.append(key, new SampleFrequencyArrayWritable(outputFreqArr));
+            }
+        }
+    }
+    
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if(this.blockWriter != null) {
+            this.blockWriter.close();
+        } else {
+            this.writer.close();
+        }
+        
+        this.filter.saveStatistics(context.getConfiguration(), this.partitionID);
+    }
+}
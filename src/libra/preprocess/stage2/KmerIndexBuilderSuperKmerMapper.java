@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage2;
+
+import java.io.IOException;
+import libra.common.hadoop.io.datatypes.SuperKmerWritable;
+import libra.common.sequence.QualityMasker;
+import libra.common.sequence.ReadBatch;
+import libra.common.sequence.SuperKmerSplitter;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.filetable.FileTable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Emits super-k-mers keyed by their minimizer instead of individual k-mers.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBuilderSuperKmerMapper extends Mapper<LongWritable, ReadBatch, LongWritable, SuperKmerWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBuilderSuperKmerMapper.class);
+    
+    private PreprocessorRoundConfig ppConfig;
+    private FileTable fileTable;
+    private int fileID;
+    private SuperKmerSplitter splitter;
+    private QualityMasker qualityMasker;
+    private LongWritable outputKey;
+    private SuperKmerWritable outputValue;
+    
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        this.fileTable = this.ppConfig.getFileTable();
+        
+        // all reads of a split come from one sample
+        FileSplit fis = (FileSplit)context.getInputSplit();
+        this.fileID = getFileID(fis.getPath());
+        this.splitter = new SuperKmerSplitter(this.ppConfig.getKmerSize(), this.ppConfig.getMinimizerSize());
+        this.qualityMasker = new QualityMasker(this.ppConfig.getMinBaseQuality(), this.ppConfig.getTrimQuality());
+        this.outputKey = new LongWritable();
+        this.outputValue = new SuperKmerWritable();
+    }
+    
+    private int getFileID(Path filePath) throws IOException {
+        int fileID = this.fileTable.getSampleID(filePath.toString());
+        if(fileID < 0) {
+            throw new IOException(String.format("Cannot find fileID from path %s", filePath.toString()));
+        }
+        return fileID;
+    }
+    
+    @Override
+    protected void map(LongWritable key, ReadBatch value, Context context) throws IOException, InterruptedException {
+        byte[] sequences = value.getSequenceBytes();
+        for(int i=0;i<value.size();i++) {
+            int start = value.getSequenceStart(i);
+            int length = this.qualityMasker.apply(value, i);
+            
+            this.splitter.reset(sequences, start, length);
+            while(this.splitter.next()) {
+                this.outputKey.set(this.splitter.getMinimizer());
+                this.outputValue.set(this.fileID, sequences, this.splitter.getStart(), this.splitter.getEnd());
+                context.write(this.outputKey, this.outputValue);
+            }
+        }
+    }
+    
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage2;
+
+import libra.common.hadoop.io.datatypes.SuperKmerWritable;
+import libra.preprocess.common.helpers.KmerIndexBucketHelper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * Partitions super-k-mers by minimizer. Every k-mer of a super-k-mer shares
+ * the minimizer, so the same k-mer always lands in the same partition.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBuilderSuperKmerPartitioner extends Partitioner<LongWritable, SuperKmerWritable> implements Configurable {
+
+    private static final Log LOG = LogFactory.getLog(KmerIndexBuilderSuperKmerPartitioner.class);
+    
+    private Configuration conf;
+    
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return this.conf;
+    }
+    
+    @Override
+    public int getPartition(LongWritable key, SuperKmerWritable value, int numReduceTasks) {
+        // minimizers are picked by their smallest hash, so rehash with a
+        // different seed to spread them evenly
+        long h = key.get() + 0x9e3779b97f4a7c15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        int bucket = KmerIndexBucketHelper.getBucket((int) h);
+        return KmerIndexBucketHelper.getPartition(bucket, numReduceTasks);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.preprocess.stage2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import libra.common.hadoop.io.datatypes.AKmerWritable;
+import libra.common.hadoop.io.datatypes.IntArrayWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyArrayWritable;
+import libra.common.hadoop.io.datatypes.SampleFrequencyMerger;
+import libra.common.hadoop.io.datatypes.SuperKmerWritable;
+import libra.common.sequence.RollingKmerEncoder;
+import libra.preprocess.common.PreprocessorConfig;
+import libra.preprocess.common.PreprocessorRoundConfig;
+import libra.preprocess.common.kmercount.KmerCountSpill;
+import libra.preprocess.common.kmercount.KmerCountSpillMerger;
+import libra.preprocess.common.kmercount.KmerCountTable;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.LocalDirAllocator;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.MRConfig;
+import org.apache.hadoop.mapreduce.Reducer;
+
+/**
+ * Expands super-k-mers into canonical k-mers and counts them locally.
+ * Input arrives ordered by minimizer, so counts are kept in a KmerCountTable,
+ * spilled as sorted runs when the table fills up and merged in cleanup to
+ * write the index in k-mer order.
+ *
+ * @author iychoi
+ */
+public class KmerIndexBuilderSuperKmerReducer extends Reducer<LongWritable, SuperKmerWritable, AKmerWritable, IntArrayWritable> {
+    
+    private static final Log LOG = LogFactory.getLog(KmerIndexBuilderSuperKmerReducer.class);
+
+    private PreprocessorRoundConfig ppConfig;
+    private int kmerSize;
+    private KmerIndexBuilderFilter filter;
+    private RollingKmerEncoder encoder;
+    private KmerCountTable countTable;
+    private List<KmerCountSpill> spills;
+    private LocalDirAllocator spillDirAllocator;
+    
+    private AKmerWritable outputKey;
+    private SampleFrequencyMerger merger;
+    private boolean hasKmer;
+    private long kmerHigh;
+    private long kmerLow;
+    
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        
+        this.ppConfig = PreprocessorRoundConfig.createInstance(conf);
+        this.kmerSize = this.ppConfig.getKmerSize();
+        this.filter = new KmerIndexBuilderFilter(this.ppConfig, this.kmerSize, conf);
+        this.encoder = new RollingKmerEncoder(this.kmerSize);
+        
+        int countBufferSize = this.ppConfig.getCountBufferSize();
+        if(countBufferSize <= 0) {
+            countBufferSize = PreprocessorConfig.DEFAULT_COUNT_BUFFER_SIZE;
+        }
+        this.countTable = new KmerCountTable(this.kmerSize, countBufferSize * 1024L * 1024L);
+        LOG.info(String.format("Super-k-mer count table - %d slots", this.countTable.getCapacity()));
+        
+        this.spills = new ArrayList<KmerCountSpill>();
+        // spill to the task's local directories
+        this.spillDirAllocator = new LocalDirAllocator(MRConfig.LOCAL_DIR);
+        
+        this.outputKey = this.ppConfig.getKeyType().newKey(this.kmerSize);
+        this.merger = new SampleFrequencyMerger();
+        this.hasKmer = false;
+    }
+    
+    @Override
+    protected void reduce(LongWritable key, Iterable<SuperKmerWritable> values, Context context) throws IOException, InterruptedException {
+        for(SuperKmerWritable value : values) {
+            int sampleID = value.getSampleID();
+            int length = value.getLength();
+            
+            this.encoder.reset();
+            for(int i=0;i<length;i++) {
+                if(this.encoder.pushCode(value.getBaseCode(i))) {
+                    this.countTable.add(this.encoder.getCanonicalHigh(), this.encoder.getCanonicalLow(), sampleID, 1);
+                    if(this.countTable.isFull()) {
+                        spill(context);
+                    }
+                }
+            }
+        }
+    }
+    
+    private void spill(Context context) throws IOException {
+        String spillName = String.format("%s/kmercount_%d.spill", context.getTaskAttemptID().toString(), this.spills.size());
+        long spillSize = (long) this.countTable.size() * KmerCountSpill.ENTRY_BYTES;
+        Path spillFile = this.spillDirAllocator.getLocalPathForWrite(spillName, spillSize, context.getConfiguration());
+        this.spills.add(KmerCountSpill.write(this.countTable, new File(spillFile.toUri().getPath())));
+    }
+    
+    private void accumulate(long high, long low, int sampleID, int count, Context context) throws IOException, InterruptedException {
+        if(this.hasKmer && (this.kmerHigh != high || this.kmerLow != low)) {
+            writeKmer(context);
+        }
+        
+        this.hasKmer = true;
+        this.kmerHigh = high;
+        this.kmerLow = low;
+        this.merger.add(sampleID, count);
+    }
+    
+    private void writeKmer(Context context) throws IOException, InterruptedException {
+        this.merger.merge();
+        int[] outputFreqArr = this.filter.filter(this.merger);
+        if(outputFreqArr != null) {
+            this.outputKey.set(this.kmerHigh, this.kmerLow, this.kmerSize);
+            context.write(this.outputKey, new SampleFrequencyArrayWritable(outputFreqArr));
+        }
+        
+        this.merger.clear();
+        this.hasKmer = false;
+        context.progress();
+    }
+    
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if(this.spills.isEmpty()) {
+            // everything fits in memory
+            int entries = this.countTable.size();
+            this.countTable.sort();
+            for(int i=0;i<entries;i++) {
+                accumulate(this.countTable.getHigh(i), this.countTable.getLow(i), this.countTable.getSampleID(i), this.countTable.getCount(i), context);
+            }
+            this.countTable.clear();
+        } else {
+            if(!this.countTable.isEmpty()) {
+                spill(context);
+            }
+            
+            KmerCountSpillMerger merger = new KmerCountSpillMerger(this.spills);
+            try {
+                while(merger.next()) {
+                    accumulate(merger.getHigh(), merger.getLow(), merger.getSampleID(), merger.getCount(), context);
+                }
+            } finally {
+                merger.close();
+            }
+            this.spills.clear();
+        }
+        
+        if(this.hasKmer) {
+            writeKmer(context);
+        }
+        
+        int taskID = context.getTaskAttemptID().getTaskID().getId();
+        
+        this.filter.saveStatistics(context.getConfiguration(), taskID);
+    }
+}
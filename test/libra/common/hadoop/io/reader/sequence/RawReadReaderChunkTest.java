@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 iychoi.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package libra.common.hadoop.io.reader.sequence;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import libra.common.sequence.ReadBatch;
+import libra.common.sequence.ReadInfo;
+import libra.common.sequence.RollingKmerEncoder;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks that multi-k k-mer counts of chunked FASTA records match the counts
+ * of the same records read without chunking.
+ * 
+ * @author iychoi
+ */
+public class RawReadReaderChunkTest {
+    
+    private static final int[] KMER_SIZES = {5, 11, 21, 31};
+    private static final int MAX_KMER_SIZE = 31;
+    
+    private static String makeFASTA(long seed, int lineLength) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for(int i=0;i<20;i++) {
+            int length = 1 + random.nextInt(2000);
+            sb.append(">read").append(i).append("\n");
+            for(int j=0;j<length;j++) {
+                sb.append("ACGTN".charAt(random.nextInt(5)));
+                if(lineLength > 0 && j % lineLength == lineLength - 1) {
+                    sb.append("\n");
+                }
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+    
+    private static Map<String, Integer>[] count(String fasta, int maxChunkLength) throws IOException {
+        RawReadReader reader = new RawReadReader(SampleFormat.FASTA, new ByteArrayInputStream(fasta.getBytes("US-ASCII")));
+        if(maxChunkLength > 0) {
+            reader.setChunking(maxChunkLength, MAX_KMER_SIZE - 1);
+        }
+        
+        @SuppressWarnings("unchecked")
+        Map<String, Integer>[] counts = new Map[KMER_SIZES.length];
+        RollingKmerEncoder[] encoders = new RollingKmerEncoder[KMER_SIZES.length];
+        for(int i=0;i<KMER_SIZES.length;i++) {
+            counts[i] = new HashMap<String, Integer>();
+            encoders[i] = new RollingKmerEncoder(KMER_SIZES[i]);
+        }
+        
+        ReadInfo read = new ReadInfo("test");
+        ReadBatch batch = new ReadBatch();
+        while(true) {
+            reader.readRead(read);
+            if(read.isEmpty()) {
+                break;
+            }
+            
+            batch.clear();
+            batch.add(read);
+            
+            byte[] sequences = batch.getSequenceBytes();
+            int start = batch.getSequenceStart(0);
+            int end = start + batch.getSequenceLength(0);
+            for(int i=0;i<KMER_SIZES.length;i++) {
+                RollingKmerEncoder encoder = encoders[i];
+                encoder.reset();
+                for(int j=start + batch.getKmerSkip(0, KMER_SIZES[i]);j<end;j++) {
+                    if(encoder.push(sequences[j])) {
+                        String kmer = encoder.getCanonicalHigh() + ":" + encoder.getCanonicalLow();
+                        Integer count = counts[i].get(kmer);
+                        counts[i].put(kmer, count == null ? 1 : count + 1);
+                    }
+                }
+            }
+        }
+        reader.close();
+        return counts;
+    }
+    
+    @Test
+    public void testChunkedCountsMatchUnchunked() throws IOException {
+        int[] lineLengths = {60, 0};
+        for(int lineLength : lineLengths) {
+            String fasta = makeFASTA(1, lineLength);
+            Map<String, Integer>[] expected = count(fasta, 0);
+            
+            int[] chunkLengths = {MAX_KMER_SIZE, MAX_KMER_SIZE + 1, 64, 100, 997};
+            for(int chunkLength : chunkLengths) {
+                Map<String, Integer>[] actual = count(fasta, chunkLength);
+                for(int i=0;i<KMER_SIZES.length;i++) {
+                    assertEquals("k=" + KMER_SIZES[i] + ", line length=" + lineLength + ", chunk length=" + chunkLength, expected[i], actual[i]);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testUnwrappedRecordIsSplitInsideLine() throws IOException {
+        Random random = new Random(2);
+        StringBuilder sequence = new StringBuilder();
+        for(int i=0;i<4 * 1024 * 1024;i++) {
+            sequence.append("ACGT".charAt(random.nextInt(4)));
+        }
+        String fasta = ">genome\n" + sequence + "\n>next\nACGTACGT\n";
+        
+        int chunkLength = 100000;
+        RawReadReader reader = new RawReadReader(SampleFormat.FASTA, new ByteArrayInputStream(fasta.getBytes("US-ASCII")));
+        reader.setChunking(chunkLength, MAX_KMER_SIZE - 1);
+        
+        ReadInfo read = new ReadInfo("test");
+        StringBuilder joined = new StringBuilder();
+        int maxSequenceLength = 0;
+        while(true) {
+            reader.readRead(read);
+            if(read.isEmpty() || !">genome".equals(read.getDescription())) {
+                break;
+            }
+            
+            String chunk = new String(read.getSequenceBytes(), 0, read.getSequenceLength(), "US-ASCII");
+            joined.append(chunk.substring(read.getSequenceOverlap()));
+            maxSequenceLength = Math.max(maxSequenceLength, read.getSequenceLength());
+        }
+        
+        assertEquals("next record", ">next", read.getDescription());
+        assertEquals("longest chunk", chunkLength + MAX_KMER_SIZE - 1, maxSequenceLength);
+        assertEquals("joined chunks", sequence.toString(), joined.toString());
+        reader.close();
+    }
+}